@@ -16,21 +16,41 @@
 package ai.langstream.agents.azureblobstorage;
 
 import ai.langstream.api.runner.code.AbstractAgentCode;
+import ai.langstream.api.runner.code.AgentContext;
 import ai.langstream.api.runner.code.AgentSource;
 import ai.langstream.api.runner.code.Header;
 import ai.langstream.api.runner.code.Record;
+import ai.langstream.api.runner.code.SpooledValue;
 import ai.langstream.api.util.ConfigurationUtils;
-import com.azure.core.http.rest.PagedIterable;
+import com.azure.core.http.rest.PagedResponse;
+import com.azure.storage.blob.BlobClient;
 import com.azure.storage.blob.BlobContainerClient;
 import com.azure.storage.blob.BlobContainerClientBuilder;
 import com.azure.storage.blob.models.BlobItem;
+import com.azure.storage.blob.models.ListBlobsOptions;
 import com.azure.storage.common.StorageSharedKeyCredential;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import lombok.AllArgsConstructor;
 import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
@@ -40,6 +60,16 @@ public class AzureBlobStorageSource extends AbstractAgentCode implements AgentSo
     private BlobContainerClient client;
     private final Set<String> blobsToCommit = ConcurrentHashMap.newKeySet();
     private int idleTime;
+    private int maxRecordsPerRead;
+    private int listPageSize;
+    private List<String> prefixes = List.of("");
+    private int nextPrefix;
+    private ExecutorService downloadExecutor;
+    // prefix -> listing marker of the next page to read
+    private final Map<String, String> cursors = new HashMap<>();
+    private Path cursorsFile;
+
+    private static final String CURSORS_FILE = "azure-blob-source.cursors";
 
     public static final String ALL_FILES = "*";
     public static final String DEFAULT_EXTENSIONS_FILTER = "pdf,docx,html,htm,md,txt";
@@ -112,58 +142,268 @@ public class AzureBlobStorageSource extends AbstractAgentCode implements AgentSo
                                 .getOrDefault("file-extensions", DEFAULT_EXTENSIONS_FILTER)
                                 .toString()
                                 .split(","));
+        maxRecordsPerRead =
+                Integer.parseInt(configuration.getOrDefault("max-records-per-read", 1).toString());
+        int parallelDownloads =
+                Integer.parseInt(configuration.getOrDefault("parallel-downloads", 1).toString());
+        listPageSize =
+                Integer.parseInt(configuration.getOrDefault("list-page-size", 1000).toString());
+        int partitions =
+                Integer.parseInt(configuration.getOrDefault("partitions", 1).toString());
+        int partition = partitionFromHostname(getHostname(), partitions);
+        prefixes =
+                assignedPrefixes(
+                        ConfigurationUtils.getString("prefixes", "", configuration),
+                        partition,
+                        partitions);
 
         log.info("Getting files with extensions {} (use '*' to no filter)", extensions);
+        log.info(
+                "Reading prefixes {} (partition {}/{}), {} blobs per read, {} parallel downloads",
+                prefixes,
+                partition,
+                partitions,
+                maxRecordsPerRead,
+                parallelDownloads);
+        if (prefixes.isEmpty()) {
+            log.warn("No prefix is assigned to partition {}, this replica stays idle", partition);
+        }
+        if (parallelDownloads > 1) {
+            downloadExecutor = Executors.newFixedThreadPool(parallelDownloads);
+        }
+    }
+
+    @Override
+    public void setContext(AgentContext context) throws Exception {
+        super.setContext(context);
+        Optional<Path> persistentDirectory = context.getPersistentStateDirectoryForAgent(agentId());
+        if (persistentDirectory != null && persistentDirectory.isPresent()) {
+            cursorsFile = persistentDirectory.get().resolve(CURSORS_FILE);
+        }
+    }
+
+    @Override
+    public void start() throws Exception {
+        if (cursorsFile != null && Files.exists(cursorsFile)) {
+            Properties properties = new Properties();
+            try (Reader reader = Files.newBufferedReader(cursorsFile, StandardCharsets.UTF_8)) {
+                properties.load(reader);
+            }
+            properties.forEach((prefix, marker) -> cursors.put((String) prefix, (String) marker));
+            log.info("Loaded the listing markers from {}: {}", cursorsFile, cursors);
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (downloadExecutor != null) {
+            downloadExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * The ordinal of the replica is the suffix of the pod name, as the agents run in a StatefulSet.
+     */
+    static int partitionFromHostname(String hostname, int partitions) {
+        if (partitions <= 1 || hostname == null) {
+            return 0;
+        }
+        int dash = hostname.lastIndexOf('-');
+        try {
+            return Integer.parseInt(hostname.substring(dash + 1)) % partitions;
+        } catch (NumberFormatException e) {
+            log.warn("Cannot find the replica ordinal in the hostname {}", hostname);
+            return 0;
+        }
+    }
+
+    static List<String> assignedPrefixes(String prefixes, int partition, int partitions) {
+        String[] allPrefixes = prefixes.split(",", -1);
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < allPrefixes.length; i++) {
+            if (i % partitions == partition) {
+                result.add(allPrefixes[i].trim());
+            }
+        }
+        return result;
+    }
+
+    private static String getHostname() {
+        String hostname = System.getenv("HOSTNAME");
+        if (hostname != null) {
+            return hostname;
+        }
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (IOException e) {
+            return null;
+        }
     }
 
     @Override
     public List<Record> read() throws Exception {
-        List<Record> records = new ArrayList<>();
-        final PagedIterable<BlobItem> blobs;
+        List<BlobItem> newBlobs = new ArrayList<>();
+        Map<String, String> initialCursors = new HashMap<>(cursors);
         try {
-            blobs = client.listBlobs();
+            for (int i = 0; i < prefixes.size() && newBlobs.size() < maxRecordsPerRead; i++) {
+                // rotate the prefixes, so that a busy prefix does not starve the others
+                String prefix = prefixes.get(nextPrefix);
+                nextPrefix = (nextPrefix + 1) % prefixes.size();
+                listNewBlobs(prefix, newBlobs);
+            }
         } catch (Exception e) {
             log.error("Error listing blobs on container {}", client.getBlobContainerName(), e);
             throw e;
         }
-        boolean somethingFound = false;
-        for (BlobItem blob : blobs) {
-            final String name = blob.getName();
-            if (blob.isDeleted()) {
-                log.debug("Skipping blob {}. deleted status", name);
-                continue;
-            }
-            boolean extensionAllowed = isExtensionAllowed(name, extensions);
-            if (!extensionAllowed) {
-                log.debug("Skipping blob with bad extension {}", name);
-                continue;
-            }
-            if (!blobsToCommit.contains(name)) {
-                log.info("Found new blob {}", name);
-                try {
-                    byte[] read = client.getBlobClient(name).downloadContent().toBytes();
-                    ;
-                    records.add(new BlobSourceRecord(read, name));
-                    somethingFound = true;
-                    blobsToCommit.add(name);
-                } catch (Exception e) {
-                    log.error("Error reading object {}", name, e);
-                    throw e;
-                }
-                break;
-            } else {
-                log.info("Skipping already processed object {}", name);
-            }
+        if (!cursors.equals(initialCursors)) {
+            storeCursors();
         }
-        if (!somethingFound) {
+        if (newBlobs.isEmpty()) {
             log.info("Nothing found, sleeping for {} seconds", idleTime);
             Thread.sleep(idleTime * 1000L);
+            return List.of();
+        }
+        List<Record> records = download(newBlobs);
+        for (Record record : records) {
+            blobsToCommit.add(((BlobSourceRecord) record).name);
+        }
+        processed(0, records.size());
+        return records;
+    }
+
+    /**
+     * List the blobs with the prefix one page at a time, starting from the page of the stored
+     * marker, until enough new blobs are found. The marker is moved to the page to list next time.
+     * After the last page the listing wraps around, once, to the beginning of the prefix.
+     */
+    private void listNewBlobs(String prefix, List<BlobItem> newBlobs) {
+        ListBlobsOptions options = new ListBlobsOptions().setMaxResultsPerPage(listPageSize);
+        if (!prefix.isEmpty()) {
+            options.setPrefix(prefix);
+        }
+        String startMarker = cursors.get(prefix);
+        String marker = startMarker;
+        boolean wrapped = startMarker == null;
+        while (true) {
+            for (PagedResponse<BlobItem> page :
+                    client.listBlobs(options, null).iterableByPage(marker)) {
+                for (BlobItem blob : page.getValue()) {
+                    if (newBlobs.size() >= maxRecordsPerRead) {
+                        break;
+                    }
+                    if (isNewBlob(blob)) {
+                        newBlobs.add(blob);
+                    }
+                }
+                if (newBlobs.size() >= maxRecordsPerRead) {
+                    // the rest of this page is listed again next time
+                    setCursor(prefix, marker);
+                    return;
+                }
+                marker = page.getContinuationToken();
+                if (wrapped && marker != null && marker.equals(startMarker)) {
+                    setCursor(prefix, marker);
+                    return;
+                }
+            }
+            setCursor(prefix, null);
+            if (wrapped) {
+                return;
+            }
+            wrapped = true;
+            marker = null;
+        }
+    }
+
+    private void setCursor(String prefix, String marker) {
+        if (marker == null) {
+            cursors.remove(prefix);
         } else {
-            processed(0, 1);
+            cursors.put(prefix, marker);
+        }
+    }
+
+    private void storeCursors() throws IOException {
+        if (cursorsFile == null) {
+            return;
+        }
+        Properties properties = new Properties();
+        properties.putAll(cursors);
+        Path tmp = cursorsFile.resolveSibling(CURSORS_FILE + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            properties.store(writer, null);
+        }
+        Files.move(
+                tmp,
+                cursorsFile,
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private boolean isNewBlob(BlobItem blob) {
+        String name = blob.getName();
+        if (blob.isDeleted() != null && blob.isDeleted()) {
+            log.debug("Skipping blob {}. deleted status", name);
+            return false;
+        }
+        boolean extensionAllowed = isExtensionAllowed(name, extensions);
+        if (!extensionAllowed) {
+            log.debug("Skipping blob with bad extension {}", name);
+            return false;
+        }
+        if (blobsToCommit.contains(name)) {
+            log.debug("Skipping already processed object {}", name);
+            return false;
+        }
+        log.info("Found new blob {}", name);
+        return true;
+    }
+
+    private List<Record> download(List<BlobItem> blobs) throws Exception {
+        List<Record> records = new ArrayList<>(blobs.size());
+        if (downloadExecutor == null || blobs.size() == 1) {
+            for (BlobItem blob : blobs) {
+                records.add(download(blob));
+            }
+            return records;
+        }
+        List<Future<BlobSourceRecord>> downloads = new ArrayList<>(blobs.size());
+        for (BlobItem blob : blobs) {
+            downloads.add(downloadExecutor.submit(() -> download(blob)));
+        }
+        try {
+            for (Future<BlobSourceRecord> download : downloads) {
+                records.add(download.get());
+            }
+        } catch (ExecutionException e) {
+            downloads.forEach(download -> download.cancel(true));
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
         }
         return records;
     }
 
+    private BlobSourceRecord download(BlobItem blob) throws IOException {
+        String name = blob.getName();
+        try {
+            BlobClient blobClient = client.getBlobClient(name);
+            Long size =
+                    blob.getProperties() != null ? blob.getProperties().getContentLength() : null;
+            if (size != null && size > SpooledValue.DEFAULT_MEMORY_THRESHOLD) {
+                // large blobs are spooled to disk instead of being loaded in memory
+                try (InputStream in = blobClient.openInputStream()) {
+                    return new BlobSourceRecord(SpooledValue.spool(in), name);
+                }
+            }
+            return new BlobSourceRecord(blobClient.downloadContent().toBytes(), name);
+        } catch (IOException | RuntimeException e) {
+            log.error("Error reading object {}", name, e);
+            throw e;
+        }
+    }
+
     static boolean isExtensionAllowed(String name, Set<String> extensions) {
         if (extensions.contains(ALL_FILES)) {
             return true;
@@ -188,18 +428,32 @@ public class AzureBlobStorageSource extends AbstractAgentCode implements AgentSo
         for (Record record : records) {
             BlobSourceRecord blobRecord = (BlobSourceRecord) record;
             String name = blobRecord.name;
+            if (blobRecord.read instanceof SpooledValue spooledValue) {
+                // the record has been processed, delete the temporary file
+                spooledValue.close();
+            }
             log.info("Removing blob {}", name);
             client.getBlobClient(name).deleteIfExists();
             blobsToCommit.remove(name);
         }
     }
 
+    @Override
+    public void permanentFailure(Record record, Exception error) throws Exception {
+        if (record instanceof BlobSourceRecord blobRecord
+                && blobRecord.read instanceof SpooledValue spooledValue) {
+            // the record is not processed again, delete the temporary file
+            spooledValue.close();
+        }
+        throw error;
+    }
+
     private static class BlobSourceRecord implements Record {
-        private final byte[] read;
+        private final Object read;
         private final String name;
         private final long timestamp = System.currentTimeMillis();
 
-        public BlobSourceRecord(byte[] read, String name) {
+        public BlobSourceRecord(Object read, String name) {
             this.read = read;
             this.name = name;
         }
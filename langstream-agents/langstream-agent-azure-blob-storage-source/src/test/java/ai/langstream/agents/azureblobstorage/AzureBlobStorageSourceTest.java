@@ -16,17 +16,47 @@
 package ai.langstream.agents.azureblobstorage;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
+import ai.langstream.api.runner.code.AgentContext;
+import ai.langstream.api.runner.code.MetricsReporter;
 import ai.langstream.api.runner.code.Record;
 import com.azure.core.util.BinaryData;
 import com.azure.storage.blob.BlobContainerClient;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
 
+@Testcontainers
 class AzureBlobStorageSourceTest {
 
+    // well-known development account of the Azurite emulator
+    private static final String AZURITE_ACCOUNT = "devstoreaccount1";
+    private static final String AZURITE_KEY =
+            "Eby8vdM02xNOcqFlqUwJPLlmEtlCDXJ1OUzFT50uSRZ6IFsuFq2UVErCz4I6tq/K1SZFsn1HJbCXqDxCO4eH/KBHBw==";
+
+    @Container
+    private static final GenericContainer<?> azurite =
+            new GenericContainer<>(
+                            DockerImageName.parse("mcr.microsoft.com/azure-storage/azurite:3.26.0"))
+                    .withCommand("azurite-blob", "--blobHost", "0.0.0.0")
+                    .withExposedPorts(10000);
+
     @Test
     @Disabled
     void test() throws Exception {
@@ -45,4 +75,115 @@ class AzureBlobStorageSourceTest {
         assertEquals(1, read.size());
         assertEquals("test", new String((byte[]) read.get(0).value()));
     }
+
+    @Test
+    void testReadInBatches(@TempDir Path stateDirectory) throws Exception {
+        Map<String, Object> config = azuriteConfig();
+        BlobContainerClient containerClient = AzureBlobStorageSource.createContainerClient(config);
+        for (int i = 0; i < 7; i++) {
+            containerClient
+                    .getBlobClient("doc-" + i + ".txt")
+                    .upload(BinaryData.fromString("content-" + i));
+        }
+        containerClient.getBlobClient("skipped.bin").upload(BinaryData.fromString("skipped"));
+
+        config.put("max-records-per-read", 3);
+        config.put("list-page-size", 2);
+        config.put("parallel-downloads", 2);
+        AzureBlobStorageSource source = buildSource(config, stateDirectory);
+
+        List<Record> read = source.read();
+        assertEquals(3, read.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals("doc-" + i + ".txt", read.get(i).key());
+            assertEquals("content-" + i, new String((byte[]) read.get(i).value()));
+        }
+        // the listing stopped in the second page, its marker is stored
+        assertTrue(Files.exists(stateDirectory.resolve("azure-blob-source.cursors")));
+
+        // the blobs not committed yet are not read again
+        Set<Object> keys = new HashSet<>();
+        read.forEach(r -> keys.add(r.key()));
+        List<Record> next = source.read();
+        next.forEach(r -> assertTrue(keys.add(r.key())));
+        source.commit(read);
+        source.commit(next);
+        while (keys.size() < 7) {
+            List<Record> records = source.read();
+            assertFalse(records.isEmpty());
+            records.forEach(r -> assertTrue(keys.add(r.key())));
+            source.commit(records);
+        }
+        assertFalse(keys.contains("skipped.bin"));
+        assertFalse(containerClient.getBlobClient("doc-0.txt").exists());
+        assertTrue(containerClient.getBlobClient("skipped.bin").exists());
+        source.close();
+    }
+
+    @Test
+    void testReadPrefixes() throws Exception {
+        Map<String, Object> config = azuriteConfig();
+        BlobContainerClient containerClient = AzureBlobStorageSource.createContainerClient(config);
+        for (String name : List.of("a/1.txt", "b/1.txt", "c/1.txt", "c/2.txt")) {
+            containerClient.getBlobClient(name).upload(BinaryData.fromString(name));
+        }
+        config.put("prefixes", "a/,c/");
+        config.put("max-records-per-read", 10);
+        config.put("idle-time", 0);
+        AzureBlobStorageSource source = buildSource(config, null);
+
+        Set<Object> keys = new HashSet<>();
+        for (int i = 0; i < 3; i++) {
+            List<Record> records = source.read();
+            records.forEach(r -> keys.add(r.key()));
+            source.commit(records);
+        }
+        assertEquals(Set.of("a/1.txt", "c/1.txt", "c/2.txt"), keys);
+        assertTrue(containerClient.getBlobClient("b/1.txt").exists());
+        source.close();
+    }
+
+    @Test
+    void testPartitions() {
+        assertEquals(0, AzureBlobStorageSource.partitionFromHostname("app-agent-3", 1));
+        assertEquals(1, AzureBlobStorageSource.partitionFromHostname("app-agent-3", 2));
+        assertEquals(2, AzureBlobStorageSource.partitionFromHostname("app-agent-2", 3));
+        assertEquals(0, AzureBlobStorageSource.partitionFromHostname("localhost", 3));
+        assertEquals(0, AzureBlobStorageSource.partitionFromHostname(null, 3));
+
+        assertEquals(List.of(""), AzureBlobStorageSource.assignedPrefixes("", 0, 1));
+        assertEquals(
+                List.of("a/", "c/"), AzureBlobStorageSource.assignedPrefixes("a/,b/,c/", 0, 2));
+        assertEquals(List.of("b/"), AzureBlobStorageSource.assignedPrefixes("a/, b/,c/", 1, 2));
+        assertEquals(List.of(), AzureBlobStorageSource.assignedPrefixes("a/", 1, 2));
+    }
+
+    private static Map<String, Object> azuriteConfig() {
+        String endpoint =
+                "http://%s:%d/%s"
+                        .formatted(
+                                azurite.getHost(), azurite.getMappedPort(10000), AZURITE_ACCOUNT);
+        Map<String, Object> config = new HashMap<>();
+        config.put("endpoint", endpoint);
+        config.put("container", "test-" + UUID.randomUUID());
+        config.put("file-extensions", "txt");
+        config.put(
+                "storage-account-connection-string",
+                "DefaultEndpointsProtocol=http;AccountName=%s;AccountKey=%s;BlobEndpoint=%s;"
+                        .formatted(AZURITE_ACCOUNT, AZURITE_KEY, endpoint));
+        return config;
+    }
+
+    private static AzureBlobStorageSource buildSource(
+            Map<String, Object> config, Path stateDirectory) throws Exception {
+        AzureBlobStorageSource source = new AzureBlobStorageSource();
+        source.init(config);
+        AgentContext context = mock(AgentContext.class);
+        when(context.getMetricsReporter()).thenReturn(MetricsReporter.DISABLED);
+        when(context.getPersistentStateDirectoryForAgent(any()))
+                .thenReturn(Optional.ofNullable(stateDirectory));
+        source.setContext(context);
+        source.start();
+        return source;
+    }
 }
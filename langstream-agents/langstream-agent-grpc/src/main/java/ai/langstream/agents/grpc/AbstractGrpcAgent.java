@@ -17,6 +17,7 @@ package ai.langstream.agents.grpc;
 
 import ai.langstream.api.runner.code.AbstractAgentCode;
 import ai.langstream.api.runner.code.SimpleRecord;
+import ai.langstream.api.runner.code.SpooledValue;
 import ai.langstream.api.runner.topics.TopicProducer;
 import ai.langstream.api.util.ConfigurationUtils;
 import com.fasterxml.jackson.core.JsonProcessingException;
@@ -28,6 +29,7 @@ import io.grpc.ManagedChannel;
 import io.grpc.stub.StreamObserver;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
@@ -321,6 +323,10 @@ abstract class AbstractGrpcAgent extends AbstractAgentCode {
             valueBuilder.setStringValue(value);
         } else if (obj instanceof byte[] value) {
             valueBuilder.setBytesValue(ByteString.copyFrom((value)));
+        } else if (obj instanceof SpooledValue value) {
+            try (InputStream stream = value.openStream()) {
+                valueBuilder.setBytesValue(ByteString.readFrom(stream));
+            }
         } else if (obj instanceof Boolean value) {
             valueBuilder.setBooleanValue(value);
         } else if (obj instanceof Byte value) {
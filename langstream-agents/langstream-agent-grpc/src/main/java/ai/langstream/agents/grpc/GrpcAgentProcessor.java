@@ -17,8 +17,10 @@ package ai.langstream.agents.grpc;
 
 import ai.langstream.api.runner.code.AgentProcessor;
 import ai.langstream.api.runner.code.RecordSink;
+import ai.langstream.api.util.ConfigurationUtils;
 import io.grpc.ManagedChannel;
-import io.grpc.stub.StreamObserver;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
@@ -29,7 +31,10 @@ import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
 public class GrpcAgentProcessor extends AbstractGrpcAgent implements AgentProcessor {
-    private volatile StreamObserver<ProcessorRequest> request;
+    static final int DEFAULT_MAX_IN_FLIGHT_RECORDS = 1000;
+
+    private volatile ClientCallStreamObserver<ProcessorRequest> request;
+    private volatile boolean requestTerminated;
     private RecordSink sink;
 
     // For each record sent, we increment the recordId
@@ -38,7 +43,14 @@ public class GrpcAgentProcessor extends AbstractGrpcAgent implements AgentProces
     // For each record sent, we store the record and the sink to which the result should be emitted
     private final Map<Long, RecordAndSink> sourceRecords = new ConcurrentHashMap<>();
 
-    private final StreamObserver<ProcessorResponse> responseObserver = getResponseObserver();
+    // Maximum number of records sent and not processed yet, 0 means no limit
+    private int maxInFlightRecords = DEFAULT_MAX_IN_FLIGHT_RECORDS;
+
+    // Notified when the request stream is ready or when records are processed
+    private final Object flowControl = new Object();
+
+    private final ClientResponseObserver<ProcessorRequest, ProcessorResponse> responseObserver =
+            getResponseObserver();
 
     private record RecordAndSink(
             ai.langstream.api.runner.code.Record sourceRecord, RecordSink sink) {}
@@ -51,6 +63,14 @@ public class GrpcAgentProcessor extends AbstractGrpcAgent implements AgentProces
         super(channel);
     }
 
+    @Override
+    public void init(Map<String, Object> configuration) throws Exception {
+        super.init(configuration);
+        maxInFlightRecords =
+                ConfigurationUtils.getInt(
+                        "max-in-flight-records", DEFAULT_MAX_IN_FLIGHT_RECORDS, configuration);
+    }
+
     @Override
     public synchronized void onNewSchemaToSend(Schema schema) {
         request.onNext(ProcessorRequest.newBuilder().setSchema(schema).build());
@@ -59,7 +79,12 @@ public class GrpcAgentProcessor extends AbstractGrpcAgent implements AgentProces
     @Override
     public void start() throws Exception {
         super.start();
-        request = AgentServiceGrpc.newStub(channel).withWaitForReady().process(responseObserver);
+        requestTerminated = false;
+        request =
+                (ClientCallStreamObserver<ProcessorRequest>)
+                        AgentServiceGrpc.newStub(channel)
+                                .withWaitForReady()
+                                .process(responseObserver);
         restarting.set(false);
         startFailedButDevelopmentMode = false;
     }
@@ -75,6 +100,8 @@ public class GrpcAgentProcessor extends AbstractGrpcAgent implements AgentProces
             return;
         }
 
+        awaitCapacity();
+
         synchronized (this) {
             if (sink == null) {
                 sink = recordSink;
@@ -107,6 +134,49 @@ public class GrpcAgentProcessor extends AbstractGrpcAgent implements AgentProces
         }
     }
 
+    /**
+     * Wait until the gRPC stream can accept more messages and the number of records sent and not
+     * processed yet is below max-in-flight-records. Blocking here stops the runner from reading
+     * more records, instead of buffering them in the gRPC client when the server is slow.
+     */
+    private void awaitCapacity() {
+        synchronized (flowControl) {
+            while (!restarting.get() && !requestTerminated && !hasCapacity()) {
+                try {
+                    flowControl.wait(1000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Report an error for all the records sent and not processed yet, for instance after the
+     * server has been stopped, so that the runner can handle them.
+     */
+    void failPendingRecords(Throwable error) {
+        for (Long id : List.copyOf(sourceRecords.keySet())) {
+            RecordAndSink recordAndSink = sourceRecords.remove(id);
+            if (recordAndSink != null) {
+                recordAndSink.sink().emitError(recordAndSink.sourceRecord(), error);
+            }
+        }
+        wakeUpSenders();
+    }
+
+    private boolean hasCapacity() {
+        return request.isReady()
+                && (maxInFlightRecords <= 0 || sourceRecords.size() < maxInFlightRecords);
+    }
+
+    private void wakeUpSenders() {
+        synchronized (flowControl) {
+            flowControl.notifyAll();
+        }
+    }
+
     private SourceRecordAndResult fromGrpc(
             ai.langstream.api.runner.code.Record sourceRecord, ProcessorResult result)
             throws IOException {
@@ -122,8 +192,13 @@ public class GrpcAgentProcessor extends AbstractGrpcAgent implements AgentProces
         return new SourceRecordAndResult(sourceRecord, resultRecords, null);
     }
 
-    private StreamObserver<ProcessorResponse> getResponseObserver() {
-        return new StreamObserver<>() {
+    private ClientResponseObserver<ProcessorRequest, ProcessorResponse> getResponseObserver() {
+        return new ClientResponseObserver<>() {
+            @Override
+            public void beforeStart(ClientCallStreamObserver<ProcessorRequest> requestStream) {
+                requestStream.setOnReadyHandler(GrpcAgentProcessor.this::wakeUpSenders);
+            }
+
             @Override
             public void onNext(ProcessorResponse response) {
                 if (response.hasSchema()) {
@@ -161,10 +236,15 @@ public class GrpcAgentProcessor extends AbstractGrpcAgent implements AgentProces
                                         }
                                     }
                                 });
+                if (response.getResultsCount() > 0) {
+                    wakeUpSenders();
+                }
             }
 
             @Override
             public void onError(Throwable throwable) {
+                requestTerminated = true;
+                wakeUpSenders();
                 if (!restarting.get()) {
                     agentContext.criticalFailure(
                             new RuntimeException(
@@ -177,6 +257,8 @@ public class GrpcAgentProcessor extends AbstractGrpcAgent implements AgentProces
 
             @Override
             public void onCompleted() {
+                requestTerminated = true;
+                wakeUpSenders();
                 if (!restarting.get()) {
                     agentContext.criticalFailure(
                             new RuntimeException("gRPC server completed the stream unexpectedly"));
@@ -190,6 +272,7 @@ public class GrpcAgentProcessor extends AbstractGrpcAgent implements AgentProces
     protected void stopBeforeRestart() throws Exception {
         log.info("Stopping...");
         restarting.set(true);
+        wakeUpSenders();
         synchronized (this) {
             if (request != null) {
                 try {
@@ -33,7 +33,7 @@ public class PythonAgentsCodeProvider implements AgentCodeProvider {
     public AgentCode createInstance(String agentType) {
         return switch (agentType) {
             case "python-source" -> new PythonGrpcAgentSource();
-            case "python-processor" -> new PythonGrpcAgentProcessor();
+            case "python-processor" -> new PythonGrpcAgentProcessorPool();
             case "python-sink" -> new PythonGrpcAgentSink();
             case "python-service" -> new PythonGrpcAgentService();
             default -> throw new IllegalStateException("Unexpected agent type: " + agentType);
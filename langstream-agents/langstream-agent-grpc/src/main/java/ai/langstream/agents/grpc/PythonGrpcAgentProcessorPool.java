@@ -0,0 +1,317 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.agents.grpc;
+
+import ai.langstream.api.runner.code.AbstractAgentCode;
+import ai.langstream.api.runner.code.AgentContext;
+import ai.langstream.api.runner.code.AgentProcessor;
+import ai.langstream.api.runner.code.BadRecordHandler;
+import ai.langstream.api.runner.code.MetricsReporter;
+import ai.langstream.api.runner.code.Record;
+import ai.langstream.api.runner.code.RecordSink;
+import ai.langstream.api.runner.topics.TopicAdmin;
+import ai.langstream.api.runner.topics.TopicConnectionProvider;
+import ai.langstream.api.runner.topics.TopicConsumer;
+import ai.langstream.api.runner.topics.TopicProducer;
+import ai.langstream.api.util.ConfigurationUtils;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Runs a Python processor on a pool of Python processes, to use more than one core despite the GIL.
+ * The records are routed to the workers by key, so the records with the same key are processed in
+ * order by the same process. Each worker has its own gRPC stream and record ids, and a worker that
+ * fails is restarted alone: its in-flight records are reported as errors to the runner. With more
+ * than one process, each worker gets its own "worker-N" subdirectory of the persistent disk.
+ */
+@Slf4j
+public class PythonGrpcAgentProcessorPool extends AbstractAgentCode implements AgentProcessor {
+
+    private final Supplier<GrpcAgentProcessor> workerFactory;
+    private final List<Worker> workers = new ArrayList<>();
+    private final AtomicInteger nextWorker = new AtomicInteger();
+    private Map<String, Object> configuration;
+    private int size;
+    private ExecutorService restarts;
+    private volatile boolean closed;
+
+    private static class Worker {
+        private final int index;
+        private final GrpcAgentProcessor processor;
+        // process() holds the read lock, a restart holds the write lock
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        private final AtomicBoolean restartScheduled = new AtomicBoolean();
+
+        Worker(int index, GrpcAgentProcessor processor) {
+            this.index = index;
+            this.processor = processor;
+        }
+    }
+
+    public PythonGrpcAgentProcessorPool() {
+        this(PythonGrpcAgentProcessor::new);
+    }
+
+    PythonGrpcAgentProcessorPool(Supplier<GrpcAgentProcessor> workerFactory) {
+        this.workerFactory = workerFactory;
+    }
+
+    @Override
+    public void init(Map<String, Object> configuration) throws Exception {
+        this.configuration = configuration;
+        size = Math.max(1, ConfigurationUtils.getInt("worker-processes", 1, configuration));
+    }
+
+    @Override
+    public void start() throws Exception {
+        restarts =
+                Executors.newSingleThreadExecutor(
+                        r -> {
+                            Thread thread = new Thread(r, "python-workers-restart");
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+        try {
+            for (int i = 0; i < size; i++) {
+                GrpcAgentProcessor processor = workerFactory.get();
+                processor.setMetadata(agentId(), agentType(), startedAt());
+                processor.init(configuration);
+                // with a single process a failure stops the agent, like before
+                processor.setContext(
+                        size == 1
+                                ? agentContext
+                                : new WorkerContext(i, workerStateDirectory(i)));
+                workers.add(new Worker(i, processor));
+                processor.start();
+            }
+        } catch (Exception error) {
+            closeWorkers();
+            throw error;
+        }
+        log.info("Started {} python processes", size);
+    }
+
+    @Override
+    public void process(List<Record> records, RecordSink recordSink) {
+        if (workers.size() == 1) {
+            process(workers.get(0), records, recordSink);
+            return;
+        }
+        List<List<Record>> batches = new ArrayList<>(workers.size());
+        for (int i = 0; i < workers.size(); i++) {
+            batches.add(new ArrayList<>());
+        }
+        for (Record record : records) {
+            batches.get(workerFor(record)).add(record);
+        }
+        for (int i = 0; i < workers.size(); i++) {
+            if (!batches.get(i).isEmpty()) {
+                process(workers.get(i), batches.get(i), recordSink);
+            }
+        }
+    }
+
+    private static void process(Worker worker, List<Record> records, RecordSink recordSink) {
+        worker.lock.readLock().lock();
+        try {
+            worker.processor.process(records, recordSink);
+        } finally {
+            worker.lock.readLock().unlock();
+        }
+    }
+
+    private int workerFor(Record record) {
+        Object key = record.key();
+        if (key == null) {
+            return Math.floorMod(nextWorker.getAndIncrement(), workers.size());
+        }
+        int hash = key instanceof byte[] bytes ? Arrays.hashCode(bytes) : key.hashCode();
+        return Math.floorMod(hash, workers.size());
+    }
+
+    private void workerFailed(int index, Throwable error) {
+        if (closed) {
+            return;
+        }
+        Worker worker = workers.get(index);
+        if (!worker.restartScheduled.compareAndSet(false, true)) {
+            log.info("Worker {} is already restarting, ignoring {}", index, error + "");
+            return;
+        }
+        log.warn("Python worker {} failed, restarting it", index, error);
+        restarts.execute(() -> restartWorker(worker, error));
+    }
+
+    private void restartWorker(Worker worker, Throwable error) {
+        // stop waiting for the flow control window of the failed stream
+        worker.processor.restarting.set(true);
+        worker.lock.writeLock().lock();
+        try {
+            worker.processor.stopBeforeRestart();
+            worker.processor.failPendingRecords(error);
+            worker.processor.start();
+            log.info("Python worker {} restarted", worker.index);
+        } catch (Throwable restartError) {
+            log.error("Cannot restart python worker {}", worker.index, restartError);
+            agentContext.criticalFailure(restartError);
+        } finally {
+            worker.lock.writeLock().unlock();
+            worker.restartScheduled.set(false);
+        }
+    }
+
+    @Override
+    public void restart() throws Exception {
+        for (Worker worker : workers) {
+            worker.lock.writeLock().lock();
+            try {
+                worker.processor.restart();
+            } finally {
+                worker.lock.writeLock().unlock();
+            }
+        }
+    }
+
+    @Override
+    protected Map<String, Object> buildAdditionalInfo() {
+        if (workers.size() == 1) {
+            return workers.get(0).processor.buildAdditionalInfo();
+        }
+        List<Map<String, Object>> infos = new ArrayList<>();
+        for (Worker worker : workers) {
+            infos.add(worker.processor.buildAdditionalInfo());
+        }
+        return Map.of("workers", infos);
+    }
+
+    @Override
+    public void close() throws Exception {
+        closed = true;
+        if (restarts != null) {
+            restarts.shutdownNow();
+        }
+        closeWorkers();
+    }
+
+    private void closeWorkers() throws Exception {
+        Exception error = null;
+        for (Worker worker : workers) {
+            try {
+                worker.processor.close();
+            } catch (Exception e) {
+                log.error("Error closing python worker {}", worker.index, e);
+                if (error == null) {
+                    error = e;
+                }
+            }
+        }
+        workers.clear();
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /** Each process gets its own state directory, the python agents do not know about the pool. */
+    private Optional<Path> workerStateDirectory(int index) throws IOException {
+        Optional<Path> directory =
+                agentContext
+                        .getPersistentStateDirectoryForAgent(agentId())
+                        .map(d -> d.resolve("worker-" + index));
+        if (directory.isPresent()) {
+            Files.createDirectories(directory.get());
+        }
+        return directory;
+    }
+
+    /** The context of a worker, a critical failure restarts the worker instead of the agent. */
+    private class WorkerContext implements AgentContext {
+        private final int index;
+        private final Optional<Path> persistentStateDirectory;
+
+        WorkerContext(int index, Optional<Path> persistentStateDirectory) {
+            this.index = index;
+            this.persistentStateDirectory = persistentStateDirectory;
+        }
+
+        @Override
+        public TopicConsumer getTopicConsumer() {
+            return agentContext.getTopicConsumer();
+        }
+
+        @Override
+        public TopicProducer getTopicProducer() {
+            return agentContext.getTopicProducer();
+        }
+
+        @Override
+        public String getGlobalAgentId() {
+            return agentContext.getGlobalAgentId();
+        }
+
+        @Override
+        public TopicAdmin getTopicAdmin() {
+            return agentContext.getTopicAdmin();
+        }
+
+        @Override
+        public TopicConnectionProvider getTopicConnectionProvider() {
+            return agentContext.getTopicConnectionProvider();
+        }
+
+        @Override
+        public MetricsReporter getMetricsReporter() {
+            return agentContext.getMetricsReporter();
+        }
+
+        @Override
+        public BadRecordHandler getBadRecordHandler() {
+            return agentContext.getBadRecordHandler();
+        }
+
+        @Override
+        public void criticalFailure(Throwable error) {
+            workerFailed(index, error);
+        }
+
+        @Override
+        public Path getCodeDirectory() {
+            return agentContext.getCodeDirectory();
+        }
+
+        @Override
+        public Optional<Path> getPersistentStateDirectoryForAgent(String agentId) {
+            if (Objects.equals(agentId, agentId())) {
+                return persistentStateDirectory;
+            }
+            return agentContext.getPersistentStateDirectoryForAgent(agentId);
+        }
+    }
+}
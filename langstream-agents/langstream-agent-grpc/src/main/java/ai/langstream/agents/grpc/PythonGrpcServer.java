@@ -16,11 +16,19 @@
 package ai.langstream.agents.grpc;
 
 import ai.langstream.api.runner.code.AgentContext;
+import ai.langstream.api.util.ConfigurationUtils;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.protobuf.Empty;
 import io.grpc.ManagedChannel;
 import io.grpc.ManagedChannelBuilder;
+import io.grpc.netty.shaded.io.grpc.netty.NettyChannelBuilder;
+import io.grpc.netty.shaded.io.netty.channel.EventLoopGroup;
+import io.grpc.netty.shaded.io.netty.channel.epoll.Epoll;
+import io.grpc.netty.shaded.io.netty.channel.epoll.EpollDomainSocketChannel;
+import io.grpc.netty.shaded.io.netty.channel.epoll.EpollEventLoopGroup;
+import io.grpc.netty.shaded.io.netty.channel.unix.DomainSocketAddress;
 import java.net.ServerSocket;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Map;
 import java.util.Optional;
@@ -38,6 +46,9 @@ public class PythonGrpcServer {
     private final String agentId;
     private final AgentContext agentContext;
     private Process pythonProcess;
+    private Path socketDirectory;
+    private EventLoopGroup eventLoopGroup;
+    private ManagedChannel channel;
 
     public PythonGrpcServer(
             Path codeDirectory,
@@ -51,11 +62,18 @@ public class PythonGrpcServer {
     }
 
     public ManagedChannel start() throws Exception {
-        // Get a free port
-        int port;
-        try (ServerSocket socket = new ServerSocket(0)) {
-            socket.setReuseAddress(true);
-            port = socket.getLocalPort();
+        final String target;
+        int port = -1;
+        if (useUnixDomainSocket()) {
+            socketDirectory = Files.createTempDirectory("langstream-grpc");
+            target = "unix:" + socketPath().toAbsolutePath();
+        } else {
+            // Get a free port
+            try (ServerSocket socket = new ServerSocket(0)) {
+                socket.setReuseAddress(true);
+                port = socket.getLocalPort();
+            }
+            target = "[::]:%s".formatted(port);
         }
 
         Path pythonCodeDirectory = codeDirectory.resolve("python");
@@ -78,7 +96,7 @@ public class PythonGrpcServer {
                                 "python3",
                                 "-m",
                                 "langstream_grpc",
-                                "[::]:%s".formatted(port),
+                                target,
                                 MAPPER.writeValueAsString(configuration),
                                 MAPPER.writeValueAsString(agentContextConfiguration))
                         .inheritIO()
@@ -87,8 +105,7 @@ public class PythonGrpcServer {
         processBuilder.environment().put("PYTHONPATH", newPythonPath);
         processBuilder.environment().put("NLTK_DATA", "/app/nltk_data");
         pythonProcess = processBuilder.start();
-        ManagedChannel channel =
-                ManagedChannelBuilder.forAddress("localhost", port).usePlaintext().build();
+        channel = buildChannel(target, port);
         AgentServiceGrpc.AgentServiceBlockingStub stub =
                 AgentServiceGrpc.newBlockingStub(channel).withDeadlineAfter(30, TimeUnit.SECONDS);
         for (int i = 0; ; i++) {
@@ -107,6 +124,37 @@ public class PythonGrpcServer {
         return channel;
     }
 
+    private boolean useUnixDomainSocket() {
+        if (!ConfigurationUtils.getBoolean("use-unix-domain-socket", false, configuration)) {
+            return false;
+        }
+        if (!Epoll.isAvailable()) {
+            log.warn(
+                    "Unix domain sockets are not available on this platform, using TCP",
+                    Epoll.unavailabilityCause());
+            return false;
+        }
+        return true;
+    }
+
+    private Path socketPath() {
+        return socketDirectory.resolve("agent.sock");
+    }
+
+    private ManagedChannel buildChannel(String target, int port) {
+        if (socketDirectory == null) {
+            return ManagedChannelBuilder.forAddress("localhost", port).usePlaintext().build();
+        }
+        log.info("Connecting to the python agent on {}", target);
+        eventLoopGroup = new EpollEventLoopGroup(1);
+        return NettyChannelBuilder.forAddress(
+                        new DomainSocketAddress(socketPath().toAbsolutePath().toString()))
+                .eventLoopGroup(eventLoopGroup)
+                .channelType(EpollDomainSocketChannel.class)
+                .usePlaintext()
+                .build();
+    }
+
     private AgentContextConfiguration computeAgentContextConfiguration() {
         final Optional<Path> persistentStateDirectoryForAgent =
                 agentContext.getPersistentStateDirectoryForAgent(agentId);
@@ -120,17 +168,49 @@ public class PythonGrpcServer {
         return agentContextConfiguration;
     }
 
+    /**
+     * Stop the channel first, so that no call is in flight when the python process is destroyed,
+     * then release the event loop and the socket used by the channel.
+     */
     public void close(boolean ignoreErrors) throws Exception {
-        if (pythonProcess != null) {
-            pythonProcess.destroy();
-            int exitCode = pythonProcess.waitFor();
-            log.info("Python process exited with code {}", exitCode);
-
-            if (!ignoreErrors) {
-                if (exitCode != 0) {
-                    throw new RuntimeException("Python code exited with code " + exitCode);
+        shutdownChannel();
+        try {
+            if (pythonProcess != null) {
+                pythonProcess.destroy();
+                int exitCode = pythonProcess.waitFor();
+                log.info("Python process exited with code {}", exitCode);
+
+                if (!ignoreErrors) {
+                    if (exitCode != 0) {
+                        throw new RuntimeException("Python code exited with code " + exitCode);
+                    }
                 }
             }
+        } finally {
+            releaseTransport();
+        }
+    }
+
+    private void shutdownChannel() throws InterruptedException {
+        if (channel != null) {
+            // the python process is about to be destroyed, the calls in flight cannot complete
+            channel.shutdownNow();
+            if (!channel.awaitTermination(5, TimeUnit.SECONDS)) {
+                log.warn("The channel to the python process did not terminate in time");
+            }
+            channel = null;
+        }
+    }
+
+    private void releaseTransport() throws Exception {
+        if (eventLoopGroup != null) {
+            eventLoopGroup.shutdownGracefully(0, 5, TimeUnit.SECONDS);
+            eventLoopGroup = null;
+        }
+        if (socketDirectory != null) {
+            Files.deleteIfExists(socketPath());
+            Files.deleteIfExists(socketDirectory);
+            socketDirectory = null;
         }
     }
 
@@ -16,6 +16,7 @@
 package ai.langstream.agents.grpc;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertSame;
@@ -38,30 +39,38 @@ import io.grpc.inprocess.InProcessServerBuilder;
 import io.grpc.stub.StreamObserver;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Stream;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.avro.Schema;
 import org.apache.avro.SchemaBuilder;
 import org.apache.avro.generic.GenericData;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.CsvSource;
 import org.junit.jupiter.params.provider.MethodSource;
 
+@Slf4j
 public class GrpcAgentProcessorTest {
     private Server server;
     private ManagedChannel channel;
     private GrpcAgentProcessor processor;
     private TestAgentContext context;
     private final AtomicInteger schemaCounter = new AtomicInteger(0);
+    private final List<Runnable> delayedResponses = new CopyOnWriteArrayList<>();
 
     private final AgentServiceGrpc.AgentServiceImplBase testProcessorService =
             new AgentServiceGrpc.AgentServiceImplBase() {
@@ -109,7 +118,21 @@ public class GrpcAgentProcessorTest {
                                     }
                                 }
                             }
-                            response.onNext(resp.build());
+                            ProcessorResponse built = resp.build();
+                            if (request.getRecordsCount() > 0
+                                    && request.getRecords(0)
+                                            .getOrigin()
+                                            .equals("delayed-response")) {
+                                delayedResponses.add(() -> send(built));
+                            } else {
+                                send(built);
+                            }
+                        }
+
+                        private void send(ProcessorResponse built) {
+                            synchronized (response) {
+                                response.onNext(built);
+                            }
                         }
 
                         @Override
@@ -262,6 +285,61 @@ public class GrpcAgentProcessorTest {
         assertEquals(1, schemaCounter.get());
     }
 
+    @Test
+    void testMaxInFlightRecords() throws Exception {
+        processor.init(Map.of("max-in-flight-records", 2));
+        AtomicInteger processed = new AtomicInteger();
+        Record delayed = SimpleRecord.builder().origin("delayed-response").build();
+        processor.process(List.of(delayed), result -> processed.incrementAndGet());
+        processor.process(List.of(delayed), result -> processed.incrementAndGet());
+
+        // the window is full, the processor waits for the results
+        CompletableFuture<Void> third =
+                CompletableFuture.runAsync(
+                        () ->
+                                processor.process(
+                                        List.of(SimpleRecord.builder().build()),
+                                        result -> processed.incrementAndGet()));
+        Thread.sleep(500);
+        assertFalse(third.isDone());
+        assertEquals(0, processed.get());
+
+        delayedResponses.forEach(Runnable::run);
+        third.get(5, TimeUnit.SECONDS);
+        for (int i = 0; i < 50 && processed.get() < 3; i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(3, processed.get());
+    }
+
+    @Test
+    @Disabled("Benchmark, run it manually")
+    void testThroughput() throws Exception {
+        int batches = 1000;
+        int batchSize = 100;
+        CountDownLatch done = new CountDownLatch(batches * batchSize);
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        long usedBefore = runtime.totalMemory() - runtime.freeMemory();
+        long start = System.nanoTime();
+        for (int i = 0; i < batches; i++) {
+            List<Record> batch = new ArrayList<>();
+            for (int j = 0; j < batchSize; j++) {
+                batch.add(SimpleRecord.builder().value("record-" + j).origin("origin").build());
+            }
+            processor.process(batch, result -> done.countDown());
+        }
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        long elapsed = System.nanoTime() - start;
+        long usedAfter = runtime.totalMemory() - runtime.freeMemory();
+        log.info(
+                "Processed {} records in {} ms, {} records/s, heap delta {} KB",
+                batches * batchSize,
+                elapsed / 1_000_000,
+                batches * batchSize * 1_000_000_000L / elapsed,
+                (usedAfter - usedBefore) / 1024);
+    }
+
     private static void assertProcessSuccessful(GrpcAgentProcessor processor, Record inputRecord)
             throws ExecutionException, InterruptedException, TimeoutException {
         CompletableFuture<Void> op = new CompletableFuture<>();
@@ -304,7 +382,7 @@ public class GrpcAgentProcessorTest {
 
     static class TestAgentContext implements AgentContext {
 
-        private final CompletableFuture<Throwable> failure = new CompletableFuture<>();
+        final CompletableFuture<Throwable> failure = new CompletableFuture<>();
 
         @Override
         public TopicConsumer getTopicConsumer() {
@@ -0,0 +1,253 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.agents.grpc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import ai.langstream.api.runner.code.AgentContext;
+import ai.langstream.api.runner.code.AgentProcessor;
+import ai.langstream.api.runner.code.Record;
+import ai.langstream.api.runner.code.SimpleRecord;
+import io.grpc.Server;
+import io.grpc.Status;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class PythonGrpcAgentProcessorPoolTest {
+    private static final int WORKERS = 3;
+
+    private final List<Server> servers = new ArrayList<>();
+    private final List<String> serverNames = new ArrayList<>();
+    // for each worker, the records received in order
+    private final Map<Integer, List<ai.langstream.agents.grpc.Record>> received =
+            new ConcurrentHashMap<>();
+    private final List<AgentContext> workerContexts = new CopyOnWriteArrayList<>();
+    private PythonGrpcAgentProcessorPool pool;
+    private GrpcAgentProcessorTest.TestAgentContext context;
+    @TempDir private Path persistentDisks;
+
+    private AgentServiceGrpc.AgentServiceImplBase service(int worker) {
+        return new AgentServiceGrpc.AgentServiceImplBase() {
+            @Override
+            public StreamObserver<ProcessorRequest> process(
+                    StreamObserver<ProcessorResponse> response) {
+                return new StreamObserver<>() {
+                    @Override
+                    public void onNext(ProcessorRequest request) {
+                        ProcessorResponse.Builder resp = ProcessorResponse.newBuilder();
+                        for (ai.langstream.agents.grpc.Record record : request.getRecordsList()) {
+                            if (record.getOrigin().equals("failing-server")) {
+                                response.onError(
+                                        Status.INTERNAL
+                                                .withDescription("server error")
+                                                .asException());
+                                return;
+                            }
+                            received.computeIfAbsent(worker, w -> new CopyOnWriteArrayList<>())
+                                    .add(record);
+                            resp.addResultsBuilder()
+                                    .setRecordId(record.getRecordId())
+                                    .addRecords(record.toBuilder().setOrigin("worker-" + worker));
+                        }
+                        response.onNext(resp.build());
+                    }
+
+                    @Override
+                    public void onError(Throwable throwable) {}
+
+                    @Override
+                    public void onCompleted() {
+                        response.onCompleted();
+                    }
+                };
+            }
+
+            @Override
+            public StreamObserver<TopicProducerWriteResult> getTopicProducerRecords(
+                    StreamObserver<TopicProducerRecord> responseObserver) {
+                return new StreamObserver<>() {
+                    @Override
+                    public void onNext(TopicProducerWriteResult topicProducerWriteResult) {}
+
+                    @Override
+                    public void onError(Throwable throwable) {}
+
+                    @Override
+                    public void onCompleted() {
+                        responseObserver.onCompleted();
+                    }
+                };
+            }
+        };
+    }
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        for (int i = 0; i < WORKERS; i++) {
+            String serverName = InProcessServerBuilder.generateName();
+            serverNames.add(serverName);
+            servers.add(
+                    InProcessServerBuilder.forName(serverName)
+                            .directExecutor()
+                            .addService(service(i))
+                            .build()
+                            .start());
+        }
+        AtomicInteger created = new AtomicInteger();
+        pool =
+                new PythonGrpcAgentProcessorPool(
+                        () -> {
+                            String serverName = serverNames.get(created.getAndIncrement());
+                            return new GrpcAgentProcessor() {
+                                @Override
+                                public void start() throws Exception {
+                                    // a new channel on each restart, like a new python process
+                                    channel =
+                                            InProcessChannelBuilder.forName(serverName)
+                                                    .directExecutor()
+                                                    .build();
+                                    super.start();
+                                }
+
+                                @Override
+                                public void setContext(AgentContext context) throws Exception {
+                                    workerContexts.add(context);
+                                    super.setContext(context);
+                                }
+                            };
+                        });
+        context =
+                new GrpcAgentProcessorTest.TestAgentContext() {
+                    @Override
+                    public Optional<Path> getPersistentStateDirectoryForAgent(String agentId) {
+                        return Optional.of(persistentDisks.resolve(agentId));
+                    }
+                };
+        pool.init(Map.of("worker-processes", WORKERS));
+        pool.setMetadata("python", "python-processor", System.currentTimeMillis());
+        pool.setContext(context);
+        pool.start();
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        pool.close();
+        for (Server server : servers) {
+            server.shutdownNow();
+            server.awaitTermination(30, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    void testRecordsWithTheSameKeyGoToTheSameWorker() throws Exception {
+        List<Record> records = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            records.add(SimpleRecord.builder().key("key-" + (i % 10)).value(i).build());
+        }
+        Map<Record, AgentProcessor.SourceRecordAndResult> results = new ConcurrentHashMap<>();
+        pool.process(records, result -> results.put(result.sourceRecord(), result));
+        for (int i = 0; i < 50 && results.size() < records.size(); i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(records.size(), results.size());
+
+        Map<Object, String> workerByKey = new ConcurrentHashMap<>();
+        for (Record record : records) {
+            AgentProcessor.SourceRecordAndResult result = results.get(record);
+            assertSame(record, result.sourceRecord());
+            assertNull(result.error());
+            Record output = result.resultRecords().get(0);
+            assertEquals(record.value(), output.value());
+            String worker = workerByKey.computeIfAbsent(record.key(), k -> output.origin());
+            assertEquals(worker, output.origin());
+        }
+        // the keys are spread on more than one worker
+        assertTrue(workerByKey.values().stream().distinct().count() > 1);
+
+        // each worker received the records of a key in order
+        for (List<ai.langstream.agents.grpc.Record> workerRecords : received.values()) {
+            Map<String, Integer> last = new HashMap<>();
+            for (ai.langstream.agents.grpc.Record record : workerRecords) {
+                int value = record.getValue().getIntValue();
+                Integer previous = last.put(record.getKey().getStringValue(), value);
+                assertTrue(previous == null || previous < value);
+            }
+        }
+        assertEquals(records.size(), received.values().stream().mapToInt(List::size).sum());
+    }
+
+    @Test
+    void testEachWorkerHasItsOwnStateDirectory() {
+        Set<Path> directories = new HashSet<>();
+        for (AgentContext workerContext : workerContexts) {
+            Path directory =
+                    workerContext.getPersistentStateDirectoryForAgent("python").orElseThrow();
+            assertTrue(Files.isDirectory(directory));
+            assertEquals(persistentDisks.resolve("python"), directory.getParent());
+            directories.add(directory);
+        }
+        assertEquals(WORKERS, directories.size());
+    }
+
+    @Test
+    void testRestartFailedWorker() throws Exception {
+        Record failing = SimpleRecord.builder().key("the-key").origin("failing-server").build();
+        CompletableFuture<AgentProcessor.SourceRecordAndResult> failed =
+                new CompletableFuture<>();
+        pool.process(List.of(failing), failed::complete);
+
+        AgentProcessor.SourceRecordAndResult failedResult = failed.get(5, TimeUnit.SECONDS);
+        assertSame(failing, failedResult.sourceRecord());
+        assertEquals(
+                "gRPC server sent error: INTERNAL: server error",
+                failedResult.error().getMessage());
+
+        // the worker has been restarted and processes the next records with the same key
+        Record next = SimpleRecord.builder().key("the-key").value("next").build();
+        CompletableFuture<AgentProcessor.SourceRecordAndResult> processed =
+                new CompletableFuture<>();
+        pool.process(List.of(next), processed::complete);
+        AgentProcessor.SourceRecordAndResult result = processed.get(5, TimeUnit.SECONDS);
+        assertNull(result.error());
+        assertEquals("next", result.resultRecords().get(0).value());
+
+        // the agent didn't fail
+        assertFalse(context.failure.isDone());
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.agents.s3;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * The state of the S3 source that survives a restart: the key the listing of the bucket continues
+ * from, and the ETag of the objects that have been processed and kept in the bucket.
+ *
+ * <p>With a persistent disk the cursor is a small file, replaced atomically, and the index is a
+ * journal: every commit appends the processed objects, and the journal is rewritten when most of
+ * its entries are stale. Without a disk the state is kept only in memory.
+ */
+@Slf4j
+class ProcessedObjectsIndex implements Closeable {
+    static final String CURSOR_FILE = "s3-source.cursor";
+    static final String JOURNAL_FILE = "s3-source.index";
+
+    private static final int MIN_ENTRIES_TO_COMPACT = 1000;
+
+    private final Path directory;
+    private final Map<String, String> etags = new ConcurrentHashMap<>();
+    private String cursor;
+    private DataOutputStream journal;
+    private long journalEntries;
+
+    private ProcessedObjectsIndex(Path directory) {
+        this.directory = directory;
+    }
+
+    static ProcessedObjectsIndex inMemory() {
+        return new ProcessedObjectsIndex(null);
+    }
+
+    static ProcessedObjectsIndex load(Path directory) throws IOException {
+        ProcessedObjectsIndex index = new ProcessedObjectsIndex(directory);
+        Files.createDirectories(directory);
+        Path cursorFile = directory.resolve(CURSOR_FILE);
+        if (Files.exists(cursorFile)) {
+            String cursor = Files.readString(cursorFile, StandardCharsets.UTF_8);
+            index.cursor = cursor.isEmpty() ? null : cursor;
+        }
+        Path journalFile = directory.resolve(JOURNAL_FILE);
+        if (Files.exists(journalFile)) {
+            index.replay(journalFile);
+        }
+        index.openJournal();
+        log.info(
+                "Loaded the index of {} processed objects from {}, listing from {}",
+                index.etags.size(),
+                directory,
+                index.cursor);
+        return index;
+    }
+
+    private void replay(Path journalFile) throws IOException {
+        byte[] content = Files.readAllBytes(journalFile);
+        ByteArrayInputStream bytes = new ByteArrayInputStream(content);
+        DataInputStream input = new DataInputStream(bytes);
+        long valid = 0;
+        try {
+            while (bytes.available() > 0) {
+                String key = input.readUTF();
+                String etag = input.readUTF();
+                etags.put(key, etag);
+                journalEntries++;
+                valid = content.length - bytes.available();
+            }
+        } catch (IOException e) {
+            // the last entry has not been written completely
+            log.warn("Ignoring a truncated entry at the end of {}", journalFile);
+        }
+        if (valid < content.length) {
+            try (FileChannel channel = FileChannel.open(journalFile, StandardOpenOption.WRITE)) {
+                channel.truncate(valid);
+            }
+        }
+    }
+
+    private void openJournal() throws IOException {
+        journal =
+                new DataOutputStream(
+                        new BufferedOutputStream(
+                                Files.newOutputStream(
+                                        directory.resolve(JOURNAL_FILE),
+                                        StandardOpenOption.CREATE,
+                                        StandardOpenOption.APPEND)));
+    }
+
+    synchronized String getCursor() {
+        return cursor;
+    }
+
+    synchronized void setCursor(String cursor) throws IOException {
+        if (Objects.equals(this.cursor, cursor)) {
+            return;
+        }
+        this.cursor = cursor;
+        if (directory != null) {
+            Path temp = directory.resolve(CURSOR_FILE + ".tmp");
+            Files.writeString(temp, cursor == null ? "" : cursor, StandardCharsets.UTF_8);
+            Files.move(
+                    temp,
+                    directory.resolve(CURSOR_FILE),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    /** Whether the object has been processed, and it has not changed since then. */
+    boolean isProcessed(String key, String etag) {
+        return etag != null && etag.equals(etags.get(key));
+    }
+
+    int size() {
+        return etags.size();
+    }
+
+    synchronized void markProcessed(Map<String, String> objects) throws IOException {
+        etags.putAll(objects);
+        if (directory == null) {
+            return;
+        }
+        for (Map.Entry<String, String> entry : objects.entrySet()) {
+            journal.writeUTF(entry.getKey());
+            journal.writeUTF(entry.getValue());
+        }
+        journal.flush();
+        journalEntries += objects.size();
+        if (journalEntries > MIN_ENTRIES_TO_COMPACT && journalEntries > 2L * etags.size()) {
+            compact();
+        }
+    }
+
+    private void compact() throws IOException {
+        journal.close();
+        Path temp = directory.resolve(JOURNAL_FILE + ".tmp");
+        try (DataOutputStream output =
+                new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            for (Map.Entry<String, String> entry : etags.entrySet()) {
+                output.writeUTF(entry.getKey());
+                output.writeUTF(entry.getValue());
+            }
+        }
+        Files.move(
+                temp,
+                directory.resolve(JOURNAL_FILE),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        journalEntries = etags.size();
+        openJournal();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+    }
+}
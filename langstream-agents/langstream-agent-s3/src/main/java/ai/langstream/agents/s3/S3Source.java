@@ -16,9 +16,11 @@
 package ai.langstream.agents.s3;
 
 import ai.langstream.api.runner.code.AbstractAgentCode;
+import ai.langstream.api.runner.code.AgentContext;
 import ai.langstream.api.runner.code.AgentSource;
 import ai.langstream.api.runner.code.Header;
 import ai.langstream.api.runner.code.Record;
+import ai.langstream.api.runner.code.SpooledValue;
 import io.minio.BucketExistsArgs;
 import io.minio.GetObjectArgs;
 import io.minio.GetObjectResponse;
@@ -35,14 +37,21 @@ import io.minio.errors.ServerException;
 import io.minio.errors.XmlParserException;
 import io.minio.messages.Item;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import lombok.AllArgsConstructor;
 import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
@@ -51,8 +60,15 @@ import lombok.extern.slf4j.Slf4j;
 public class S3Source extends AbstractAgentCode implements AgentSource {
     private String bucketName;
     private MinioClient minioClient;
-    private final Set<String> objectsToCommit = ConcurrentHashMap.newKeySet();
+    // object name -> ETag of the objects that have been read and not committed yet
+    private final Map<String, String> objectsToCommit = new ConcurrentHashMap<>();
     private int idleTime;
+    private int maxRecordsPerRead;
+    private int listPageSize;
+    private boolean deleteObjects;
+    private ExecutorService downloadExecutor;
+    private Optional<Path> stateDirectory = Optional.empty();
+    private ProcessedObjectsIndex index = ProcessedObjectsIndex.inMemory();
 
     public static final String ALL_FILES = "*";
     public static final String DEFAULT_EXTENSIONS_FILTER = "pdf,docx,html,htm,md,txt";
@@ -75,6 +91,15 @@ public class S3Source extends AbstractAgentCode implements AgentSource {
                                 .getOrDefault("file-extensions", DEFAULT_EXTENSIONS_FILTER)
                                 .toString()
                                 .split(","));
+        maxRecordsPerRead =
+                Integer.parseInt(configuration.getOrDefault("max-records-per-read", 1).toString());
+        int parallelDownloads =
+                Integer.parseInt(configuration.getOrDefault("parallel-downloads", 1).toString());
+        listPageSize =
+                Integer.parseInt(configuration.getOrDefault("list-page-size", 1000).toString());
+        deleteObjects =
+                Boolean.parseBoolean(
+                        configuration.getOrDefault("delete-objects", true).toString());
 
         log.info(
                 "Connecting to S3 Bucket at {} in region {} with user {}",
@@ -82,6 +107,11 @@ public class S3Source extends AbstractAgentCode implements AgentSource {
                 region,
                 username);
         log.info("Getting files with extensions {} (use '*' to no filter)", extensions);
+        log.info(
+                "Reading up to {} objects per read, with {} parallel downloads, delete-objects {}",
+                maxRecordsPerRead,
+                parallelDownloads,
+                deleteObjects);
 
         MinioClient.Builder builder =
                 MinioClient.builder().endpoint(endpoint).credentials(username, password);
@@ -89,10 +119,39 @@ public class S3Source extends AbstractAgentCode implements AgentSource {
             builder.region(region);
         }
         minioClient = builder.build();
+        if (parallelDownloads > 1) {
+            downloadExecutor = Executors.newFixedThreadPool(parallelDownloads);
+        }
 
         makeBucketIfNotExists(bucketName);
     }
 
+    @Override
+    public void setContext(AgentContext context) throws Exception {
+        super.setContext(context);
+        Optional<Path> persistentDirectory = context.getPersistentStateDirectoryForAgent(agentId());
+        if (persistentDirectory != null) {
+            stateDirectory = persistentDirectory;
+        }
+    }
+
+    @Override
+    public void start() throws Exception {
+        if (stateDirectory.isPresent()) {
+            index = ProcessedObjectsIndex.load(stateDirectory.get());
+        } else {
+            log.info("No persistent disk, the listing cursor and the index are kept in memory");
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (downloadExecutor != null) {
+            downloadExecutor.shutdownNow();
+        }
+        index.close();
+    }
+
     private void makeBucketIfNotExists(String bucketName)
             throws ServerException,
                     InsufficientDataException,
@@ -113,58 +172,132 @@ public class S3Source extends AbstractAgentCode implements AgentSource {
 
     @Override
     public List<Record> read() throws Exception {
-        List<Record> records = new ArrayList<>();
-        Iterable<Result<Item>> results;
+        List<Item> newObjects = new ArrayList<>();
         try {
-            results = minioClient.listObjects(ListObjectsArgs.builder().bucket(bucketName).build());
+            String cursor = index.getCursor();
+            boolean endOfBucket = listNewObjects(cursor, null, newObjects);
+            if (endOfBucket && cursor != null && newObjects.size() < maxRecordsPerRead) {
+                // start again from the beginning of the bucket, up to where this listing started
+                listNewObjects(null, cursor, newObjects);
+            }
         } catch (Exception e) {
             log.error("Error listing objects on bucket {}", bucketName, e);
             throw e;
         }
-        boolean somethingFound = false;
-        for (Result<Item> object : results) {
-            Item item = object.get();
-            String name = item.objectName();
-            if (item.isDir()) {
-                log.debug("Skipping directory {}", name);
-                continue;
-            }
-            boolean extensionAllowed = isExtensionAllowed(name, extensions);
-            if (!extensionAllowed) {
-                log.debug("Skipping file with bad extension {}", name);
-                continue;
-            }
-            if (!objectsToCommit.contains(name)) {
-                log.info("Found new object {}, size {} KB", item.objectName(), item.size() / 1024);
-                try {
-                    GetObjectResponse objectResponse =
-                            minioClient.getObject(
-                                    GetObjectArgs.builder()
-                                            .bucket(bucketName)
-                                            .object(name)
-                                            .build());
-                    objectsToCommit.add(name);
-                    byte[] read = objectResponse.readAllBytes();
-                    records.add(new S3SourceRecord(read, name));
-                    somethingFound = true;
-                } catch (Exception e) {
-                    log.error("Error reading object {}", name, e);
-                    throw e;
+        if (newObjects.isEmpty()) {
+            log.info("Nothing found, sleeping for {} seconds", idleTime);
+            Thread.sleep(idleTime * 1000L);
+            return List.of();
+        }
+        List<Record> records = download(newObjects);
+        for (Record record : records) {
+            S3SourceRecord s3SourceRecord = (S3SourceRecord) record;
+            objectsToCommit.put(s3SourceRecord.name, s3SourceRecord.etag);
+        }
+        processed(0, records.size());
+        return records;
+    }
+
+    /**
+     * List the bucket after the given key, one page at a time, until enough new objects are found.
+     * The cursor is moved to the last listed object.
+     *
+     * @param startAfter the key to start after, null to start from the beginning
+     * @param endAt the last key to list, null to list to the end of the bucket
+     * @return true if the end of the bucket has been reached
+     */
+    private boolean listNewObjects(String startAfter, String endAt, List<Item> newObjects)
+            throws Exception {
+        ListObjectsArgs.Builder args =
+                ListObjectsArgs.builder().bucket(bucketName).maxKeys(listPageSize);
+        if (startAfter != null) {
+            args.startAfter(startAfter);
+        }
+        String lastListed = startAfter;
+        try {
+            for (Result<Item> object : minioClient.listObjects(args.build())) {
+                Item item = object.get();
+                String name = item.objectName();
+                if (endAt != null && name.compareTo(endAt) > 0) {
+                    return false;
+                }
+                lastListed = name;
+                if (isNewObject(item)) {
+                    newObjects.add(item);
+                    if (newObjects.size() >= maxRecordsPerRead) {
+                        return false;
+                    }
                 }
-                break;
-            } else {
-                log.info("Skipping already processed object {}", name);
             }
+            lastListed = null;
+            return true;
+        } finally {
+            index.setCursor(lastListed);
         }
-        if (!somethingFound) {
-            log.info("Nothing found, sleeping for {} seconds", idleTime);
-            Thread.sleep(idleTime * 1000L);
-        } else {
-            processed(0, 1);
+    }
+
+    private boolean isNewObject(Item item) {
+        String name = item.objectName();
+        if (item.isDir()) {
+            log.debug("Skipping directory {}", name);
+            return false;
+        }
+        boolean extensionAllowed = isExtensionAllowed(name, extensions);
+        if (!extensionAllowed) {
+            log.debug("Skipping file with bad extension {}", name);
+            return false;
+        }
+        if (objectsToCommit.containsKey(name) || index.isProcessed(name, item.etag())) {
+            log.debug("Skipping already processed object {}", name);
+            return false;
+        }
+        log.info("Found new object {}, size {} KB", name, item.size() / 1024);
+        return true;
+    }
+
+    private List<Record> download(List<Item> items) throws Exception {
+        List<Record> records = new ArrayList<>(items.size());
+        if (downloadExecutor == null || items.size() == 1) {
+            for (Item item : items) {
+                records.add(download(item));
+            }
+            return records;
+        }
+        List<Future<S3SourceRecord>> downloads = new ArrayList<>(items.size());
+        for (Item item : items) {
+            downloads.add(downloadExecutor.submit(() -> download(item)));
+        }
+        try {
+            for (Future<S3SourceRecord> download : downloads) {
+                records.add(download.get());
+            }
+        } catch (ExecutionException e) {
+            downloads.forEach(download -> download.cancel(true));
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
         }
         return records;
     }
 
+    private S3SourceRecord download(Item item) throws Exception {
+        String name = item.objectName();
+        try (GetObjectResponse objectResponse =
+                minioClient.getObject(
+                        GetObjectArgs.builder().bucket(bucketName).object(name).build())) {
+            // large objects are spooled to disk instead of being loaded in memory
+            Object read =
+                    item.size() > SpooledValue.DEFAULT_MEMORY_THRESHOLD
+                            ? SpooledValue.spool(objectResponse)
+                            : objectResponse.readAllBytes();
+            return new S3SourceRecord(read, name, item.etag());
+        } catch (Exception e) {
+            log.error("Error reading object {}", name, e);
+            throw e;
+        }
+    }
+
     static boolean isExtensionAllowed(String name, Set<String> extensions) {
         if (extensions.contains(ALL_FILES)) {
             return true;
@@ -186,23 +319,47 @@ public class S3Source extends AbstractAgentCode implements AgentSource {
 
     @Override
     public void commit(List<Record> records) throws Exception {
+        Map<String, String> processedObjects = new HashMap<>();
         for (Record record : records) {
             S3SourceRecord s3SourceRecord = (S3SourceRecord) record;
             String objectName = s3SourceRecord.name;
-            log.info("Removing object {}", objectName);
-            minioClient.removeObject(
-                    RemoveObjectArgs.builder().bucket(bucketName).object(objectName).build());
+            if (s3SourceRecord.read instanceof SpooledValue spooledValue) {
+                // the record has been processed, delete the temporary file
+                spooledValue.close();
+            }
+            if (deleteObjects) {
+                log.info("Removing object {}", objectName);
+                minioClient.removeObject(
+                        RemoveObjectArgs.builder().bucket(bucketName).object(objectName).build());
+            } else if (s3SourceRecord.etag != null) {
+                processedObjects.put(objectName, s3SourceRecord.etag);
+            }
             objectsToCommit.remove(objectName);
         }
+        if (!processedObjects.isEmpty()) {
+            index.markProcessed(processedObjects);
+        }
+    }
+
+    @Override
+    public void permanentFailure(Record record, Exception error) throws Exception {
+        if (record instanceof S3SourceRecord s3SourceRecord
+                && s3SourceRecord.read instanceof SpooledValue spooledValue) {
+            // the record is not processed again, delete the temporary file
+            spooledValue.close();
+        }
+        throw error;
     }
 
     private static class S3SourceRecord implements Record {
-        private final byte[] read;
+        private final Object read;
         private final String name;
+        private final String etag;
 
-        public S3SourceRecord(byte[] read, String name) {
+        public S3SourceRecord(Object read, String name, String etag) {
             this.read = read;
             this.name = name;
+            this.etag = etag;
         }
 
         /**
@@ -18,7 +18,9 @@ package ai.langstream.agents.s3;
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 import static org.testcontainers.containers.localstack.LocalStackContainer.Service.S3;
@@ -28,6 +30,7 @@ import ai.langstream.api.runner.code.AgentContext;
 import ai.langstream.api.runner.code.AgentSource;
 import ai.langstream.api.runner.code.MetricsReporter;
 import ai.langstream.api.runner.code.Record;
+import ai.langstream.api.runner.code.SpooledValue;
 import io.minio.ListObjectsArgs;
 import io.minio.MinioClient;
 import io.minio.PutObjectArgs;
@@ -35,16 +38,22 @@ import io.minio.RemoveObjectArgs;
 import io.minio.Result;
 import io.minio.messages.Item;
 import java.io.ByteArrayInputStream;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.testcontainers.containers.localstack.LocalStackContainer;
 import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
@@ -171,16 +180,129 @@ public class S3SourceTest {
         agentSource.commit(read);
     }
 
+    @Test
+    void testLargeObjectsAreSpooledUntilCommit() throws Exception {
+        String bucket = "langstream-test-" + UUID.randomUUID();
+        AgentSource agentSource = buildAgentSource(bucket);
+        byte[] content = new byte[SpooledValue.DEFAULT_MEMORY_THRESHOLD + 1];
+        Arrays.fill(content, (byte) 'a');
+        minioClient.putObject(
+                PutObjectArgs.builder().bucket(bucket).object("large.txt").stream(
+                                new ByteArrayInputStream(content), content.length, -1)
+                        .build());
+
+        List<Record> read = agentSource.read();
+        assertEquals(1, read.size());
+        SpooledValue value = (SpooledValue) read.get(0).value();
+        assertFalse(value.isInMemory());
+        assertEquals(content.length, value.size());
+        try (InputStream stream = value.openStream()) {
+            assertArrayEquals(content, stream.readAllBytes());
+        }
+
+        // the temporary file is deleted on commit
+        agentSource.commit(read);
+        assertThrows(NoSuchFileException.class, value::openStream);
+    }
+
+    @Test
+    void testKeepObjectsAndReadInBatches(@TempDir Path stateDirectory) throws Exception {
+        String bucket = "langstream-test-" + UUID.randomUUID();
+        Map<String, Object> configs =
+                Map.of(
+                        "delete-objects",
+                        false,
+                        "max-records-per-read",
+                        4,
+                        "parallel-downloads",
+                        3,
+                        "list-page-size",
+                        3,
+                        "idle-time",
+                        0);
+        AgentSource agentSource = buildAgentSource(bucket, configs, stateDirectory);
+        for (int i = 0; i < 10; i++) {
+            putObject(bucket, "test-" + i + ".txt", "test-content-" + i);
+        }
+
+        List<Record> all = new ArrayList<>();
+        List<Record> read = agentSource.read();
+        assertEquals(4, read.size());
+        all.addAll(read);
+        read = agentSource.read();
+        assertEquals(4, read.size());
+        all.addAll(read);
+        // the end of the bucket, the objects not committed yet are not returned again
+        read = agentSource.read();
+        assertEquals(2, read.size());
+        all.addAll(read);
+        for (int i = 0; i < 10; i++) {
+            assertEquals("test-" + i + ".txt", all.get(i).key());
+            assertArrayEquals(
+                    ("test-content-" + i).getBytes(StandardCharsets.UTF_8),
+                    (byte[]) all.get(i).value());
+        }
+        agentSource.commit(all);
+
+        // the objects are still in the bucket, but they have been processed
+        assertEquals(10, countObjects(bucket));
+        assertTrue(agentSource.read().isEmpty());
+
+        // a modified object is read again
+        putObject(bucket, "test-3.txt", "modified-content");
+        read = agentSource.read();
+        assertEquals(1, read.size());
+        assertArrayEquals(
+                "modified-content".getBytes(StandardCharsets.UTF_8), (byte[]) read.get(0).value());
+        agentSource.commit(read);
+        agentSource.close();
+
+        // the index survives a restart
+        agentSource = buildAgentSource(bucket, configs, stateDirectory);
+        assertTrue(agentSource.read().isEmpty());
+        putObject(bucket, "test-10.txt", "test-content-10");
+        read = agentSource.read();
+        assertEquals(1, read.size());
+        assertEquals("test-10.txt", read.get(0).key());
+        agentSource.commit(read);
+        agentSource.close();
+    }
+
+    private static void putObject(String bucket, String name, String content) throws Exception {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        minioClient.putObject(
+                PutObjectArgs.builder().bucket(bucket).object(name).stream(
+                                new ByteArrayInputStream(bytes), bytes.length, -1)
+                        .build());
+    }
+
+    private static int countObjects(String bucket) {
+        int count = 0;
+        for (Result<Item> ignored :
+                minioClient.listObjects(ListObjectsArgs.builder().bucket(bucket).build())) {
+            count++;
+        }
+        return count;
+    }
+
     private AgentSource buildAgentSource(String bucket) throws Exception {
+        return buildAgentSource(bucket, Map.of(), null);
+    }
+
+    private AgentSource buildAgentSource(
+            String bucket, Map<String, Object> additionalConfigs, Path stateDirectory)
+            throws Exception {
         AgentSource agentSource =
                 (AgentSource) AGENT_CODE_REGISTRY.getAgentCode("s3-source").agentCode();
-        Map<String, Object> configs = new HashMap<>();
+        Map<String, Object> configs = new HashMap<>(additionalConfigs);
         String endpoint = localstack.getEndpointOverride(S3).toString();
         configs.put("endpoint", endpoint);
         configs.put("bucketName", bucket);
         agentSource.init(configs);
         AgentContext context = mock(AgentContext.class);
         when(context.getMetricsReporter()).thenReturn(MetricsReporter.DISABLED);
+        when(context.getPersistentStateDirectoryForAgent(any()))
+                .thenReturn(Optional.ofNullable(stateDirectory));
         agentSource.setContext(context);
         agentSource.start();
         return agentSource;
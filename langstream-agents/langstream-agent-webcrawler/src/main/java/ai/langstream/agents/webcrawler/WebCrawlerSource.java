@@ -32,20 +32,32 @@ import ai.langstream.api.runner.code.AgentSource;
 import ai.langstream.api.runner.code.Header;
 import ai.langstream.api.runner.code.Record;
 import ai.langstream.api.runner.code.SimpleRecord;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.minio.BucketExistsArgs;
 import io.minio.GetObjectArgs;
 import io.minio.GetObjectResponse;
+import io.minio.ListObjectsArgs;
 import io.minio.MakeBucketArgs;
 import io.minio.MinioClient;
+import io.minio.RemoveObjectArgs;
+import io.minio.Result;
 import io.minio.errors.ErrorResponseException;
+import io.minio.messages.Item;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -116,6 +128,7 @@ public class WebCrawlerSource extends AbstractAgentCode implements AgentSource {
         String userAgent = getString("user-agent", DEFAULT_USER_AGENT, configuration);
         int maxErrorCount = getInt("max-error-count", 5, configuration);
         int httpTimeout = getInt("http-timeout", 10000, configuration);
+        int maxConcurrentFetches = getInt("max-concurrent-fetches", 1, configuration);
 
         boolean handleCookies = getBoolean("handle-cookies", true, configuration);
 
@@ -130,6 +143,7 @@ public class WebCrawlerSource extends AbstractAgentCode implements AgentSource {
         log.info("max-unflushed-pages: {}", maxUnflushedPages);
         log.info("min-time-between-requests: {}", minTimeBetweenRequests);
         log.info("reindex-interval-seconds: {}", reindexIntervalSeconds);
+        log.info("max-concurrent-fetches: {}", maxConcurrentFetches);
 
         WebCrawlerConfiguration webCrawlerConfiguration =
                 WebCrawlerConfiguration.builder()
@@ -143,6 +157,7 @@ public class WebCrawlerSource extends AbstractAgentCode implements AgentSource {
                         .handleCookies(handleCookies)
                         .httpTimeout(httpTimeout)
                         .maxErrorCount(maxErrorCount)
+                        .maxConcurrentFetches(maxConcurrentFetches)
                         .build();
 
         WebCrawlerStatus status = new WebCrawlerStatus();
@@ -154,6 +169,7 @@ public class WebCrawlerSource extends AbstractAgentCode implements AgentSource {
     @Override
     public void setContext(AgentContext context) throws Exception {
         super.setContext(context);
+        crawler.setMetricsReporter(context.getMetricsReporter().withAgentName(agentId()));
         String globalAgentId = context.getGlobalAgentId();
         statusFileName = globalAgentId + ".webcrawler.status.json";
         log.info("Status file is {}", statusFileName);
@@ -265,11 +281,16 @@ public class WebCrawlerSource extends AbstractAgentCode implements AgentSource {
             return sleepForNoResults();
         }
 
-        Document document = foundDocuments.remove();
-        processed(0, 1);
-        return List.of(
-                new WebCrawlerSourceRecord(
-                        document.content().getBytes(StandardCharsets.UTF_8), document.url()));
+        // with concurrent fetches more than one page may have been completed
+        List<Record> records = new ArrayList<>();
+        Document document;
+        while ((document = foundDocuments.poll()) != null) {
+            records.add(
+                    new WebCrawlerSourceRecord(
+                            document.content().getBytes(StandardCharsets.UTF_8), document.url()));
+        }
+        processed(0, records.size());
+        return records;
     }
 
     private void checkReindexIsNeeded() {
@@ -379,17 +400,100 @@ public class WebCrawlerSource extends AbstractAgentCode implements AgentSource {
         }
     }
 
+    private static final ObjectMapper STATUS_MAPPER =
+            new ObjectMapper().setSerializationInclusion(JsonInclude.Include.NON_NULL);
+
+    private static StatusStorage.Status emptyStatus() {
+        return new StatusStorage.Status(
+                List.of(), List.of(), null, null, Map.of(), Map.of(), null, null);
+    }
+
     private class S3StatusStorage implements StatusStorage {
-        private static final ObjectMapper MAPPER = new ObjectMapper();
+        private static final TypeReference<List<Change>> CHANGES = new TypeReference<>() {};
+
+        private long nextSequence;
+
+        private String changesPrefix() {
+            return statusFileName + ".changes.";
+        }
+
+        private String changesPrefix(long generation) {
+            return changesPrefix() + generation + ".";
+        }
 
         @Override
         public void storeStatus(Status status) throws Exception {
-            byte[] content = MAPPER.writeValueAsBytes(status);
+            byte[] content = STATUS_MAPPER.writeValueAsBytes(status);
             log.info("Storing status in {}, {} bytes", statusFileName, content.length);
+            putObject(statusFileName, content);
+            nextSequence = 0;
+
+            // the changes of the previous generations are included in the new status
+            for (Result<Item> item :
+                    minioClient.listObjects(
+                            ListObjectsArgs.builder()
+                                    .bucket(bucketName)
+                                    .prefix(changesPrefix())
+                                    .recursive(true)
+                                    .build())) {
+                String objectName = item.get().objectName();
+                if (!objectName.startsWith(changesPrefix(status.generation()))) {
+                    minioClient.removeObject(
+                            RemoveObjectArgs.builder()
+                                    .bucket(bucketName)
+                                    .object(objectName)
+                                    .build());
+                }
+            }
+        }
+
+        @Override
+        public boolean appendChanges(long generation, List<Change> changes) throws Exception {
+            byte[] content = STATUS_MAPPER.writeValueAsBytes(changes);
+            String objectName =
+                    changesPrefix(generation) + String.format("%010d", nextSequence++);
+            log.info(
+                    "Storing {} changes in {}, {} bytes",
+                    changes.size(),
+                    objectName,
+                    content.length);
+            putObject(objectName, content);
+            return true;
+        }
+
+        @Override
+        public List<Change> getChanges(long generation) throws Exception {
+            List<String> objectNames = new ArrayList<>();
+            for (Result<Item> item :
+                    minioClient.listObjects(
+                            ListObjectsArgs.builder()
+                                    .bucket(bucketName)
+                                    .prefix(changesPrefix(generation))
+                                    .recursive(true)
+                                    .build())) {
+                objectNames.add(item.get().objectName());
+            }
+            Collections.sort(objectNames);
+            List<Change> result = new ArrayList<>();
+            for (String objectName : objectNames) {
+                try (GetObjectResponse response =
+                        minioClient.getObject(
+                                GetObjectArgs.builder()
+                                        .bucket(bucketName)
+                                        .object(objectName)
+                                        .build())) {
+                    result.addAll(STATUS_MAPPER.readValue(response.readAllBytes(), CHANGES));
+                }
+            }
+            nextSequence = objectNames.size();
+            return result;
+        }
+
+        private void putObject(String objectName, byte[] content) throws Exception {
             minioClient.putObject(
                     io.minio.PutObjectArgs.builder()
                             .bucket(bucketName)
-                            .object(statusFileName)
+                            .object(objectName)
                             .contentType("text/json")
                             .stream(new ByteArrayInputStream(content), content.length, -1)
                             .build());
@@ -407,28 +511,97 @@ public class WebCrawlerSource extends AbstractAgentCode implements AgentSource {
                 byte[] content = result.readAllBytes();
                 log.info("Restoring status from {}, {} bytes", statusFileName, content.length);
                 try {
-                    return MAPPER.readValue(content, Status.class);
+                    return STATUS_MAPPER.readValue(content, Status.class);
                 } catch (IOException e) {
                     log.error("Error parsing status file", e);
                     return null;
                 }
             } catch (ErrorResponseException e) {
                 if (e.errorResponse().code().equals("NoSuchKey")) {
-                    return new Status(List.of(), List.of(), null, null, Map.of());
+                    return emptyStatus();
                 }
                 throw e;
             }
         }
     }
 
+    /** Append the changes to a journal, one JSON line per change. */
+    static void appendChanges(Path path, List<StatusStorage.Change> changes) throws IOException {
+        StringBuilder lines = new StringBuilder();
+        for (StatusStorage.Change change : changes) {
+            lines.append(STATUS_MAPPER.writeValueAsString(change)).append('\n');
+        }
+        Files.writeString(
+                path,
+                lines,
+                StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Read a journal written by {@link #appendChanges(Path, List)}. The last line may have been
+     * partially written by a crash: the journal is truncated after the last valid line, so that
+     * the next changes are not appended to the torn one.
+     */
+    static List<StatusStorage.Change> readChanges(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return List.of();
+        }
+        byte[] content = Files.readAllBytes(path);
+        List<StatusStorage.Change> result = new ArrayList<>();
+        int valid = 0;
+        while (valid < content.length) {
+            int end = valid;
+            while (end < content.length && content[end] != '\n') {
+                end++;
+            }
+            if (end == content.length) {
+                log.warn("Ignoring a truncated change at the end of {}", path);
+                break;
+            }
+            try {
+                result.add(
+                        STATUS_MAPPER.readValue(
+                                content, valid, end - valid, StatusStorage.Change.class));
+            } catch (IOException e) {
+                log.warn("Ignoring the changes after a corrupted line in {}", path, e);
+                break;
+            }
+            valid = end + 1;
+        }
+        if (valid < content.length) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                channel.truncate(valid);
+            }
+        }
+        return result;
+    }
+
     private class LocalDiskStatusStorage implements StatusStorage {
-        private static final ObjectMapper MAPPER = new ObjectMapper();
 
         @Override
         public void storeStatus(Status status) throws Exception {
             final Path fullPath = computeFullPath();
             log.info("Storing status to the disk at path {}", fullPath);
-            MAPPER.writeValue(fullPath.toFile(), status);
+            Path tmp = fullPath.resolveSibling(fullPath.getFileName() + ".tmp");
+            STATUS_MAPPER.writeValue(tmp.toFile(), status);
+            Files.move(
+                    tmp,
+                    fullPath,
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+
+            // the changes of the previous generations are included in the new status
+            try (DirectoryStream<Path> logs =
+                    Files.newDirectoryStream(localDiskPath.get(), statusFileName + ".changes.*")) {
+                Path current = computeChangesPath(status.generation());
+                for (Path path : logs) {
+                    if (!path.equals(current)) {
+                        Files.deleteIfExists(path);
+                    }
+                }
+            }
         }
 
         private Path computeFullPath() {
@@ -436,17 +609,35 @@ public class WebCrawlerSource extends AbstractAgentCode implements AgentSource {
             return fullPath;
         }
 
+        private Path computeChangesPath(long generation) {
+            return localDiskPath.get().resolve(statusFileName + ".changes." + generation);
+        }
+
+        @Override
+        public boolean appendChanges(long generation, List<Change> changes) throws Exception {
+            WebCrawlerSource.appendChanges(computeChangesPath(generation), changes);
+            return true;
+        }
+
+        @Override
+        public List<Change> getChanges(long generation) throws Exception {
+            return readChanges(computeChangesPath(generation));
+        }
+
         @Override
         public Status getCurrentStatus() throws Exception {
             final Path fullPath = computeFullPath();
             if (Files.exists(fullPath)) {
                 log.info("Restoring status from {}", fullPath);
                 try {
-                    return MAPPER.readValue(fullPath.toFile(), Status.class);
+                    return STATUS_MAPPER.readValue(fullPath.toFile(), Status.class);
                 } catch (IOException e) {
                     log.error("Error parsing status file", e);
                     return null;
                 }
+            } else if (Files.exists(computeChangesPath(0))) {
+                // the first status has not been stored yet
+                return emptyStatus();
             } else {
                 return null;
             }
@@ -0,0 +1,106 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.agents.webcrawler.crawler;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Per-host queues of the urls to fetch. A host is fetched by at most one request at a time, and
+ * not before the politeness delay after the previous request. The hosts are served round-robin.
+ *
+ * <p>This class is not thread safe, it is used only by the thread that runs the crawler.
+ */
+class HostScheduler {
+
+    private final Map<String, Host> hosts = new LinkedHashMap<>();
+    private int size;
+
+    private static final class Host {
+        final Deque<String> urls = new ArrayDeque<>();
+        boolean busy;
+        long readyAt;
+    }
+
+    void add(String host, String url) {
+        hosts.computeIfAbsent(host, h -> new Host()).urls.add(url);
+        size++;
+    }
+
+    /**
+     * Take the next url of a host that is not busy and whose politeness delay has expired. The host
+     * is busy until {@link #done(String, long)} is called.
+     *
+     * @return the url, or null if no host is ready
+     */
+    String next(long now) {
+        Iterator<Map.Entry<String, Host>> iterator = hosts.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Host> entry = iterator.next();
+            Host host = entry.getValue();
+            if (host.busy || host.readyAt > now) {
+                continue;
+            }
+            if (host.urls.isEmpty()) {
+                // nothing to fetch and no pending delay, forget the host
+                iterator.remove();
+                continue;
+            }
+            String url = host.urls.poll();
+            size--;
+            host.busy = true;
+            // move the host to the end of the queue, to give a chance to the others
+            iterator.remove();
+            hosts.put(entry.getKey(), host);
+            return url;
+        }
+        return null;
+    }
+
+    /** The request to the host is complete, the next one can start after the given time. */
+    void done(String host, long readyAt) {
+        Host h = hosts.get(host);
+        if (h == null) {
+            return;
+        }
+        h.busy = false;
+        h.readyAt = readyAt;
+    }
+
+    /** The earliest time a host with urls to fetch will be ready, Long.MAX_VALUE if none. */
+    long nextReadyTime() {
+        long result = Long.MAX_VALUE;
+        for (Host host : hosts.values()) {
+            if (!host.busy && !host.urls.isEmpty()) {
+                result = Math.min(result, host.readyAt);
+            }
+        }
+        return result;
+    }
+
+    /** Number of urls waiting to be fetched. */
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        hosts.clear();
+        size = 0;
+    }
+}
@@ -19,18 +19,58 @@ import java.util.List;
 import java.util.Map;
 
 public interface StatusStorage {
+    /**
+     * Store the whole status. The changes appended after the snapshots of the previous generations
+     * are not needed anymore.
+     */
     void storeStatus(Status metadata) throws Exception;
 
+    /**
+     * Append the changes made after the snapshot of the given generation. A storage that only
+     * supports snapshots returns false, then the whole status is stored instead.
+     */
+    default boolean appendChanges(long generation, List<Change> changes) throws Exception {
+        return false;
+    }
+
+    /** The changes appended after the snapshot of the given generation, in order. */
+    default List<Change> getChanges(long generation) throws Exception {
+        return List.of();
+    }
+
     record StoreUrlReference(String url, String type, int depth) {}
 
     record RobotsFile(String content, String contentType) {}
 
+    /**
+     * What is known about a page that has been emitted, to send conditional requests and to skip
+     * the unchanged pages while re-indexing.
+     */
+    record PageMetadata(String etag, String lastModified, String contentHash, int depth) {}
+
+    /**
+     * A change of the status, replayed on top of the last snapshot. Only the fields needed by the
+     * operation are set.
+     */
+    record Change(
+            String op,
+            String url,
+            String type,
+            Integer depth,
+            Boolean toScan,
+            PageMetadata page,
+            RobotsFile robots,
+            Long timestamp) {}
+
     record Status(
             List<String> remainingUrls,
             List<StoreUrlReference> urls,
             Long lastIndexEndTimestamp,
             Long lastIndexStartTimestamp,
-            Map<String, RobotsFile> robotFiles) {}
+            Map<String, RobotsFile> robotFiles,
+            Map<String, PageMetadata> pages,
+            String visitedUrls,
+            Long generation) {}
 
     Status getCurrentStatus() throws Exception;
 }
@@ -0,0 +1,176 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.agents.webcrawler.crawler;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * The set of the urls seen by the crawler, with their type and depth. Only a 64-bit hash of each
+ * url is kept, in an open addressing table of primitives, so that millions of urls fit in a few
+ * tens of MB. The probability of a collision, which would make the crawler skip an url, is
+ * negligible at this scale.
+ */
+public final class VisitedUrls {
+
+    private static final int ENTRY_BYTES = Long.BYTES + Integer.BYTES;
+    private static final int DEPTH_MASK = (1 << 28) - 1;
+    private static final URLReference.Type[] TYPES = URLReference.Type.values();
+
+    // 0 marks an empty slot, it is never returned by hash()
+    private long[] keys = new long[16];
+    private int[] values = new int[16];
+    private int size;
+
+    public int size() {
+        return size;
+    }
+
+    boolean contains(String url) {
+        return indexOf(hash(url)) >= 0;
+    }
+
+    URLReference get(String url) {
+        int index = indexOf(hash(url));
+        if (index < 0) {
+            return null;
+        }
+        int value = values[index];
+        return new URLReference(url, TYPES[value >>> 28], value & DEPTH_MASK);
+    }
+
+    /** Add the url, or update its type and depth. */
+    void put(String url, URLReference.Type type, int depth) {
+        put(hash(url), type.ordinal() << 28 | Math.min(depth, DEPTH_MASK));
+    }
+
+    private void put(long key, int value) {
+        if ((size + 1) * 4L > keys.length * 3L) {
+            resize(keys.length * 2);
+        }
+        int mask = keys.length - 1;
+        int index = slot(key, mask);
+        while (keys[index] != 0) {
+            if (keys[index] == key) {
+                values[index] = value;
+                return;
+            }
+            index = (index + 1) & mask;
+        }
+        keys[index] = key;
+        values[index] = value;
+        size++;
+    }
+
+    void remove(String url) {
+        int index = indexOf(hash(url));
+        if (index < 0) {
+            return;
+        }
+        // backward shift deletion, to keep the probe sequences without holes
+        int mask = keys.length - 1;
+        int next = (index + 1) & mask;
+        while (keys[next] != 0) {
+            int home = slot(keys[next], mask);
+            if (((next - home) & mask) >= ((next - index) & mask)) {
+                keys[index] = keys[next];
+                values[index] = values[next];
+                index = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[index] = 0;
+        values[index] = 0;
+        size--;
+    }
+
+    void clear() {
+        keys = new long[16];
+        values = new int[16];
+        size = 0;
+    }
+
+    /** A compact representation of the set, to be stored in the status. */
+    String encode() {
+        ByteBuffer buffer = ByteBuffer.allocate(size * ENTRY_BYTES);
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0) {
+                buffer.putLong(keys[i]);
+                buffer.putInt(values[i]);
+            }
+        }
+        return Base64.getEncoder().encodeToString(buffer.array());
+    }
+
+    void decode(String encoded) {
+        ByteBuffer buffer = ByteBuffer.wrap(Base64.getDecoder().decode(encoded));
+        clear();
+        resize(Integer.highestOneBit(Math.max(8, buffer.remaining() / ENTRY_BYTES * 2)) * 2);
+        while (buffer.remaining() >= ENTRY_BYTES) {
+            put(buffer.getLong(), buffer.getInt());
+        }
+    }
+
+    private int indexOf(long key) {
+        int mask = keys.length - 1;
+        int index = slot(key, mask);
+        while (keys[index] != 0) {
+            if (keys[index] == key) {
+                return index;
+            }
+            index = (index + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[capacity];
+        values = new int[capacity];
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    private static int slot(long key, int mask) {
+        return (int) (key ^ (key >>> 32)) & mask;
+    }
+
+    /** 64-bit FNV-1a of the UTF-8 bytes, followed by the MurmurHash3 finalizer. */
+    static long hash(String url) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : url.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash == 0 ? 1 : hash;
+    }
+
+    @Override
+    public String toString() {
+        return "VisitedUrls{size=" + size + ", capacity=" + keys.length + "}";
+    }
+}
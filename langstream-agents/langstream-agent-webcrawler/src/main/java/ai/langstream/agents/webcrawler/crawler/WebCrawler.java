@@ -15,6 +15,7 @@
  */
 package ai.langstream.agents.webcrawler.crawler;
 
+import ai.langstream.api.runner.code.MetricsReporter;
 import crawlercommons.robots.SimpleRobotRules;
 import crawlercommons.robots.SimpleRobotRulesParser;
 import crawlercommons.sitemaps.AbstractSiteMap;
@@ -22,7 +23,12 @@ import crawlercommons.sitemaps.SiteMap;
 import crawlercommons.sitemaps.SiteMapIndex;
 import crawlercommons.sitemaps.SiteMapParser;
 import crawlercommons.sitemaps.SiteMapURL;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.net.CookieManager;
 import java.net.CookiePolicy;
 import java.net.CookieStore;
@@ -32,18 +38,33 @@ import java.net.URL;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
-import org.jsoup.Connection;
-import org.jsoup.HttpStatusException;
 import org.jsoup.Jsoup;
-import org.jsoup.UnsupportedMimeTypeException;
 import org.jsoup.nodes.Document;
 
 @Slf4j
@@ -60,6 +81,53 @@ public class WebCrawler {
 
     private final Map<String, SimpleRobotRules> robotsRules = new HashMap<>();
 
+    @Getter(AccessLevel.NONE)
+    private final HttpClient httpClient;
+
+    // the urls waiting for a fetch, when more than one fetch can run at the same time
+    @Getter(AccessLevel.NONE)
+    private final HostScheduler scheduler = new HostScheduler();
+
+    // the fetches completed by the HttpClient, processed by the thread that runs the crawler
+    @Getter(AccessLevel.NONE)
+    private final BlockingQueue<FetchResult> completedFetches = new LinkedBlockingQueue<>();
+
+    @Getter(AccessLevel.NONE)
+    private int fetchesInFlight;
+
+    @Getter(AccessLevel.NONE)
+    private MetricsReporter.Counter newPages = MetricsReporter.Counter.NOOP;
+
+    @Getter(AccessLevel.NONE)
+    private MetricsReporter.Counter changedPages = MetricsReporter.Counter.NOOP;
+
+    @Getter(AccessLevel.NONE)
+    private MetricsReporter.Counter unchangedPages = MetricsReporter.Counter.NOOP;
+
+    private static final Pattern XML_CONTENT_TYPE =
+            Pattern.compile("(application|text)/\\w*\\+?xml.*");
+    private static final Pattern CHARSET = Pattern.compile("charset=\"?([^\\s;\"]+)");
+
+    // the same limit as Jsoup, the rest of a larger page is ignored
+    static final int MAX_PAGE_SIZE = 2 * 1024 * 1024;
+
+    // like Jsoup, do not download the body of the documents that cannot be parsed as HTML
+    private static final HttpResponse.BodyHandler<byte[]> PAGE_BODY_HANDLER =
+            info -> {
+                String contentType = info.headers().firstValue("Content-Type").orElse(null);
+                if (info.statusCode() / 100 == 2 && !isHtml(contentType)) {
+                    return HttpResponse.BodySubscribers.replacing(null);
+                }
+                return decodedBody(info, new LimitedBodySubscriber(MAX_PAGE_SIZE), MAX_PAGE_SIZE);
+            };
+
+    // robots.txt and sitemaps
+    private static final HttpResponse.BodyHandler<byte[]> FILE_BODY_HANDLER =
+            info -> decodedBody(info, HttpResponse.BodySubscribers.ofByteArray(), -1);
+
+    private record FetchResult(
+            String url, URLReference reference, HttpResponse<byte[]> response, Throwable error) {}
+
     public WebCrawler(
             WebCrawlerConfiguration configuration,
             WebCrawlerStatus status,
@@ -74,6 +142,13 @@ public class WebCrawler {
                         ? CookiePolicy.ACCEPT_ALL
                         : CookiePolicy.ACCEPT_NONE);
         this.cookieStore = cookieManager.getCookieStore();
+        this.httpClient =
+                HttpClient.newBuilder()
+                        .version(HttpClient.Version.HTTP_1_1)
+                        .cookieHandler(cookieManager)
+                        .followRedirects(HttpClient.Redirect.NEVER)
+                        .connectTimeout(Duration.ofMillis(configuration.getHttpTimeout()))
+                        .build();
     }
 
     public void crawl(String startUrl) {
@@ -129,6 +204,9 @@ public class WebCrawler {
     }
 
     public boolean runCycle() throws Exception {
+        if (configuration.getMaxConcurrentFetches() > 1) {
+            return runConcurrentCycle();
+        }
         String current = status.nextUrl();
         if (current == null) {
             return false;
@@ -151,119 +229,461 @@ public class WebCrawler {
             return true;
         }
 
-        Connection connect = Jsoup.connect(current);
-        connect.cookieStore(cookieStore);
-        connect.followRedirects(false);
+        FetchResult result;
+        try {
+            result =
+                    new FetchResult(
+                            current,
+                            reference,
+                            httpClient.send(buildPageRequest(current), PAGE_BODY_HANDLER),
+                            null);
+        } catch (IOException | UncheckedIOException | IllegalArgumentException e) {
+            result = new FetchResult(current, reference, null, e);
+        }
+        handlePage(result);
+
+        // prevent from being banned for flooding
+        handleThrottling(current);
+
+        return true;
+    }
+
+    /**
+     * Start the fetches of the hosts that are ready, up to the maximum number of concurrent
+     * fetches, then process the fetches that completed. Only one request at a time is sent to each
+     * host, after the politeness delay.
+     */
+    private boolean runConcurrentCycle() throws Exception {
+        String url;
+        while ((url = status.nextUrl()) != null) {
+            scheduler.add(getDomainFromUrl(url), url);
+        }
+        long now = System.currentTimeMillis();
+        while (fetchesInFlight < configuration.getMaxConcurrentFetches()
+                && (url = scheduler.next(now)) != null) {
+            startFetch(url, now);
+        }
+        long nextReadyTime = scheduler.nextReadyTime();
+        if (fetchesInFlight == 0) {
+            if (scheduler.size() == 0 && status.getPendingUrls().isEmpty()) {
+                return false;
+            }
+            // all the hosts are waiting for the politeness delay
+            long wait = nextReadyTime - now;
+            if (wait > 0) {
+                Thread.sleep(Math.min(wait, 1000));
+            }
+            return true;
+        }
+        long wait = Math.max(1, Math.min(nextReadyTime - now, configuration.getHttpTimeout()));
+        FetchResult result = completedFetches.poll(wait, TimeUnit.MILLISECONDS);
+        while (result != null) {
+            fetchesInFlight--;
+            processFetch(result);
+            result = completedFetches.poll();
+        }
+        return true;
+    }
+
+    private void startFetch(String url, long now) {
+        URLReference reference = status.getReference(url);
+        String host = getDomainFromUrl(url);
+        if (reference.type() == URLReference.Type.SITEMAP && isUrlForbidden(url)) {
+            log.info("Sitemap {} is forbidden. Skipping", url);
+            status.urlProcessed(url);
+            scheduler.done(host, now);
+            return;
+        }
+        HttpRequest request;
+        try {
+            request =
+                    reference.type() == URLReference.Type.PAGE
+                            ? buildPageRequest(url)
+                            : buildRequest(url);
+        } catch (IllegalArgumentException e) {
+            log.info("Invalid url {}: {}", url, e + "");
+            discardUrl(url, reference);
+            scheduler.done(host, now);
+            return;
+        }
+        log.info("Crawling url: {}", url);
+        fetchesInFlight++;
+        HttpResponse.BodyHandler<byte[]> bodyHandler =
+                reference.type() == URLReference.Type.PAGE
+                        ? PAGE_BODY_HANDLER
+                        : FILE_BODY_HANDLER;
+        httpClient
+                .sendAsync(request, bodyHandler)
+                .whenComplete(
+                        (response, error) -> {
+                            if (error instanceof CompletionException && error.getCause() != null) {
+                                error = error.getCause();
+                            }
+                            completedFetches.add(new FetchResult(url, reference, response, error));
+                        });
+    }
+
+    private void processFetch(FetchResult result) {
+        String url = result.url();
+        try {
+            if (result.reference().type() == URLReference.Type.PAGE) {
+                handlePage(result);
+            } else if (result.error() != null) {
+                log.info("Error while downloading url: {}, IO Error: {}", url, result.error() + "");
+                handleTemporaryError(url, result.reference());
+            } else if (result.reference().type() == URLReference.Type.ROBOTS) {
+                log.info("Found a robots.txt file");
+                handleRobotsFile(url, result.response());
+                status.urlProcessed(url);
+            } else {
+                log.info("Found a sitemap file");
+                handleSitemapsFile(url, result.response());
+                status.urlProcessed(url);
+            }
+        } catch (Exception e) {
+            log.warn("Error while processing url {}", url, e);
+        } finally {
+            scheduler.done(
+                    getDomainFromUrl(url), System.currentTimeMillis() + getThrottlingDelay(url));
+        }
+    }
+
+    private HttpRequest buildRequest(String url) {
+        return newRequest(url).build();
+    }
+
+    /** A conditional request, if the page has already been fetched. */
+    private HttpRequest buildPageRequest(String url) {
+        HttpRequest.Builder request = newRequest(url);
+        StatusStorage.PageMetadata metadata = status.getPageMetadata(url);
+        if (metadata != null) {
+            if (metadata.etag() != null) {
+                request.header("If-None-Match", metadata.etag());
+            }
+            if (metadata.lastModified() != null) {
+                request.header("If-Modified-Since", metadata.lastModified());
+            }
+        }
+        return request.build();
+    }
+
+    private HttpRequest.Builder newRequest(String url) {
+        HttpRequest.Builder request =
+                HttpRequest.newBuilder()
+                        .uri(toUri(url))
+                        .timeout(Duration.ofMillis(configuration.getHttpTimeout()));
+        request.header("Accept-Encoding", "gzip");
         if (configuration.getUserAgent() != null) {
-            connect.userAgent(configuration.getUserAgent());
+            request.header("User-Agent", configuration.getUserAgent());
         }
-        connect.timeout(configuration.getHttpTimeout());
+        return request;
+    }
 
-        boolean redirectedToForbiddenDomain = false;
-        Document document;
+    /**
+     * Parse a url, encoding the characters that are not allowed in a URI (spaces, |, {, non ASCII
+     * characters...) as the browsers and Jsoup do. The escape sequences already in the url are
+     * kept as they are.
+     */
+    static URI toUri(String url) {
         try {
-            document = connect.get();
-            Connection.Response response = connect.response();
-            int statusCode = response.statusCode();
-            if (statusCode >= 300 && statusCode < 400) {
-                String location = response.header("Location");
-                if (!location.equals(current)) {
-                    if (isUrlForbidden(location)) {
-                        redirectedToForbiddenDomain = true;
-                        log.warn(
-                                "A redirection to a forbidden domain happened (from {} to {})",
-                                current,
-                                location);
-                    } else {
-                        log.info("A redirection happened from {} to {}", current, location);
-                        addPageUrl(location, reference);
-                        return true;
-                    }
+            return URI.create(url);
+        } catch (IllegalArgumentException e) {
+            // encode the url below
+        }
+        int schemeEnd = url.indexOf("://");
+        int authorityStart = schemeEnd < 0 ? 0 : schemeEnd + 3;
+        int authorityEnd = authorityStart;
+        while (authorityEnd < url.length() && "/?#".indexOf(url.charAt(authorityEnd)) < 0) {
+            authorityEnd++;
+        }
+        StringBuilder encoded = new StringBuilder(url.length() + 16);
+        boolean fragment = false;
+        for (int i = 0; i < url.length(); i++) {
+            char c = url.charAt(i);
+            boolean allowed;
+            if (c == '%') {
+                allowed =
+                        i + 2 < url.length()
+                                && HexFormat.isHexDigit(url.charAt(i + 1))
+                                && HexFormat.isHexDigit(url.charAt(i + 2));
+            } else if (c == '[' || c == ']') {
+                // IPv6 addresses
+                allowed = i >= authorityStart && i < authorityEnd;
+            } else if (c == '#') {
+                allowed = !fragment;
+                fragment = true;
+            } else {
+                allowed =
+                        c < 128
+                                && (Character.isLetterOrDigit(c)
+                                        || "-._~:/?@!$&'()*+,;=".indexOf(c) >= 0);
+            }
+            if (allowed) {
+                encoded.append(c);
+            } else {
+                int end = Character.isHighSurrogate(c) && i + 1 < url.length() ? i + 2 : i + 1;
+                for (byte b : url.substring(i, end).getBytes(StandardCharsets.UTF_8)) {
+                    encoded.append('%').append(HexFormat.of().withUpperCase().toHexDigits(b));
+                }
+                i = end - 1;
+            }
+        }
+        return URI.create(encoded.toString());
+    }
+
+    private static HttpResponse.BodySubscriber<byte[]> decodedBody(
+            HttpResponse.ResponseInfo info, HttpResponse.BodySubscriber<byte[]> body, int maxSize) {
+        boolean gzip =
+                info.headers()
+                        .firstValue("Content-Encoding")
+                        .map(encoding -> encoding.trim().equalsIgnoreCase("gzip"))
+                        .orElse(false);
+        if (!gzip) {
+            return body;
+        }
+        return HttpResponse.BodySubscribers.mapping(body, content -> gunzip(content, maxSize));
+    }
+
+    /**
+     * @param maxSize the maximum size of the decoded content, -1 for no limit
+     */
+    static byte[] gunzip(byte[] content, int maxSize) {
+        if (content == null) {
+            return null;
+        }
+        ByteArrayOutputStream decoded = new ByteArrayOutputStream(content.length * 4);
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(content))) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while (maxSize < 0 || decoded.size() < maxSize) {
+                int length =
+                        maxSize < 0
+                                ? buffer.length
+                                : Math.min(buffer.length, maxSize - decoded.size());
+                if ((read = in.read(buffer, 0, length)) < 0) {
+                    break;
                 }
+                decoded.write(buffer, 0, read);
             }
-        } catch (HttpStatusException e) {
-            int code = e.getStatusCode();
-            log.info("Error while crawling url: {}, HTTP code {}", current, code);
+        } catch (EOFException e) {
+            // the body has been truncated, keep what has been decoded
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return decoded.toByteArray();
+    }
+
+    /** Collects the body up to a maximum size, the rest is not downloaded. */
+    static final class LimitedBodySubscriber implements HttpResponse.BodySubscriber<byte[]> {
+        private final int maxSize;
+        private final ByteArrayOutputStream content = new ByteArrayOutputStream();
+        private final CompletableFuture<byte[]> body = new CompletableFuture<>();
+        private Flow.Subscription subscription;
+
+        LimitedBodySubscriber(int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        public CompletionStage<byte[]> getBody() {
+            return body;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> items) {
+            if (body.isDone()) {
+                return;
+            }
+            for (ByteBuffer item : items) {
+                int length = Math.min(item.remaining(), maxSize - content.size());
+                byte[] bytes = new byte[length];
+                item.get(bytes);
+                content.write(bytes, 0, length);
+            }
+            if (content.size() >= maxSize) {
+                subscription.cancel();
+                body.complete(content.toByteArray());
+            }
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            body.completeExceptionally(error);
+        }
+
+        @Override
+        public void onComplete() {
+            body.complete(content.toByteArray());
+        }
+    }
 
-            if (code >= 400 && code < 500) {
+    private void handlePage(FetchResult result) throws IOException {
+        String current = result.url();
+        URLReference reference = result.reference();
+        if (result.error() != null) {
+            log.info("Error while crawling url: {}, IO Error: {}", current, result.error() + "");
+            handleTemporaryError(current, reference);
+            return;
+        }
+        HttpResponse<byte[]> response = result.response();
+        int statusCode = response.statusCode();
+        if (statusCode == 304) {
+            log.info("Url {} not modified", current);
+            pageUnchanged(current);
+            return;
+        } else if (statusCode >= 300 && statusCode < 400) {
+            String location = response.headers().firstValue("Location").orElse(null);
+            if (location != null) {
+                location = toUri(current).resolve(toUri(location)).toString();
+            }
+            if (location != null && !location.equals(current)) {
+                if (isUrlForbidden(location)) {
+                    log.warn(
+                            "A redirection to a forbidden domain happened (from {} to {})",
+                            current,
+                            location);
+                } else {
+                    log.info("A redirection happened from {} to {}", current, location);
+                    addPageUrl(location, reference);
+                }
+                return;
+            }
+        } else if (statusCode < 200 || statusCode >= 400) {
+            log.info("Error while crawling url: {}, HTTP code {}", current, statusCode);
+            if (statusCode >= 400 && statusCode < 500) {
                 // not found, forbidden...this is a fatal error
                 log.info("Skipping the url {}", current);
-            } else if (code < 400 || (code >= 500 && code < 600)) {
-                // 1xx, 2xx, 3xx...this is not expected as it is not an "ERROR"
+                if (statusCode == 404 || statusCode == 410) {
+                    status.pageRemoved(current);
+                }
+            } else if (statusCode < 600) {
+                // 1xx...this is not expected as it is not an "ERROR"
                 // 5xx errors are server side errors, we can retry
-
                 handleTemporaryError(current, reference);
             }
+            return;
+        }
 
-            handleThrottling(current);
-
-            // we did something
-            return true;
-        } catch (UnsupportedMimeTypeException notHtml) {
-            log.info(
-                    "Url {} lead to a {} content-type document. Skipping",
-                    current,
-                    notHtml.getMimeType());
+        String contentType = response.headers().firstValue("Content-Type").orElse(null);
+        if (response.body() == null) {
+            log.info("Url {} lead to a {} content-type document. Skipping", current, contentType);
             discardUrl(current, reference);
+            return;
+        }
+        Document document =
+                Jsoup.parse(
+                        new ByteArrayInputStream(response.body()),
+                        getCharset(contentType),
+                        current);
+
+        if (configuration.isScanHtmlDocuments()) {
+            document.getElementsByAttribute("href")
+                    .forEach(
+                            element -> {
+                                if (configuration.isAllowedTag(element.tagName())) {
+                                    String url = element.absUrl("href");
+                                    if (isUrlForbidden(url)) {
+                                        log.debug("Ignoring not allowed url: {}", url);
+                                        discardUrl(url, reference);
+                                    } else {
+                                        addPageUrl(url, reference);
+                                    }
+                                }
+                            });
+        }
 
-            // prevent from being banned for flooding
-            handleThrottling(current);
+        String content = document.html();
+        StatusStorage.PageMetadata previous = status.getPageMetadata(current);
+        StatusStorage.PageMetadata metadata =
+                new StatusStorage.PageMetadata(
+                        response.headers().firstValue("ETag").orElse(null),
+                        response.headers().firstValue("Last-Modified").orElse(null),
+                        hash(content),
+                        reference.depth());
+        status.pageFetched(current, metadata);
+        if (previous != null && metadata.contentHash().equals(previous.contentHash())) {
+            log.info("Url {} didn't change", current);
+            pageUnchanged(current);
+            return;
+        }
+        (previous == null ? newPages : changedPages).count(1);
+        visitor.visit(new ai.langstream.agents.webcrawler.crawler.Document(current, content));
+    }
 
-            // we did something
-            return true;
-        } catch (IOException e) {
-            log.info("Error while crawling url: {}, IO Error: {}", current, e + "");
+    /** The page is not emitted, so it is committed here. */
+    private void pageUnchanged(String current) {
+        unchangedPages.count(1);
+        status.urlProcessed(current);
+    }
 
-            handleTemporaryError(current, reference);
+    private static String hash(String content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+            return HexFormat.of().formatHex(digest.digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
 
-            // prevent from being banned for flooding
-            handleThrottling(current);
+    public void setMetricsReporter(MetricsReporter metricsReporter) {
+        newPages =
+                metricsReporter.counter(
+                        "webcrawler_new_pages", "Total number of new pages emitted by the crawler");
+        changedPages =
+                metricsReporter.counter(
+                        "webcrawler_changed_pages",
+                        "Total number of changed pages emitted again while re-indexing");
+        unchangedPages =
+                metricsReporter.counter(
+                        "webcrawler_unchanged_pages",
+                        "Total number of unchanged pages skipped while re-indexing");
+    }
 
-            // we did something
+    static boolean isHtml(String contentType) {
+        if (contentType == null) {
             return true;
         }
+        String lowerCase = contentType.toLowerCase(Locale.ROOT);
+        return lowerCase.startsWith("text/") || XML_CONTENT_TYPE.matcher(lowerCase).matches();
+    }
 
-        if (!redirectedToForbiddenDomain) {
-            if (configuration.isScanHtmlDocuments()) {
-                document.getElementsByAttribute("href")
-                        .forEach(
-                                element -> {
-                                    if (configuration.isAllowedTag(element.tagName())) {
-                                        String url = element.absUrl("href");
-                                        if (isUrlForbidden(url)) {
-                                            log.debug("Ignoring not allowed url: {}", url);
-                                            discardUrl(url, reference);
-                                        } else {
-                                            addPageUrl(url, reference);
-                                        }
-                                    }
-                                });
-            }
-            visitor.visit(
-                    new ai.langstream.agents.webcrawler.crawler.Document(current, document.html()));
+    static String getCharset(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        Matcher matcher = CHARSET.matcher(contentType.toLowerCase(Locale.ROOT));
+        if (!matcher.find()) {
+            return null;
+        }
+        String charset = matcher.group(1);
+        try {
+            return Charset.isSupported(charset) ? charset : null;
+        } catch (IllegalArgumentException e) {
+            return null;
         }
-
-        // prevent from being banned for flooding
-        handleThrottling(current);
-
-        return true;
     }
 
     private void handleThrottling(String current) throws InterruptedException {
-        int delayMs = getCrawlerDelayFromRobots(current);
-        if (configuration.getMinTimeBetweenRequests() > 0) {
-            if (delayMs > 0) {
-                delayMs = Math.min(configuration.getMinTimeBetweenRequests(), delayMs);
-            } else {
-                delayMs = configuration.getMinTimeBetweenRequests();
-            }
-        }
+        long delayMs = getThrottlingDelay(current);
         // prevent from being banned for flooding
         if (delayMs > 0) {
             Thread.sleep(delayMs);
         }
     }
 
+    /** The delay before the next request to the same host, honoring the robots.txt Crawl-delay. */
+    private long getThrottlingDelay(String current) {
+        return Math.max(
+                configuration.getMinTimeBetweenRequests(), getCrawlerDelayFromRobots(current));
+    }
+
     private void handleTemporaryError(String current, URLReference reference) {
         int currentCount = status.temporaryErrorOnUrl(current);
         if (currentCount >= configuration.getMaxErrorCount()) {
@@ -275,11 +695,12 @@ public class WebCrawler {
         }
     }
 
-    private int getCrawlerDelayFromRobots(String current) {
+    private long getCrawlerDelayFromRobots(String current) {
         String domain = getDomainFromUrl(current);
         SimpleRobotRules rules = robotsRules.get(domain);
         if (rules != null) {
-            return (int) rules.getCrawlDelay();
+            // the delay is negative when the robots.txt file doesn't set it
+            return Math.max(0, rules.getCrawlDelay());
         } else {
             return 0;
         }
@@ -315,7 +736,10 @@ public class WebCrawler {
     }
 
     private void handleRobotsFile(String url) throws Exception {
-        HttpResponse<byte[]> response = downloadUrl(url);
+        handleRobotsFile(url, downloadUrl(url));
+    }
+
+    private void handleRobotsFile(String url, HttpResponse<byte[]> response) {
         try {
             String contentType = response.headers().firstValue("content-type").orElse("text/plain");
             byte[] body = response.body();
@@ -362,9 +786,11 @@ public class WebCrawler {
             log.info("Sitemap {} is forbidden. Skipping", url);
             return;
         }
+        handleSitemapsFile(url, downloadUrl(url));
+    }
 
+    private void handleSitemapsFile(String url, HttpResponse<byte[]> response) throws Exception {
         try {
-            HttpResponse<byte[]> response = downloadUrl(url);
             SiteMapParser siteMapParser = new SiteMapParser();
             AbstractSiteMap abstractSiteMap =
                     siteMapParser.parseSiteMap(response.body(), new URL(url));
@@ -400,16 +826,10 @@ public class WebCrawler {
     }
 
     private HttpResponse<byte[]> downloadUrl(String url) throws IOException, InterruptedException {
-        HttpClient client = HttpClient.newHttpClient();
         IOException lastError = null;
         for (int i = 0; i < configuration.getMaxErrorCount(); i++) {
             try {
-                return client.send(
-                        HttpRequest.newBuilder()
-                                .uri(URI.create(url))
-                                .header("User-Agent", configuration.getUserAgent())
-                                .build(),
-                        HttpResponse.BodyHandlers.ofByteArray());
+                return httpClient.send(buildRequest(url), FILE_BODY_HANDLER);
             } catch (IOException err) {
                 lastError = err;
                 log.warn("Error while downloading url: {}", url, err);
@@ -425,9 +845,18 @@ public class WebCrawler {
 
     public void restartIndexing(Set<String> seedUrls) {
         status.reset();
+        scheduler.clear();
         for (String url : seedUrls) {
             crawl(url);
         }
+        // visit again the known pages, the unchanged pages don't tell which links they contain
+        status.getPages()
+                .forEach(
+                        (url, metadata) -> {
+                            if (configuration.isAllowedUrl(url)) {
+                                forceAddUrl(url, URLReference.Type.PAGE, metadata.depth());
+                            }
+                        });
         status.setLastIndexStartTimestamp(System.currentTimeMillis());
         status.setLastIndexEndTimestamp(0);
     }
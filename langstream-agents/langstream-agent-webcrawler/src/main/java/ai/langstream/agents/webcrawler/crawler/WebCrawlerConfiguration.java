@@ -36,6 +36,7 @@ public class WebCrawlerConfiguration {
     @Builder.Default private int maxDepth = 10;
     @Builder.Default private int httpTimeout = 10000;
     @Builder.Default private int maxErrorCount = 5;
+    @Builder.Default private int maxConcurrentFetches = 1;
     @Builder.Default private boolean handleCookies = true;
     @Builder.Default private boolean handleRobotsFile = true;
     @Builder.Default private boolean scanHtmlDocuments = true;
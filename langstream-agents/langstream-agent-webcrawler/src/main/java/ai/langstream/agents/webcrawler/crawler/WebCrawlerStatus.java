@@ -21,7 +21,7 @@ import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 
@@ -29,6 +29,9 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class WebCrawlerStatus {
 
+    /** Minimum number of changes appended to the storage before storing the whole status. */
+    static final int MIN_CHANGES_BEFORE_SNAPSHOT = 10_000;
+
     /** Timestamp of the last index start. This is used to avoid reprocessing the indexing. */
     private long lastIndexStartTimestamp = 0;
 
@@ -51,7 +54,7 @@ public class WebCrawlerStatus {
      * Memory of all the URLs that have been seen by the Crawler in order to prevent cycles. This
      * structure only grows and is never cleared.
      */
-    private final Map<String, URLReference> urls = new HashMap<>();
+    private final VisitedUrls urls = new VisitedUrls();
 
     /**
      * Map of the robots.txt files that have been seen by the Crawler. This structure only grows and
@@ -59,19 +62,52 @@ public class WebCrawlerStatus {
      */
     private final Map<String, StatusStorage.RobotsFile> robotsFiles = new HashMap<>();
 
+    /**
+     * Metadata of the pages that have been emitted and committed. This structure is kept while
+     * re-indexing, in order to skip the pages that didn't change.
+     */
+    private final Map<String, StatusStorage.PageMetadata> pages = new HashMap<>();
+
+    /**
+     * Metadata of the pages that have been fetched and not committed yet. They are moved to {@link
+     * #pages} on Source.commit(). This status is not persisted.
+     */
+    private final Map<String, StatusStorage.PageMetadata> uncommittedPages = new HashMap<>();
+
     /**
      * Map of the URLs that have been seen by the Crawler and that have returned a temporary error.
      * This status is not persisted.
      */
     private final Map<String, Integer> errorCount = new HashMap<>();
 
-    public void reloadFrom(StatusStorage statusStorage) throws Exception {
+    /**
+     * The changes that have not been persisted yet. They are appended to the storage on persist(),
+     * so that the cost of a checkpoint depends on the changes and not on the size of the status.
+     */
+    @Getter(AccessLevel.NONE)
+    private final List<StatusStorage.Change> changes = new ArrayList<>();
+
+    /** Generation of the last snapshot, the changes are appended after it. */
+    @Getter(AccessLevel.NONE)
+    private long generation;
+
+    @Getter(AccessLevel.NONE)
+    private long changesSinceSnapshot;
+
+    @Getter(AccessLevel.NONE)
+    private boolean forceSnapshot;
+
+    @Getter(AccessLevel.NONE)
+    private boolean replaying;
+
+    public synchronized void reloadFrom(StatusStorage statusStorage) throws Exception {
         StatusStorage.Status currentStatus = statusStorage.getCurrentStatus();
         if (currentStatus != null) {
             log.info("Found a saved status, reloading...");
             pendingUrls.clear();
             remainingUrls.clear();
             urls.clear();
+            changes.clear();
 
             // please note that the order here is important
             // we want to visit the initial urls first
@@ -79,25 +115,21 @@ public class WebCrawlerStatus {
 
             if (remainingUrls != null) {
                 log.info("Reloaded {} remaining urls", remainingUrls.size());
-                remainingUrls.forEach(u -> log.info("Remaining {}", u));
-                this.pendingUrls.addAll(remainingUrls);
                 this.remainingUrls.addAll(remainingUrls);
             }
 
+            if (currentStatus.visitedUrls() != null) {
+                urls.decode(currentStatus.visitedUrls());
+            }
+            // the status stored by previous versions contains the full list of urls
             List<StatusStorage.StoreUrlReference> urls = currentStatus.urls();
             if (urls != null) {
-                log.info("Reloaded {} urls", this.urls.size());
                 urls.forEach(
-                        u -> {
-                            log.info("Visited {}", u);
-                            String url = u.url();
-                            String type = u.type();
-                            int depth = u.depth();
-                            URLReference reference =
-                                    new URLReference(url, URLReference.Type.valueOf(type), depth);
-                            this.urls.put(url, reference);
-                        });
+                        u ->
+                                this.urls.put(
+                                        u.url(), URLReference.Type.valueOf(u.type()), u.depth()));
             }
+            log.info("Reloaded {} urls", this.urls.size());
 
             Long lastIndexEndTimestamp = currentStatus.lastIndexEndTimestamp();
             if (lastIndexEndTimestamp != null) {
@@ -113,24 +145,103 @@ public class WebCrawlerStatus {
             if (robots != null) {
                 robotsFiles.putAll(robots);
             }
+
+            Map<String, StatusStorage.PageMetadata> pages = currentStatus.pages();
+            this.pages.clear();
+            if (pages != null) {
+                log.info("Reloaded metadata of {} pages", pages.size());
+                this.pages.putAll(pages);
+            }
+
+            generation = currentStatus.generation() != null ? currentStatus.generation() : 0;
+            List<StatusStorage.Change> storedChanges = statusStorage.getChanges(generation);
+            replaying = true;
+            try {
+                storedChanges.forEach(this::apply);
+            } finally {
+                replaying = false;
+            }
+            changesSinceSnapshot = storedChanges.size();
+            log.info("Replayed {} changes after the snapshot {}", storedChanges.size(), generation);
+
+            // all the urls that have not been committed must be processed again
+            this.pendingUrls.clear();
+            this.pendingUrls.addAll(this.remainingUrls);
+            this.remainingUrls.forEach(u -> log.info("Remaining {}", u));
         } else {
             log.info("No saved status found, starting from scratch");
         }
     }
 
+    private void apply(StatusStorage.Change change) {
+        String url = change.url();
+        switch (change.op()) {
+            case "add" -> addUrl(
+                    url,
+                    URLReference.Type.valueOf(change.type()),
+                    change.depth(),
+                    change.toScan());
+            case "processed" -> {
+                if (change.page() != null) {
+                    uncommittedPages.put(url, change.page());
+                }
+                urlProcessed(url);
+            }
+            // the error counters are not persisted
+            case "error" -> urls.remove(url);
+            case "removed" -> pageRemoved(url);
+            case "robots" -> storeRobotsFile(
+                    url, change.robots().content(), change.robots().contentType());
+            case "start" -> setLastIndexStartTimestamp(change.timestamp());
+            case "end" -> setLastIndexEndTimestamp(change.timestamp());
+            case "reset" -> reset();
+            default -> log.warn("Ignoring unknown change {}", change);
+        }
+    }
+
+    private void record(
+            String op,
+            String url,
+            URLReference.Type type,
+            Integer depth,
+            Boolean toScan,
+            StatusStorage.PageMetadata page,
+            StatusStorage.RobotsFile robots,
+            Long timestamp) {
+        if (!replaying) {
+            changes.add(
+                    new StatusStorage.Change(
+                            op,
+                            url,
+                            type != null ? type.name() : null,
+                            depth,
+                            toScan,
+                            page,
+                            robots,
+                            timestamp));
+        }
+    }
+
+    private void record(String op, String url) {
+        record(op, url, null, null, null, null, null, null);
+    }
+
     public Map<String, StatusStorage.RobotsFile> getRobotsFiles() {
         return robotsFiles;
     }
 
-    public void storeRobotsFile(String url, String robotsFile, String contentType) {
-        robotsFiles.put(url, new StatusStorage.RobotsFile(robotsFile, contentType));
+    public synchronized void storeRobotsFile(String url, String robotsFile, String contentType) {
+        StatusStorage.RobotsFile file = new StatusStorage.RobotsFile(robotsFile, contentType);
+        record("robots", url, null, null, null, null, file, null);
+        robotsFiles.put(url, file);
     }
 
     public long getLastIndexEndTimestamp() {
         return lastIndexEndTimestamp;
     }
 
-    public void setLastIndexEndTimestamp(long lastIndexEndTimestamp) {
+    public synchronized void setLastIndexEndTimestamp(long lastIndexEndTimestamp) {
+        record("end", null, null, null, null, null, null, lastIndexEndTimestamp);
         this.lastIndexEndTimestamp = lastIndexEndTimestamp;
     }
 
@@ -138,36 +249,61 @@ public class WebCrawlerStatus {
         return lastIndexStartTimestamp;
     }
 
-    public void setLastIndexStartTimestamp(long lastIndexStartTimestamp) {
+    public synchronized void setLastIndexStartTimestamp(long lastIndexStartTimestamp) {
+        record("start", null, null, null, null, null, null, lastIndexStartTimestamp);
         this.lastIndexStartTimestamp = lastIndexStartTimestamp;
     }
 
-    public void persist(StatusStorage statusStorage) throws Exception {
-        List<StatusStorage.StoreUrlReference> urlReferencesForStore =
-                urls.values().stream()
-                        .map(
-                                ref ->
-                                        new StatusStorage.StoreUrlReference(
-                                                ref.url(), ref.type().name(), ref.depth()))
-                        .collect(Collectors.toList());
+    /**
+     * Store the changes since the last call. The whole status is stored again only after a number
+     * of changes comparable to its size, then the appended changes are discarded.
+     */
+    public synchronized void persist(StatusStorage statusStorage) throws Exception {
+        long snapshotThreshold =
+                Math.max(MIN_CHANGES_BEFORE_SNAPSHOT, urls.size() + remainingUrls.size());
+        if (!forceSnapshot && changesSinceSnapshot + changes.size() < snapshotThreshold) {
+            if (changes.isEmpty()) {
+                return;
+            }
+            try {
+                if (statusStorage.appendChanges(generation, List.copyOf(changes))) {
+                    changesSinceSnapshot += changes.size();
+                    changes.clear();
+                    return;
+                }
+            } catch (Exception e) {
+                // the changes may have been partially written, the next checkpoint is a snapshot
+                forceSnapshot = true;
+                throw e;
+            }
+        }
+        long nextGeneration = generation + 1;
         statusStorage.storeStatus(
                 new StatusStorage.Status(
                         new ArrayList<>(remainingUrls),
-                        urlReferencesForStore,
+                        List.of(),
                         lastIndexEndTimestamp,
                         lastIndexStartTimestamp,
-                        new HashMap<>(robotsFiles)));
+                        new HashMap<>(robotsFiles),
+                        new HashMap<>(pages),
+                        urls.encode(),
+                        nextGeneration));
+        generation = nextGeneration;
+        changesSinceSnapshot = 0;
+        forceSnapshot = false;
+        changes.clear();
     }
 
-    public void addUrl(String url, URLReference.Type type, int depth, boolean toScan) {
+    public synchronized void addUrl(String url, URLReference.Type type, int depth, boolean toScan) {
 
         // the '#' character is used to identify a fragment in a URL
         // we have to remove it to avoid duplicates
         url = removeFragment(url);
 
-        boolean wasThere = urls.containsKey(url);
+        record("add", url, type, depth, toScan, null, null, null);
+        boolean wasThere = urls.contains(url);
         // update the depth if the url was already there
-        urls.put(url, new URLReference(url, type, depth));
+        urls.put(url, type, depth);
 
         if (toScan && !wasThere) {
             if (log.isDebugEnabled()) {
@@ -186,14 +322,14 @@ public class WebCrawlerStatus {
         return url;
     }
 
-    public String nextUrl() {
+    public synchronized String nextUrl() {
         if (log.isDebugEnabled()) {
             log.debug("PendingUrls: {} Uncommitted {}", pendingUrls.size(), remainingUrls.size());
         }
         return pendingUrls.poll();
     }
 
-    public void urlProcessed(String url) {
+    public synchronized void urlProcessed(String url) {
         // this method is called on "commit()", then the page has been successfully processed
         // downstream (for instance stored in the Vector database)
         if (log.isDebugEnabled()) {
@@ -204,10 +340,32 @@ public class WebCrawlerStatus {
         // forget the errors about the page
         url = removeFragment(url);
         errorCount.remove(url);
+
+        StatusStorage.PageMetadata metadata = uncommittedPages.remove(url);
+        if (metadata != null) {
+            pages.put(url, metadata);
+        }
+        record("processed", url, null, null, null, metadata, null, null);
+    }
+
+    public synchronized StatusStorage.PageMetadata getPageMetadata(String url) {
+        return pages.get(url);
+    }
+
+    /** The page has been fetched, its metadata is stored when it is committed. */
+    public synchronized void pageFetched(String url, StatusStorage.PageMetadata metadata) {
+        uncommittedPages.put(url, metadata);
+    }
+
+    /** The page doesn't exist anymore, it won't be visited again while re-indexing. */
+    public synchronized void pageRemoved(String url) {
+        record("removed", url);
+        pages.remove(url);
     }
 
-    public int temporaryErrorOnUrl(String url) {
+    public synchronized int temporaryErrorOnUrl(String url) {
         url = removeFragment(url);
+        record("error", url);
         urls.remove(url);
         return errorCount.compute(
                 url,
@@ -220,15 +378,18 @@ public class WebCrawlerStatus {
                 });
     }
 
-    public void reset() {
+    public synchronized void reset() {
+        record("reset", null);
         urls.clear();
         errorCount.clear();
         pendingUrls.clear();
         remainingUrls.clear();
         robotsFiles.clear();
+        // the metadata of the pages is kept, to detect the unchanged pages
+        uncommittedPages.clear();
     }
 
-    public URLReference getReference(String current) {
+    public synchronized URLReference getReference(String current) {
         URLReference reference = urls.get(current);
         if (reference == null) {
             throw new IllegalStateException("Unknown url " + current);
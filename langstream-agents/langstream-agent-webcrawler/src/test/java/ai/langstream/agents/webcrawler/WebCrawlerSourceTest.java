@@ -24,6 +24,7 @@ import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.testcontainers.containers.localstack.LocalStackContainer.Service.S3;
 
+import ai.langstream.agents.webcrawler.crawler.StatusStorage;
 import ai.langstream.agents.webcrawler.crawler.WebCrawler;
 import ai.langstream.agents.webcrawler.crawler.WebCrawlerStatus;
 import ai.langstream.api.runner.code.AgentCodeRegistry;
@@ -41,7 +42,9 @@ import io.minio.MinioClient;
 import io.minio.PutObjectArgs;
 import java.io.ByteArrayInputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -53,6 +56,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.testcontainers.containers.localstack.LocalStackContainer;
 import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
@@ -461,6 +465,35 @@ public class WebCrawlerSourceTest {
         return (WebCrawlerSource) agentSource;
     }
 
+    @Test
+    void testAppendChangesAfterATornLine(@TempDir Path directory) throws Exception {
+        Path journal = directory.resolve("status.changes.0");
+        WebCrawlerSource.appendChanges(journal, List.of(change("a"), change("b")));
+        // a crash while writing the next change
+        Files.write(
+                journal,
+                "{\"op\":\"add\",\"url\":\"htt".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+
+        assertEquals(
+                List.of("a", "b"),
+                WebCrawlerSource.readChanges(journal).stream()
+                        .map(StatusStorage.Change::url)
+                        .toList());
+
+        // the torn line has been dropped, the new changes are not lost
+        WebCrawlerSource.appendChanges(journal, List.of(change("c")));
+        assertEquals(
+                List.of("a", "b", "c"),
+                WebCrawlerSource.readChanges(journal).stream()
+                        .map(StatusStorage.Change::url)
+                        .toList());
+    }
+
+    private static StatusStorage.Change change(String url) {
+        return new StatusStorage.Change("add", url, "PAGE", 0, true, null, null, null);
+    }
+
     @Test
     void testRecoverFromWrongJsonFile() throws Exception {
         String bucket = "langstream-test-" + UUID.randomUUID();
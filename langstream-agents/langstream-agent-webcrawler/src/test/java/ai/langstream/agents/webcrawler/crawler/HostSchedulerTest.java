@@ -0,0 +1,65 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.agents.webcrawler.crawler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+
+class HostSchedulerTest {
+
+    @Test
+    void testOneRequestPerHost() {
+        HostScheduler scheduler = new HostScheduler();
+        scheduler.add("a", "http://a/1");
+        scheduler.add("a", "http://a/2");
+        scheduler.add("b", "http://b/1");
+        assertEquals(3, scheduler.size());
+
+        assertEquals("http://a/1", scheduler.next(0));
+        // host a is busy
+        assertEquals("http://b/1", scheduler.next(0));
+        assertNull(scheduler.next(0));
+        assertEquals(Long.MAX_VALUE, scheduler.nextReadyTime());
+
+        // host a can be fetched again after the politeness delay
+        scheduler.done("a", 100);
+        assertEquals(100, scheduler.nextReadyTime());
+        assertNull(scheduler.next(50));
+        assertEquals("http://a/2", scheduler.next(100));
+        assertEquals(0, scheduler.size());
+    }
+
+    @Test
+    void testRoundRobin() {
+        HostScheduler scheduler = new HostScheduler();
+        scheduler.add("a", "http://a/1");
+        scheduler.add("a", "http://a/2");
+        scheduler.add("b", "http://b/1");
+        scheduler.add("b", "http://b/2");
+
+        assertEquals("http://a/1", scheduler.next(0));
+        scheduler.done("a", 0);
+        assertEquals("http://b/1", scheduler.next(0));
+        scheduler.done("b", 0);
+        assertEquals("http://a/2", scheduler.next(0));
+        scheduler.done("a", 0);
+        assertEquals("http://b/2", scheduler.next(0));
+        scheduler.done("b", 0);
+        assertNull(scheduler.next(0));
+    }
+}
@@ -17,6 +17,8 @@ package ai.langstream.agents.webcrawler.crawler;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import org.junit.jupiter.api.Test;
@@ -151,6 +153,83 @@ class WebCrawlerStatusTest {
         verify(status, 2, 0, 0);
     }
 
+    @Test
+    public void testVisitedUrls() {
+        VisitedUrls urls = new VisitedUrls();
+        for (int i = 0; i < 1000; i++) {
+            urls.put("https://site/page" + i, URLReference.Type.PAGE, i % 5);
+        }
+        urls.put(URL1, URLReference.Type.ROBOTS, 7);
+        assertEquals(1000, urls.size());
+        assertEquals(new URLReference(URL1, URLReference.Type.ROBOTS, 7), urls.get(URL1));
+        for (int i = 0; i < 1000; i += 2) {
+            urls.remove("https://site/page" + i);
+        }
+        assertEquals(500, urls.size());
+
+        VisitedUrls decoded = new VisitedUrls();
+        decoded.decode(urls.encode());
+        assertEquals(500, decoded.size());
+        for (int i = 0; i < 1000; i++) {
+            String url = "https://site/page" + i;
+            assertEquals(i % 2 == 1, decoded.contains(url), url);
+        }
+        assertEquals(new URLReference(URL3, URLReference.Type.PAGE, 3), decoded.get(URL3));
+        assertNull(decoded.get(URL2));
+    }
+
+    @Test
+    public void testReplayChanges() throws Exception {
+        JournalStorage storage = new JournalStorage();
+        WebCrawlerStatus status = new WebCrawlerStatus();
+        status.addUrl(URL1, URLReference.Type.PAGE, 0, true);
+        status.addUrl(URL2, URLReference.Type.PAGE, 1, true);
+        status.persist(storage);
+        assertEquals(0, storage.snapshots);
+        assertEquals(2, storage.changes.size());
+
+        String url = status.nextUrl();
+        status.pageFetched(url, new StatusStorage.PageMetadata("etag", null, "hash", 0));
+        status.urlProcessed(url);
+        status.addUrl(URL3, URLReference.Type.PAGE, 1, true);
+        status.persist(storage);
+        assertEquals(0, storage.snapshots);
+        assertEquals(4, storage.changes.size());
+
+        // nothing to store
+        status.persist(storage);
+        assertEquals(4, storage.changes.size());
+
+        status = new WebCrawlerStatus();
+        status.reloadFrom(storage);
+        verify(status, 3, 2, 2);
+        assertEquals(URL2, status.nextUrl());
+        assertEquals("etag", status.getPageMetadata(URL1).etag());
+        assertEquals(1, status.getReference(URL3).depth());
+    }
+
+    @Test
+    public void testCompaction() throws Exception {
+        JournalStorage storage = new JournalStorage();
+        WebCrawlerStatus status = new WebCrawlerStatus();
+        for (int i = 0; i < WebCrawlerStatus.MIN_CHANGES_BEFORE_SNAPSHOT; i++) {
+            status.addUrl("https://site/page" + i, URLReference.Type.PAGE, 0, false);
+        }
+        status.persist(storage);
+        assertEquals(1, storage.snapshots);
+        assertTrue(storage.changes.isEmpty());
+        assertEquals(1, storage.status.generation());
+
+        status.addUrl(URL1, URLReference.Type.PAGE, 0, true);
+        status.persist(storage);
+        assertEquals(1, storage.snapshots);
+        assertEquals(1, storage.changes.size());
+
+        status = new WebCrawlerStatus();
+        status.reloadFrom(storage);
+        verify(status, WebCrawlerStatus.MIN_CHANGES_BEFORE_SNAPSHOT + 1, 1, 1);
+    }
+
     private static void verify(WebCrawlerStatus status, int visited, int pending, int remaining) {
         assertEquals(pending, status.getPendingUrls().size());
         assertEquals(visited, status.getUrls().size());
@@ -170,7 +249,42 @@ class WebCrawlerStatusTest {
         public Status getCurrentStatus() {
             return lastMetadata != null
                     ? lastMetadata
-                    : new Status(List.of(), List.of(), null, null, Map.of());
+                    : new Status(List.of(), List.of(), null, null, Map.of(), Map.of(), null, null);
+        }
+    }
+
+    private static class JournalStorage implements StatusStorage {
+
+        private Status status;
+        private int snapshots;
+        private final Map<Long, List<Change>> changesByGeneration = new HashMap<>();
+        private List<Change> changes = new ArrayList<>();
+
+        @Override
+        public void storeStatus(Status status) {
+            this.status = status;
+            snapshots++;
+            changes =
+                    changesByGeneration.computeIfAbsent(
+                            status.generation(), g -> new ArrayList<>());
+        }
+
+        @Override
+        public boolean appendChanges(long generation, List<Change> changes) {
+            changesByGeneration.computeIfAbsent(generation, g -> this.changes).addAll(changes);
+            return true;
+        }
+
+        @Override
+        public List<Change> getChanges(long generation) {
+            return changesByGeneration.getOrDefault(generation, List.of());
+        }
+
+        @Override
+        public Status getCurrentStatus() {
+            return status != null
+                    ? status
+                    : new Status(List.of(), List.of(), null, null, Map.of(), Map.of(), null, null);
         }
     }
 }
@@ -16,6 +16,7 @@
 package ai.langstream.agents.webcrawler.crawler;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
 import static com.github.tomakehurst.wiremock.client.WireMock.get;
 import static com.github.tomakehurst.wiremock.client.WireMock.notFound;
 import static com.github.tomakehurst.wiremock.client.WireMock.okForContentType;
@@ -24,12 +25,21 @@ import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.temporaryRedirect;
 import static org.junit.jupiter.api.Assertions.*;
 
+import ai.langstream.api.runner.code.MetricsReporter;
 import com.github.tomakehurst.wiremock.http.Fault;
 import com.github.tomakehurst.wiremock.junit5.WireMockRuntimeInfo;
 import com.github.tomakehurst.wiremock.junit5.WireMockTest;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
 import org.junit.jupiter.api.Test;
 
 @WireMockTest
@@ -322,4 +332,204 @@ class WebCrawlerTest {
         assertEquals(0, status.getPendingUrls().size());
         assertEquals(2, status.getUrls().size());
     }
+
+    @Test
+    void testConcurrentFetches(WireMockRuntimeInfo vmRuntimeInfo) throws Exception {
+        // the same server is reached with two host names
+        String otherHost = "http://127.0.0.1:" + vmRuntimeInfo.getHttpPort();
+        stubFor(
+                get("/index.html")
+                        .willReturn(
+                                okForContentType(
+                                        "text/html",
+                                        """
+                                  <a href="a.html">link</a>
+                                  <a href="%s/b.html">link</a>
+                                  <a href="%s/c.html">link</a>
+                              """
+                                                .formatted(otherHost, otherHost))));
+        for (String page : List.of("/a.html", "/b.html", "/c.html")) {
+            stubFor(
+                    get(page)
+                            .willReturn(
+                                    okForContentType("text/html", "ok " + page)
+                                            .withFixedDelay(1000)));
+        }
+
+        WebCrawlerConfiguration configuration =
+                WebCrawlerConfiguration.builder()
+                        .allowedDomains(Set.of(vmRuntimeInfo.getHttpBaseUrl(), otherHost))
+                        .handleRobotsFile(false)
+                        .minTimeBetweenRequests(0)
+                        .maxConcurrentFetches(4)
+                        .build();
+        WebCrawlerStatus status = new WebCrawlerStatus();
+        List<Document> documents = new ArrayList<>();
+        WebCrawler crawler = new WebCrawler(configuration, status, documents::add);
+        crawler.crawl(vmRuntimeInfo.getHttpBaseUrl() + "/index.html");
+
+        long start = System.currentTimeMillis();
+        int cycles = 0;
+        while (crawler.runCycle()) {
+            assertTrue(cycles++ < 1000);
+        }
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertEquals(4, documents.size());
+        assertEquals(vmRuntimeInfo.getHttpBaseUrl() + "/index.html", documents.get(0).url());
+        Set<String> urls = new HashSet<>();
+        documents.forEach(d -> urls.add(d.url()));
+        assertEquals(
+                Set.of(
+                        vmRuntimeInfo.getHttpBaseUrl() + "/index.html",
+                        vmRuntimeInfo.getHttpBaseUrl() + "/a.html",
+                        otherHost + "/b.html",
+                        otherHost + "/c.html"),
+                urls);
+        assertEquals(0, status.getPendingUrls().size());
+        // a.html is fetched together with b.html, but b.html and c.html are on the same host
+        assertTrue(elapsed < 2800, "elapsed " + elapsed);
+        assertTrue(elapsed >= 2000, "elapsed " + elapsed);
+    }
+
+    @Test
+    void testUnencodedLinksAndCompressedPages(WireMockRuntimeInfo vmRuntimeInfo) throws Exception {
+        ByteArrayOutputStream index = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(index)) {
+            out.write(
+                    """
+                    <a href="page with spaces.html">link</a>
+                    <a href="a|b.html">link</a>
+                    <a href="list[1].html">link</a>
+                    <a href="{x}.html">link</a>
+                    """
+                            .getBytes(StandardCharsets.UTF_8));
+        }
+        stubFor(
+                get("/index.html")
+                        .willReturn(
+                                aResponse()
+                                        .withHeader("Content-Type", "text/html")
+                                        .withHeader("Content-Encoding", "gzip")
+                                        .withBody(index.toByteArray())));
+        for (String page :
+                List.of(
+                        "/page%20with%20spaces.html",
+                        "/a%7Cb.html",
+                        "/list%5B1%5D.html",
+                        "/%7Bx%7D.html")) {
+            stubFor(get(page).willReturn(okForContentType("text/html", "ok " + page)));
+        }
+
+        WebCrawlerConfiguration configuration =
+                WebCrawlerConfiguration.builder()
+                        .allowedDomains(Set.of(vmRuntimeInfo.getHttpBaseUrl()))
+                        .handleRobotsFile(false)
+                        .minTimeBetweenRequests(0)
+                        .build();
+        WebCrawlerStatus status = new WebCrawlerStatus();
+        List<Document> documents = new ArrayList<>();
+        WebCrawler crawler = new WebCrawler(configuration, status, documents::add);
+        crawler.crawl(vmRuntimeInfo.getHttpBaseUrl() + "/index.html");
+        int cycles = 0;
+        while (crawler.runCycle()) {
+            assertTrue(cycles++ < 100);
+        }
+
+        assertEquals(5, documents.size());
+        assertTrue(documents.get(0).content().contains("page with spaces.html"));
+        for (Document document : documents.subList(1, documents.size())) {
+            assertTrue(document.content().contains("ok /"), document.content());
+        }
+        assertEquals(0, status.getPendingUrls().size());
+    }
+
+    @Test
+    void testToUri() {
+        assertEquals(
+                "http://host/a%20b%7Cc%5B1%5D%7Bx%7D.html?q=%C3%A9#f%23",
+                WebCrawler.toUri("http://host/a b|c[1]{x}.html?q=é#f#").toString());
+        // the escape sequences and the IPv6 addresses are kept
+        assertEquals(
+                "http://[::1]:8080/a%20b%25",
+                WebCrawler.toUri("http://[::1]:8080/a%20b%").toString());
+        assertEquals(
+                "http://host/a?b=c&d=%20", WebCrawler.toUri("http://host/a?b=c&d=%20").toString());
+    }
+
+    @Test
+    void testReindexSkipsUnchangedPages(WireMockRuntimeInfo vmRuntimeInfo) throws Exception {
+        stubFor(
+                get("/index.html")
+                        .willReturn(
+                                okForContentType(
+                                                "text/html",
+                                                """
+                                  <a href="same.html">link</a>
+                                  <a href="changed.html">link</a>
+                              """)
+                                        .withHeader("ETag", "\"v1\"")));
+        stubFor(get("/same.html").willReturn(okForContentType("text/html", "same")));
+        stubFor(get("/changed.html").willReturn(okForContentType("text/html", "first")));
+
+        WebCrawlerConfiguration configuration =
+                WebCrawlerConfiguration.builder()
+                        .allowedDomains(Set.of(vmRuntimeInfo.getHttpBaseUrl()))
+                        .handleRobotsFile(false)
+                        .minTimeBetweenRequests(0)
+                        .build();
+        WebCrawlerStatus status = new WebCrawlerStatus();
+        List<Document> documents = new ArrayList<>();
+        WebCrawler crawler = new WebCrawler(configuration, status, documents::add);
+        Map<String, AtomicLong> metrics = new HashMap<>();
+        crawler.setMetricsReporter(
+                (name, help) -> {
+                    AtomicLong value = metrics.computeIfAbsent(name, n -> new AtomicLong());
+                    return new MetricsReporter.Counter() {
+                        @Override
+                        public void count(long delta) {
+                            value.addAndGet(delta);
+                        }
+
+                        @Override
+                        public long value() {
+                            return value.get();
+                        }
+                    };
+                });
+        String index = vmRuntimeInfo.getHttpBaseUrl() + "/index.html";
+        crawler.crawl(index);
+        crawlAndCommit(crawler, documents);
+        assertEquals(3, documents.size());
+        assertEquals(3, metrics.get("webcrawler_new_pages").get());
+        assertEquals("\"v1\"", status.getPageMetadata(index).etag());
+
+        // the index answers to the conditional request, the other pages are compared by hash
+        stubFor(
+                get("/index.html")
+                        .withHeader("If-None-Match", equalTo("\"v1\""))
+                        .willReturn(aResponse().withStatus(304)));
+        stubFor(get("/changed.html").willReturn(okForContentType("text/html", "second")));
+        documents.clear();
+        crawler.restartIndexing(Set.of(index));
+        crawlAndCommit(crawler, documents);
+
+        assertEquals(1, documents.size());
+        assertEquals(vmRuntimeInfo.getHttpBaseUrl() + "/changed.html", documents.get(0).url());
+        assertEquals(3, metrics.get("webcrawler_new_pages").get());
+        assertEquals(1, metrics.get("webcrawler_changed_pages").get());
+        assertEquals(2, metrics.get("webcrawler_unchanged_pages").get());
+        assertEquals(0, status.getRemainingUrls().size());
+    }
+
+    private static void crawlAndCommit(WebCrawler crawler, List<Document> documents)
+            throws Exception {
+        int committed = 0;
+        while (crawler.runCycle()) {
+            // like Source.commit()
+            for (; committed < documents.size(); committed++) {
+                crawler.getStatus().urlProcessed(documents.get(committed).url());
+            }
+        }
+    }
 }
@@ -103,6 +103,23 @@ public class MutableRecord {
         return copy;
     }
 
+    /**
+     * Copy the key, the headers and the metadata of the record, without the value. This is cheaper
+     * than {@link #copy()} when the value is going to be replaced.
+     */
+    public MutableRecord copyWithoutValue() {
+        MutableRecord copy = new MutableRecord();
+        copy.keyObject = safeClone(keyObject);
+        copy.properties = properties != null ? new HashMap<>(properties) : new HashMap<>();
+        copy.key = key;
+        copy.keySchemaType = keySchemaType;
+        copy.keyNativeSchema = keyNativeSchema;
+        copy.inputTopic = inputTopic;
+        copy.outputTopic = outputTopic;
+        copy.eventTime = eventTime;
+        return copy;
+    }
+
     public void convertMapToStringOrBytes() throws JsonProcessingException {
         if (valueObject instanceof Map) {
             if (valueSchemaType == TransformSchemaType.STRING) {
@@ -0,0 +1,588 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.ai.agents.commons.jstl;
+
+import jakarta.el.ELContext;
+import jakarta.el.ELException;
+import jakarta.el.PropertyNotFoundException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntPredicate;
+import org.apache.el.lang.ELSupport;
+import org.apache.el.util.MessageFactory;
+
+/**
+ * Compiles the most common expressions (field access, comparisons, boolean operators, the
+ * conditional operator and fn: functions) into a tree of lambdas, in order to skip the EL
+ * interpreter.
+ *
+ * <p>The nodes reproduce the semantics of the corresponding nodes of the Tomcat EL implementation,
+ * using the same coercion rules ({@link ELSupport} and the resolvers of the context), so that a
+ * compiled expression gives the same result of the interpreted one. Anything else (arithmetic,
+ * method calls, lambdas, composite expressions...) is not compiled and {@link #compile} returns
+ * null.
+ */
+final class CompiledExpression {
+
+    /** A node of the compiled expression. */
+    @FunctionalInterface
+    interface Node {
+        Object eval(ELContext context, JstlTransformContextAdapter record);
+    }
+
+    private static final class UnsupportedExpressionException extends RuntimeException {
+        UnsupportedExpressionException() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static final UnsupportedExpressionException UNSUPPORTED =
+            new UnsupportedExpressionException();
+
+    private final String text;
+    private final Map<String, Method> functions;
+    private final List<Token> tokens = new ArrayList<>();
+    private int position;
+
+    private CompiledExpression(String text, Map<String, Method> functions) {
+        this.text = text;
+        this.functions = functions;
+    }
+
+    /**
+     * Compile an expression in the form ${...}.
+     *
+     * @return the compiled expression, or null if the expression is not supported
+     */
+    static Node compile(String expression, Map<String, Method> functions) {
+        if (!expression.startsWith("${") || !expression.endsWith("}")) {
+            return null;
+        }
+        String body = expression.substring(2, expression.length() - 1);
+        if (body.contains("${") || body.contains("#{")) {
+            return null;
+        }
+        try {
+            CompiledExpression compiler = new CompiledExpression(body, functions);
+            compiler.tokenize();
+            Node node = compiler.parseChoice();
+            if (compiler.position != compiler.tokens.size()) {
+                return null;
+            }
+            return node;
+        } catch (UnsupportedExpressionException e) {
+            return null;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------
+    // Tokens
+
+    private enum TokenType {
+        IDENTIFIER,
+        STRING,
+        LONG,
+        DOUBLE,
+        SYMBOL
+    }
+
+    private record Token(TokenType type, String text, Object value) {
+        boolean is(String symbol) {
+            return type == TokenType.SYMBOL && text.equals(symbol);
+        }
+    }
+
+    private void tokenize() {
+        int i = 0;
+        int length = text.length();
+        while (i < length) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '\'' || c == '"') {
+                i = readString(i, c);
+            } else if (Character.isDigit(c)) {
+                i = readNumber(i);
+            } else if (Character.isJavaIdentifierStart(c)) {
+                int start = i;
+                while (i < length && Character.isJavaIdentifierPart(text.charAt(i))) {
+                    i++;
+                }
+                String word = text.substring(start, i);
+                switch (word) {
+                    case "and" -> tokens.add(symbol("&&"));
+                    case "or" -> tokens.add(symbol("||"));
+                    case "not" -> tokens.add(symbol("!"));
+                    case "eq" -> tokens.add(symbol("=="));
+                    case "ne" -> tokens.add(symbol("!="));
+                    case "lt" -> tokens.add(symbol("<"));
+                    case "gt" -> tokens.add(symbol(">"));
+                    case "le" -> tokens.add(symbol("<="));
+                    case "ge" -> tokens.add(symbol(">="));
+                    case "true", "false", "null" -> tokens.add(symbol(word));
+                    case "empty", "div", "mod", "instanceof" -> throw UNSUPPORTED;
+                    default -> tokens.add(new Token(TokenType.IDENTIFIER, word, null));
+                }
+            } else {
+                String two = i + 1 < length ? text.substring(i, i + 2) : "";
+                switch (two) {
+                    case "==", "!=", "<=", ">=", "&&", "||" -> {
+                        tokens.add(symbol(two));
+                        i += 2;
+                        continue;
+                    }
+                    case "->", "+=" -> throw UNSUPPORTED;
+                    default -> {}
+                }
+                switch (c) {
+                    case '<', '>', '!', '(', ')', '[', ']', '.', ',', ':', '?', '-' -> {
+                        tokens.add(symbol(String.valueOf(c)));
+                        i++;
+                    }
+                    default -> throw UNSUPPORTED;
+                }
+            }
+        }
+    }
+
+    private static Token symbol(String text) {
+        return new Token(TokenType.SYMBOL, text, null);
+    }
+
+    private int readString(int start, char quote) {
+        StringBuilder value = new StringBuilder();
+        int i = start + 1;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (c == quote) {
+                String token = text.substring(start, i + 1);
+                tokens.add(new Token(TokenType.STRING, token, value.toString()));
+                return i + 1;
+            }
+            if (c == '\\' && i + 1 < text.length()) {
+                char next = text.charAt(i + 1);
+                if (next == '\\' || next == '\'' || next == '"') {
+                    value.append(next);
+                    i += 2;
+                    continue;
+                }
+            }
+            value.append(c);
+            i++;
+        }
+        throw UNSUPPORTED;
+    }
+
+    private int readNumber(int start) {
+        int i = start;
+        int length = text.length();
+        while (i < length && Character.isDigit(text.charAt(i))) {
+            i++;
+        }
+        boolean floatingPoint = false;
+        if (i + 1 < length && text.charAt(i) == '.' && Character.isDigit(text.charAt(i + 1))) {
+            floatingPoint = true;
+            i++;
+            while (i < length && Character.isDigit(text.charAt(i))) {
+                i++;
+            }
+        }
+        if (i < length && (text.charAt(i) == 'e' || text.charAt(i) == 'E')) {
+            floatingPoint = true;
+            i++;
+            if (i < length && (text.charAt(i) == '+' || text.charAt(i) == '-')) {
+                i++;
+            }
+            if (i >= length || !Character.isDigit(text.charAt(i))) {
+                throw UNSUPPORTED;
+            }
+            while (i < length && Character.isDigit(text.charAt(i))) {
+                i++;
+            }
+        }
+        if (i < length && (text.charAt(i) == '.' || Character.isLetter(text.charAt(i)))) {
+            throw UNSUPPORTED;
+        }
+        String number = text.substring(start, i);
+        try {
+            if (floatingPoint) {
+                double value = Double.parseDouble(number);
+                if (Double.isInfinite(value)) {
+                    // the interpreter uses a BigDecimal
+                    throw UNSUPPORTED;
+                }
+                tokens.add(new Token(TokenType.DOUBLE, number, value));
+            } else {
+                // the interpreter uses a BigInteger for bigger numbers
+                tokens.add(new Token(TokenType.LONG, number, Long.parseLong(number)));
+            }
+        } catch (NumberFormatException e) {
+            throw UNSUPPORTED;
+        }
+        return i;
+    }
+
+    private Token peek() {
+        return position < tokens.size() ? tokens.get(position) : null;
+    }
+
+    private boolean accept(String symbol) {
+        Token token = peek();
+        if (token != null && token.is(symbol)) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(String symbol) {
+        if (!accept(symbol)) {
+            throw UNSUPPORTED;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------
+    // Parser, one method per precedence level
+
+    private Node parseChoice() {
+        Node condition = parseOr();
+        if (!accept("?")) {
+            return condition;
+        }
+        Node whenTrue = parseChoice();
+        expect(":");
+        Node whenFalse = parseChoice();
+        return (context, record) ->
+                ELSupport.coerceToBoolean(context, condition.eval(context, record), true)
+                        ? whenTrue.eval(context, record)
+                        : whenFalse.eval(context, record);
+    }
+
+    private Node parseOr() {
+        Node left = parseAnd();
+        while (accept("||")) {
+            Node first = left;
+            Node second = parseAnd();
+            left =
+                    (context, record) -> {
+                        Object value = first.eval(context, record);
+                        Boolean b = ELSupport.coerceToBoolean(context, value, true);
+                        if (b) {
+                            return b;
+                        }
+                        return ELSupport.coerceToBoolean(
+                                context, second.eval(context, record), true);
+                    };
+        }
+        return left;
+    }
+
+    private Node parseAnd() {
+        Node left = parseEquality();
+        while (accept("&&")) {
+            Node first = left;
+            Node second = parseEquality();
+            left =
+                    (context, record) -> {
+                        Object value = first.eval(context, record);
+                        Boolean b = ELSupport.coerceToBoolean(context, value, true);
+                        if (!b) {
+                            return b;
+                        }
+                        return ELSupport.coerceToBoolean(
+                                context, second.eval(context, record), true);
+                    };
+        }
+        return left;
+    }
+
+    private Node parseEquality() {
+        Node left = parseRelational();
+        while (true) {
+            Node first = left;
+            if (accept("==")) {
+                Node second = parseRelational();
+                left =
+                        (context, record) ->
+                                ELSupport.equals(
+                                        context,
+                                        first.eval(context, record),
+                                        second.eval(context, record));
+            } else if (accept("!=")) {
+                Node second = parseRelational();
+                left =
+                        (context, record) ->
+                                !ELSupport.equals(
+                                        context,
+                                        first.eval(context, record),
+                                        second.eval(context, record));
+            } else {
+                return left;
+            }
+        }
+    }
+
+    private Node parseRelational() {
+        Node left = parseUnary();
+        while (true) {
+            Node first = left;
+            if (accept("<")) {
+                Node second = parseUnary();
+                left = compare(first, second, false, c -> c < 0);
+            } else if (accept(">")) {
+                Node second = parseUnary();
+                left = compare(first, second, false, c -> c > 0);
+            } else if (accept("<=")) {
+                Node second = parseUnary();
+                left = compare(first, second, true, c -> c <= 0);
+            } else if (accept(">=")) {
+                Node second = parseUnary();
+                left = compare(first, second, true, c -> c >= 0);
+            } else {
+                return left;
+            }
+        }
+    }
+
+    /**
+     * Compare like the interpreter: a null operand makes the comparison false, the same object
+     * satisfies <= and >=.
+     */
+    private static Node compare(Node first, Node second, boolean orEqual, IntPredicate test) {
+        return (context, record) -> {
+            Object obj0 = first.eval(context, record);
+            if (obj0 == null && !orEqual) {
+                return Boolean.FALSE;
+            }
+            Object obj1 = second.eval(context, record);
+            if (orEqual && obj0 == obj1) {
+                return Boolean.TRUE;
+            }
+            if (obj0 == null || obj1 == null) {
+                return Boolean.FALSE;
+            }
+            return test.test(ELSupport.compare(context, obj0, obj1));
+        };
+    }
+
+    private Node parseUnary() {
+        if (accept("!")) {
+            Node operand = parseUnary();
+            return (context, record) ->
+                    !ELSupport.coerceToBoolean(context, operand.eval(context, record), true);
+        }
+        if (accept("-")) {
+            // only negative number literals
+            Token token = peek();
+            if (token == null || (token.type != TokenType.LONG && token.type != TokenType.DOUBLE)) {
+                throw UNSUPPORTED;
+            }
+            position++;
+            Object value =
+                    token.type == TokenType.LONG
+                            ? (Object) (-(Long) token.value)
+                            : (Object) (-(Double) token.value);
+            return constant(value);
+        }
+        return parseValue();
+    }
+
+    private static Node constant(Object value) {
+        return (context, record) -> value;
+    }
+
+    private Node parseValue() {
+        Token token = peek();
+        if (token == null) {
+            throw UNSUPPORTED;
+        }
+        position++;
+        switch (token.type) {
+            case STRING, LONG, DOUBLE:
+                return constant(token.value);
+            case SYMBOL:
+                switch (token.text) {
+                    case "true":
+                        return constant(Boolean.TRUE);
+                    case "false":
+                        return constant(Boolean.FALSE);
+                    case "null":
+                        return constant(null);
+                    case "(":
+                        Node inner = parseChoice();
+                        expect(")");
+                        return parseSuffixes(inner);
+                    default:
+                        throw UNSUPPORTED;
+                }
+            case IDENTIFIER:
+                if (isFunctionCall()) {
+                    position++;
+                    return parseSuffixes(parseFunction(token.text));
+                }
+                return parseSuffixes(variable(token.text));
+            default:
+                throw UNSUPPORTED;
+        }
+    }
+
+    private static Node variable(String name) {
+        return switch (name) {
+            case "key" -> (context, record) -> record.getKey();
+            case "value" -> (context, record) -> record.adaptValue();
+            case "record" -> (context, record) -> record.adaptRecord();
+            case "messageKey",
+                    "topicName",
+                    "destinationTopic",
+                    "eventTime",
+                    "properties" -> (context, record) -> record.getHeader().get(name);
+            default -> throw UNSUPPORTED;
+        };
+    }
+
+    /** Property access, see AstValue. */
+    private Node parseSuffixes(Node base) {
+        Node result = base;
+        while (true) {
+            Node suffix;
+            if (accept(".")) {
+                Token name = peek();
+                if (name == null || name.type != TokenType.IDENTIFIER) {
+                    throw UNSUPPORTED;
+                }
+                position++;
+                suffix = constant(name.text);
+            } else if (accept("[")) {
+                suffix = parseChoice();
+                expect("]");
+            } else {
+                return result;
+            }
+            if (peek() != null && peek().is("(")) {
+                // method invocation
+                throw UNSUPPORTED;
+            }
+            Node target = result;
+            Node property = suffix;
+            result =
+                    (context, record) -> {
+                        Object object = target.eval(context, record);
+                        if (object == null) {
+                            return null;
+                        }
+                        Object key = property.eval(context, record);
+                        if (key == null) {
+                            return null;
+                        }
+                        if (object instanceof Map<?, ?> map) {
+                            return map.get(key);
+                        }
+                        context.setPropertyResolved(false);
+                        Object value = context.getELResolver().getValue(context, object, key);
+                        if (!context.isPropertyResolved()) {
+                            throw new PropertyNotFoundException(
+                                    MessageFactory.get("error.resolver.unhandled", object, key));
+                        }
+                        return value;
+                    };
+        }
+    }
+
+    /** Whether the identifier just consumed is the prefix of prefix:name(...). */
+    private boolean isFunctionCall() {
+        return position + 2 < tokens.size()
+                && tokens.get(position).is(":")
+                && tokens.get(position + 1).type == TokenType.IDENTIFIER
+                && tokens.get(position + 2).is("(");
+    }
+
+    /** Function invocation, see AstFunction. */
+    private Node parseFunction(String prefix) {
+        Token name = peek();
+        if (!"fn".equals(prefix) || name == null || name.type != TokenType.IDENTIFIER) {
+            throw UNSUPPORTED;
+        }
+        position++;
+        Method method = functions.get(name.text);
+        if (method == null) {
+            throw UNSUPPORTED;
+        }
+        expect("(");
+        List<Node> arguments = new ArrayList<>();
+        if (!accept(")")) {
+            do {
+                arguments.add(parseChoice());
+            } while (accept(","));
+            expect(")");
+        }
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        int count = parameterTypes.length;
+        boolean varArgs = method.isVarArgs();
+        if (varArgs ? arguments.size() <= count : arguments.size() != count) {
+            // corner cases of the varargs handling are left to the interpreter
+            if (!(count == 0 && arguments.isEmpty())) {
+                throw UNSUPPORTED;
+            }
+        }
+        Node[] argumentNodes = arguments.toArray(new Node[0]);
+        String functionName = prefix + ":" + name.text;
+        return (context, record) -> {
+            Object[] parameters = null;
+            if (count > 0) {
+                parameters = new Object[count];
+                try {
+                    for (int i = 0; i < count; i++) {
+                        if (varArgs && i == count - 1) {
+                            Class<?> componentType = parameterTypes[i].getComponentType();
+                            Object[] rest = new Object[argumentNodes.length - i];
+                            for (int j = i; j < argumentNodes.length; j++) {
+                                rest[j - i] =
+                                        ELSupport.coerceToType(
+                                                context,
+                                                argumentNodes[j].eval(context, record),
+                                                componentType);
+                            }
+                            parameters[i] =
+                                    ELSupport.coerceToType(context, rest, parameterTypes[i]);
+                        } else {
+                            parameters[i] =
+                                    ELSupport.coerceToType(
+                                            context,
+                                            argumentNodes[i].eval(context, record),
+                                            parameterTypes[i]);
+                        }
+                    }
+                } catch (ELException e) {
+                    throw new ELException(MessageFactory.get("error.function", functionName), e);
+                }
+            }
+            try {
+                return method.invoke(null, parameters);
+            } catch (IllegalAccessException e) {
+                throw new ELException(MessageFactory.get("error.function", functionName), e);
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof VirtualMachineError error) {
+                    throw error;
+                }
+                throw new ELException(MessageFactory.get("error.function", functionName), cause);
+            }
+        };
+    }
+}
@@ -17,251 +17,197 @@ package ai.langstream.ai.agents.commons.jstl;
 
 import ai.langstream.ai.agents.commons.MutableRecord;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.el.ArrayELResolver;
+import jakarta.el.CompositeELResolver;
 import jakarta.el.ELContext;
+import jakarta.el.ELResolver;
 import jakarta.el.ExpressionFactory;
+import jakarta.el.FunctionMapper;
+import jakarta.el.ListELResolver;
+import jakarta.el.MapELResolver;
 import jakarta.el.PropertyNotFoundException;
+import jakarta.el.ResourceBundleELResolver;
+import jakarta.el.StaticFieldELResolver;
 import jakarta.el.ValueExpression;
+import jakarta.el.VariableMapper;
+import java.beans.FeatureDescriptor;
 import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import lombok.Getter;
+import lombok.Setter;
 import lombok.SneakyThrows;
 import org.apache.el.ExpressionFactoryImpl;
 
+/**
+ * Evaluates an expression against a record.
+ *
+ * <p>The expression is parsed once, when the evaluator is created. Every evaluation uses its own
+ * lightweight {@link ELContext} that resolves the top level variables (key, value, properties...)
+ * lazily from the record, so an evaluator can be shared by concurrent evaluations.
+ *
+ * <p>Simple expressions (field access, comparisons, boolean operators and fn: functions) are also
+ * compiled by {@link CompiledExpression} and evaluated without the EL interpreter. The compiled
+ * form can be disabled with the system property {@code langstream.jstl.compiled-expressions}, or
+ * for a single evaluator with {@link #JstlEvaluator(String, Class, boolean)}.
+ */
 public class JstlEvaluator<T> {
 
     private static final ExpressionFactory FACTORY = new ExpressionFactoryImpl();
+    private static final Map<String, Method> FUNCTIONS = registerFunctions();
+    private static final ELResolver RESOLVER = buildResolver();
+    private static final Object NOT_A_VARIABLE = new Object();
+
+    @Getter
+    @Setter
+    private static volatile boolean compiledExpressions =
+            Boolean.parseBoolean(
+                    System.getProperty("langstream.jstl.compiled-expressions", "true"));
+
     private final ValueExpression valueExpression;
     private final String expression;
-    private final ELContext expressionContext;
+    private final Class<? extends T> type;
+    // null if the expression is not supported by the compiler
+    private final CompiledExpression.Node compiled;
 
     public JstlEvaluator(String expression, Class<? extends T> type) {
-        this.expressionContext = new StandardContext(FACTORY);
+        this(expression, type, compiledExpressions);
+    }
+
+    /**
+     * @param compile false in order to always use the EL interpreter
+     */
+    public JstlEvaluator(String expression, Class<? extends T> type, boolean compile) {
         this.expression =
                 expression.startsWith("${") && expression.endsWith("}")
                         ? expression.substring(2, expression.length() - 1)
                         : expression;
-        registerFunctions();
-        this.valueExpression = FACTORY.createValueExpression(expressionContext, expression, type);
+        // the context is used only to bind the functions while parsing
+        ELContext compileContext = new StandardContext(FACTORY);
+        FunctionMapper functionMapper = compileContext.getFunctionMapper();
+        FUNCTIONS.forEach((name, method) -> functionMapper.mapFunction("fn", name, method));
+        this.valueExpression = FACTORY.createValueExpression(compileContext, expression, type);
+        this.type = type;
+        this.compiled = compile ? CompiledExpression.compile(expression, FUNCTIONS) : null;
+    }
+
+    /**
+     * @return true if the expression is evaluated without the EL interpreter
+     */
+    public boolean isCompiled() {
+        return compiled != null;
     }
 
     @SneakyThrows
-    private void registerFunctions() {
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction("fn", "toJson", JstlFunctions.class.getMethod("toJson", Object.class));
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction(
-                        "fn", "fromJson", JstlFunctions.class.getMethod("fromJson", Object.class));
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction(
-                        "fn",
-                        "split",
-                        JstlFunctions.class.getMethod("split", Object.class, Object.class));
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction(
-                        "fn",
-                        "unpack",
-                        JstlFunctions.class.getMethod("unpack", Object.class, Object.class));
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction(
-                        "fn",
-                        "uppercase",
-                        JstlFunctions.class.getMethod("uppercase", Object.class));
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction(
-                        "fn",
-                        "lowercase",
-                        JstlFunctions.class.getMethod("lowercase", Object.class));
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction(
-                        "fn",
-                        "contains",
-                        JstlFunctions.class.getMethod("contains", Object.class, Object.class));
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction("fn", "trim", JstlFunctions.class.getMethod("trim", Object.class));
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction(
-                        "fn", "concat", JstlFunctions.class.getMethod("concat", Object[].class));
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction(
-                        "fn",
-                        "concat3",
-                        JstlFunctions.class.getMethod(
-                                "concat3", Object.class, Object.class, Object.class));
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction(
-                        "fn",
-                        "coalesce",
-                        JstlFunctions.class.getMethod("coalesce", Object.class, Object.class));
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction("fn", "str", JstlFunctions.class.getMethod("toString", Object.class));
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction(
-                        "fn", "toString", JstlFunctions.class.getMethod("toString", Object.class));
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction(
-                        "fn", "toDouble", JstlFunctions.class.getMethod("toDouble", Object.class));
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction(
-                        "fn",
-                        "filter",
-                        JstlFunctions.class.getMethod("filter", Object.class, String.class));
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction(
-                        "fn",
-                        "addAll",
-                        JstlFunctions.class.getMethod("addAll", Object.class, Object.class));
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction(
-                        "fn", "listOf", JstlFunctions.class.getMethod("listOf", Object[].class));
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction("fn", "emptyList", JstlFunctions.class.getMethod("emptyList"));
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction(
-                        "fn",
-                        "mapToListOfStructs",
-                        JstlFunctions.class.getMethod(
-                                "mapToListOfStructs", Object.class, String.class));
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction(
-                        "fn",
-                        "listToListOfStructs",
-                        JstlFunctions.class.getMethod(
-                                "listToListOfStructs", Object.class, String.class));
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction(
-                        "fn",
-                        "listAdd",
-                        JstlFunctions.class.getMethod("listAdd", Object.class, Object.class));
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction("fn", "emptyMap", JstlFunctions.class.getMethod("emptyMap"));
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction(
-                        "fn",
-                        "mapPut",
-                        JstlFunctions.class.getMethod(
-                                "mapPut", Object.class, Object.class, Object.class));
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction("fn", "mapOf", JstlFunctions.class.getMethod("mapOf", Object[].class));
-
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction(
-                        "fn",
-                        "mapRemove",
-                        JstlFunctions.class.getMethod("mapRemove", Object.class, Object.class));
-
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction("fn", "toInt", JstlFunctions.class.getMethod("toInt", Object.class));
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction(
-                        "fn",
-                        "toListOfFloat",
-                        JstlFunctions.class.getMethod("toListOfFloat", Object.class));
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction("fn", "toLong", JstlFunctions.class.getMethod("toLong", Object.class));
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction(
-                        "fn",
-                        "replace",
-                        JstlFunctions.class.getMethod(
-                                "replace", Object.class, Object.class, Object.class));
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction("fn", "now", JstlFunctions.class.getMethod("now"));
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction("fn", "uuid", JstlFunctions.class.getMethod("uuid"));
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction("fn", "random", JstlFunctions.class.getMethod("random", Object.class));
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction(
-                        "fn",
-                        "timestampAdd",
-                        JstlFunctions.class.getMethod(
-                                "timestampAdd", Object.class, Object.class, Object.class));
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction(
-                        "fn",
-                        "toSQLTimestamp",
-                        JstlFunctions.class.getMethod("toSQLTimestamp", Object.class));
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction(
-                        "fn",
-                        "decimalFromUnscaled",
-                        JstlFunctions.class.getMethod("toBigDecimal", Object.class, Object.class));
-
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction(
-                        "fn",
-                        "decimalFromNumber",
-                        JstlFunctions.class.getMethod("toBigDecimal", Object.class));
+    private static Map<String, Method> registerFunctions() {
+        Map<String, Method> functions = new LinkedHashMap<>();
+        functions.put("toJson", JstlFunctions.class.getMethod("toJson", Object.class));
+        functions.put("fromJson", JstlFunctions.class.getMethod("fromJson", Object.class));
+        functions.put("split", JstlFunctions.class.getMethod("split", Object.class, Object.class));
+        functions.put(
+                "unpack", JstlFunctions.class.getMethod("unpack", Object.class, Object.class));
+        functions.put("uppercase", JstlFunctions.class.getMethod("uppercase", Object.class));
+        functions.put("lowercase", JstlFunctions.class.getMethod("lowercase", Object.class));
+        functions.put(
+                "contains", JstlFunctions.class.getMethod("contains", Object.class, Object.class));
+        functions.put("trim", JstlFunctions.class.getMethod("trim", Object.class));
+        functions.put("concat", JstlFunctions.class.getMethod("concat", Object[].class));
+        functions.put(
+                "concat3",
+                JstlFunctions.class.getMethod(
+                        "concat3", Object.class, Object.class, Object.class));
+        functions.put(
+                "coalesce", JstlFunctions.class.getMethod("coalesce", Object.class, Object.class));
+        functions.put("str", JstlFunctions.class.getMethod("toString", Object.class));
+        functions.put("toString", JstlFunctions.class.getMethod("toString", Object.class));
+        functions.put("toDouble", JstlFunctions.class.getMethod("toDouble", Object.class));
+        functions.put(
+                "filter", JstlFunctions.class.getMethod("filter", Object.class, String.class));
+        functions.put(
+                "addAll", JstlFunctions.class.getMethod("addAll", Object.class, Object.class));
+        functions.put("listOf", JstlFunctions.class.getMethod("listOf", Object[].class));
+        functions.put("emptyList", JstlFunctions.class.getMethod("emptyList"));
+        functions.put(
+                "mapToListOfStructs",
+                JstlFunctions.class.getMethod(
+                        "mapToListOfStructs", Object.class, String.class));
+        functions.put(
+                "listToListOfStructs",
+                JstlFunctions.class.getMethod(
+                        "listToListOfStructs", Object.class, String.class));
+        functions.put(
+                "listAdd", JstlFunctions.class.getMethod("listAdd", Object.class, Object.class));
+        functions.put("emptyMap", JstlFunctions.class.getMethod("emptyMap"));
+        functions.put(
+                "mapPut",
+                JstlFunctions.class.getMethod(
+                        "mapPut", Object.class, Object.class, Object.class));
+        functions.put("mapOf", JstlFunctions.class.getMethod("mapOf", Object[].class));
+        functions.put(
+                "mapRemove",
+                JstlFunctions.class.getMethod(
+                        "mapRemove", Object.class, Object.class));
+        functions.put("toInt", JstlFunctions.class.getMethod("toInt", Object.class));
+        functions.put(
+                "toListOfFloat", JstlFunctions.class.getMethod("toListOfFloat", Object.class));
+        functions.put("toLong", JstlFunctions.class.getMethod("toLong", Object.class));
+        functions.put(
+                "replace",
+                JstlFunctions.class.getMethod(
+                        "replace", Object.class, Object.class, Object.class));
+        functions.put("now", JstlFunctions.class.getMethod("now"));
+        functions.put("uuid", JstlFunctions.class.getMethod("uuid"));
+        functions.put("random", JstlFunctions.class.getMethod("random", Object.class));
+        functions.put(
+                "timestampAdd",
+                JstlFunctions.class.getMethod(
+                        "timestampAdd", Object.class, Object.class, Object.class));
+        functions.put(
+                "toSQLTimestamp", JstlFunctions.class.getMethod("toSQLTimestamp", Object.class));
+        functions.put(
+                "decimalFromUnscaled",
+                JstlFunctions.class.getMethod(
+                        "toBigDecimal", Object.class, Object.class));
+        functions.put(
+                "decimalFromNumber", JstlFunctions.class.getMethod("toBigDecimal", Object.class));
 
         // Deprecated
-        this.expressionContext
-                .getFunctionMapper()
-                .mapFunction(
-                        "fn",
-                        "dateadd",
-                        JstlFunctions.class.getMethod(
-                                "dateadd", Object.class, Object.class, Object.class));
+        functions.put(
+                "dateadd",
+                JstlFunctions.class.getMethod(
+                        "dateadd", Object.class, Object.class, Object.class));
+        return functions;
+    }
+
+    /** Same resolvers of {@link StandardContext}, the variables are resolved per evaluation. */
+    private static ELResolver buildResolver() {
+        CompositeELResolver resolver = new CompositeELResolver();
+        ELResolver streamResolver = FACTORY.getStreamELResolver();
+        if (streamResolver != null) {
+            resolver.add(streamResolver);
+        }
+        resolver.add(JstlTypeConverter.INSTANCE);
+        resolver.add(new StaticFieldELResolver());
+        resolver.add(new MapELResolver());
+        resolver.add(new ResourceBundleELResolver());
+        resolver.add(new ListELResolver());
+        resolver.add(new ArrayELResolver());
+        resolver.add(new DisabledInvocationBeanResolver());
+        return resolver;
     }
 
     public T evaluate(MutableRecord mutableRecord) {
         JstlTransformContextAdapter adapter = new JstlTransformContextAdapter(mutableRecord);
-        FACTORY.createValueExpression(expressionContext, "${key}", Object.class)
-                .setValue(expressionContext, adapter.getKey());
-        FACTORY.createValueExpression(expressionContext, "${value}", Object.class)
-                .setValue(expressionContext, adapter.adaptValue());
-
-        // this is only for fn:filter
-        FACTORY.createValueExpression(expressionContext, "${record}", Object.class)
-                .setValue(expressionContext, adapter.adaptRecord());
-
-        // Register message headers as top level fields
-        FACTORY.createValueExpression(expressionContext, "${messageKey}", String.class)
-                .setValue(expressionContext, adapter.getHeader().get("messageKey"));
-        FACTORY.createValueExpression(expressionContext, "${topicName}", String.class)
-                .setValue(expressionContext, adapter.getHeader().get("topicName"));
-        FACTORY.createValueExpression(expressionContext, "${destinationTopic}", String.class)
-                .setValue(expressionContext, adapter.getHeader().get("destinationTopic"));
-        FACTORY.createValueExpression(expressionContext, "${eventTime}", Long.class)
-                .setValue(expressionContext, adapter.getHeader().get("eventTime"));
-        FACTORY.createValueExpression(expressionContext, "${properties}", Map.class)
-                .setValue(expressionContext, adapter.getHeader().get("properties"));
+        EvaluationContext context =
+                new EvaluationContext(name -> resolveRecordVariable(adapter, name));
         try {
-            return this.valueExpression.getValue(expressionContext);
+            if (compiled != null) {
+                return context.convertToType(compiled.eval(context, adapter), type);
+            }
+            return this.valueExpression.getValue(context);
         } catch (PropertyNotFoundException notFound) {
 
             // this is a very common error, so we provide a better error message
@@ -285,18 +231,174 @@ public class JstlEvaluator<T> {
         }
     }
 
-    public T evaluateRawContext(Map<String, Object> context) {
-        for (Map.Entry<String, Object> stringObjectEntry : context.entrySet()) {
-            FACTORY.createValueExpression(
-                            expressionContext,
-                            "${%s}".formatted(stringObjectEntry.getKey()),
-                            Object.class)
-                    .setValue(expressionContext, stringObjectEntry.getValue());
+    private static Object resolveRecordVariable(JstlTransformContextAdapter adapter, String name) {
+        switch (name) {
+            case "key":
+                return adapter.getKey();
+            case "value":
+                return adapter.adaptValue();
+            case "record":
+                // this is only for fn:filter
+                return adapter.adaptRecord();
+            case "messageKey":
+            case "topicName":
+            case "destinationTopic":
+            case "eventTime":
+            case "properties":
+                // message headers are top level fields
+                return adapter.getHeader().get(name);
+            default:
+                return NOT_A_VARIABLE;
         }
-        return this.valueExpression.getValue(expressionContext);
+    }
+
+    public T evaluateRawContext(Map<String, Object> context) {
+        return this.valueExpression.getValue(
+                new EvaluationContext(
+                        name -> context.containsKey(name) ? context.get(name) : NOT_A_VARIABLE));
     }
 
     public String toString() {
         return "JstlEvaluator(expression=" + this.expression + ")";
     }
+
+    private interface Variables {
+        /**
+         * @return the value of the variable, or NOT_A_VARIABLE
+         */
+        Object resolve(String name);
+    }
+
+    private static final FunctionMapper NO_FUNCTIONS =
+            new FunctionMapper() {
+                @Override
+                public Method resolveFunction(String prefix, String localName) {
+                    return null;
+                }
+            };
+
+    private static final VariableMapper NO_VARIABLES =
+            new VariableMapper() {
+                @Override
+                public ValueExpression resolveVariable(String variable) {
+                    return null;
+                }
+
+                @Override
+                public ValueExpression setVariable(String variable, ValueExpression expression) {
+                    throw new UnsupportedOperationException();
+                }
+            };
+
+    /**
+     * The context of one evaluation. The functions are bound to the expression at parse time, so
+     * it only has to resolve the top level identifiers.
+     */
+    private static final class EvaluationContext extends ELContext {
+        private final Variables variables;
+        private final ELResolver resolver = new VariablesResolver();
+        // values assigned by the expression itself, e.g. ${x = 1; x + 1}
+        private Map<String, Object> assigned;
+
+        EvaluationContext(Variables variables) {
+            this.variables = variables;
+        }
+
+        @Override
+        public ELResolver getELResolver() {
+            return resolver;
+        }
+
+        @Override
+        public FunctionMapper getFunctionMapper() {
+            return NO_FUNCTIONS;
+        }
+
+        @Override
+        public VariableMapper getVariableMapper() {
+            return NO_VARIABLES;
+        }
+
+        private Object resolveVariable(String name) {
+            if (assigned != null && assigned.containsKey(name)) {
+                return assigned.get(name);
+            }
+            return variables.resolve(name);
+        }
+
+        private final class VariablesResolver extends ELResolver {
+
+            @Override
+            public Object getValue(ELContext context, Object base, Object property) {
+                if (base == null && property instanceof String name) {
+                    Object value = resolveVariable(name);
+                    if (value != NOT_A_VARIABLE) {
+                        context.setPropertyResolved(true);
+                        return value;
+                    }
+                }
+                return RESOLVER.getValue(context, base, property);
+            }
+
+            @Override
+            public Class<?> getType(ELContext context, Object base, Object property) {
+                if (base == null && property instanceof String name) {
+                    Object value = resolveVariable(name);
+                    if (value != NOT_A_VARIABLE) {
+                        context.setPropertyResolved(true);
+                        return value == null ? Object.class : value.getClass();
+                    }
+                }
+                return RESOLVER.getType(context, base, property);
+            }
+
+            @Override
+            public void setValue(ELContext context, Object base, Object property, Object value) {
+                if (base == null && property instanceof String name) {
+                    if (assigned == null) {
+                        assigned = new HashMap<>();
+                    }
+                    assigned.put(name, value);
+                    context.setPropertyResolved(true);
+                    return;
+                }
+                RESOLVER.setValue(context, base, property, value);
+            }
+
+            @Override
+            public boolean isReadOnly(ELContext context, Object base, Object property) {
+                if (base == null && property instanceof String) {
+                    context.setPropertyResolved(true);
+                    return false;
+                }
+                return RESOLVER.isReadOnly(context, base, property);
+            }
+
+            @Override
+            public Object invoke(
+                    ELContext context,
+                    Object base,
+                    Object method,
+                    Class<?>[] paramTypes,
+                    Object[] params) {
+                return RESOLVER.invoke(context, base, method, paramTypes, params);
+            }
+
+            @Override
+            public <C> C convertToType(ELContext context, Object obj, Class<C> type) {
+                return RESOLVER.convertToType(context, obj, type);
+            }
+
+            @Override
+            public Class<?> getCommonPropertyType(ELContext context, Object base) {
+                return base == null ? String.class : RESOLVER.getCommonPropertyType(context, base);
+            }
+
+            // deprecated in EL 5.0, not declared with @Override so that it compiles with EL 6
+            public Iterator<FeatureDescriptor> getFeatureDescriptors(
+                    ELContext context, Object base) {
+                return null;
+            }
+        }
+    }
 }
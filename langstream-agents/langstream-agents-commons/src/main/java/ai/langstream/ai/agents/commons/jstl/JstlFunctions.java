@@ -32,6 +32,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -46,6 +47,11 @@ public class JstlFunctions {
 
     @Setter private static Clock clock = Clock.systemUTC();
 
+    // fn:filter is evaluated for every record, with the expression usually written in the
+    // pipeline, so the predicates are compiled once
+    private static final int MAX_CACHED_FILTERS = 1000;
+    private static final Map<String, JstlPredicate> FILTERS = new ConcurrentHashMap<>();
+
     public static String uppercase(Object input) {
         return input == null ? null : toString(input).toUpperCase();
     }
@@ -297,7 +303,7 @@ public class JstlFunctions {
                     "fn:filter cannot filter object of type " + input.getClass().getName());
         }
         List<Object> result = new ArrayList<>();
-        JstlPredicate predicate = new JstlPredicate(expression);
+        JstlPredicate predicate = filterPredicate(expression);
         for (Object o : source) {
             if (log.isDebugEnabled()) {
                 log.info("Filtering object {}", o);
@@ -318,6 +324,19 @@ public class JstlFunctions {
         return result;
     }
 
+    private static JstlPredicate filterPredicate(String expression) {
+        JstlPredicate predicate = FILTERS.get(expression);
+        if (predicate == null) {
+            predicate = new JstlPredicate(expression);
+            if (FILTERS.size() >= MAX_CACHED_FILTERS) {
+                // the expressions are built dynamically, don't grow without bounds
+                FILTERS.clear();
+            }
+            FILTERS.put(expression, predicate);
+        }
+        return predicate;
+    }
+
     public static boolean contains(Object input, Object value) {
         if (input == null || value == null) {
             return false;
@@ -13,7 +13,7 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-package ai.langstream.agents.text;
+package ai.langstream.ai.agents.commons.text;
 
 public interface LengthFunction {
 
@@ -13,12 +13,13 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-package ai.langstream.agents.text;
+package ai.langstream.ai.agents.commons.text;
 
 import com.knuddels.jtokkit.Encodings;
 import com.knuddels.jtokkit.api.Encoding;
 import com.knuddels.jtokkit.api.EncodingRegistry;
 import com.knuddels.jtokkit.api.EncodingType;
+import java.util.List;
 
 /** Java implementation of <a href="https://github.com/openai/tiktoken">tiktoken</a>. */
 public class TiktokenLengthFunction implements LengthFunction {
@@ -41,4 +42,20 @@ public class TiktokenLengthFunction implements LengthFunction {
         Encoding enc = REGISTRY.getEncoding(encodingType);
         return enc.countTokens(text);
     }
+
+    /**
+     * Truncate the text to the given number of tokens.
+     *
+     * @param text the text
+     * @param maxTokens the maximum number of tokens
+     * @return the text itself if it fits, otherwise the decoded prefix of maxTokens tokens
+     */
+    public String truncate(String text, int maxTokens) {
+        Encoding enc = REGISTRY.getEncoding(encodingType);
+        List<Integer> tokens = enc.encode(text);
+        if (tokens.size() <= maxTokens) {
+            return text;
+        }
+        return enc.decode(tokens.subList(0, Math.max(0, maxTokens)));
+    }
 }
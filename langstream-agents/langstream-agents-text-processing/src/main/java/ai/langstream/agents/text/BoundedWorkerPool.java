@@ -0,0 +1,248 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.agents.text;
+
+import ai.langstream.api.runner.code.Record;
+import ai.langstream.api.runner.code.RecordSink;
+import ai.langstream.api.runner.code.SpooledValue;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Processes the records of an agent on a pool of daemon threads, at most maxConcurrency at a time.
+ * {@link #submit} blocks while the pool is full, so that the runner stops reading records instead
+ * of queueing them in memory.
+ *
+ * <p>A record that is not processed within the timeout is failed and its slot is given back. The
+ * worker is interrupted; if the processing ignores the interrupt, the worker is abandoned until it
+ * returns, a new one takes its place, and the late result is discarded. At most maxConcurrency
+ * workers are abandoned: past that a timed out worker keeps its slot, and {@link #submit} blocks
+ * until it returns, so the pool never runs more than twice maxConcurrency threads.
+ */
+@Slf4j
+final class BoundedWorkerPool implements AutoCloseable {
+
+    @FunctionalInterface
+    interface Processor {
+        List<Record> processRecord(Record record) throws Exception;
+    }
+
+    @FunctionalInterface
+    interface Emitter {
+        void emit(Record record, List<Record> result, Throwable error, RecordSink recordSink);
+    }
+
+    private final String name;
+    private final long timeoutMillis;
+    private final Processor processor;
+    private final Emitter emitter;
+    private final Semaphore permits;
+    private final Semaphore abandonedPermits;
+    private final ThreadPoolExecutor executor;
+    private final ScheduledExecutorService timeouts;
+    private final AtomicInteger abandonedWorkers = new AtomicInteger();
+
+    BoundedWorkerPool(
+            String name,
+            int maxConcurrency,
+            long timeoutMillis,
+            Processor processor,
+            Emitter emitter) {
+        this.name = name;
+        this.timeoutMillis = timeoutMillis;
+        this.processor = processor;
+        this.emitter = emitter;
+        int workers = Math.max(1, maxConcurrency);
+        this.permits = new Semaphore(workers);
+        this.abandonedPermits = new Semaphore(workers);
+        // the permits bound the running and the abandoned records, a task is queued only while
+        // a worker that gave back its permit is still returning to the pool
+        this.executor =
+                new ThreadPoolExecutor(
+                        workers * 2,
+                        workers * 2,
+                        60,
+                        TimeUnit.SECONDS,
+                        new LinkedBlockingQueue<>(),
+                        daemonThreads(name + "-"));
+        this.executor.allowCoreThreadTimeOut(true);
+        this.timeouts =
+                timeoutMillis > 0
+                        ? Executors.newSingleThreadScheduledExecutor(
+                                daemonThreads(name + "-timeouts"))
+                        : null;
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger threads = new AtomicInteger();
+        boolean numbered = prefix.endsWith("-");
+        return r -> {
+            Thread thread = new Thread(r, numbered ? prefix + threads.incrementAndGet() : prefix);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Process the record on a worker, waiting for a free slot. If the calling thread is interrupted
+     * while waiting, the record is failed.
+     */
+    void submit(Record record, RecordSink recordSink) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            emitter.emit(record, null, e, recordSink);
+            return;
+        }
+        try {
+            executor.execute(new Task(record, recordSink));
+        } catch (RuntimeException e) {
+            permits.release();
+            emitter.emit(record, null, e, recordSink);
+        }
+    }
+
+    /** The workers still busy with a record that timed out. */
+    int getAbandonedWorkers() {
+        return abandonedWorkers.get();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        if (timeouts != null) {
+            timeouts.shutdownNow();
+        }
+    }
+
+    /** Processes one record, the outcome is reported only once. */
+    private class Task implements Runnable {
+        private final Record record;
+        private final RecordSink recordSink;
+        private Thread worker;
+        private boolean completed;
+        private boolean abandoned;
+
+        Task(Record record, RecordSink recordSink) {
+            this.record = record;
+            this.recordSink = recordSink;
+        }
+
+        @Override
+        public void run() {
+            synchronized (this) {
+                worker = Thread.currentThread();
+            }
+            ScheduledFuture<?> timeout =
+                    timeouts != null
+                            ? timeouts.schedule(
+                                    this::timeout, timeoutMillis, TimeUnit.MILLISECONDS)
+                            : null;
+            List<Record> result = null;
+            Throwable error = null;
+            try {
+                result = processor.processRecord(record);
+            } catch (Throwable e) {
+                error = e;
+            } finally {
+                if (timeout != null) {
+                    timeout.cancel(false);
+                }
+            }
+            if (complete()) {
+                permits.release();
+                emitter.emit(record, result, error, recordSink);
+            } else {
+                if (abandoned) {
+                    abandonedPermits.release();
+                } else {
+                    permits.release();
+                }
+                int stillAbandoned = abandonedWorkers.decrementAndGet();
+                log.info(
+                        "Discarding the late result of record {}, {} workers still abandoned",
+                        record,
+                        stillAbandoned);
+                if (result != null) {
+                    result.forEach(r -> discard(r.value()));
+                }
+            }
+        }
+
+        private void timeout() {
+            synchronized (this) {
+                if (completed) {
+                    return;
+                }
+                completed = true;
+                // a worker that checks the interrupted flag stops, the others keep running until
+                // the end of the record, and the result is discarded
+                worker.interrupt();
+                // past the limit the worker keeps its permit, and no new thread is started
+                abandoned = abandonedPermits.tryAcquire();
+            }
+            int abandonedCount = abandonedWorkers.incrementAndGet();
+            if (abandoned) {
+                log.error(
+                        "Timeout processing record {} on {}, {} workers abandoned",
+                        record,
+                        name,
+                        abandonedCount);
+                permits.release();
+            } else {
+                log.error(
+                        "Timeout processing record {} on {}, {} workers abandoned, waiting for"
+                                + " a worker to return before processing more records",
+                        record,
+                        name,
+                        abandonedCount);
+            }
+            emitter.emit(
+                    record,
+                    null,
+                    new TimeoutException("Processing did not complete in " + timeoutMillis + " ms"),
+                    recordSink);
+        }
+
+        private boolean complete() {
+            synchronized (this) {
+                boolean first = !completed;
+                completed = true;
+                worker = null;
+                // clear the interrupt sent by a timeout, the worker is reused
+                Thread.interrupted();
+                return first;
+            }
+        }
+    }
+
+    static void discard(Object value) {
+        if (value instanceof SpooledValue spooled) {
+            spooled.close();
+        }
+    }
+}
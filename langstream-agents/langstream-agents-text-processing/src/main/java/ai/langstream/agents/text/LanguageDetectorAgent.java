@@ -16,18 +16,29 @@
 package ai.langstream.agents.text;
 
 import ai.langstream.api.runner.code.Record;
+import ai.langstream.api.runner.code.RecordSink;
 import ai.langstream.api.runner.code.SimpleRecord;
 import ai.langstream.api.runner.code.SingleRecordAgentProcessor;
+import ai.langstream.api.util.ConfigurationUtils;
+import java.io.IOException;
+import java.io.Reader;
 import java.util.List;
 import java.util.Map;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.tika.langdetect.tika.LanguageIdentifier;
+import org.apache.tika.langdetect.tika.ProfilingWriter;
 
+/**
+ * Detects the language of the records on a bounded pool of workers, {@link #process} blocks when
+ * they are all busy. The language profiles are loaded once by Tika and shared. The whole text is
+ * profiled unless a sample-size is configured, to bound the time spent on long documents.
+ */
 @Slf4j
 public class LanguageDetectorAgent extends SingleRecordAgentProcessor {
 
     private String property = "language";
     private List<String> allowedLanguages;
+    private int sampleSize;
+    private BoundedWorkerPool workers;
 
     @Override
     public void init(Map<String, Object> configuration) {
@@ -39,27 +50,48 @@ public class LanguageDetectorAgent extends SingleRecordAgentProcessor {
         } else {
             allowedLanguages = List.of();
         }
+        sampleSize = ConfigurationUtils.getInt("sample-size", 0, configuration);
+        int maxConcurrentDetections =
+                ConfigurationUtils.getInt("max-concurrent-detections", 1, configuration);
         log.info(
-                "Configuring Language Detectors with field {} and allowed languages {}",
+                "Configuring Language Detectors with field {} and allowed languages {}, "
+                        + "sample size {}",
                 property,
-                allowedLanguages);
+                allowedLanguages,
+                sampleSize);
+        workers =
+                new BoundedWorkerPool(
+                        "language-detector",
+                        maxConcurrentDetections,
+                        0,
+                        this::processRecord,
+                        this::emit);
     }
 
     @Override
-    public List<Record> processRecord(Record record) {
+    public void process(List<Record> records, RecordSink recordSink) {
+        if (records == null || records.isEmpty()) {
+            throw new IllegalStateException("Records cannot be null or empty");
+        }
+        for (Record record : records) {
+            workers.submit(record, recordSink);
+        }
+    }
+
+    @Override
+    public List<Record> processRecord(Record record) throws IOException {
         if (record == null) {
             return List.of();
         }
-        String inputText = Utils.toText(record.value());
-
-        LanguageIdentifier identifier = new LanguageIdentifier(inputText);
-        String language = identifier.getLanguage();
+        String language = detectLanguage(record.value(), sampleSize);
 
         if (!allowedLanguages.isEmpty() && !allowedLanguages.contains(language)) {
-            log.info(
-                    "Skipping record with language {} not in allowed languages {}",
-                    language,
-                    allowedLanguages);
+            if (log.isDebugEnabled()) {
+                log.debug(
+                        "Skipping record with language {} not in allowed languages {}",
+                        language,
+                        allowedLanguages);
+            }
             return List.of();
         }
 
@@ -73,4 +105,33 @@ public class LanguageDetectorAgent extends SingleRecordAgentProcessor {
 
         return List.of(result);
     }
+
+    /**
+     * Detect the language of the first sampleSize characters of the value, or of the whole text if
+     * sampleSize is not positive. The text is profiled while it is read, without copying it.
+     */
+    static String detectLanguage(Object value, int sampleSize) throws IOException {
+        ProfilingWriter profile = new ProfilingWriter();
+        try (Reader reader = Utils.toReader(value)) {
+            char[] buffer = new char[4096];
+            long remaining = sampleSize > 0 ? sampleSize : Long.MAX_VALUE;
+            while (remaining > 0) {
+                int read = reader.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read < 0) {
+                    break;
+                }
+                profile.write(buffer, 0, read);
+                remaining -= read;
+            }
+        }
+        profile.close();
+        return profile.getLanguage().getLanguage();
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (workers != null) {
+            workers.close();
+        }
+    }
 }
@@ -23,6 +23,10 @@ import java.util.regex.Pattern;
 
 public class RecursiveCharacterTextSplitter extends TextSplitter {
     private final List<String> separators;
+    // compiled once, null for the empty separator
+    private final Pattern[] patterns;
+    // the length of the separator used to merge the splits
+    private final int[] separatorLengths;
 
     public RecursiveCharacterTextSplitter(
             List<String> separators,
@@ -32,55 +36,76 @@ public class RecursiveCharacterTextSplitter extends TextSplitter {
             Function<String, Integer> lengthFunction) {
         super(chunkSize, chunkOverlap, lengthFunction, keepSeparator, false);
         this.separators = separators != null ? separators : Arrays.asList("\n\n", "\n", " ", "");
+        this.patterns = new Pattern[this.separators.size()];
+        this.separatorLengths = new int[this.separators.size()];
+        for (int i = 0; i < this.separators.size(); i++) {
+            String separator = this.separators.get(i);
+            patterns[i] = separator.isEmpty() ? null : Pattern.compile(separator);
+            separatorLengths[i] = lengthFunction.apply(keepSeparator ? "" : separator);
+        }
     }
 
-    private List<String> splitText(String text, List<String> separators) {
-        List<String> finalChunks = new ArrayList<>();
-        String separator = separators.get(separators.size() - 1);
-        List<String> newSeparators = new ArrayList<>();
-        for (int i = 0; i < separators.size(); i++) {
-            String s = separators.get(i);
-            if (s.isEmpty()) {
-                separator = s;
+    /** Split the range [start, end) of the text, using the separators from firstSeparator on. */
+    private void splitText(
+            String text, int start, int end, int firstSeparator, List<String> finalChunks) {
+        int separator = separators.size() - 1;
+        // the separators for the splits that are still too long, -1 if there are no more
+        int nextSeparator = -1;
+        for (int i = firstSeparator; i < separators.size(); i++) {
+            if (patterns[i] == null) {
+                separator = i;
                 break;
             }
-            if (Pattern.compile(s).matcher(text).find()) {
-                separator = s;
-                newSeparators = separators.subList(i + 1, separators.size());
+            if (patterns[i].matcher(text).region(start, end).find()) {
+                separator = i;
+                nextSeparator = i + 1 < separators.size() ? i + 1 : -1;
                 break;
             }
         }
-        List<String> splits = splitTextWithRegex(text, separator, keepSeparator);
-        List<String> goodSplits = new ArrayList<>();
-        String separatorToUse = keepSeparator ? "" : separator;
+        Splits splits = Splits.split(text, start, end, patterns[separator], keepSeparator);
+        String separatorToUse = keepSeparator ? "" : separators.get(separator);
+        int goodSplits = 0;
 
-        for (String s : splits) {
-            if (lengthFunction.apply(s) < chunkSize) {
-                goodSplits.add(s);
-            } else {
-                if (!goodSplits.isEmpty()) {
-                    List<String> mergedText = mergeSplits(goodSplits, separatorToUse);
-                    finalChunks.addAll(mergedText);
-                    goodSplits.clear();
+        for (int i = 0; i < splits.size(); i++) {
+            // every split is measured only once, the merge reuses the length
+            String s = splits.substring(i);
+            int length = lengthFunction.apply(s);
+            splits.setLength(i, length);
+            if (length >= chunkSize) {
+                if (i > goodSplits) {
+                    mergeSplits(
+                            splits,
+                            goodSplits,
+                            i,
+                            separatorToUse,
+                            separatorLengths[separator],
+                            finalChunks);
                 }
-                if (newSeparators.isEmpty()) {
+                if (nextSeparator < 0) {
                     finalChunks.add(s);
                 } else {
-                    List<String> otherInfo = splitText(s, newSeparators);
-                    finalChunks.addAll(otherInfo);
+                    splitText(text, splits.start(i), splits.end(i), nextSeparator, finalChunks);
                 }
+                goodSplits = i + 1;
             }
         }
 
-        if (!goodSplits.isEmpty()) {
-            List<String> mergedText = mergeSplits(goodSplits, separatorToUse);
-            finalChunks.addAll(mergedText);
+        if (splits.size() > goodSplits) {
+            mergeSplits(
+                    splits,
+                    goodSplits,
+                    splits.size(),
+                    separatorToUse,
+                    separatorLengths[separator],
+                    finalChunks);
         }
-
-        return finalChunks;
     }
 
     public List<String> splitText(String text) {
-        return splitText(text, separators);
+        List<String> finalChunks = new ArrayList<>();
+        if (!separators.isEmpty()) {
+            splitText(text, 0, text.length(), 0, finalChunks);
+        }
+        return finalChunks;
     }
 }
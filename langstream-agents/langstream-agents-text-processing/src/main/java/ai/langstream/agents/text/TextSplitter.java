@@ -91,21 +91,43 @@ public abstract class TextSplitter {
     }
 
     protected List<String> mergeSplits(List<String> splits, String separator) {
+        Splits ranges = new Splits(String.join("", splits));
+        int start = 0;
+        for (String split : splits) {
+            ranges.add(start, start + split.length());
+            ranges.setLength(ranges.size() - 1, lengthFunction.apply(split));
+            start += split.length();
+        }
         List<String> docs = new ArrayList<>();
-        List<String> currentDoc = new ArrayList<>();
+        mergeSplits(ranges, 0, ranges.size(), separator, lengthFunction.apply(separator), docs);
+        return docs;
+    }
+
+    /**
+     * Merge the splits in [from, to) into chunks of at most chunkSize, adding them to docs. The
+     * splits must be already measured.
+     */
+    protected void mergeSplits(
+            Splits splits,
+            int from,
+            int to,
+            String separator,
+            int separatorLen,
+            List<String> docs) {
+        // the current document is the window [head, i) of the splits
+        int head = from;
         int total = 0;
-        int separatorLen = lengthFunction.apply(separator);
 
-        for (String d : splits) {
-            int len = lengthFunction.apply(d);
-            if (total + len + (currentDoc.size() > 0 ? separatorLen : 0) > chunkSize) {
+        for (int i = from; i < to; i++) {
+            int len = splits.length(i);
+            if (total + len + (i > head ? separatorLen : 0) > chunkSize) {
                 if (total > chunkSize) {
                     log.warn(
                             "Created a chunk of size %d, which is longer than the specified %d"
                                     .formatted(total, chunkSize));
                 }
-                if (!currentDoc.isEmpty()) {
-                    String doc = joinDocs(currentDoc, separator);
+                if (i > head) {
+                    String doc = splits.join(head, i, separator);
                     if (doc != null) {
                         docs.add(doc);
                     }
@@ -113,62 +135,163 @@ public abstract class TextSplitter {
                     // - we have a larger chunk than in the chunk overlap
                     // - or if we still have any chunks and the length is long
                     while (total > chunkOverlap
-                            || (total + len + (currentDoc.size() > 0 ? separatorLen : 0) > chunkSize
+                            || (total + len + (i > head ? separatorLen : 0) > chunkSize
                                     && total > 0)) {
-                        total -=
-                                lengthFunction.apply(currentDoc.get(0))
-                                        + (currentDoc.size() > 1 ? separatorLen : 0);
-                        currentDoc.remove(0);
+                        total -= splits.length(head) + (i - head > 1 ? separatorLen : 0);
+                        head++;
                     }
                 }
             }
-            currentDoc.add(d);
-            total += len + (currentDoc.size() > 1 ? separatorLen : 0);
+            total += len + (i > head ? separatorLen : 0);
         }
 
-        String doc = joinDocs(currentDoc, separator);
-        if (doc != null) {
-            docs.add(doc);
+        if (to > head) {
+            String doc = splits.join(head, to, separator);
+            if (doc != null) {
+                docs.add(doc);
+            }
         }
-
-        return docs;
     }
 
     public static List<String> splitTextWithRegex(
             String text, String separator, boolean keepSeparator) {
-        List<String> splits = new ArrayList<>();
-        if (separator != null && !separator.isEmpty()) {
+        Pattern pattern =
+                separator != null && !separator.isEmpty() ? Pattern.compile(separator) : null;
+        Splits splits = Splits.split(text, 0, text.length(), pattern, keepSeparator);
+        List<String> result = new ArrayList<>(splits.size());
+        for (int i = 0; i < splits.size(); i++) {
+            result.add(splits.substring(i));
+        }
+        return result;
+    }
+
+    /**
+     * The non-empty pieces of a text, as ranges over the text, with their lengths as measured by
+     * the length function. The chunks are built from the ranges, without joining intermediate
+     * strings.
+     */
+    protected static final class Splits {
+        private final String text;
+        private int[] starts = new int[16];
+        private int[] ends = new int[16];
+        private int[] lengths = new int[16];
+        private int size;
+
+        Splits(String text) {
+            this.text = text;
+        }
+
+        /**
+         * Split the range [start, end) of the text, with the same rules of {@link
+         * String#split(String)} or, when keeping the separator, by starting each piece with the
+         * separator that precedes it. A null pattern splits the text into single characters.
+         */
+        static Splits split(
+                String text, int start, int end, Pattern pattern, boolean keepSeparator) {
+            Splits splits = new Splits(text);
+            if (pattern == null) {
+                for (int i = start; i < end; i++) {
+                    splits.addNonEmpty(i, i + 1);
+                }
+                return splits;
+            }
+            Matcher matcher = pattern.matcher(text).region(start, end);
+            int last = start;
             if (keepSeparator) {
-                Pattern pattern = Pattern.compile("(" + separator + ")");
-                Matcher matcher = pattern.matcher(text);
-                if (matcher.find()) {
-                    if (matcher.start() != 0) {
-                        splits.add(text.substring(0, matcher.start()));
-                    }
-                    String lastMatch = matcher.group();
-                    int lastMatchEnd = matcher.end();
-                    while (matcher.find()) {
-                        splits.add(lastMatch + text.substring(lastMatchEnd, matcher.start()));
-                        lastMatchEnd = matcher.end();
-                        lastMatch = matcher.group();
-                    }
-                    splits.add(lastMatch + text.substring(lastMatchEnd));
-                } else {
-                    splits.add(text);
+                while (matcher.find()) {
+                    splits.addNonEmpty(last, matcher.start());
+                    last = matcher.start();
                 }
             } else {
-                splits.addAll(Arrays.asList(text.split(separator)));
+                while (matcher.find()) {
+                    splits.addNonEmpty(last, matcher.start());
+                    last = matcher.end();
+                }
             }
-        } else {
-            // If separator is empty, split the text into individual characters
-            for (char c : text.toCharArray()) {
-                splits.add(Character.toString(c));
+            splits.addNonEmpty(last, end);
+            return splits;
+        }
+
+        private void addNonEmpty(int start, int end) {
+            // Remove any empty splits
+            if (start < end) {
+                add(start, end);
+            }
+        }
+
+        void add(int start, int end) {
+            if (size == starts.length) {
+                starts = Arrays.copyOf(starts, size * 2);
+                ends = Arrays.copyOf(ends, size * 2);
+                lengths = Arrays.copyOf(lengths, size * 2);
             }
+            starts[size] = start;
+            ends[size] = end;
+            size++;
         }
 
-        // Remove any empty splits
-        splits.removeIf(String::isEmpty);
-        return splits;
+        int size() {
+            return size;
+        }
+
+        int start(int index) {
+            return starts[index];
+        }
+
+        int end(int index) {
+            return ends[index];
+        }
+
+        String substring(int index) {
+            return text.substring(starts[index], ends[index]);
+        }
+
+        int length(int index) {
+            return lengths[index];
+        }
+
+        void setLength(int index, int length) {
+            lengths[index] = length;
+        }
+
+        /**
+         * Join the splits in [from, to) with the separator and trim the result.
+         *
+         * @return the chunk, or null if it is blank
+         */
+        String join(int from, int to, String separator) {
+            if (isContiguous(from, to, separator)) {
+                // the joined text is already in the original text
+                int start = starts[from];
+                int end = ends[to - 1];
+                while (start < end && text.charAt(start) <= ' ') {
+                    start++;
+                }
+                while (end > start && text.charAt(end - 1) <= ' ') {
+                    end--;
+                }
+                return start < end ? text.substring(start, end) : null;
+            }
+            StringBuilder builder = new StringBuilder();
+            for (int i = from; i < to; i++) {
+                if (i > from) {
+                    builder.append(separator);
+                }
+                builder.append(text, starts[i], ends[i]);
+            }
+            String doc = builder.toString().trim();
+            return doc.isEmpty() ? null : doc;
+        }
+
+        private boolean isContiguous(int from, int to, String separator) {
+            for (int i = from + 1; i < to; i++) {
+                if (starts[i] != ends[i - 1] + separator.length()
+                        || !text.startsWith(separator, ends[i - 1])) {
+                    return false;
+                }
+            }
+            return true;
+        }
     }
 
     record Document(String pageContent, Map<String, Object> metadata) {}
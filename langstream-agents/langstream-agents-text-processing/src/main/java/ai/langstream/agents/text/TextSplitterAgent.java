@@ -15,10 +15,15 @@
  */
 package ai.langstream.agents.text;
 
+import ai.langstream.ai.agents.commons.text.LengthFunction;
+import ai.langstream.ai.agents.commons.text.TiktokenLengthFunction;
 import ai.langstream.api.runner.code.Header;
 import ai.langstream.api.runner.code.Record;
 import ai.langstream.api.runner.code.SimpleRecord;
 import ai.langstream.api.runner.code.SingleRecordAgentProcessor;
+import ai.langstream.api.runner.code.SpooledValue;
+import java.io.IOException;
+import java.io.Reader;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -33,6 +38,10 @@ public class TextSplitterAgent extends SingleRecordAgentProcessor {
 
     private LengthFunction lengthFunction;
 
+    // the number of characters of a large text that are split at once
+    private static final int SEGMENT_SIZE = 1024 * 1024;
+    private static final List<String> SEGMENT_SEPARATORS = List.of("\n\n", "\n", " ");
+
     @Override
     public void init(Map<String, Object> configuration) {
         initTextSplitter(configuration);
@@ -87,14 +96,54 @@ public class TextSplitterAgent extends SingleRecordAgentProcessor {
         this.lengthFunction = newLengthFunction;
     }
 
+    /**
+     * Split a text too large to be loaded in memory one segment at a time. The segments are cut at
+     * a paragraph (or line, or word) boundary, and no chunk spans two segments.
+     */
+    private List<String> splitInSegments(SpooledValue value) throws IOException {
+        List<String> chunks = new ArrayList<>();
+        StringBuilder segment = new StringBuilder();
+        char[] buffer = new char[64 * 1024];
+        try (Reader reader = Utils.toReader(value)) {
+            int read;
+            while ((read = reader.read(buffer)) >= 0) {
+                segment.append(buffer, 0, read);
+                if (segment.length() >= SEGMENT_SIZE) {
+                    int cut = segmentBoundary(segment);
+                    chunks.addAll(textSplitter.splitText(segment.substring(0, cut)));
+                    segment.delete(0, cut);
+                }
+            }
+        }
+        if (!segment.isEmpty()) {
+            chunks.addAll(textSplitter.splitText(segment.toString()));
+        }
+        return chunks;
+    }
+
+    private static int segmentBoundary(StringBuilder segment) {
+        for (String separator : SEGMENT_SEPARATORS) {
+            int index = segment.lastIndexOf(separator);
+            if (index > 0) {
+                return index + separator.length();
+            }
+        }
+        return segment.length();
+    }
+
     @Override
-    public List<Record> processRecord(Record record) {
+    public List<Record> processRecord(Record record) throws IOException {
         if (record == null) {
             return List.of();
         }
         Object value = record.value();
-        String text = Utils.toText(value);
-        List<String> chunks = textSplitter.splitText(text);
+        List<String> chunks;
+        if (value instanceof SpooledValue spooledValue && !spooledValue.isInMemory()) {
+            chunks = splitInSegments(spooledValue);
+        } else {
+            String text = Utils.toText(value);
+            chunks = textSplitter.splitText(text);
+        }
         int chunkId = 0;
         int numChunks = chunks.size();
         List<Record> result = new ArrayList<>();
@@ -16,39 +16,112 @@
 package ai.langstream.agents.text;
 
 import ai.langstream.api.runner.code.Record;
+import ai.langstream.api.runner.code.RecordSink;
 import ai.langstream.api.runner.code.SimpleRecord;
 import ai.langstream.api.runner.code.SingleRecordAgentProcessor;
+import ai.langstream.api.runner.code.SpooledValue;
+import ai.langstream.api.util.ConfigurationUtils;
 import java.io.InputStream;
-import java.io.Reader;
-import java.io.StringWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.tika.exception.WriteLimitReachedException;
 import org.apache.tika.metadata.Metadata;
 import org.apache.tika.parser.AutoDetectParser;
 import org.apache.tika.parser.ParseContext;
-import org.apache.tika.parser.ParsingReader;
+import org.apache.tika.sax.BodyContentHandler;
+import org.apache.tika.sax.WriteOutContentHandler;
 
+/**
+ * Extracts the text of the documents on a bounded pool of workers, so that a slow document doesn't
+ * block the others. The parser is thread safe and shared by the workers. When all the workers are
+ * busy {@link #process} blocks, and a document that exceeds the timeout gives back its worker.
+ */
 @Slf4j
 public class TikaTextExtractorAgent extends SingleRecordAgentProcessor {
+
+    private final AutoDetectParser parser = new AutoDetectParser();
+
+    private int maxExtractedLength;
+    private BoundedWorkerPool workers;
+
+    @Override
+    public void init(Map<String, Object> configuration) {
+        int maxConcurrentExtractions =
+                ConfigurationUtils.getInt("max-concurrent-extractions", 1, configuration);
+        maxExtractedLength =
+                ConfigurationUtils.getInt("max-extracted-length", -1, configuration);
+        long timeoutMillis =
+                TimeUnit.SECONDS.toMillis(
+                        ConfigurationUtils.getInt(
+                                "extraction-timeout-seconds", 300, configuration));
+        log.info(
+                "Extracting up to {} documents concurrently, timeout {} ms, max length {}",
+                maxConcurrentExtractions,
+                timeoutMillis,
+                maxExtractedLength);
+        workers =
+                new BoundedWorkerPool(
+                        "text-extractor",
+                        maxConcurrentExtractions,
+                        timeoutMillis,
+                        this::processRecord,
+                        this::emit);
+    }
+
+    @Override
+    public void process(List<Record> records, RecordSink recordSink) {
+        if (records == null || records.isEmpty()) {
+            throw new IllegalStateException("Records cannot be null or empty");
+        }
+        for (Record record : records) {
+            workers.submit(record, recordSink);
+        }
+    }
+
     @Override
     public List<Record> processRecord(Record record) throws Exception {
         if (record == null) {
             return List.of();
         }
-        AutoDetectParser parser = new AutoDetectParser();
         Object value = record.value();
-        final InputStream stream = Utils.toStream(value);
         Metadata metadata = new Metadata();
         ParseContext parseContext = new ParseContext();
-        StringWriter valueAsString;
 
-        // ParsingReader starts new threads, so we need to make sure they are cleaned up
-        try (Reader reader = new ParsingReader(parser, stream, metadata, parseContext)) {
-            valueAsString = new StringWriter();
-            reader.transferTo(valueAsString);
+        // the text of a large document is spooled to disk, like the document itself
+        SpooledValue.Builder text = SpooledValue.builder(SpooledValue.DEFAULT_MEMORY_THRESHOLD);
+        SpooledValue extracted;
+        try (InputStream stream = Utils.toStream(value);
+                Writer writer = new OutputStreamWriter(text, StandardCharsets.UTF_8)) {
+            try {
+                parser.parse(
+                        stream,
+                        new BodyContentHandler(
+                                new WriteOutContentHandler(writer, maxExtractedLength)),
+                        metadata,
+                        parseContext);
+            } catch (Exception e) {
+                if (!WriteLimitReachedException.isWriteLimitReached(e)) {
+                    throw e;
+                }
+                log.warn(
+                        "Text of record {} truncated to {} characters",
+                        record,
+                        maxExtractedLength);
+            }
+            writer.flush();
+            extracted = text.build();
+        } catch (Exception e) {
+            text.discard();
+            throw e;
         }
 
         String[] names = metadata.names();
@@ -56,8 +129,25 @@ public class TikaTextExtractorAgent extends SingleRecordAgentProcessor {
             log.debug(
                     "Document type: {} Content {}",
                     Stream.of(names).collect(Collectors.toMap(Function.identity(), metadata::get)),
-                    valueAsString);
+                    extracted.isInMemory() ? extracted.toText() : extracted);
+        }
+        Object newValue = extracted.isInMemory() ? extracted.toText() : extracted;
+        return List.of(SimpleRecord.copyFrom(record).value(newValue).build());
+    }
+
+    @Override
+    protected Map<String, Object> buildAdditionalInfo() {
+        Map<String, Object> info = new HashMap<>(super.buildAdditionalInfo());
+        if (workers != null) {
+            info.put("abandoned-workers", workers.getAbandonedWorkers());
+        }
+        return info;
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (workers != null) {
+            workers.close();
         }
-        return List.of(SimpleRecord.copyFrom(record).value(valueAsString.toString()).build());
     }
 }
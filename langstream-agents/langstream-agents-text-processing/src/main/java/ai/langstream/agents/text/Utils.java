@@ -16,7 +16,9 @@
 package ai.langstream.agents.text;
 
 import ai.langstream.api.runner.code.Header;
+import ai.langstream.api.runner.code.SpooledValue;
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
@@ -27,22 +29,26 @@ import java.util.Collection;
 import java.util.List;
 
 public class Utils {
-    public static InputStream toStream(Object value) {
+    public static InputStream toStream(Object value) throws IOException {
         final InputStream stream;
         if (value instanceof byte[] array) {
             stream = new ByteArrayInputStream(array);
+        } else if (value instanceof SpooledValue spooledValue) {
+            stream = spooledValue.openStream();
         } else {
             stream = new ByteArrayInputStream(value.toString().getBytes(StandardCharsets.UTF_8));
         }
         return stream;
     }
 
-    public static Reader toReader(Object value) {
+    public static Reader toReader(Object value) throws IOException {
         if (value == null) {
             return new StringReader("");
         }
         if (value instanceof byte[] array) {
             return new InputStreamReader(new ByteArrayInputStream(array), StandardCharsets.UTF_8);
+        } else if (value instanceof SpooledValue spooledValue) {
+            return new InputStreamReader(spooledValue.openStream(), StandardCharsets.UTF_8);
         } else {
             return new StringReader(value.toString());
         }
@@ -55,6 +61,8 @@ public class Utils {
         }
         if (value instanceof byte[] array) {
             return new String(array, StandardCharsets.UTF_8);
+        } else if (value instanceof SpooledValue spooledValue) {
+            return spooledValue.toText();
         } else {
             return value.toString();
         }
@@ -16,18 +16,29 @@
 package ai.langstream.agents.text;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 
+import ai.langstream.api.runner.code.AgentProcessor;
 import ai.langstream.api.runner.code.Record;
 import ai.langstream.api.runner.code.SimpleRecord;
 import ai.langstream.api.runner.code.SingleRecordAgentProcessor;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 
 @Slf4j
 public class LanguageDetectorTest {
 
+    private static final int SAMPLE_SIZE = 8192;
+
     @Test
     public void textDetect() throws Exception {
         TextProcessingAgentsCodeProvider provider = new TextProcessingAgentsCodeProvider();
@@ -37,6 +48,86 @@ public class LanguageDetectorTest {
         assertEquals("en", detectLanguage(instance, "This is a English"));
         assertEquals("it", detectLanguage(instance, "Questo é italiano"));
         assertEquals("fr", detectLanguage(instance, "Parlez-vous français?"));
+        instance.close();
+    }
+
+    @Test
+    public void textDetectWithSink() throws Exception {
+        TextProcessingAgentsCodeProvider provider = new TextProcessingAgentsCodeProvider();
+        SingleRecordAgentProcessor instance = provider.createInstance("language-detector");
+        instance.init(
+                Map.of(
+                        "property",
+                        "detected-language",
+                        "allowedLanguages",
+                        List.of("en", "it"),
+                        "max-concurrent-detections",
+                        1));
+        instance.setContext(new TextExtractorTest.TestAgentContext());
+
+        List<Record> records = new ArrayList<>();
+        Map<Record, CompletableFuture<AgentProcessor.SourceRecordAndResult>> results =
+                new IdentityHashMap<>();
+        for (String text :
+                List.of("This is a English", "Questo é italiano", "Parlez-vous français?")) {
+            Record record =
+                    SimpleRecord.builder().value(text.getBytes(StandardCharsets.UTF_8)).build();
+            records.add(record);
+            results.put(record, new CompletableFuture<>());
+        }
+        instance.process(records, result -> results.get(result.sourceRecord()).complete(result));
+
+        List<String> languages = new ArrayList<>();
+        for (Record record : records) {
+            AgentProcessor.SourceRecordAndResult result =
+                    results.get(record).get(10, TimeUnit.SECONDS);
+            assertNull(result.error());
+            for (Record output : result.resultRecords()) {
+                languages.add(output.getHeader("detected-language").valueAsString());
+            }
+        }
+        // the french record is dropped
+        assertEquals(List.of("en", "it"), languages);
+        instance.close();
+    }
+
+    @Test
+    @Disabled("Benchmark, run it manually")
+    public void benchmarkLongDocuments() throws Exception {
+        String[] sentences = {
+            "The quick brown fox jumps over the lazy dog while the children are playing outside. ",
+            "This document describes how the records are processed by the pipeline. ",
+            "We have to make sure that every page of the website is indexed correctly. "
+        };
+        Random random = new Random(0);
+        StringBuilder text = new StringBuilder();
+        while (text.length() < 2_000_000) {
+            text.append(sentences[random.nextInt(sentences.length)]);
+        }
+        byte[] document = text.toString().getBytes(StandardCharsets.UTF_8);
+
+        // warm up
+        for (int i = 0; i < 2; i++) {
+            LanguageDetectorAgent.detectLanguage(document, 0);
+            LanguageDetectorAgent.detectLanguage(document, SAMPLE_SIZE);
+        }
+
+        long start = System.nanoTime();
+        String full = LanguageDetectorAgent.detectLanguage(document, 0);
+        long fullTime = System.nanoTime() - start;
+        start = System.nanoTime();
+        String sampled = LanguageDetectorAgent.detectLanguage(document, SAMPLE_SIZE);
+        long sampledTime = System.nanoTime() - start;
+        log.info(
+                "Detected {} on {} chars in {} ms, {} on the first {} chars in {} ms",
+                full,
+                text.length(),
+                fullTime / 1_000_000,
+                sampled,
+                SAMPLE_SIZE,
+                sampledTime / 1_000_000);
+        assertEquals("en", full);
+        assertEquals(full, sampled);
     }
 
     private static String detectLanguage(SingleRecordAgentProcessor instance, String text)
@@ -25,6 +25,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.stream.Stream;
 import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
@@ -95,6 +96,13 @@ class TextChunkerAgentTest {
                         List.of("Hello world.", "This is a great", "great day")),
                 Arguments.of(20, 5, "", "length", List.of()),
                 Arguments.of(20, 5, " ", "length", List.of()),
+                Arguments.of(5, 0, "abcdefgh", "length", List.of("abcde", "fgh")),
+                Arguments.of(
+                        20,
+                        0,
+                        "Hello\n\nworld\n\n\n\nagain",
+                        "length",
+                        List.of("Hello\n\nworld\n\nagain")),
                 Arguments.of(20, 5, "Hello world", "cl100k_base", List.of("Hello world")),
                 Arguments.of(
                         10,
@@ -168,4 +176,53 @@ class TextChunkerAgentTest {
             assertEquals(expectedChunk, chunks.get(i++));
         }
     }
+
+    @Test
+    @Disabled("Benchmark, run it manually")
+    public void testChunkingThroughput() throws Exception {
+        TextProcessingAgentsCodeProvider provider = new TextProcessingAgentsCodeProvider();
+        SingleRecordAgentProcessor instance = provider.createInstance("text-splitter");
+        instance.init(
+                Map.of(
+                        "chunk_size",
+                        400,
+                        "chunk_overlap",
+                        100,
+                        "length_function",
+                        "cl100k_base"));
+
+        // about 300 pages of text
+        StringBuilder text = new StringBuilder();
+        for (int page = 0; page < 300; page++) {
+            for (int paragraph = 0; paragraph < 5; paragraph++) {
+                for (int sentence = 0; sentence < 8; sentence++) {
+                    text.append("This is sentence ")
+                            .append(sentence)
+                            .append(" of paragraph ")
+                            .append(paragraph)
+                            .append(" on page ")
+                            .append(page)
+                            .append(", with some more words to read. ");
+                }
+                text.append("\n\n");
+            }
+        }
+        String document = text.toString();
+
+        // warm up
+        doChunking(instance, document);
+        long start = System.nanoTime();
+        List<String> chunks = doChunking(instance, document);
+        long elapsed = System.nanoTime() - start;
+        log.info(
+                "Split {} chars into {} chunks in {} ms",
+                document.length(),
+                chunks.size(),
+                elapsed / 1_000_000);
+
+        assertTrue(chunks.size() > 300);
+        for (String chunk : chunks) {
+            assertTrue(document.contains(chunk), chunk);
+        }
+    }
 }
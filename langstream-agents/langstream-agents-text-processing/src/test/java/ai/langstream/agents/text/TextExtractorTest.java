@@ -16,13 +16,35 @@
 package ai.langstream.agents.text;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
 
+import ai.langstream.api.runner.code.AgentContext;
+import ai.langstream.api.runner.code.AgentProcessor;
 import ai.langstream.api.runner.code.Record;
+import ai.langstream.api.runner.code.RecordSink;
 import ai.langstream.api.runner.code.SimpleRecord;
-import ai.langstream.api.runner.code.SingleRecordAgentProcessor;
+import ai.langstream.api.runner.code.SpooledValue;
+import ai.langstream.api.runner.topics.TopicAdmin;
+import ai.langstream.api.runner.topics.TopicConnectionProvider;
+import ai.langstream.api.runner.topics.TopicConsumer;
+import ai.langstream.api.runner.topics.TopicProducer;
+import java.io.ByteArrayInputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.jupiter.api.Test;
 
@@ -32,7 +54,9 @@ public class TextExtractorTest {
     @Test
     public void textExtractFromText() throws Exception {
         TextProcessingAgentsCodeProvider provider = new TextProcessingAgentsCodeProvider();
-        SingleRecordAgentProcessor instance = provider.createInstance("text-extractor");
+        AgentProcessor instance = provider.createInstance("text-extractor");
+        instance.init(Map.of());
+        instance.setContext(new TestAgentContext());
 
         Record fromSource =
                 SimpleRecord.builder()
@@ -42,7 +66,7 @@ public class TextExtractorTest {
                         .timestamp(System.currentTimeMillis())
                         .build();
 
-        Record result = instance.processRecord(fromSource).get(0);
+        Record result = process(instance, List.of(fromSource)).get(0);
         log.info("Result: {}", result);
         assertEquals("This is a test", result.value().toString().trim());
     }
@@ -50,7 +74,9 @@ public class TextExtractorTest {
     @Test
     public void textExtractFromPdf() throws Exception {
         TextProcessingAgentsCodeProvider provider = new TextProcessingAgentsCodeProvider();
-        SingleRecordAgentProcessor instance = provider.createInstance("text-extractor");
+        AgentProcessor instance = provider.createInstance("text-extractor");
+        instance.init(Map.of());
+        instance.setContext(new TestAgentContext());
 
         byte[] content = Files.readAllBytes(Paths.get("src/test/resources/simple.pdf"));
 
@@ -62,7 +88,7 @@ public class TextExtractorTest {
                         .timestamp(System.currentTimeMillis())
                         .build();
 
-        Record result = instance.processRecord(fromSource).get(0);
+        Record result = process(instance, List.of(fromSource)).get(0);
         log.info("Result: {}", result);
 
         assertEquals("This is a very simple PDF", result.value().toString().trim());
@@ -71,7 +97,9 @@ public class TextExtractorTest {
     @Test
     public void textExtractFromWord() throws Exception {
         TextProcessingAgentsCodeProvider provider = new TextProcessingAgentsCodeProvider();
-        SingleRecordAgentProcessor instance = provider.createInstance("text-extractor");
+        AgentProcessor instance = provider.createInstance("text-extractor");
+        instance.init(Map.of());
+        instance.setContext(new TestAgentContext());
 
         byte[] content = Files.readAllBytes(Paths.get("src/test/resources/simple.docx"));
 
@@ -83,9 +111,252 @@ public class TextExtractorTest {
                         .timestamp(System.currentTimeMillis())
                         .build();
 
-        Record result = instance.processRecord(fromSource).get(0);
+        Record result = process(instance, List.of(fromSource)).get(0);
         log.info("Result: {}", result);
 
         assertEquals("This is a very simple Word Document", result.value().toString().trim());
     }
+
+    @Test
+    public void textExtractInParallel() throws Exception {
+        TextProcessingAgentsCodeProvider provider = new TextProcessingAgentsCodeProvider();
+        AgentProcessor instance = provider.createInstance("text-extractor");
+        instance.init(Map.of("max-concurrent-extractions", 4));
+        instance.setContext(new TestAgentContext());
+
+        byte[] content = Files.readAllBytes(Paths.get("src/test/resources/simple.pdf"));
+        List<Record> records = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            records.add(SimpleRecord.builder().key("filename" + i + ".pdf").value(content).build());
+        }
+
+        List<Record> results = process(instance, records);
+        assertEquals(20, results.size());
+        for (Record result : results) {
+            assertEquals("This is a very simple PDF", result.value().toString().trim());
+        }
+        instance.close();
+    }
+
+    @Test
+    public void textExtractMaxLength() throws Exception {
+        TextProcessingAgentsCodeProvider provider = new TextProcessingAgentsCodeProvider();
+        AgentProcessor instance = provider.createInstance("text-extractor");
+        instance.init(Map.of("max-extracted-length", 7));
+        instance.setContext(new TestAgentContext());
+
+        Record fromSource =
+                SimpleRecord.builder()
+                        .key("filename.txt")
+                        .value("This is a test".getBytes(StandardCharsets.UTF_8))
+                        .build();
+
+        Record result = process(instance, List.of(fromSource)).get(0);
+        assertEquals("This is", result.value().toString());
+        instance.close();
+    }
+
+    @Test
+    public void textExtractKeepsTheSpooledDocument() throws Exception {
+        TextProcessingAgentsCodeProvider provider = new TextProcessingAgentsCodeProvider();
+        AgentProcessor instance = provider.createInstance("text-extractor");
+        instance.init(Map.of());
+        instance.setContext(new TestAgentContext());
+
+        SpooledValue document =
+                SpooledValue.spool(
+                        new ByteArrayInputStream("This is a test".getBytes(StandardCharsets.UTF_8)),
+                        0);
+        Record fromSource = SimpleRecord.builder().key("filename.txt").value(document).build();
+
+        // the runner processes the same source record again after a retryable error
+        for (int i = 0; i < 2; i++) {
+            Record result = process(instance, List.of(fromSource)).get(0);
+            assertEquals("This is a test", result.value().toString().trim());
+        }
+        document.close();
+        instance.close();
+    }
+
+    @Test
+    public void textExtractTimeout() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        TikaTextExtractorAgent instance =
+                new TikaTextExtractorAgent() {
+                    @Override
+                    public List<Record> processRecord(Record record) throws Exception {
+                        if ("stuck.txt".equals(record.key())) {
+                            // a parser that ignores the interrupt
+                            while (release.getCount() > 0) {
+                                try {
+                                    release.await();
+                                } catch (InterruptedException ignored) {
+                                }
+                            }
+                        }
+                        return super.processRecord(record);
+                    }
+                };
+        instance.init(Map.of("max-concurrent-extractions", 1, "extraction-timeout-seconds", 1));
+        instance.setContext(new TestAgentContext());
+
+        Record stuck =
+                SimpleRecord.builder()
+                        .key("stuck.txt")
+                        .value("Never extracted".getBytes(StandardCharsets.UTF_8))
+                        .build();
+        Record next =
+                SimpleRecord.builder()
+                        .key("next.txt")
+                        .value("This is a test".getBytes(StandardCharsets.UTF_8))
+                        .build();
+        AtomicInteger emitted = new AtomicInteger();
+        CompletableFuture<AgentProcessor.SourceRecordAndResult> stuckResult =
+                new CompletableFuture<>();
+        CompletableFuture<AgentProcessor.SourceRecordAndResult> nextResult =
+                new CompletableFuture<>();
+        RecordSink sink =
+                result -> {
+                    emitted.incrementAndGet();
+                    (result.sourceRecord() == stuck ? stuckResult : nextResult).complete(result);
+                };
+
+        instance.process(List.of(stuck), sink);
+        // the only worker is busy, this blocks until the stuck record times out
+        instance.process(List.of(next), sink);
+
+        assertInstanceOf(
+                TimeoutException.class, stuckResult.get(10, TimeUnit.SECONDS).error());
+        AgentProcessor.SourceRecordAndResult result = nextResult.get(10, TimeUnit.SECONDS);
+        assertNull(result.error());
+        assertEquals("This is a test", result.resultRecords().get(0).value().toString().trim());
+        assertEquals(1, instance.buildAdditionalInfo().get("abandoned-workers"));
+
+        // the late result of the stuck record is discarded
+        release.countDown();
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!instance.buildAdditionalInfo().get("abandoned-workers").equals(0)
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, instance.buildAdditionalInfo().get("abandoned-workers"));
+        assertEquals(2, emitted.get());
+        instance.close();
+    }
+
+    @Test
+    public void textExtractAbandonedWorkersAreBounded() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        TikaTextExtractorAgent instance =
+                new TikaTextExtractorAgent() {
+                    @Override
+                    public List<Record> processRecord(Record record) throws Exception {
+                        if (record.key().toString().startsWith("stuck")) {
+                            // a parser that ignores the interrupt
+                            while (release.getCount() > 0) {
+                                try {
+                                    release.await();
+                                } catch (InterruptedException ignored) {
+                                }
+                            }
+                        }
+                        return super.processRecord(record);
+                    }
+                };
+        instance.init(Map.of("max-concurrent-extractions", 1, "extraction-timeout-seconds", 1));
+        instance.setContext(new TestAgentContext());
+
+        Map<Object, CompletableFuture<AgentProcessor.SourceRecordAndResult>> results =
+                new ConcurrentHashMap<>();
+        RecordSink sink = result -> results.get(result.sourceRecord().key()).complete(result);
+        List<Record> records = new ArrayList<>();
+        for (String key : List.of("stuck1.txt", "stuck2.txt", "next.txt")) {
+            results.put(key, new CompletableFuture<>());
+            records.add(
+                    SimpleRecord.builder()
+                            .key(key)
+                            .value("This is a test".getBytes(StandardCharsets.UTF_8))
+                            .build());
+        }
+
+        // the first stuck worker is abandoned, the second one keeps its slot
+        CompletableFuture<?> submitted =
+                CompletableFuture.runAsync(
+                        () -> {
+                            for (Record record : records) {
+                                instance.process(List.of(record), sink);
+                            }
+                        });
+        assertInstanceOf(
+                TimeoutException.class,
+                results.get("stuck1.txt").get(10, TimeUnit.SECONDS).error());
+        assertInstanceOf(
+                TimeoutException.class,
+                results.get("stuck2.txt").get(10, TimeUnit.SECONDS).error());
+        Thread.sleep(1000);
+        assertFalse(submitted.isDone());
+        assertFalse(results.get("next.txt").isDone());
+        assertEquals(2, instance.buildAdditionalInfo().get("abandoned-workers"));
+
+        // a returning worker frees the slot
+        release.countDown();
+        submitted.get(10, TimeUnit.SECONDS);
+        AgentProcessor.SourceRecordAndResult result =
+                results.get("next.txt").get(10, TimeUnit.SECONDS);
+        assertNull(result.error());
+        assertEquals("This is a test", result.resultRecords().get(0).value().toString().trim());
+        instance.close();
+    }
+
+    private static List<Record> process(AgentProcessor instance, List<Record> records)
+            throws Exception {
+        Map<Record, CompletableFuture<Record>> results = new IdentityHashMap<>();
+        records.forEach(r -> results.put(r, new CompletableFuture<>()));
+        instance.process(
+                records,
+                result -> {
+                    if (result.error() != null) {
+                        results.get(result.sourceRecord()).completeExceptionally(result.error());
+                    } else {
+                        results.get(result.sourceRecord()).complete(result.resultRecords().get(0));
+                    }
+                });
+        List<Record> output = new ArrayList<>();
+        for (Record record : records) {
+            output.add(results.get(record).get(30, TimeUnit.SECONDS));
+        }
+        return output;
+    }
+
+    static class TestAgentContext implements AgentContext {
+        @Override
+        public TopicConsumer getTopicConsumer() {
+            return null;
+        }
+
+        @Override
+        public TopicProducer getTopicProducer() {
+            return null;
+        }
+
+        @Override
+        public String getGlobalAgentId() {
+            return null;
+        }
+
+        @Override
+        public TopicAdmin getTopicAdmin() {
+            return null;
+        }
+
+        @Override
+        public TopicConnectionProvider getTopicConnectionProvider() {
+            return null;
+        }
+
+        @Override
+        public Path getCodeDirectory() {
+            return null;
+        }
+    }
 }
@@ -33,7 +33,8 @@ public class GenAIAgentCodeProvider implements AgentCodeProvider {
                     "compute-ai-embeddings",
                     "query",
                     "ai-chat-completions",
-                    "ai-text-completions");
+                    "ai-text-completions",
+                    "token-budget");
 
     @Override
     public boolean supports(String agentType) {
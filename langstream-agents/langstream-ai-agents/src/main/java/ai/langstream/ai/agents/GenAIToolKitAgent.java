@@ -143,7 +143,7 @@ public class GenAIToolKitAgent extends AbstractAgentCode implements AgentProcess
         config = MAPPER.convertValue(configuration, TransformStepConfig.class);
         dataSource = DataSourceProviderRegistry.getQueryStepDataSource(datasourceConfiguration);
         if (dataSource != null) {
-            dataSource.initialize(datasourceConfiguration);
+            dataSource.initialize(datasourceConfiguration, reporter);
         }
         streamingAnswersConsumerFactory = new TopicProducerStreamingAnswersConsumerFactory();
         List<StepConfig> stepsConfig = config.getSteps();
@@ -156,7 +156,8 @@ public class GenAIToolKitAgent extends AbstractAgentCode implements AgentProcess
                         serviceProvider,
                         dataSource,
                         streamingAnswersConsumerFactory,
-                        stepsConfig.get(0));
+                        stepsConfig.get(0),
+                        reporter);
         streamingAnswersConsumerFactory.setAgentContext(agentContext);
         step.getTransformStep().start();
     }
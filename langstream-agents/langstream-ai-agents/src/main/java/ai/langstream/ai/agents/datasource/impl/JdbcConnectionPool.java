@@ -0,0 +1,364 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.ai.agents.datasource.impl;
+
+import ai.langstream.api.runner.code.MetricsReporter;
+import ai.langstream.api.util.ConfigurationUtils;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A small pool of JDBC connections, with a cache of prepared statements for each connection.
+ *
+ * <p>The connections are created with {@link JdbcDataSourceProvider#buildConnection(Map,
+ * ClassLoader)}, so the drivers loaded from the agent classloader are registered through the
+ * DriverShim like for the single connection datasource. The classloader is the context classloader
+ * of the thread that creates the pool, the connections are created later by the threads that run
+ * the queries.
+ */
+@Slf4j
+public class JdbcConnectionPool implements AutoCloseable {
+
+    /** Datasource properties used by the pool, they are not passed to the JDBC driver. */
+    static final Set<String> POOL_PROPERTIES =
+            Set.of(
+                    "pool-size",
+                    "pool-connection-timeout",
+                    "pool-validation-interval",
+                    "statement-cache-size");
+
+    private static final int VALIDATION_TIMEOUT_SECONDS = 5;
+
+    /**
+     * Configuration of the pool.
+     *
+     * @param maxSize maximum number of connections
+     * @param connectionTimeoutMillis maximum time to wait for a connection
+     * @param validationIntervalMillis connections idle for longer than this are validated before
+     *     being used, 0 validates them every time
+     * @param statementCacheSize number of prepared statements cached for each connection, 0
+     *     disables the cache
+     * @param autoCommit auto-commit mode of the connections
+     */
+    public record Config(
+            int maxSize,
+            long connectionTimeoutMillis,
+            long validationIntervalMillis,
+            int statementCacheSize,
+            boolean autoCommit) {
+
+        public Config {
+            if (maxSize <= 0) {
+                throw new IllegalArgumentException("pool-size must be greater than 0");
+            }
+            if (connectionTimeoutMillis <= 0) {
+                throw new IllegalArgumentException(
+                        "pool-connection-timeout must be greater than 0");
+            }
+            if (statementCacheSize < 0) {
+                throw new IllegalArgumentException("statement-cache-size must not be negative");
+            }
+        }
+
+        /**
+         * Parse the pool configuration from the datasource configuration.
+         *
+         * @param dataSourceConfig the datasource configuration
+         * @return the configuration, with auto-commit enabled
+         */
+        public static Config fromMap(Map<String, Object> dataSourceConfig) {
+            return new Config(
+                    ConfigurationUtils.getInt("pool-size", 1, dataSourceConfig),
+                    ConfigurationUtils.getLong(
+                            "pool-connection-timeout", 30_000L, dataSourceConfig),
+                    ConfigurationUtils.getLong(
+                            "pool-validation-interval", 30_000L, dataSourceConfig),
+                    ConfigurationUtils.getInt("statement-cache-size", 100, dataSourceConfig),
+                    true);
+        }
+
+        public Config withMaxSize(int maxSize) {
+            return new Config(
+                    maxSize,
+                    connectionTimeoutMillis,
+                    validationIntervalMillis,
+                    statementCacheSize,
+                    autoCommit);
+        }
+
+        public Config withAutoCommit(boolean autoCommit) {
+            return new Config(
+                    maxSize,
+                    connectionTimeoutMillis,
+                    validationIntervalMillis,
+                    statementCacheSize,
+                    autoCommit);
+        }
+    }
+
+    private final Map<String, Object> dataSourceConfig;
+    private final Config config;
+    private final ClassLoader classLoader;
+    private final Semaphore permits;
+    private final LinkedBlockingDeque<PooledConnection> idleConnections =
+            new LinkedBlockingDeque<>();
+    private volatile boolean closed;
+
+    private final MetricsReporter.Counter borrowsCounter;
+    private final MetricsReporter.Counter waitTimeCounter;
+    private final MetricsReporter.Counter statementCacheHitsCounter;
+    private final MetricsReporter.Counter statementCacheMissesCounter;
+
+    public JdbcConnectionPool(
+            Map<String, Object> dataSourceConfig, Config config, MetricsReporter metricsReporter) {
+        this.dataSourceConfig = dataSourceConfig;
+        this.config = config;
+        this.classLoader = Thread.currentThread().getContextClassLoader();
+        this.permits = new Semaphore(config.maxSize(), true);
+        this.borrowsCounter =
+                metricsReporter.counter(
+                        "jdbc_pool_borrows", "Number of connections taken from the pool");
+        this.waitTimeCounter =
+                metricsReporter.counter(
+                        "jdbc_pool_wait_time_millis",
+                        "Total time spent waiting for a connection from the pool");
+        this.statementCacheHitsCounter =
+                metricsReporter.counter(
+                        "jdbc_statement_cache_hits",
+                        "Number of prepared statements found in the cache");
+        this.statementCacheMissesCounter =
+                metricsReporter.counter(
+                        "jdbc_statement_cache_misses",
+                        "Number of statements prepared because they were not in the cache");
+    }
+
+    public int getMaxSize() {
+        return config.maxSize();
+    }
+
+    /**
+     * Get a connection from the pool, waiting for a connection to be released if all of them
+     * are in use. The connection must be given back with {@link #release(PooledConnection,
+     * boolean)}.
+     */
+    public PooledConnection borrow() throws SQLException {
+        if (closed) {
+            throw new SQLException("The connection pool is closed");
+        }
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(config.connectionTimeoutMillis(), TimeUnit.MILLISECONDS)) {
+                throw new SQLTimeoutException(
+                        "Timed out after "
+                                + config.connectionTimeoutMillis()
+                                + " ms waiting for a connection, pool size is "
+                                + config.maxSize());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        } finally {
+            borrowsCounter.count(1);
+            waitTimeCounter.count(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+        try {
+            PooledConnection pooledConnection;
+            while ((pooledConnection = idleConnections.pollFirst()) != null) {
+                if (pooledConnection.validate()) {
+                    return pooledConnection;
+                }
+                log.info("Discarding an invalid connection");
+                pooledConnection.close();
+            }
+            Connection connection = JdbcDataSourceProvider.buildConnection(dataSourceConfig, classLoader);
+            connection.setAutoCommit(config.autoCommit());
+            return new PooledConnection(connection);
+        } catch (SQLException e) {
+            permits.release();
+            throw e;
+        } catch (Exception e) {
+            permits.release();
+            throw new SQLException("Cannot create a connection", e);
+        }
+    }
+
+    /**
+     * Give a connection back to the pool.
+     *
+     * @param connection the connection
+     * @param broken true if the connection must be discarded
+     */
+    public void release(PooledConnection connection, boolean broken) {
+        try {
+            if (broken || closed) {
+                connection.close();
+            } else {
+                connection.lastUsed = System.nanoTime();
+                // LIFO, the most recently used connections are the ones more likely to be alive
+                idleConnections.offerFirst(connection);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Whether the connection should be discarded after this error. SQL state class 08 is
+     * "connection exception".
+     */
+    public static boolean isConnectionError(Throwable error) {
+        return error instanceof SQLException sqlException
+                && sqlException.getSQLState() != null
+                && sqlException.getSQLState().startsWith("08");
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        PooledConnection connection;
+        while ((connection = idleConnections.pollFirst()) != null) {
+            connection.close();
+        }
+    }
+
+    /** A connection of the pool. It must be used by one thread at a time. */
+    public class PooledConnection {
+        private final Connection connection;
+        private final LinkedHashMap<String, PreparedStatement> statements =
+                new LinkedHashMap<>(16, 0.75f, true);
+        // statements given to the caller and not released yet
+        private final Set<PreparedStatement> checkedOut =
+                Collections.newSetFromMap(new IdentityHashMap<>());
+        // statements to close when they are released
+        private final Set<PreparedStatement> notCached =
+                Collections.newSetFromMap(new IdentityHashMap<>());
+        private long lastUsed = System.nanoTime();
+
+        private PooledConnection(Connection connection) {
+            this.connection = connection;
+        }
+
+        public Connection getConnection() {
+            return connection;
+        }
+
+        /**
+         * Prepare a statement, or get it from the cache. The statement must not be closed by the
+         * caller, it must be given back with {@link #releaseStatement(PreparedStatement)}.
+         */
+        public PreparedStatement prepareStatement(String sql) throws SQLException {
+            return prepareStatement(sql, null);
+        }
+
+        /**
+         * Prepare a statement that returns the given generated keys, or get it from the cache.
+         *
+         * @see #prepareStatement(String)
+         */
+        public PreparedStatement prepareStatement(String sql, List<String> generatedKeys)
+                throws SQLException {
+            boolean withGeneratedKeys = generatedKeys != null && !generatedKeys.isEmpty();
+            String key = withGeneratedKeys ? sql + "\u0000" + generatedKeys : sql;
+            PreparedStatement cached =
+                    config.statementCacheSize() == 0 ? null : statements.get(key);
+            if (cached != null && checkedOut.add(cached)) {
+                statementCacheHitsCounter.count(1);
+                cached.clearParameters();
+                return cached;
+            }
+            statementCacheMissesCounter.count(1);
+            PreparedStatement statement =
+                    withGeneratedKeys
+                            ? connection.prepareStatement(
+                                    sql, generatedKeys.toArray(new String[0]))
+                            : connection.prepareStatement(sql);
+            if (config.statementCacheSize() == 0 || cached != null) {
+                // the cache is disabled, or the cached statement is already in use
+                notCached.add(statement);
+                return statement;
+            }
+            statements.put(key, statement);
+            checkedOut.add(statement);
+            if (statements.size() > config.statementCacheSize()) {
+                Iterator<PreparedStatement> eldest = statements.values().iterator();
+                PreparedStatement evicted = eldest.next();
+                eldest.remove();
+                if (checkedOut.contains(evicted)) {
+                    // still in use, it is closed when it is released
+                    notCached.add(evicted);
+                } else {
+                    closeQuietly(evicted);
+                }
+            }
+            return statement;
+        }
+
+        /**
+         * Release a statement obtained by {@link #prepareStatement(String)}. Statements that are
+         * not in the cache are closed.
+         */
+        public void releaseStatement(PreparedStatement statement) {
+            checkedOut.remove(statement);
+            if (notCached.remove(statement)) {
+                closeQuietly(statement);
+            }
+        }
+
+        private boolean validate() {
+            long idleNanos = System.nanoTime() - lastUsed;
+            long validationIntervalNanos =
+                    TimeUnit.MILLISECONDS.toNanos(config.validationIntervalMillis());
+            if (validationIntervalNanos > 0 && idleNanos < validationIntervalNanos) {
+                return true;
+            }
+            try {
+                return connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+            } catch (SQLException e) {
+                return false;
+            }
+        }
+
+        private void close() {
+            statements.values().forEach(JdbcConnectionPool::closeQuietly);
+            statements.clear();
+            notCached.forEach(JdbcConnectionPool::closeQuietly);
+            notCached.clear();
+            checkedOut.clear();
+            closeQuietly(connection);
+        }
+    }
+
+    private static void closeQuietly(AutoCloseable closeable) {
+        try {
+            closeable.close();
+        } catch (Exception e) {
+            log.error("Error closing {}", closeable, e);
+        }
+    }
+}
@@ -16,6 +16,8 @@
 package ai.langstream.ai.agents.datasource.impl;
 
 import ai.langstream.ai.agents.datasource.DataSourceProvider;
+import ai.langstream.api.runner.code.MetricsReporter;
+import ai.langstream.api.util.ConfigurationUtils;
 import com.datastax.oss.streaming.ai.datasource.QueryStepDataSource;
 import java.lang.reflect.InvocationTargetException;
 import java.sql.Connection;
@@ -29,9 +31,18 @@ import java.sql.SQLException;
 import java.sql.SQLFeatureNotSupportedException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
@@ -39,6 +50,8 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class JdbcDataSourceProvider implements DataSourceProvider {
 
+    private static final Map<ClassLoader, Set<String>> REGISTERED_DRIVERS = new WeakHashMap<>();
+
     @Override
     public boolean supports(Map<String, Object> dataSourceConfig) {
         return "jdbc".equals(dataSourceConfig.get("service"));
@@ -51,8 +64,12 @@ public class JdbcDataSourceProvider implements DataSourceProvider {
 
     public static class JdbcDataSourceImpl implements QueryStepDataSource {
 
-        Connection connection;
+        // tasks waiting for a connection, when the queue is full the caller runs the query
+        private static final int MAX_PENDING_QUERIES_PER_CONNECTION = 100;
+
+        JdbcConnectionPool pool;
         Map<String, Object> dataSourceConfig;
+        private ExecutorService executor;
 
         public JdbcDataSourceImpl(Map<String, Object> dataSourceConfig) {
             this.dataSourceConfig = dataSourceConfig;
@@ -60,77 +77,139 @@ public class JdbcDataSourceProvider implements DataSourceProvider {
 
         @Override
         public void initialize(Map<String, Object> config) throws Exception {
-            connection = buildConnection(dataSourceConfig);
-            connection.setAutoCommit(true);
+            initialize(config, MetricsReporter.DISABLED);
+        }
+
+        @Override
+        public void initialize(Map<String, Object> config, MetricsReporter metricsReporter)
+                throws Exception {
+            pool =
+                    new JdbcConnectionPool(
+                            dataSourceConfig,
+                            JdbcConnectionPool.Config.fromMap(dataSourceConfig),
+                            metricsReporter);
+            // fail fast if the database is not reachable
+            pool.release(pool.borrow(), false);
+            // one thread per connection, more threads would only wait for a connection
+            int threads = pool.getMaxSize();
+            AtomicInteger threadCount = new AtomicInteger();
+            executor =
+                    new ThreadPoolExecutor(
+                            threads,
+                            threads,
+                            0L,
+                            TimeUnit.MILLISECONDS,
+                            new ArrayBlockingQueue<>(threads * MAX_PENDING_QUERIES_PER_CONNECTION),
+                            r -> {
+                                Thread thread =
+                                        new Thread(
+                                                r, "jdbc-query-" + threadCount.incrementAndGet());
+                                thread.setDaemon(true);
+                                return thread;
+                            },
+                            new ThreadPoolExecutor.CallerRunsPolicy());
+        }
+
+        @Override
+        public CompletableFuture<List<Map<String, Object>>> fetchDataAsync(
+                String query, List<Object> params) {
+            return CompletableFuture.supplyAsync(() -> fetchData(query, params), executor);
+        }
+
+        @Override
+        public CompletableFuture<Map<String, Object>> executeStatementAsync(
+                String query, List<String> generatedKeys, List<Object> params) {
+            return CompletableFuture.supplyAsync(
+                    () -> executeStatement(query, generatedKeys, params), executor);
         }
 
         @Override
         @SneakyThrows
         public Map<String, Object> executeStatement(
                 String query, List<String> generatedKeys, List<Object> params) {
-            PreparedStatement ps;
-            if (generatedKeys != null && !generatedKeys.isEmpty()) {
-                ps = connection.prepareStatement(query, generatedKeys.toArray(new String[0]));
-            } else {
-                ps = connection.prepareStatement(query);
-            }
-            for (int i = 0; i < params.size(); i++) {
-                ps.setObject(i + 1, params.get(i));
-            }
-            long resultCount = ps.executeLargeUpdate();
-            Map<String, Object> generatedKeysValues = null;
-            if (generatedKeys != null && !generatedKeys.isEmpty()) {
-                try (ResultSet resultSet = ps.getGeneratedKeys(); ) {
-                    ResultSetMetaData metaData = resultSet.getMetaData();
-                    int numColumns = metaData.getColumnCount();
-                    generatedKeysValues = new HashMap<>();
-                    while (resultSet.next()) {
-
-                        for (int i = 1; i <= numColumns; i++) {
-                            Object value = resultSet.getObject(i);
-                            generatedKeysValues.put(metaData.getColumnName(i), value);
+            JdbcConnectionPool.PooledConnection connection = pool.borrow();
+            boolean broken = false;
+            try {
+                PreparedStatement ps = connection.prepareStatement(query, generatedKeys);
+                try {
+                    for (int i = 0; i < params.size(); i++) {
+                        ps.setObject(i + 1, params.get(i));
+                    }
+                    long resultCount = ps.executeLargeUpdate();
+                    Map<String, Object> generatedKeysValues = null;
+                    if (generatedKeys != null && !generatedKeys.isEmpty()) {
+                        try (ResultSet resultSet = ps.getGeneratedKeys(); ) {
+                            ResultSetMetaData metaData = resultSet.getMetaData();
+                            int numColumns = metaData.getColumnCount();
+                            generatedKeysValues = new HashMap<>();
+                            while (resultSet.next()) {
+
+                                for (int i = 1; i <= numColumns; i++) {
+                                    Object value = resultSet.getObject(i);
+                                    generatedKeysValues.put(metaData.getColumnName(i), value);
+                                }
+                            }
                         }
                     }
+                    if (generatedKeysValues != null) {
+                        return Map.of("count", resultCount, "generatedKeys", generatedKeysValues);
+                    } else {
+                        return Map.of("count", resultCount);
+                    }
+                } finally {
+                    connection.releaseStatement(ps);
                 }
-            }
-            if (generatedKeysValues != null) {
-                return Map.of("count", resultCount, "generatedKeys", generatedKeysValues);
-            } else {
-                return Map.of("count", resultCount);
+            } catch (SQLException e) {
+                broken = JdbcConnectionPool.isConnectionError(e);
+                throw e;
+            } finally {
+                pool.release(connection, broken);
             }
         }
 
         @Override
         @SneakyThrows
         public List<Map<String, Object>> fetchData(String query, List<Object> params) {
-            PreparedStatement ps = connection.prepareStatement(query);
-            for (int i = 0; i < params.size(); i++) {
-                ps.setObject(i + 1, params.get(i));
-            }
-            try (ResultSet resultSet = ps.executeQuery()) {
-                ResultSetMetaData metaData = resultSet.getMetaData();
-                int numColumns = metaData.getColumnCount();
-                List<Map<String, Object>> results = new ArrayList<>();
-                while (resultSet.next()) {
-                    Map<String, Object> result = new HashMap<>();
-                    for (int i = 1; i <= numColumns; i++) {
-                        Object value = resultSet.getObject(i);
-                        result.put(metaData.getColumnName(i), value);
+            JdbcConnectionPool.PooledConnection connection = pool.borrow();
+            boolean broken = false;
+            try {
+                PreparedStatement ps = connection.prepareStatement(query);
+                try {
+                    for (int i = 0; i < params.size(); i++) {
+                        ps.setObject(i + 1, params.get(i));
+                    }
+                    try (ResultSet resultSet = ps.executeQuery()) {
+                        ResultSetMetaData metaData = resultSet.getMetaData();
+                        int numColumns = metaData.getColumnCount();
+                        List<Map<String, Object>> results = new ArrayList<>();
+                        while (resultSet.next()) {
+                            Map<String, Object> result = new HashMap<>();
+                            for (int i = 1; i <= numColumns; i++) {
+                                Object value = resultSet.getObject(i);
+                                result.put(metaData.getColumnName(i), value);
+                            }
+                            results.add(result);
+                        }
+                        return results;
                     }
-                    results.add(result);
+                } finally {
+                    connection.releaseStatement(ps);
                 }
-                return results;
+            } catch (SQLException e) {
+                broken = JdbcConnectionPool.isConnectionError(e);
+                throw e;
+            } finally {
+                pool.release(connection, broken);
             }
         }
 
         @Override
         public void close() {
-            if (connection != null) {
-                try {
-                    connection.close();
-                } catch (Exception e) {
-                    log.error("Error closing connection", e);
-                }
+            if (executor != null) {
+                executor.shutdown();
+            }
+            if (pool != null) {
+                pool.close();
             }
         }
     }
@@ -142,22 +221,66 @@ public class JdbcDataSourceProvider implements DataSourceProvider {
                     NoSuchMethodException,
                     ClassNotFoundException,
                     SQLException {
+        return buildConnection(dataSourceConfig, Thread.currentThread().getContextClassLoader());
+    }
+
+    /**
+     * Open a connection, loading the driver from the given classloader.
+     *
+     * @param dataSourceConfig the datasource configuration
+     * @param classLoader the classloader of the agent, the connections may be opened by threads
+     *     with a different context classloader
+     */
+    public static Connection buildConnection(
+            Map<String, Object> dataSourceConfig, ClassLoader classLoader)
+            throws InstantiationException,
+                    IllegalAccessException,
+                    InvocationTargetException,
+                    NoSuchMethodException,
+                    ClassNotFoundException,
+                    SQLException {
         Properties properties = new Properties();
         properties.putAll(dataSourceConfig);
+        JdbcConnectionPool.POOL_PROPERTIES.forEach(properties::remove);
         String driverClass = properties.getProperty("driverClass", "");
-        log.info("Connecting to {}, config {}", properties.getProperty("url"), properties);
+        log.info(
+                "Connecting to {}, config {}",
+                properties.getProperty("url"),
+                ConfigurationUtils.redactSecrets(properties));
         if (!driverClass.isEmpty()) {
-            ClassLoader currentClassLoader = Thread.currentThread().getContextClassLoader();
-            log.info("Loading JDBC Driver {} from classloader {}", driverClass, currentClassLoader);
+            registerDriver(driverClass, classLoader);
+        }
+        return DriverManager.getConnection((String) properties.get("url"), properties);
+    }
+
+    /**
+     * Register the driver loaded by the given classloader, only once, as the connection pools
+     * call buildConnection for every new connection. The map is weak in order not to retain the
+     * classloaders of the agents that have been unloaded.
+     */
+    private static void registerDriver(String driverClass, ClassLoader classLoader)
+            throws InstantiationException,
+                    IllegalAccessException,
+                    InvocationTargetException,
+                    NoSuchMethodException,
+                    ClassNotFoundException,
+                    SQLException {
+        synchronized (REGISTERED_DRIVERS) {
+            Set<String> registered =
+                    REGISTERED_DRIVERS.computeIfAbsent(classLoader, __ -> new HashSet<>());
+            if (registered.contains(driverClass)) {
+                return;
+            }
+            log.info("Loading JDBC Driver {} from classloader {}", driverClass, classLoader);
             Driver driver =
                     (Driver)
-                            Class.forName(driverClass, true, currentClassLoader)
+                            Class.forName(driverClass, true, classLoader)
                                     .getConstructor()
                                     .newInstance();
             // https://www.kfu.com/~nsayer/Java/dyn-jdbc.html
             DriverManager.registerDriver(new DriverShim(driver));
+            registered.add(driverClass);
         }
-        return DriverManager.getConnection((String) properties.get("url"), properties);
     }
 
     static class DriverShim implements Driver {
@@ -0,0 +1,235 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.ai.agents.rerank;
+
+import ai.langstream.ai.agents.commons.VectorKernels;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Maximal Marginal Relevance ranking, with BM25 as relevance score and the average cosine
+ * similarity with the already selected documents as diversity penalty.
+ *
+ * <p>The BM25 scores are computed over the documents not selected yet, as the statistics (number
+ * of documents, average length, document frequency of the query terms) change at every round
+ * they are maintained incrementally: every document is tokenized only once and only the
+ * frequencies of the query terms are kept. In the same way the sum of the similarities with the
+ * selected documents is updated with the last selected document only.
+ *
+ * <p>{@link #rankByEmbeddings} is the classic variant: the relevance is the cosine similarity with
+ * the embeddings of the query and the penalty is the maximum similarity with the selected
+ * documents.
+ */
+public final class MaximalMarginalRelevance {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private MaximalMarginalRelevance() {}
+
+    /**
+     * Rank the documents.
+     *
+     * @return the indexes of the selected documents, in ranking order
+     */
+    static int[] rank(
+            List<ReRankAgent.TextWithEmbeddings> documents,
+            String query,
+            int max,
+            double lambda,
+            double k1,
+            double b) {
+        int size = documents.size();
+
+        // unique query terms, the query terms are still iterated in order (with duplicates)
+        // in order to compute exactly the same sum as the textbook formula
+        String[] queryTerms = tokenise(query);
+        Map<String, Integer> uniqueTerms = new HashMap<>();
+        int[] queryTermSlots = new int[queryTerms.length];
+        for (int t = 0; t < queryTerms.length; t++) {
+            Integer slot = uniqueTerms.putIfAbsent(queryTerms[t], uniqueTerms.size());
+            queryTermSlots[t] = slot == null ? uniqueTerms.size() - 1 : slot;
+        }
+        int numUniqueTerms = uniqueTerms.size();
+
+        int[][] termFrequencies = new int[size][];
+        int[] lengths = new int[size];
+        float[] norms = new float[size];
+        int[] documentFrequencies = new int[numUniqueTerms];
+        long totalLength = 0;
+        List<Integer> candidates = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            ReRankAgent.TextWithEmbeddings document = documents.get(i);
+            if (document.text() == null
+                    || document.text().isEmpty()
+                    || document.embeddings() == null
+                    || document.embeddings().length == 0) {
+                continue;
+            }
+            candidates.add(i);
+            String[] terms = tokenise(document.text());
+            int[] frequencies = new int[numUniqueTerms];
+            for (String term : terms) {
+                Integer slot = uniqueTerms.get(term);
+                if (slot != null) {
+                    frequencies[slot]++;
+                }
+            }
+            for (int u = 0; u < numUniqueTerms; u++) {
+                if (frequencies[u] > 0) {
+                    documentFrequencies[u]++;
+                }
+            }
+            termFrequencies[i] = frequencies;
+            lengths[i] = terms.length;
+            totalLength += terms.length;
+            norms[i] = VectorKernels.norm(document.embeddings());
+        }
+
+        int remaining = candidates.size();
+        boolean[] selected = new boolean[size];
+        double[] similaritySums = new double[size];
+        double[] idf = new double[numUniqueTerms];
+        int[] result = new int[Math.min(Math.max(max, 0), remaining)];
+        for (int round = 0; round < result.length; round++) {
+            double avgdl = (double) totalLength / remaining;
+            for (int u = 0; u < numUniqueTerms; u++) {
+                idf[u] =
+                        Math.log(
+                                (remaining - documentFrequencies[u] + 0.5)
+                                                / (documentFrequencies[u] + 0.5)
+                                        + 1.0);
+            }
+
+            int top = -1;
+            double topScore = Double.NEGATIVE_INFINITY;
+            for (int i : candidates) {
+                if (selected[i]) {
+                    continue;
+                }
+                double relevance = 0;
+                double lengthNorm = 1 - b + b * (lengths[i] / avgdl);
+                for (int slot : queryTermSlots) {
+                    int tf = termFrequencies[i][slot];
+                    double numerator = tf * (k1 + 1);
+                    double denominator = tf + k1 * lengthNorm;
+                    relevance += idf[slot] * (numerator / denominator);
+                }
+                double diversity = round == 0 ? 0 : similaritySums[i] / round;
+                double score = lambda * relevance - (1 - lambda) * diversity;
+                if (top < 0 || score > topScore) {
+                    top = i;
+                    topScore = score;
+                }
+            }
+
+            result[round] = top;
+            selected[top] = true;
+            remaining--;
+            totalLength -= lengths[top];
+            for (int u = 0; u < numUniqueTerms; u++) {
+                if (termFrequencies[top][u] > 0) {
+                    documentFrequencies[u]--;
+                }
+            }
+            if (round + 1 < result.length) {
+                float[] topEmbeddings = documents.get(top).embeddings();
+                for (int i : candidates) {
+                    if (!selected[i]) {
+                        similaritySums[i] +=
+                                VectorKernels.cosineSimilarity(
+                                        documents.get(i).embeddings(),
+                                        norms[i],
+                                        topEmbeddings,
+                                        norms[top]);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Rank all the documents with the cosine similarity with the query as relevance score and the
+     * maximum similarity with the already selected documents as diversity penalty. Missing
+     * embeddings, or embeddings of a different size, have similarity 0 with everything.
+     *
+     * @return the indexes of the documents, in ranking order
+     */
+    public static int[] rankByEmbeddings(
+            float[] queryEmbeddings, List<float[]> embeddings, double lambda) {
+        int size = embeddings.size();
+        float queryNorm = queryEmbeddings == null ? 0 : VectorKernels.norm(queryEmbeddings);
+        float[] norms = new float[size];
+        double[] relevance = new double[size];
+        double[] maxSimilarity = new double[size];
+        for (int i = 0; i < size; i++) {
+            float[] document = embeddings.get(i);
+            norms[i] = document == null ? 0 : VectorKernels.norm(document);
+            relevance[i] = safeCosineSimilarity(queryEmbeddings, queryNorm, document, norms[i]);
+            maxSimilarity[i] = Double.NEGATIVE_INFINITY;
+        }
+
+        boolean[] selected = new boolean[size];
+        int[] result = new int[size];
+        for (int round = 0; round < size; round++) {
+            int top = -1;
+            double topScore = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < size; i++) {
+                if (selected[i]) {
+                    continue;
+                }
+                double diversity = round == 0 ? 0 : maxSimilarity[i];
+                double score = lambda * relevance[i] - (1 - lambda) * diversity;
+                if (top < 0 || score > topScore) {
+                    top = i;
+                    topScore = score;
+                }
+            }
+            result[round] = top;
+            selected[top] = true;
+            if (round + 1 < size) {
+                float[] topEmbeddings = embeddings.get(top);
+                for (int i = 0; i < size; i++) {
+                    if (!selected[i]) {
+                        maxSimilarity[i] =
+                                Math.max(
+                                        maxSimilarity[i],
+                                        safeCosineSimilarity(
+                                                embeddings.get(i),
+                                                norms[i],
+                                                topEmbeddings,
+                                                norms[top]));
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    private static float safeCosineSimilarity(float[] a, float normA, float[] b, float normB) {
+        if (a == null || b == null || a.length != b.length) {
+            return 0;
+        }
+        return VectorKernels.cosineSimilarity(a, normA, b, normB);
+    }
+
+    static String[] tokenise(String text) {
+        return WHITESPACE.split(text);
+    }
+}
@@ -19,6 +19,8 @@ import static com.datastax.oss.streaming.ai.util.TransformFunctionUtil.convertTo
 
 import ai.langstream.ai.agents.commons.JsonRecord;
 import ai.langstream.ai.agents.commons.MutableRecord;
+import ai.langstream.ai.agents.commons.TransformSchemaType;
+import ai.langstream.api.runner.code.MetricsReporter;
 import com.datastax.oss.streaming.ai.completions.ChatChoice;
 import com.datastax.oss.streaming.ai.completions.ChatCompletions;
 import com.datastax.oss.streaming.ai.completions.ChatMessage;
@@ -34,6 +36,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.avro.Schema;
@@ -54,6 +60,12 @@ public class ChatCompletionsStep implements TransformStep {
 
     private StreamingAnswersConsumer streamingAnswersConsumer;
 
+    private final MetricsReporter.Counter streamedAnswersCounter;
+    private final MetricsReporter.Counter streamedChunksCounter;
+    private final MetricsReporter.Counter timeToFirstChunkCounter;
+
+    private ScheduledExecutorService lingerScheduler;
+
     // for tests
     public ChatCompletionsStep(
             CompletionsService completionsService, ChatCompletionsConfig config) {
@@ -78,10 +90,42 @@ public class ChatCompletionsStep implements TransformStep {
             CompletionsService completionsService,
             StreamingAnswersConsumerFactory streamingAnswersConsumerFactory,
             ChatCompletionsConfig config) {
+        this(
+                completionsService,
+                streamingAnswersConsumerFactory,
+                config,
+                MetricsReporter.DISABLED);
+    }
+
+    public ChatCompletionsStep(
+            CompletionsService completionsService,
+            StreamingAnswersConsumerFactory streamingAnswersConsumerFactory,
+            ChatCompletionsConfig config,
+            MetricsReporter metricsReporter) {
         this.streamingAnswersConsumerFactory = streamingAnswersConsumerFactory;
         this.completionsService = completionsService;
         this.config = config;
+        if (!ChatCompletionsConfig.STREAM_CHUNK_MODE_FULL.equals(config.getStreamChunkMode())
+                && !ChatCompletionsConfig.STREAM_CHUNK_MODE_DELTA.equals(
+                        config.getStreamChunkMode())) {
+            throw new IllegalArgumentException(
+                    "Invalid stream-chunk-mode: "
+                            + config.getStreamChunkMode()
+                            + ", only 'full' and 'delta' are supported");
+        }
         this.streamingAnswersConsumer = (index, message, last, record) -> {};
+        this.streamedAnswersCounter =
+                metricsReporter.counter(
+                        "chat_completions_streamed_answers",
+                        "Number of answers streamed to the stream-to-topic");
+        this.streamedChunksCounter =
+                metricsReporter.counter(
+                        "chat_completions_streamed_chunks",
+                        "Number of chunk records written to the stream-to-topic");
+        this.timeToFirstChunkCounter =
+                metricsReporter.counter(
+                        "chat_completions_time_to_first_chunk_millis",
+                        "Total time to the first streamed chunk, in milliseconds");
         config.getMessages()
                 .forEach(
                         chatMessage ->
@@ -101,11 +145,17 @@ public class ChatCompletionsStep implements TransformStep {
             log.info("Streaming answers to topic {}", config.getStreamToTopic());
             this.streamingAnswersConsumer =
                     streamingAnswersConsumerFactory.create(config.getStreamToTopic());
+            if (config.getStreamLingerMs() > 0) {
+                this.lingerScheduler = Executors.newSingleThreadScheduledExecutor();
+            }
         }
     }
 
     @Override
     public void close() throws Exception {
+        if (this.lingerScheduler != null) {
+            this.lingerScheduler.shutdownNow();
+        }
         if (this.streamingAnswersConsumer != null) {
             this.streamingAnswersConsumer.close();
         }
@@ -129,6 +179,7 @@ public class ChatCompletionsStep implements TransformStep {
         Map<String, Object> options = convertToMap(config);
         options.put("min-chunks-per-message", config.getMinChunksPerMessage());
 
+        StreamingAnswer streamingAnswer = new StreamingAnswer(mutableRecord);
         CompletableFuture<ChatCompletions> chatCompletionsHandle =
                 completionsService.getChatCompletions(
                         messages,
@@ -136,20 +187,7 @@ public class ChatCompletionsStep implements TransformStep {
                             @Override
                             public void consumeChunk(
                                     String answerId, int index, Chunk chunk, boolean last) {
-
-                                // we must copy the context because the same context is used for all
-                                // chunks
-                                // and also for the final answer
-                                MutableRecord copy = mutableRecord.copy();
-
-                                copy.getProperties().put("stream-id", answerId);
-                                copy.getProperties().put("stream-index", index + "");
-                                copy.getProperties().put("stream-last-message", last + "");
-
-                                final String content = chunk.content();
-                                applyResultFieldToContext(copy, content, true);
-                                streamingAnswersConsumer.streamAnswerChunk(
-                                        index, content, last, copy);
+                                streamingAnswer.consumeChunk(answerId, chunk.content(), last);
                             }
                         },
                         options);
@@ -176,6 +214,94 @@ public class ChatCompletionsStep implements TransformStep {
                 });
     }
 
+    /**
+     * Collects the chunks of one answer. With stream-linger-ms or stream-batch-size the chunks
+     * are merged and written together, in order to reduce the number of records written to the
+     * topic. The first chunk is always written immediately, in order to keep the time to first
+     * token low.
+     */
+    private class StreamingAnswer {
+        private final MutableRecord mutableRecord;
+        private final long startTime = System.nanoTime();
+        private final StringBuilder pending = new StringBuilder();
+        private int pendingChunks;
+        private int index;
+        private String answerId;
+        private ScheduledFuture<?> lingerTask;
+
+        StreamingAnswer(MutableRecord mutableRecord) {
+            this.mutableRecord = mutableRecord;
+        }
+
+        synchronized void consumeChunk(String answerId, String content, boolean last) {
+            this.answerId = answerId;
+            if (content != null) {
+                pending.append(content);
+            }
+            pendingChunks++;
+            int batchSize = config.getStreamBatchSize();
+            if (last
+                    || index == 0
+                    || (batchSize > 0 && pendingChunks >= batchSize)
+                    || (lingerScheduler == null && batchSize <= 0)) {
+                flush(last);
+            } else if (lingerScheduler != null && lingerTask == null) {
+                lingerTask =
+                        lingerScheduler.schedule(
+                                this::lingerExpired,
+                                config.getStreamLingerMs(),
+                                TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private synchronized void lingerExpired() {
+            lingerTask = null;
+            if (pendingChunks > 0) {
+                flush(false);
+            }
+        }
+
+        private void flush(boolean last) {
+            if (lingerTask != null) {
+                lingerTask.cancel(false);
+                lingerTask = null;
+            }
+            String content = pending.toString();
+            pending.setLength(0);
+            pendingChunks = 0;
+            index++;
+            if (config.getStreamToTopic() == null || config.getStreamToTopic().isEmpty()) {
+                return;
+            }
+            if (index == 1) {
+                streamedAnswersCounter.count(1);
+                timeToFirstChunkCounter.count(
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+            }
+            streamedChunksCounter.count(1);
+            MutableRecord chunkRecord = buildChunkRecord(mutableRecord, content);
+            chunkRecord.getProperties().put("stream-id", answerId);
+            chunkRecord.getProperties().put("stream-index", index + "");
+            chunkRecord.getProperties().put("stream-last-message", last + "");
+            streamingAnswersConsumer.streamAnswerChunk(index, content, last, chunkRecord);
+        }
+    }
+
+    private MutableRecord buildChunkRecord(MutableRecord mutableRecord, String content) {
+        if (ChatCompletionsConfig.STREAM_CHUNK_MODE_DELTA.equals(config.getStreamChunkMode())) {
+            // only the key, the headers and the delta, without copying the whole record
+            MutableRecord chunkRecord = mutableRecord.copyWithoutValue();
+            chunkRecord.setValueObject(content);
+            chunkRecord.setValueSchemaType(TransformSchemaType.STRING);
+            return chunkRecord;
+        }
+        // we must copy the context because the same context is used for all
+        // chunks and also for the final answer
+        MutableRecord copy = mutableRecord.copy();
+        applyResultFieldToContext(copy, content, true);
+        return copy;
+    }
+
     private void applyResultFieldToContext(
             MutableRecord mutableRecord, String content, boolean streamingAnswer) {
         String fieldName = config.getFieldName();
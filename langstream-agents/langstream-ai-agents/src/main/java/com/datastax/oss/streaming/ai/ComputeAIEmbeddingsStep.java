@@ -18,6 +18,8 @@ package com.datastax.oss.streaming.ai;
 import ai.langstream.ai.agents.commons.JsonRecord;
 import ai.langstream.ai.agents.commons.MutableRecord;
 import ai.langstream.ai.agents.commons.jstl.JstlEvaluator;
+import ai.langstream.api.runner.code.MetricsReporter;
+import ai.langstream.api.util.AdaptiveBatchSizer;
 import ai.langstream.api.util.OrderedAsyncBatchExecutor;
 import com.datastax.oss.streaming.ai.embeddings.EmbeddingsService;
 import com.samskivert.mustache.Mustache;
@@ -71,6 +73,28 @@ public class ComputeAIEmbeddingsStep implements TransformStep {
             long flushInterval,
             int concurrency,
             EmbeddingsService embeddingsService) {
+        this(
+                text,
+                embeddingsFieldName,
+                loopOver,
+                batchSize,
+                flushInterval,
+                concurrency,
+                embeddingsService,
+                null,
+                MetricsReporter.DISABLED);
+    }
+
+    public ComputeAIEmbeddingsStep(
+            String text,
+            String embeddingsFieldName,
+            String loopOver,
+            int batchSize,
+            long flushInterval,
+            int concurrency,
+            EmbeddingsService embeddingsService,
+            AdaptiveBatchSizer.Config adaptiveBatching,
+            MetricsReporter metricsReporter) {
         this.template =
                 Mustache.compiler().compile(MustacheCompatibilityUtils.handleLegacyTemplate(text));
         this.loopOverFieldName = loopOver;
@@ -92,8 +116,19 @@ public class ComputeAIEmbeddingsStep implements TransformStep {
             this.fieldInRecord = null;
         }
         this.embeddingsService = embeddingsService;
+        AdaptiveBatchSizer batchSizer =
+                adaptiveBatching != null
+                        ? new AdaptiveBatchSizer(
+                                adaptiveBatching,
+                                batchSize,
+                                metricsReporter.gauge(
+                                        "compute_ai_embeddings_batch_size",
+                                        "Current batch size for the embeddings requests"))
+                        : null;
         this.executorService =
-                flushInterval > 0 ? Executors.newSingleThreadScheduledExecutor() : null;
+                flushInterval > 0 || batchSizer != null
+                        ? Executors.newSingleThreadScheduledExecutor()
+                        : null;
         int numBuckets = concurrency > 0 ? concurrency : 1;
         this.batchExecutor =
                 new OrderedAsyncBatchExecutor<>(
@@ -102,7 +137,8 @@ public class ComputeAIEmbeddingsStep implements TransformStep {
                         flushInterval,
                         numBuckets,
                         ComputeAIEmbeddingsStep::computeHashForRecord,
-                        executorService);
+                        executorService,
+                        batchSizer);
     }
 
     private static int computeHashForRecord(RecordHolder record) {
@@ -21,7 +21,10 @@ import com.datastax.oss.streaming.ai.datasource.QueryStepDataSource;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 import lombok.Builder;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.avro.Schema;
@@ -48,6 +51,7 @@ public class QueryStep implements TransformStep {
     private final String loopOver;
     private final List<String> generatedKeys;
     private final String mode;
+    private final int concurrency;
 
     private JstlEvaluator<List> loopOverAccessor;
 
@@ -60,9 +64,11 @@ public class QueryStep implements TransformStep {
             String loopOver,
             List<String> generatedKeys,
             String mode,
+            int concurrency,
             JstlEvaluator<List> loopOverAccessor) {
         this.fields = fields;
         this.mode = mode == null ? MODE_QUERY : mode;
+        this.concurrency = concurrency;
         this.generatedKeys = generatedKeys;
         this.outputFieldName = outputFieldName;
         this.query = query;
@@ -84,112 +90,167 @@ public class QueryStep implements TransformStep {
     }
 
     @Override
-    public void process(MutableRecord mutableRecord) {
+    public CompletableFuture<?> processAsync(MutableRecord mutableRecord) {
+        try {
+            switch (mode) {
+                case MODE_QUERY:
+                    return processQuery(mutableRecord)
+                            .thenAccept(results -> setQueryResult(mutableRecord, results));
+                case MODE_EXECUTE:
+                    return processExecute(mutableRecord)
+                            .thenAccept(result -> setExecuteResult(mutableRecord, result));
+                default:
+                    throw new IllegalStateException("Unknown mode " + mode);
+            }
+        } catch (Throwable error) {
+            return CompletableFuture.failedFuture(error);
+        }
+    }
+
+    private void setQueryResult(MutableRecord mutableRecord, List<Map<String, Object>> results) {
         Schema schema;
         Object finalResult;
+        if (onlyFirst) {
+            schema = Schema.createMap(Schema.create(Schema.Type.STRING));
+            if (results.isEmpty()) {
+                finalResult = Map.of();
+            } else {
+                finalResult = results.get(0);
+            }
+        } else {
+            schema = Schema.createArray(Schema.createMap(Schema.create(Schema.Type.STRING)));
+            finalResult = results;
+        }
+        mutableRecord.setResultField(
+                finalResult, outputFieldName, schema, avroKeySchemaCache, avroValueSchemaCache);
+    }
 
-        switch (mode) {
-            case MODE_QUERY:
-                List<Map<String, Object>> results = processQuery(mutableRecord);
-                if (onlyFirst) {
-                    schema = Schema.createMap(Schema.create(Schema.Type.STRING));
-                    if (results.isEmpty()) {
-                        finalResult = Map.of();
-                    } else {
-                        finalResult = results.get(0);
-                    }
-                } else {
-                    schema =
-                            Schema.createArray(Schema.createMap(Schema.create(Schema.Type.STRING)));
-                    finalResult = results;
-                }
-                break;
-            case MODE_EXECUTE:
-                finalResult = processExecute(mutableRecord);
-                if (finalResult instanceof Map) {
-                    schema = Schema.createMap(Schema.create(Schema.Type.STRING));
-                } else if (finalResult instanceof List) {
-                    schema =
-                            Schema.createArray(Schema.createMap(Schema.create(Schema.Type.STRING)));
-                } else {
-                    throw new IllegalStateException();
-                }
-                break;
-            default:
-                throw new IllegalStateException("Unknown mode " + mode);
+    private void setExecuteResult(MutableRecord mutableRecord, Object finalResult) {
+        Schema schema;
+        if (finalResult instanceof Map) {
+            schema = Schema.createMap(Schema.create(Schema.Type.STRING));
+        } else if (finalResult instanceof List) {
+            schema = Schema.createArray(Schema.createMap(Schema.create(Schema.Type.STRING)));
+        } else {
+            throw new IllegalStateException();
         }
         mutableRecord.setResultField(
                 finalResult, outputFieldName, schema, avroKeySchemaCache, avroValueSchemaCache);
     }
 
-    private List<Map<String, Object>> processQuery(MutableRecord mutableRecord) {
-        List<Map<String, Object>> results;
+    private CompletableFuture<List<Map<String, Object>>> processQuery(
+            MutableRecord mutableRecord) {
         if (loopOverAccessor == null) {
-            results = performQuery(mutableRecord);
-        } else {
-            // loop over a list
-            // for each item we name if "record" and we perform the query
-            List<Object> nestedRecords = loopOverAccessor.evaluate(mutableRecord);
-            results = new ArrayList<>();
-            for (Object document : nestedRecords) {
-                MutableRecord nestedRecordContext = new MutableRecord();
-                nestedRecordContext.setRecordObject(document);
-                // set in the item the result
-                List<Map<String, Object>> resultsForDocument = performQuery(nestedRecordContext);
-                results.addAll(resultsForDocument);
-            }
+            return performQuery(evaluateParams(mutableRecord));
         }
-        return results;
+        // loop over a list
+        // for each item we name if "record" and we perform the query
+        List<List<Object>> paramsForDocuments = evaluateParamsForNestedRecords(mutableRecord);
+        return forEachInParallel(paramsForDocuments, this::performQuery)
+                .thenApply(
+                        resultsForDocuments -> {
+                            List<Map<String, Object>> results = new ArrayList<>();
+                            resultsForDocuments.forEach(results::addAll);
+                            return results;
+                        });
     }
 
-    private Object processExecute(MutableRecord mutableRecord) {
-        Object res;
+    private CompletableFuture<?> processExecute(MutableRecord mutableRecord) {
         if (loopOverAccessor == null) {
-            res = executeStatement(mutableRecord);
-        } else {
-            // loop over a list
-            // for each item we name if "record" and we perform the query
-            List<Object> nestedRecords = loopOverAccessor.evaluate(mutableRecord);
-            List<Map<String, Object>> results = new ArrayList<>();
-            for (Object document : nestedRecords) {
-                MutableRecord nestedRecordContext = new MutableRecord();
-                nestedRecordContext.setRecordObject(document);
-                // set in the item the result
-                Map<String, Object> resultsForDocument = executeStatement(nestedRecordContext);
-                results.add(resultsForDocument);
-            }
-            res = results;
+            return executeStatement(evaluateParams(mutableRecord));
         }
-        return res;
+        // loop over a list
+        // for each item we name if "record" and we perform the query
+        List<List<Object>> paramsForDocuments = evaluateParamsForNestedRecords(mutableRecord);
+        return forEachInParallel(paramsForDocuments, this::executeStatement);
     }
 
-    private List<Map<String, Object>> performQuery(MutableRecord mutableRecord) {
-        List<Object> params = new ArrayList<>();
-        fieldsEvaluators.forEach(
-                field -> {
-                    if (log.isDebugEnabled()) {
-                        log.debug("Evaluating {}", field);
-                    }
-                    Object value = field.evaluate(mutableRecord);
-                    if (log.isDebugEnabled()) {
-                        log.debug(
-                                "Result {} type {}",
-                                value,
-                                value != null ? value.getClass() : "null");
-                    }
-                    params.add(value);
-                });
-        List<Map<String, Object>> results = dataSource.fetchData(query, params);
-        if (results == null) {
-            results = List.of();
+    private List<List<Object>> evaluateParamsForNestedRecords(MutableRecord mutableRecord) {
+        // the evaluators are not thread safe, so we evaluate all the parameters
+        // before issuing the queries
+        List<Object> nestedRecords = loopOverAccessor.evaluate(mutableRecord);
+        List<List<Object>> paramsForDocuments = new ArrayList<>(nestedRecords.size());
+        for (Object document : nestedRecords) {
+            MutableRecord nestedRecordContext = new MutableRecord();
+            nestedRecordContext.setRecordObject(document);
+            paramsForDocuments.add(evaluateParams(nestedRecordContext));
         }
-        if (log.isDebugEnabled()) {
-            log.debug("Result from datasource: {}", results);
+        return paramsForDocuments;
+    }
+
+    /**
+     * Apply the operation to all the inputs, with at most "concurrency" operations in flight. The
+     * results are in the same order of the inputs.
+     */
+    private <I, O> CompletableFuture<List<O>> forEachInParallel(
+            List<I> inputs, Function<I, CompletableFuture<O>> operation) {
+        CompletableFuture<List<O>> result = new CompletableFuture<>();
+        int size = inputs.size();
+        if (size == 0) {
+            result.complete(List.of());
+            return result;
+        }
+        Object[] results = new Object[size];
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger completed = new AtomicInteger();
+        int workers = Math.min(size, Math.max(1, concurrency));
+        for (int i = 0; i < workers; i++) {
+            runNext(inputs, operation, results, next, completed, result);
         }
-        return results;
+        return result;
     }
 
-    private Map<String, Object> executeStatement(MutableRecord mutableRecord) {
+    private static <I, O> void runNext(
+            List<I> inputs,
+            Function<I, CompletableFuture<O>> operation,
+            Object[] results,
+            AtomicInteger next,
+            AtomicInteger completed,
+            CompletableFuture<List<O>> result) {
+        // loop instead of recursion when the operation completes synchronously
+        while (!result.isDone()) {
+            int index = next.getAndIncrement();
+            if (index >= inputs.size()) {
+                return;
+            }
+            CompletableFuture<O> handle;
+            try {
+                handle = operation.apply(inputs.get(index));
+            } catch (Throwable error) {
+                result.completeExceptionally(error);
+                return;
+            }
+            if (handle.isDone() && !handle.isCompletedExceptionally()) {
+                results[index] = handle.join();
+                completeIfDone(results, completed, result);
+                continue;
+            }
+            handle.whenComplete(
+                    (value, error) -> {
+                        if (error != null) {
+                            result.completeExceptionally(error);
+                        } else {
+                            results[index] = value;
+                            completeIfDone(results, completed, result);
+                            runNext(inputs, operation, results, next, completed, result);
+                        }
+                    });
+            return;
+        }
+    }
+
+    private static <O> void completeIfDone(
+            Object[] results, AtomicInteger completed, CompletableFuture<List<O>> result) {
+        if (completed.incrementAndGet() == results.length) {
+            List<O> list = new ArrayList<>(results.length);
+            for (Object o : results) {
+                list.add((O) o);
+            }
+            result.complete(list);
+        }
+    }
+
+    private List<Object> evaluateParams(MutableRecord mutableRecord) {
         List<Object> params = new ArrayList<>();
         fieldsEvaluators.forEach(
                 field -> {
@@ -205,10 +266,33 @@ public class QueryStep implements TransformStep {
                     }
                     params.add(value);
                 });
-        Map<String, Object> results = dataSource.executeStatement(query, generatedKeys, params);
-        if (log.isDebugEnabled()) {
-            log.debug("Result from datasource: {}", results);
-        }
-        return results;
+        return params;
+    }
+
+    private CompletableFuture<List<Map<String, Object>>> performQuery(List<Object> params) {
+        return dataSource
+                .fetchDataAsync(query, params)
+                .thenApply(
+                        results -> {
+                            if (results == null) {
+                                results = List.of();
+                            }
+                            if (log.isDebugEnabled()) {
+                                log.debug("Result from datasource: {}", results);
+                            }
+                            return results;
+                        });
+    }
+
+    private CompletableFuture<Map<String, Object>> executeStatement(List<Object> params) {
+        return dataSource
+                .executeStatementAsync(query, generatedKeys, params)
+                .thenApply(
+                        results -> {
+                            if (log.isDebugEnabled()) {
+                                log.debug("Result from datasource: {}", results);
+                            }
+                            return results;
+                        });
     }
 }
@@ -0,0 +1,260 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.streaming.ai;
+
+import ai.langstream.ai.agents.commons.MutableRecord;
+import ai.langstream.ai.agents.commons.jstl.JstlEvaluator;
+import ai.langstream.ai.agents.commons.text.TiktokenLengthFunction;
+import ai.langstream.ai.agents.rerank.MaximalMarginalRelevance;
+import ai.langstream.api.runner.code.MetricsReporter;
+import com.datastax.oss.streaming.ai.model.config.TokenBudgetConfig;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.avro.Schema;
+
+/**
+ * Selects the documents (typically the results of a "query" step) that fit into a token budget,
+ * in order to build prompts that do not exceed the context window of the model.
+ *
+ * <p>With the "greedy" strategy the documents are considered in their original order, with the
+ * "mmr" strategy they are considered in Maximal Marginal Relevance order, computed from the
+ * embeddings of the query and of the documents. A document that does not fit in the remaining
+ * budget is skipped. Optionally every document is truncated to max-tokens-per-document.
+ */
+@Slf4j
+public class TokenBudgetStep implements TransformStep {
+
+    public static final String STRATEGY_GREEDY = "greedy";
+    public static final String STRATEGY_MMR = "mmr";
+
+    private static final int TOKEN_COUNT_CACHE_SIZE = 10_000;
+
+    private final Map<Schema, Schema> avroValueSchemaCache = new ConcurrentHashMap<>();
+    private final Map<Schema, Schema> avroKeySchemaCache = new ConcurrentHashMap<>();
+
+    private final TokenBudgetConfig config;
+    private final TiktokenLengthFunction tokenizer;
+    private final JstlEvaluator<List> documentsAccessor;
+    private final JstlEvaluator<Object> queryEmbeddingsAccessor;
+
+    // retrieved documents are often the same across records, counting the tokens is the
+    // expensive part of the step
+    private final Map<String, Integer> tokenCountCache =
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+                    return size() > TOKEN_COUNT_CACHE_SIZE;
+                }
+            };
+
+    private final MetricsReporter.Counter inputTokensCounter;
+    private final MetricsReporter.Counter outputTokensCounter;
+    private final MetricsReporter.Counter droppedDocumentsCounter;
+    private final MetricsReporter.Counter truncatedDocumentsCounter;
+
+    private record Candidate(Object document, String text, int tokens, float[] embeddings) {}
+
+    public TokenBudgetStep(TokenBudgetConfig config, MetricsReporter metricsReporter) {
+        if (config.getMaxTokens() <= 0) {
+            throw new IllegalArgumentException("max-tokens must be greater than 0");
+        }
+        if (!STRATEGY_GREEDY.equals(config.getStrategy())
+                && !STRATEGY_MMR.equals(config.getStrategy())) {
+            throw new IllegalArgumentException(
+                    "Invalid strategy: "
+                            + config.getStrategy()
+                            + ", only 'greedy' and 'mmr' are supported");
+        }
+        if (STRATEGY_MMR.equals(config.getStrategy())
+                && (config.getQueryEmbeddingsField() == null
+                        || config.getQueryEmbeddingsField().isEmpty())) {
+            throw new IllegalArgumentException(
+                    "query-embeddings-field is required with the mmr strategy");
+        }
+        this.config = config;
+        this.tokenizer = new TiktokenLengthFunction(config.getEncoding());
+        this.documentsAccessor =
+                new JstlEvaluator<>("${" + config.getDocumentsField() + "}", List.class);
+        this.queryEmbeddingsAccessor =
+                STRATEGY_MMR.equals(config.getStrategy())
+                        ? new JstlEvaluator<>(
+                                "${" + config.getQueryEmbeddingsField() + "}", Object.class)
+                        : null;
+        this.inputTokensCounter =
+                metricsReporter.counter(
+                        "token_budget_input_tokens",
+                        "Number of tokens of the documents received by the step");
+        this.outputTokensCounter =
+                metricsReporter.counter(
+                        "token_budget_output_tokens",
+                        "Number of tokens of the documents selected by the step");
+        this.droppedDocumentsCounter =
+                metricsReporter.counter(
+                        "token_budget_dropped_documents",
+                        "Number of documents discarded because they do not fit in the budget");
+        this.truncatedDocumentsCounter =
+                metricsReporter.counter(
+                        "token_budget_truncated_documents",
+                        "Number of documents truncated to max-tokens-per-document");
+    }
+
+    @Override
+    public void process(MutableRecord mutableRecord) {
+        List<Object> documents = documentsAccessor.evaluate(mutableRecord);
+        if (documents == null) {
+            documents = List.of();
+        }
+
+        List<Candidate> candidates = new ArrayList<>(documents.size());
+        long inputTokens = 0;
+        for (Object document : documents) {
+            Candidate candidate = toCandidate(document);
+            inputTokens += candidate.tokens();
+            candidates.add(candidate);
+        }
+
+        if (STRATEGY_MMR.equals(config.getStrategy())) {
+            float[] queryEmbeddings =
+                    toFloatArray(queryEmbeddingsAccessor.evaluate(mutableRecord));
+            candidates = mmrOrder(candidates, queryEmbeddings, config.getMmrLambda());
+        }
+
+        List<Object> selected = new ArrayList<>();
+        int usedTokens = 0;
+        for (Candidate candidate : candidates) {
+            if (usedTokens + candidate.tokens() <= config.getMaxTokens()) {
+                usedTokens += candidate.tokens();
+                selected.add(candidate.document());
+            }
+        }
+
+        inputTokensCounter.count(inputTokens);
+        outputTokensCounter.count(usedTokens);
+        droppedDocumentsCounter.count(candidates.size() - selected.size());
+        if (log.isDebugEnabled()) {
+            log.debug(
+                    "Selected {} documents out of {}, {} tokens out of {}",
+                    selected.size(),
+                    candidates.size(),
+                    usedTokens,
+                    inputTokens);
+        }
+
+        boolean textDocuments = !selected.isEmpty() && selected.get(0) instanceof String;
+        Schema schema =
+                textDocuments
+                        ? Schema.createArray(Schema.create(Schema.Type.STRING))
+                        : Schema.createArray(Schema.createMap(Schema.create(Schema.Type.STRING)));
+        mutableRecord.setResultField(
+                selected,
+                config.getOutputField(),
+                schema,
+                avroKeySchemaCache,
+                avroValueSchemaCache);
+        if (config.getTokensField() != null && !config.getTokensField().isEmpty()) {
+            mutableRecord.setResultField(
+                    usedTokens,
+                    config.getTokensField(),
+                    Schema.create(Schema.Type.INT),
+                    avroKeySchemaCache,
+                    avroValueSchemaCache);
+        }
+    }
+
+    private Candidate toCandidate(Object document) {
+        String text;
+        float[] embeddings = null;
+        Map<String, Object> map = null;
+        if (document instanceof Map) {
+            map = (Map<String, Object>) document;
+            Object value = map.get(config.getTextField());
+            text = value == null ? "" : value.toString();
+            if (queryEmbeddingsAccessor != null) {
+                embeddings = toFloatArray(map.get(config.getEmbeddingsField()));
+            }
+        } else {
+            text = document == null ? "" : document.toString();
+        }
+
+        int tokens = countTokens(text);
+        int maxTokensPerDocument = config.getMaxTokensPerDocument();
+        if (maxTokensPerDocument > 0 && tokens > maxTokensPerDocument) {
+            text = tokenizer.truncate(text, maxTokensPerDocument);
+            tokens = countTokens(text);
+            truncatedDocumentsCounter.count(1);
+            if (map != null) {
+                Map<String, Object> copy = new HashMap<>(map);
+                copy.put(config.getTextField(), text);
+                document = copy;
+            } else {
+                document = text;
+            }
+        }
+        return new Candidate(document, text, tokens, embeddings);
+    }
+
+    private int countTokens(String text) {
+        if (text.isEmpty()) {
+            return 0;
+        }
+        synchronized (tokenCountCache) {
+            Integer cached = tokenCountCache.get(text);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        int tokens = tokenizer.length(text);
+        synchronized (tokenCountCache) {
+            tokenCountCache.put(text, tokens);
+        }
+        return tokens;
+    }
+
+    /** Order the candidates with Maximal Marginal Relevance. */
+    private static List<Candidate> mmrOrder(
+            List<Candidate> candidates, float[] queryEmbeddings, double lambda) {
+        List<float[]> embeddings = new ArrayList<>(candidates.size());
+        for (Candidate candidate : candidates) {
+            embeddings.add(candidate.embeddings());
+        }
+        int[] ranking =
+                MaximalMarginalRelevance.rankByEmbeddings(queryEmbeddings, embeddings, lambda);
+        List<Candidate> result = new ArrayList<>(ranking.length);
+        for (int index : ranking) {
+            result.add(candidates.get(index));
+        }
+        return result;
+    }
+
+    private static float[] toFloatArray(Object value) {
+        if (value instanceof float[] array) {
+            return array;
+        }
+        if (value instanceof List<?> list) {
+            float[] result = new float[list.size()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = ((Number) list.get(i)).floatValue();
+            }
+            return result;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.streaming.ai.datasource;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs the blocking calls of a datasource that doesn't have an asynchronous API, so that the
+ * queries of a QueryStep can run concurrently. Each datasource creates its own executor in
+ * initialize and shuts it down in close, so that a slow datasource doesn't delay the queries of
+ * the other agents.
+ *
+ * <p>The pool and its queue are bounded. When the queue is full the query fails with a {@link
+ * RejectedExecutionException} instead of running on the calling thread.
+ */
+public final class BlockingQueryExecutor implements AutoCloseable {
+
+    public static final int DEFAULT_THREADS = 8;
+    public static final int DEFAULT_QUEUE_SIZE = 1000;
+
+    private final ThreadPoolExecutor executor;
+
+    public BlockingQueryExecutor(String name) {
+        this(name, DEFAULT_THREADS, DEFAULT_QUEUE_SIZE);
+    }
+
+    public BlockingQueryExecutor(String name, int threads, int queueSize) {
+        AtomicInteger count = new AtomicInteger();
+        executor =
+                new ThreadPoolExecutor(
+                        threads,
+                        threads,
+                        60,
+                        TimeUnit.SECONDS,
+                        new ArrayBlockingQueue<>(queueSize),
+                        r -> {
+                            Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    public <T> CompletableFuture<T> supplyAsync(Supplier<T> query) {
+        try {
+            return CompletableFuture.supplyAsync(query, executor);
+        } catch (RejectedExecutionException error) {
+            return CompletableFuture.failedFuture(error);
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -18,6 +18,7 @@ package com.datastax.oss.streaming.ai.datasource;
 import ai.langstream.api.util.ConfigurationUtils;
 import com.datastax.oss.driver.api.core.CqlSession;
 import com.datastax.oss.driver.api.core.CqlSessionBuilder;
+import com.datastax.oss.driver.api.core.cql.AsyncResultSet;
 import com.datastax.oss.driver.api.core.cql.BoundStatement;
 import com.datastax.oss.driver.api.core.cql.ColumnDefinition;
 import com.datastax.oss.driver.api.core.cql.ColumnDefinitions;
@@ -42,6 +43,8 @@ import java.util.Base64;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 import lombok.extern.slf4j.Slf4j;
@@ -107,26 +110,55 @@ public class CassandraDataSource implements QueryStepDataSource {
         BoundStatement bind = prepareStatement(query, params);
 
         List<Row> all = session.execute(bind).all();
-        return all.stream()
-                .map(
-                        r -> {
-                            Map<String, Object> result = new HashMap<>();
-                            ColumnDefinitions columnDefinitions = r.getColumnDefinitions();
-                            for (int i = 0; i < columnDefinitions.size(); i++) {
-                                String name = columnDefinitions.get(i).getName().toString();
-                                Object object = r.getObject(i);
-                                if (log.isTraceEnabled()) {
-                                    log.trace(
-                                            "Column {} is of type {} and value {}",
-                                            name,
-                                            object != null ? object.getClass().toString() : "null",
-                                            object);
-                                }
-                                result.put(name, object);
-                            }
-                            return result;
-                        })
-                .collect(Collectors.toList());
+        return all.stream().map(CassandraDataSource::rowToMap).collect(Collectors.toList());
+    }
+
+    @Override
+    public CompletableFuture<List<Map<String, Object>>> fetchDataAsync(
+            String query, List<Object> params) {
+        if (log.isDebugEnabled()) {
+            log.debug(
+                    "Executing query {} with params {} ({})",
+                    query,
+                    params,
+                    params.stream()
+                            .map(v -> v == null ? "null" : v.getClass().toString())
+                            .collect(Collectors.joining(",")));
+        }
+        BoundStatement bind = prepareStatement(query, params);
+        List<Map<String, Object>> results = new ArrayList<>();
+        return session.executeAsync(bind)
+                .thenCompose(resultSet -> fetchAllPages(resultSet, results))
+                .toCompletableFuture();
+    }
+
+    private static CompletionStage<List<Map<String, Object>>> fetchAllPages(
+            AsyncResultSet resultSet, List<Map<String, Object>> results) {
+        for (Row row : resultSet.currentPage()) {
+            results.add(rowToMap(row));
+        }
+        if (resultSet.hasMorePages()) {
+            return resultSet.fetchNextPage().thenCompose(next -> fetchAllPages(next, results));
+        }
+        return CompletableFuture.completedFuture(results);
+    }
+
+    private static Map<String, Object> rowToMap(Row r) {
+        Map<String, Object> result = new HashMap<>();
+        ColumnDefinitions columnDefinitions = r.getColumnDefinitions();
+        for (int i = 0; i < columnDefinitions.size(); i++) {
+            String name = columnDefinitions.get(i).getName().toString();
+            Object object = r.getObject(i);
+            if (log.isTraceEnabled()) {
+                log.trace(
+                        "Column {} is of type {} and value {}",
+                        name,
+                        object != null ? object.getClass().toString() : "null",
+                        object);
+            }
+            result.put(name, object);
+        }
+        return result;
     }
 
     @Override
@@ -146,6 +178,24 @@ public class CassandraDataSource implements QueryStepDataSource {
         return Map.of();
     }
 
+    @Override
+    public CompletableFuture<Map<String, Object>> executeStatementAsync(
+            String query, List<String> generatedKeys, List<Object> params) {
+        if (log.isDebugEnabled()) {
+            log.debug(
+                    "Executing statement {} with params {} ({})",
+                    query,
+                    params,
+                    params.stream()
+                            .map(v -> v == null ? "null" : v.getClass().toString())
+                            .collect(Collectors.joining(",")));
+        }
+        BoundStatement bind = prepareStatement(query, params);
+        return session.executeAsync(bind)
+                .thenApply(resultSet -> Map.<String, Object>of())
+                .toCompletableFuture();
+    }
+
     private BoundStatement prepareStatement(String query, List<Object> params) {
         PreparedStatement preparedStatement =
                 statements.computeIfAbsent(query, q -> session.prepare(q));
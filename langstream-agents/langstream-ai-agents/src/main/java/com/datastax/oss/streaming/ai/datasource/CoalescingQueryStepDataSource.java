@@ -0,0 +1,308 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.streaming.ai.datasource;
+
+import ai.langstream.api.runner.code.MetricsReporter;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Wraps a {@link QueryStepDataSource} in order to share the results of identical queries.
+ *
+ * <p>Concurrent calls to {@link #fetchDataAsync(String, List)} with the same query and the same
+ * parameters are coalesced into one single request to the underlying datasource (single-flight).
+ * Optionally the results are kept in a small cache for a short time, so that identical queries
+ * issued shortly after are not sent to the datasource at all.
+ *
+ * <p>Statements (execute mode) are never coalesced nor cached.
+ */
+public class CoalescingQueryStepDataSource implements QueryStepDataSource {
+
+    private final QueryStepDataSource delegate;
+    private final boolean coalesce;
+    private final long cacheTtlNanos;
+    private final int cacheMaxSize;
+    private final LongSupplier clock;
+
+    private final Map<QueryKey, CompletableFuture<List<Map<String, Object>>>> inFlight =
+            new ConcurrentHashMap<>();
+    private final LinkedHashMap<QueryKey, CachedResult> cache =
+            new LinkedHashMap<>(16, 0.75f, true);
+
+    private final MetricsReporter.Counter requestsCounter;
+    private final MetricsReporter.Counter coalescedCounter;
+    private final MetricsReporter.Counter cacheHitsCounter;
+
+    private record QueryKey(String query, Object[] params) {
+
+        QueryKey(String query, List<Object> params) {
+            this(query, params == null ? new Object[0] : params.toArray());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof QueryKey other)) {
+                return false;
+            }
+            // deepEquals deals with embeddings passed as float[]
+            return query.equals(other.query) && Arrays.deepEquals(params, other.params);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * query.hashCode() + Arrays.deepHashCode(params);
+        }
+    }
+
+    private record CachedResult(List<Map<String, Object>> result, long expiresAt) {}
+
+    public CoalescingQueryStepDataSource(
+            QueryStepDataSource delegate,
+            boolean coalesce,
+            long cacheTtlMillis,
+            int cacheMaxSize,
+            MetricsReporter metricsReporter) {
+        this(delegate, coalesce, cacheTtlMillis, cacheMaxSize, metricsReporter, System::nanoTime);
+    }
+
+    CoalescingQueryStepDataSource(
+            QueryStepDataSource delegate,
+            boolean coalesce,
+            long cacheTtlMillis,
+            int cacheMaxSize,
+            MetricsReporter metricsReporter,
+            LongSupplier clock) {
+        this.delegate = delegate;
+        this.coalesce = coalesce;
+        this.cacheTtlNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, cacheTtlMillis));
+        this.cacheMaxSize = cacheMaxSize;
+        this.clock = clock;
+        this.requestsCounter =
+                metricsReporter.counter(
+                        "query_datasource_requests",
+                        "Number of queries sent to the datasource");
+        this.coalescedCounter =
+                metricsReporter.counter(
+                        "query_datasource_coalesced",
+                        "Number of queries served by an identical query already in flight");
+        this.cacheHitsCounter =
+                metricsReporter.counter(
+                        "query_datasource_cache_hits",
+                        "Number of queries served by the results cache");
+    }
+
+    /**
+     * Wrap the datasource if coalescing or caching is enabled.
+     *
+     * @return the datasource itself if both the features are disabled
+     */
+    public static QueryStepDataSource wrap(
+            QueryStepDataSource dataSource,
+            boolean coalesce,
+            long cacheTtlMillis,
+            int cacheMaxSize,
+            MetricsReporter metricsReporter) {
+        if (dataSource == null || (!coalesce && (cacheTtlMillis <= 0 || cacheMaxSize <= 0))) {
+            return dataSource;
+        }
+        return new CoalescingQueryStepDataSource(
+                dataSource, coalesce, cacheTtlMillis, cacheMaxSize, metricsReporter);
+    }
+
+    @Override
+    public List<Map<String, Object>> fetchData(String query, List<Object> params) {
+        try {
+            return fetchDataAsync(query, params).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    @Override
+    public CompletableFuture<List<Map<String, Object>>> fetchDataAsync(
+            String query, List<Object> params) {
+        QueryKey key = new QueryKey(query, params);
+        List<Map<String, Object>> cached = getCached(key);
+        if (cached != null) {
+            cacheHitsCounter.count(1);
+            return CompletableFuture.completedFuture(copy(cached));
+        }
+        if (!coalesce) {
+            return executeQuery(key, query, params).thenApply(CoalescingQueryStepDataSource::copy);
+        }
+        CompletableFuture<List<Map<String, Object>>> newRequest = new CompletableFuture<>();
+        CompletableFuture<List<Map<String, Object>>> existing =
+                inFlight.putIfAbsent(key, newRequest);
+        if (existing != null) {
+            coalescedCounter.count(1);
+            return existing.thenApply(CoalescingQueryStepDataSource::copy);
+        }
+        executeQuery(key, query, params)
+                .whenComplete(
+                        (result, error) -> {
+                            inFlight.remove(key, newRequest);
+                            if (error != null) {
+                                newRequest.completeExceptionally(error);
+                            } else {
+                                newRequest.complete(result);
+                            }
+                        });
+        return newRequest.thenApply(CoalescingQueryStepDataSource::copy);
+    }
+
+    private CompletableFuture<List<Map<String, Object>>> executeQuery(
+            QueryKey key, String query, List<Object> params) {
+        requestsCounter.count(1);
+        CompletableFuture<List<Map<String, Object>>> result;
+        try {
+            result = delegate.fetchDataAsync(query, params);
+        } catch (Throwable error) {
+            result = CompletableFuture.failedFuture(error);
+        }
+        return result.thenApply(
+                r -> {
+                    List<Map<String, Object>> value = r == null ? List.of() : r;
+                    putCached(key, value);
+                    return value;
+                });
+    }
+
+    private List<Map<String, Object>> getCached(QueryKey key) {
+        if (cacheTtlNanos <= 0 || cacheMaxSize <= 0) {
+            return null;
+        }
+        synchronized (cache) {
+            CachedResult cachedResult = cache.get(key);
+            if (cachedResult == null) {
+                return null;
+            }
+            if (cachedResult.expiresAt - clock.getAsLong() <= 0) {
+                cache.remove(key);
+                return null;
+            }
+            return cachedResult.result;
+        }
+    }
+
+    private void putCached(QueryKey key, List<Map<String, Object>> result) {
+        if (cacheTtlNanos <= 0 || cacheMaxSize <= 0) {
+            return;
+        }
+        long now = clock.getAsLong();
+        synchronized (cache) {
+            cache.put(key, new CachedResult(result, now + cacheTtlNanos));
+            if (cache.size() > cacheMaxSize) {
+                // drop the expired entries first, then the least recently used ones
+                cache.values().removeIf(c -> c.expiresAt - now <= 0);
+                Iterator<QueryKey> iterator = cache.keySet().iterator();
+                while (cache.size() > cacheMaxSize && iterator.hasNext()) {
+                    iterator.next();
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * The same results are handed to many records, and the following steps may modify them, so
+     * every caller gets its own deep copy of the rows, including the nested maps, lists and arrays.
+     */
+    private static List<Map<String, Object>> copy(List<Map<String, Object>> results) {
+        List<Map<String, Object>> copy = new ArrayList<>(results.size());
+        for (Map<String, Object> row : results) {
+            copy.add(row == null ? null : copyMap(row));
+        }
+        return copy;
+    }
+
+    private static <K> Map<K, Object> copyMap(Map<K, ?> map) {
+        Map<K, Object> copy = new LinkedHashMap<>(map.size());
+        for (Map.Entry<K, ?> entry : map.entrySet()) {
+            copy.put(entry.getKey(), deepCopy(entry.getValue()));
+        }
+        return copy;
+    }
+
+    private static Object deepCopy(Object value) {
+        if (value instanceof Map<?, ?> map) {
+            return copyMap(map);
+        }
+        if (value instanceof Collection<?> collection) {
+            List<Object> copy = new ArrayList<>(collection.size());
+            for (Object item : collection) {
+                copy.add(deepCopy(item));
+            }
+            return copy;
+        }
+        if (value instanceof Object[] array) {
+            Object[] copy = new Object[array.length];
+            for (int i = 0; i < array.length; i++) {
+                copy[i] = deepCopy(array[i]);
+            }
+            return copy;
+        }
+        if (value != null && value.getClass().isArray()) {
+            // float[] embeddings, byte[] blobs...
+            int length = Array.getLength(value);
+            Object copy = Array.newInstance(value.getClass().getComponentType(), length);
+            System.arraycopy(value, 0, copy, 0, length);
+            return copy;
+        }
+        // strings, numbers and the other values are immutable
+        return value;
+    }
+
+    @Override
+    public Map<String, Object> executeStatement(
+            String query, List<String> generatedKeys, List<Object> params) {
+        return delegate.executeStatement(query, generatedKeys, params);
+    }
+
+    @Override
+    public CompletableFuture<Map<String, Object>> executeStatementAsync(
+            String query, List<String> generatedKeys, List<Object> params) {
+        return delegate.executeStatementAsync(query, generatedKeys, params);
+    }
+
+    @Override
+    public void close() {
+        // the underlying datasource is owned by the agent
+        inFlight.clear();
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+}
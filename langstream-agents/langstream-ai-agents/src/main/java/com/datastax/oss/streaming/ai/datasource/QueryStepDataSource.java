@@ -15,14 +15,28 @@
  */
 package com.datastax.oss.streaming.ai.datasource;
 
+import ai.langstream.api.runner.code.MetricsReporter;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 public interface QueryStepDataSource extends AutoCloseable {
 
     default void initialize(Map<String, Object> config) throws Exception {}
 
+    /**
+     * Initialise the datasource, with a MetricsReporter that the datasource can use to expose its
+     * own metrics.
+     *
+     * @param config the datasource configuration
+     * @param metricsReporter the metrics reporter
+     */
+    default void initialize(Map<String, Object> config, MetricsReporter metricsReporter)
+            throws Exception {
+        initialize(config);
+    }
+
     default List<Map<String, Object>> fetchData(String query, List<Object> params) {
         return Collections.emptyList();
     }
@@ -33,5 +47,43 @@ public interface QueryStepDataSource extends AutoCloseable {
         return Map.of();
     }
 
+    /**
+     * Asynchronous version of {@link #fetchData(String, List)}. Implementations backed by a driver
+     * with a non-blocking API should override this method, the blocking ones can run the query on
+     * their own {@link BlockingQueryExecutor}. The default implementation runs the query in the
+     * caller thread.
+     *
+     * @param query the query
+     * @param params the parameters
+     * @return a future with the results
+     */
+    default CompletableFuture<List<Map<String, Object>>> fetchDataAsync(
+            String query, List<Object> params) {
+        try {
+            return CompletableFuture.completedFuture(fetchData(query, params));
+        } catch (Throwable error) {
+            return CompletableFuture.failedFuture(error);
+        }
+    }
+
+    /**
+     * Asynchronous version of {@link #executeStatement(String, List, List)}. The default
+     * implementation runs the statement in the caller thread.
+     *
+     * @param query the statement
+     * @param generatedKeys the generated keys to return
+     * @param params the parameters
+     * @return a future with the result
+     */
+    default CompletableFuture<Map<String, Object>> executeStatementAsync(
+            String query, List<String> generatedKeys, List<Object> params) {
+        try {
+            return CompletableFuture.completedFuture(
+                    executeStatement(query, generatedKeys, params));
+        } catch (Throwable error) {
+            return CompletableFuture.failedFuture(error);
+        }
+    }
+
     default void close() {}
 }
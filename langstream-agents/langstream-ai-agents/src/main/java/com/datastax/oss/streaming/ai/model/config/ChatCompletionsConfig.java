@@ -24,6 +24,9 @@ import lombok.Data;
 @Data
 public class ChatCompletionsConfig extends StepConfig {
 
+    public static final String STREAM_CHUNK_MODE_FULL = "full";
+    public static final String STREAM_CHUNK_MODE_DELTA = "delta";
+
     @JsonProperty(required = true)
     private String model;
 
@@ -39,6 +42,15 @@ public class ChatCompletionsConfig extends StepConfig {
     @JsonProperty(value = "min-chunks-per-message")
     private int minChunksPerMessage = 20;
 
+    @JsonProperty(value = "stream-chunk-mode")
+    private String streamChunkMode = STREAM_CHUNK_MODE_FULL;
+
+    @JsonProperty(value = "stream-linger-ms")
+    private long streamLingerMs;
+
+    @JsonProperty(value = "stream-batch-size")
+    private int streamBatchSize;
+
     @JsonProperty(value = "completion-field")
     private String fieldName;
 
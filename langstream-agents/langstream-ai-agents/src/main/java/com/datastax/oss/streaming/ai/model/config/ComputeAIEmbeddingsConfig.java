@@ -45,6 +45,9 @@ public class ComputeAIEmbeddingsConfig extends StepConfig {
     @JsonProperty("flush-interval")
     private int flushInterval = 0;
 
+    @JsonProperty("adaptive-batching")
+    private Map<String, Object> adaptiveBatching;
+
     @Deprecated
     @JsonProperty(value = "compute-service")
     private String service;
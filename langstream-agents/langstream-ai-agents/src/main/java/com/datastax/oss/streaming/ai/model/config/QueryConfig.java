@@ -41,4 +41,16 @@ public class QueryConfig extends StepConfig {
 
     @JsonProperty("generated-keys")
     private List<String> generatedKeys;
+
+    @JsonProperty("concurrency")
+    private int concurrency = 1;
+
+    @JsonProperty("coalesce-queries")
+    private boolean coalesceQueries;
+
+    @JsonProperty("cache-ttl")
+    private long cacheTtl;
+
+    @JsonProperty("cache-max-size")
+    private int cacheMaxSize = 1000;
 }
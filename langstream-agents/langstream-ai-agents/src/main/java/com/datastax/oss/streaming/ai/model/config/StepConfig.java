@@ -35,7 +35,8 @@ import lombok.Getter;
                     name = "compute-ai-embeddings"),
             @JsonSubTypes.Type(value = ChatCompletionsConfig.class, name = "ai-chat-completions"),
             @JsonSubTypes.Type(value = TextCompletionsConfig.class, name = "ai-text-completions"),
-            @JsonSubTypes.Type(value = QueryConfig.class, name = "query")
+            @JsonSubTypes.Type(value = QueryConfig.class, name = "query"),
+            @JsonSubTypes.Type(value = TokenBudgetConfig.class, name = "token-budget")
         })
 @Getter
 public abstract class StepConfig {
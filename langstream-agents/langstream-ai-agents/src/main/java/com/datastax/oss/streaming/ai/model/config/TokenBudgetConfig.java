@@ -0,0 +1,56 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.streaming.ai.model.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+@Data
+public class TokenBudgetConfig extends StepConfig {
+
+    @JsonProperty(value = "documents-field", required = true)
+    private String documentsField;
+
+    @JsonProperty(value = "text-field")
+    private String textField = "text";
+
+    @JsonProperty(value = "output-field", required = true)
+    private String outputField;
+
+    @JsonProperty(value = "tokens-field")
+    private String tokensField;
+
+    @JsonProperty(value = "max-tokens", required = true)
+    private int maxTokens;
+
+    @JsonProperty(value = "max-tokens-per-document")
+    private int maxTokensPerDocument;
+
+    @JsonProperty(value = "encoding")
+    private String encoding = "cl100k_base";
+
+    @JsonProperty(value = "strategy")
+    private String strategy = "greedy";
+
+    @JsonProperty(value = "query-embeddings-field")
+    private String queryEmbeddingsField;
+
+    @JsonProperty(value = "embeddings-field")
+    private String embeddingsField = "embeddings";
+
+    @JsonProperty(value = "mmr-lambda")
+    private double mmrLambda = 0.5;
+}
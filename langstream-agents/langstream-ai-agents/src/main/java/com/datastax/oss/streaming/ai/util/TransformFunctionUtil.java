@@ -18,6 +18,8 @@ package com.datastax.oss.streaming.ai.util;
 import ai.langstream.ai.agents.commons.MutableRecord;
 import ai.langstream.ai.agents.commons.TransformSchemaType;
 import ai.langstream.ai.agents.commons.jstl.predicate.JstlPredicate;
+import ai.langstream.api.runner.code.MetricsReporter;
+import ai.langstream.api.util.AdaptiveBatchSizer;
 import com.azure.ai.openai.OpenAIAsyncClient;
 import com.azure.ai.openai.OpenAIClient;
 import com.azure.ai.openai.OpenAIClientBuilder;
@@ -40,10 +42,12 @@ import com.datastax.oss.streaming.ai.MergeKeyValueStep;
 import com.datastax.oss.streaming.ai.QueryStep;
 import com.datastax.oss.streaming.ai.StepPredicatePair;
 import com.datastax.oss.streaming.ai.TextCompletionsStep;
+import com.datastax.oss.streaming.ai.TokenBudgetStep;
 import com.datastax.oss.streaming.ai.TransformStep;
 import com.datastax.oss.streaming.ai.UnwrapKeyValueStep;
 import com.datastax.oss.streaming.ai.completions.CompletionsService;
 import com.datastax.oss.streaming.ai.datasource.CassandraDataSource;
+import com.datastax.oss.streaming.ai.datasource.CoalescingQueryStepDataSource;
 import com.datastax.oss.streaming.ai.datasource.QueryStepDataSource;
 import com.datastax.oss.streaming.ai.embeddings.EmbeddingsService;
 import com.datastax.oss.streaming.ai.model.ComputeField;
@@ -59,6 +63,7 @@ import com.datastax.oss.streaming.ai.model.config.OpenAIProvider;
 import com.datastax.oss.streaming.ai.model.config.QueryConfig;
 import com.datastax.oss.streaming.ai.model.config.StepConfig;
 import com.datastax.oss.streaming.ai.model.config.TextCompletionsConfig;
+import com.datastax.oss.streaming.ai.model.config.TokenBudgetConfig;
 import com.datastax.oss.streaming.ai.model.config.TransformStepConfig;
 import com.datastax.oss.streaming.ai.model.config.UnwrapKeyValueConfig;
 import com.datastax.oss.streaming.ai.services.ServiceProvider;
@@ -170,6 +175,23 @@ public class TransformFunctionUtil {
             StreamingAnswersConsumerFactory streamingAnswersConsumerFactory,
             StepConfig step)
             throws Exception {
+        return buildStep(
+                transformConfig,
+                serviceProvider,
+                dataSource,
+                streamingAnswersConsumerFactory,
+                step,
+                MetricsReporter.DISABLED);
+    }
+
+    public static StepPredicatePair buildStep(
+            TransformStepConfig transformConfig,
+            ServiceProvider serviceProvider,
+            QueryStepDataSource dataSource,
+            StreamingAnswersConsumerFactory streamingAnswersConsumerFactory,
+            StepConfig step,
+            MetricsReporter metricsReporter)
+            throws Exception {
         TransformStep transformStep;
         switch (step.getType()) {
             case "drop-fields":
@@ -197,14 +219,16 @@ public class TransformFunctionUtil {
                 break;
             case "compute-ai-embeddings":
                 transformStep =
-                        newComputeAIEmbeddings((ComputeAIEmbeddingsConfig) step, serviceProvider);
+                        newComputeAIEmbeddings(
+                                (ComputeAIEmbeddingsConfig) step, serviceProvider, metricsReporter);
                 break;
             case "ai-chat-completions":
                 transformStep =
                         newChatCompletionsFunction(
                                 (ChatCompletionsConfig) step,
                                 serviceProvider,
-                                streamingAnswersConsumerFactory);
+                                streamingAnswersConsumerFactory,
+                                metricsReporter);
                 break;
             case "ai-text-completions":
                 transformStep =
@@ -214,7 +238,10 @@ public class TransformFunctionUtil {
                                 streamingAnswersConsumerFactory);
                 break;
             case "query":
-                transformStep = newQuery((QueryConfig) step, dataSource);
+                transformStep = newQuery((QueryConfig) step, dataSource, metricsReporter);
+                break;
+            case "token-budget":
+                transformStep = new TokenBudgetStep((TokenBudgetConfig) step, metricsReporter);
                 break;
             default:
                 throw new IllegalArgumentException("Invalid step type: " + step.getType());
@@ -304,7 +331,9 @@ public class TransformFunctionUtil {
 
     @SneakyThrows
     public static TransformStep newComputeAIEmbeddings(
-            ComputeAIEmbeddingsConfig config, ServiceProvider provider) {
+            ComputeAIEmbeddingsConfig config,
+            ServiceProvider provider,
+            MetricsReporter metricsReporter) {
         EmbeddingsService embeddingsService = provider.getEmbeddingsService(convertToMap(config));
         return new ComputeAIEmbeddingsStep(
                 config.getText(),
@@ -313,7 +342,12 @@ public class TransformFunctionUtil {
                 config.getBatchSize(),
                 config.getFlushInterval(),
                 config.getConcurrency(),
-                embeddingsService);
+                embeddingsService,
+                AdaptiveBatchSizer.Config.fromMap(
+                        config.getAdaptiveBatching(),
+                        config.getBatchSize(),
+                        config.getFlushInterval()),
+                metricsReporter);
     }
 
     public static UnwrapKeyValueStep newUnwrapKeyValueFunction(UnwrapKeyValueConfig config) {
@@ -333,9 +367,20 @@ public class TransformFunctionUtil {
             ServiceProvider serviceProvider,
             StreamingAnswersConsumerFactory streamingAnswersConsumerFactory)
             throws Exception {
+        return newChatCompletionsFunction(
+                config, serviceProvider, streamingAnswersConsumerFactory, MetricsReporter.DISABLED);
+    }
+
+    public static ChatCompletionsStep newChatCompletionsFunction(
+            ChatCompletionsConfig config,
+            ServiceProvider serviceProvider,
+            StreamingAnswersConsumerFactory streamingAnswersConsumerFactory,
+            MetricsReporter metricsReporter)
+            throws Exception {
         CompletionsService completionsService =
                 serviceProvider.getCompletionsService(convertToMap(config));
-        return new ChatCompletionsStep(completionsService, streamingAnswersConsumerFactory, config);
+        return new ChatCompletionsStep(
+                completionsService, streamingAnswersConsumerFactory, config, metricsReporter);
     }
 
     public static TextCompletionsStep newTextCompletionsFunction(
@@ -349,6 +394,11 @@ public class TransformFunctionUtil {
     }
 
     public static TransformStep newQuery(QueryConfig config, QueryStepDataSource dataSource) {
+        return newQuery(config, dataSource, MetricsReporter.DISABLED);
+    }
+
+    public static TransformStep newQuery(
+            QueryConfig config, QueryStepDataSource dataSource, MetricsReporter metricsReporter) {
         if (config.getFields() != null) {
             config.getFields()
                     .forEach(
@@ -381,9 +431,16 @@ public class TransformFunctionUtil {
                 .loopOver(config.getLoopOver())
                 .generatedKeys(config.getGeneratedKeys())
                 .mode(config.getMode())
+                .concurrency(config.getConcurrency())
                 .onlyFirst(config.isOnlyFirst())
                 .fields(config.getFields())
-                .dataSource(dataSource)
+                .dataSource(
+                        CoalescingQueryStepDataSource.wrap(
+                                dataSource,
+                                config.isCoalesceQueries(),
+                                config.getCacheTtl(),
+                                config.getCacheMaxSize(),
+                                metricsReporter))
                 .build();
     }
 
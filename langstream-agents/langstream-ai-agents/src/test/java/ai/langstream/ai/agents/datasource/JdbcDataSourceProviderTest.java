@@ -16,14 +16,27 @@
 package ai.langstream.ai.agents.datasource;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import ai.langstream.ai.agents.datasource.impl.JdbcConnectionPool;
 import ai.langstream.ai.agents.datasource.impl.JdbcDataSourceProvider;
+import ai.langstream.api.runner.code.MetricsReporter;
 import com.datastax.oss.streaming.ai.datasource.QueryStepDataSource;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.jupiter.api.Test;
 
@@ -65,4 +78,155 @@ public class JdbcDataSourceProviderTest {
 
         implementation.close();
     }
+
+    @Test
+    public void testPooledConnectionsAndStatementCache() throws Exception {
+        Map<String, AtomicLong> counters = new ConcurrentHashMap<>();
+        MetricsReporter metricsReporter =
+                new MetricsReporter() {
+                    @Override
+                    public Counter counter(String name, String help) {
+                        AtomicLong value = counters.computeIfAbsent(name, n -> new AtomicLong());
+                        return new Counter() {
+                            @Override
+                            public void count(long delta) {
+                                value.addAndGet(delta);
+                            }
+
+                            @Override
+                            public long value() {
+                                return value.get();
+                            }
+                        };
+                    }
+                };
+
+        JdbcDataSourceProvider jdbcDataSourceProvider = new JdbcDataSourceProvider();
+        QueryStepDataSource implementation =
+                jdbcDataSourceProvider.createDataSourceImplementation(
+                        Map.of(
+                                "url",
+                                "jdbc:h2:mem:pool;DB_CLOSE_DELAY=-1",
+                                "user",
+                                "sa",
+                                "password",
+                                "sa",
+                                "driverClass",
+                                "org.h2.Driver",
+                                "pool-size",
+                                2,
+                                "statement-cache-size",
+                                10));
+        implementation.initialize(null, metricsReporter);
+
+        implementation.executeStatement(
+                "CREATE TABLE products (id INT PRIMARY KEY, name VARCHAR(255))", null, List.of());
+        for (int i = 0; i < 20; i++) {
+            implementation.executeStatement(
+                    "INSERT INTO products (id, name) VALUES (?, ?)",
+                    null,
+                    List.of(i, "product" + i));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<CompletableFuture<List<Map<String, Object>>>> results = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                int id = i;
+                results.add(
+                        CompletableFuture.supplyAsync(
+                                () ->
+                                        implementation.fetchData(
+                                                "SELECT name FROM products WHERE id = ?",
+                                                List.of(id)),
+                                executor));
+            }
+            for (int i = 0; i < 20; i++) {
+                assertEquals("product" + i, results.get(i).get().get(0).get("NAME"));
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        // the same statements are reused on the two connections of the pool
+        assertTrue(counters.get("jdbc_statement_cache_hits").get() >= 30);
+        assertTrue(counters.get("jdbc_statement_cache_misses").get() <= 6);
+        assertTrue(counters.get("jdbc_pool_borrows").get() >= 41);
+
+        implementation.close();
+    }
+
+    @Test
+    public void testStatementsInUseAreNotEvicted() throws Exception {
+        Map<String, Object> config =
+                Map.of(
+                        "url",
+                        "jdbc:h2:mem:eviction;DB_CLOSE_DELAY=-1",
+                        "user",
+                        "sa",
+                        "password",
+                        "sa",
+                        "driverClass",
+                        "org.h2.Driver",
+                        "statement-cache-size",
+                        1);
+        JdbcConnectionPool.Config poolConfig = JdbcConnectionPool.Config.fromMap(config);
+        try (JdbcConnectionPool pool =
+                new JdbcConnectionPool(config, poolConfig, MetricsReporter.DISABLED)) {
+            JdbcConnectionPool.PooledConnection connection = pool.borrow();
+            PreparedStatement first = connection.prepareStatement("SELECT 1");
+            // evicts the first statement from the cache, but it is still in use
+            PreparedStatement second = connection.prepareStatement("SELECT 2");
+            // the same statement twice gets two different statements
+            PreparedStatement third = connection.prepareStatement("SELECT 2");
+            assertNotSame(second, third);
+            try (ResultSet resultSet = first.executeQuery()) {
+                assertTrue(resultSet.next());
+                assertEquals(1, resultSet.getInt(1));
+            }
+            connection.releaseStatement(first);
+            connection.releaseStatement(second);
+            connection.releaseStatement(third);
+            assertTrue(first.isClosed());
+            assertFalse(second.isClosed());
+            assertTrue(third.isClosed());
+            pool.release(connection, false);
+        }
+    }
+
+    @Test
+    public void testAsyncQueriesRunOnTheDataSourceThreads() throws Exception {
+        JdbcDataSourceProvider jdbcDataSourceProvider = new JdbcDataSourceProvider();
+        QueryStepDataSource implementation =
+                jdbcDataSourceProvider.createDataSourceImplementation(
+                        Map.of(
+                                "url",
+                                "jdbc:h2:mem:async;DB_CLOSE_DELAY=-1",
+                                "user",
+                                "sa",
+                                "password",
+                                "sa",
+                                "driverClass",
+                                "org.h2.Driver",
+                                "pool-size",
+                                2));
+        implementation.initialize(null);
+        try {
+            implementation.executeStatement(
+                    "CREATE ALIAS THREAD_NAME FOR \""
+                            + JdbcDataSourceProviderTest.class.getName()
+                            + ".threadName\"",
+                    null,
+                    List.of());
+            List<Map<String, Object>> results =
+                    implementation.fetchDataAsync("SELECT THREAD_NAME() AS t", List.of()).get();
+            assertTrue(results.get(0).get("T").toString().startsWith("jdbc-query-"));
+        } finally {
+            implementation.close();
+        }
+    }
+
+    public static String threadName() {
+        return Thread.currentThread().getName();
+    }
 }
@@ -0,0 +1,181 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.ai.agents.rerank;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import ai.langstream.ai.agents.commons.VectorKernels;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+
+@Slf4j
+class MaximalMarginalRelevanceTest {
+
+    private static final String[] WORDS = {
+        "one", "two", "three", "four", "five", "six", "seven", "eight", "nine", "ten", "number",
+        "the", "a", "of", "is", "what"
+    };
+
+    @Test
+    void testDotProduct() {
+        float[] a = {1, 2, 3, 4, 5, 6, 7};
+        float[] b = {7, 6, 5, 4, 3, 2, 1};
+        assertEquals(84f, VectorKernels.dotProduct(a, b));
+        assertEquals(0f, VectorKernels.dotProduct(new float[0], new float[0]));
+        assertEquals(1f, ReRankAgent.cosineSimilarity(a, a), 0.00001f);
+        assertEquals(0f, ReRankAgent.cosineSimilarity(a, new float[7]));
+    }
+
+    @Test
+    void testSameRankingAsFullRecomputation() {
+        Random random = new Random(42);
+        List<ReRankAgent.TextWithEmbeddings> documents = randomDocuments(random, 200, 64);
+        String query = "what is the number two";
+
+        int[] ranking = MaximalMarginalRelevance.rank(documents, query, 20, 0.7, 1.5, 0.75);
+        assertArrayEquals(naiveRank(documents, query, 20, 0.7, 1.5, 0.75), ranking);
+
+        // benchmark against the original algorithm, that recomputed everything at every round
+        int iterations = 20;
+        for (int i = 0; i < iterations; i++) {
+            naiveRank(documents, query, 20, 0.7, 1.5, 0.75);
+            MaximalMarginalRelevance.rank(documents, query, 20, 0.7, 1.5, 0.75);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            naiveRank(documents, query, 20, 0.7, 1.5, 0.75);
+        }
+        long naive = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            MaximalMarginalRelevance.rank(documents, query, 20, 0.7, 1.5, 0.75);
+        }
+        long incremental = System.nanoTime() - start;
+        log.info(
+                "200 candidates, max 20: {} us with full recomputation, {} us incremental",
+                naive / iterations / 1000,
+                incremental / iterations / 1000);
+    }
+
+    @Test
+    void testSkipDocumentsWithoutText() {
+        List<ReRankAgent.TextWithEmbeddings> documents =
+                List.of(
+                        new ReRankAgent.TextWithEmbeddings("", new float[] {1, 2}),
+                        new ReRankAgent.TextWithEmbeddings("two", new float[] {3, 4}),
+                        new ReRankAgent.TextWithEmbeddings("one", new float[] {1, 2}));
+        assertArrayEquals(
+                new int[] {1, 2},
+                MaximalMarginalRelevance.rank(documents, "two", 10, 0.5, 1.5, 0.75));
+        assertArrayEquals(
+                new int[] {1}, MaximalMarginalRelevance.rank(documents, "two", 1, 0.5, 1.5, 0.75));
+    }
+
+    private static List<ReRankAgent.TextWithEmbeddings> randomDocuments(
+            Random random, int count, int dimensions) {
+        List<ReRankAgent.TextWithEmbeddings> documents = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            StringBuilder text = new StringBuilder();
+            int length = 5 + random.nextInt(30);
+            for (int w = 0; w < length; w++) {
+                text.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+            }
+            float[] embeddings = new float[dimensions];
+            for (int d = 0; d < dimensions; d++) {
+                embeddings[d] = random.nextFloat() - 0.5f;
+            }
+            documents.add(new ReRankAgent.TextWithEmbeddings(text.toString(), embeddings));
+        }
+        return documents;
+    }
+
+    /** The original algorithm: BM25 and diversity recomputed from scratch at every round. */
+    private static int[] naiveRank(
+            List<ReRankAgent.TextWithEmbeddings> documents,
+            String query,
+            int max,
+            double lambda,
+            double k1,
+            double b) {
+        List<Integer> remaining = new ArrayList<>();
+        for (int i = 0; i < documents.size(); i++) {
+            remaining.add(i);
+        }
+        List<Integer> ranked = new ArrayList<>();
+        String[] queryTerms = MaximalMarginalRelevance.tokenise(query);
+        while (!remaining.isEmpty() && ranked.size() < max) {
+            int n = remaining.size();
+            List<Map<String, Integer>> frequencies = new ArrayList<>();
+            int totalTerms = 0;
+            for (int index : remaining) {
+                String[] terms = MaximalMarginalRelevance.tokenise(documents.get(index).text());
+                totalTerms += terms.length;
+                Map<String, Integer> tf = new HashMap<>();
+                for (String term : terms) {
+                    tf.merge(term, 1, Integer::sum);
+                }
+                frequencies.add(tf);
+            }
+            double avgdl = (double) totalTerms / n;
+            int top = -1;
+            double topScore = Double.NEGATIVE_INFINITY;
+            for (int r = 0; r < n; r++) {
+                int index = remaining.get(r);
+                double documentLength =
+                        MaximalMarginalRelevance.tokenise(documents.get(index).text()).length;
+                double relevance = 0;
+                for (String term : queryTerms) {
+                    int tf = frequencies.get(r).getOrDefault(term, 0);
+                    int df = 0;
+                    for (Map<String, Integer> f : frequencies) {
+                        if (f.containsKey(term)) {
+                            df++;
+                        }
+                    }
+                    double idf = Math.log((n - df + 0.5) / (df + 0.5) + 1.0);
+                    double numerator = tf * (k1 + 1);
+                    double denominator = tf + k1 * (1 - b + b * (documentLength / avgdl));
+                    relevance += idf * (numerator / denominator);
+                }
+                double diversity = 0;
+                if (!ranked.isEmpty()) {
+                    double sum = 0;
+                    for (int other : ranked) {
+                        sum +=
+                                ReRankAgent.cosineSimilarity(
+                                        documents.get(index).embeddings(),
+                                        documents.get(other).embeddings());
+                    }
+                    diversity = sum / ranked.size();
+                }
+                double score = lambda * relevance - (1 - lambda) * diversity;
+                if (score > topScore) {
+                    topScore = score;
+                    top = index;
+                }
+            }
+            ranked.add(top);
+            remaining.remove(Integer.valueOf(top));
+        }
+        return ranked.stream().mapToInt(Integer::intValue).toArray();
+    }
+}
@@ -288,6 +288,7 @@ public class GenAITest {
                 "{\"options\":{\"type\":\"ai-chat-completions\",\"when\":null,\"model\":\"test-model\","
                         + "\"messages\":[{\"role\":\"user\",\"content\":\"{{ value.valueField1 }} {{ key.keyField2 }}\"}],"
                         + "\"stream-to-topic\":null,\"stream-response-completion-field\":null,\"min-chunks-per-message\":20,"
+                        + "\"stream-chunk-mode\":\"full\",\"stream-linger-ms\":0,\"stream-batch-size\":0,"
                         + "\"completion-field\":\"value.completion\",\"stream\":true,\"log-field\":\"value.log\","
                         + "\"max-tokens\":null,\"temperature\":null,\"top-p\":null,\"logit-bias\":null,\"user\":null,"
                         + "\"stop\":null,\"presence-penalty\":null,\"frequency-penalty\":null,\"options\":null},"
@@ -28,7 +28,12 @@ import ai.langstream.api.runner.code.MetricsReporter;
 import com.azure.ai.openai.OpenAIAsyncClient;
 import com.azure.ai.openai.models.ChatCompletions;
 import com.azure.ai.openai.models.ChatCompletionsOptions;
+import ai.langstream.ai.agents.commons.MutableRecord;
+import ai.langstream.api.runner.code.SimpleRecord;
+import com.datastax.oss.streaming.ai.completions.ChatChoice;
 import com.datastax.oss.streaming.ai.completions.ChatMessage;
+import com.datastax.oss.streaming.ai.completions.CompletionsService;
+import com.datastax.oss.streaming.ai.completions.TextCompletionResult;
 import com.datastax.oss.streaming.ai.model.config.ChatCompletionsConfig;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -40,6 +45,8 @@ import java.time.ZoneOffset;
 import java.util.List;
 import java.util.Map;
 import java.util.TimeZone;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
 import org.apache.avro.generic.GenericData;
 import org.apache.avro.util.Utf8;
 import org.apache.pulsar.client.api.Schema;
@@ -542,4 +549,137 @@ public class ChatCompletionsStepTest {
             assertEquals(messageValue.getKey(), expected);
         }
     }
+
+    private static class StreamingCompletionsService implements CompletionsService {
+        private final List<String> chunks;
+        private final long delayBeforeLastChunk;
+
+        StreamingCompletionsService(List<String> chunks, long delayBeforeLastChunk) {
+            this.chunks = chunks;
+            this.delayBeforeLastChunk = delayBeforeLastChunk;
+        }
+
+        @Override
+        public CompletableFuture<com.datastax.oss.streaming.ai.completions.ChatCompletions>
+                getChatCompletions(
+                        List<ChatMessage> message,
+                        StreamingChunksConsumer streamingChunksConsumer,
+                        Map<String, Object> options) {
+            for (int i = 0; i < chunks.size(); i++) {
+                boolean last = i == chunks.size() - 1;
+                if (last && delayBeforeLastChunk > 0) {
+                    try {
+                        Thread.sleep(delayBeforeLastChunk);
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+                streamingChunksConsumer.consumeChunk(
+                        "answer-id",
+                        i + 1,
+                        new ChatChoice(new ChatMessage("assistant", chunks.get(i))),
+                        last);
+            }
+            com.datastax.oss.streaming.ai.completions.ChatCompletions result =
+                    new com.datastax.oss.streaming.ai.completions.ChatCompletions();
+            result.setChoices(
+                    List.of(new ChatChoice(new ChatMessage("assistant", String.join("", chunks)))));
+            return CompletableFuture.completedFuture(result);
+        }
+
+        @Override
+        public CompletableFuture<TextCompletionResult> getTextCompletions(
+                List<String> prompt,
+                StreamingChunksConsumer streamingChunksConsumer,
+                Map<String, Object> options) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static List<ai.langstream.api.runner.code.Record> streamAnswer(
+            CompletionsService service, ChatCompletionsConfig config) throws Exception {
+        List<ai.langstream.api.runner.code.Record> chunks = new CopyOnWriteArrayList<>();
+        ChatCompletionsStep step =
+                new ChatCompletionsStep(
+                        service,
+                        topic ->
+                                (index, message, last, outputMessage) ->
+                                        chunks.add(
+                                                MutableRecord.mutableRecordToRecord(outputMessage)
+                                                        .orElseThrow()),
+                        config);
+        step.start();
+        MutableRecord context =
+                MutableRecord.recordToMutableRecord(
+                        SimpleRecord.builder()
+                                .key("key")
+                                .value("{\"question\": \"what?\"}")
+                                .headers(List.of(new SimpleRecord.SimpleHeader("session", "s1")))
+                                .build(),
+                        true);
+        step.processAsync(context).get();
+        step.close();
+        assertEquals("abcd", ((Map<String, Object>) context.getValueObject()).get("answer"));
+        return chunks;
+    }
+
+    private static ChatCompletionsConfig streamingConfig() {
+        ChatCompletionsConfig config = new ChatCompletionsConfig();
+        config.setModel("test-model");
+        config.setMessages(List.of(new ChatMessage("user").setContent("{{ value.question }}")));
+        config.setFieldName("value.answer");
+        config.setStreamToTopic("answers");
+        config.setStreamResponseCompletionField("value");
+        return config;
+    }
+
+    @Test
+    void testStreamDeltaChunksWithBatchSize() throws Exception {
+        ChatCompletionsConfig config = streamingConfig();
+        config.setStreamChunkMode(ChatCompletionsConfig.STREAM_CHUNK_MODE_DELTA);
+        config.setStreamBatchSize(2);
+        List<ai.langstream.api.runner.code.Record> chunks =
+                streamAnswer(
+                        new StreamingCompletionsService(List.of("a", "b", "c", "d"), 0), config);
+
+        // the first chunk is written immediately, then 2 chunks per record
+        assertEquals(List.of("a", "bc", "d"), chunks.stream().map(r -> r.value()).toList());
+        for (int i = 0; i < chunks.size(); i++) {
+            ai.langstream.api.runner.code.Record chunk = chunks.get(i);
+            assertEquals("key", chunk.key());
+            assertEquals("s1", chunk.getHeader("session").valueAsString());
+            assertEquals("answer-id", chunk.getHeader("stream-id").valueAsString());
+            assertEquals(i + 1 + "", chunk.getHeader("stream-index").valueAsString());
+            assertEquals(
+                    (i == chunks.size() - 1) + "",
+                    chunk.getHeader("stream-last-message").valueAsString());
+        }
+    }
+
+    @Test
+    void testStreamChunksWithLinger() throws Exception {
+        ChatCompletionsConfig config = streamingConfig();
+        config.setStreamLingerMs(10);
+        List<ai.langstream.api.runner.code.Record> chunks =
+                streamAnswer(
+                        new StreamingCompletionsService(List.of("a", "b", "c", "d"), 500), config);
+
+        // "b" and "c" are merged and written by the linger timer, before the last chunk
+        assertEquals(List.of("a", "bc", "d"), chunks.stream().map(r -> r.value()).toList());
+    }
+
+    @Test
+    void testStreamFullChunks() throws Exception {
+        ChatCompletionsConfig config = streamingConfig();
+        config.setStreamResponseCompletionField("value.chunk");
+        List<ai.langstream.api.runner.code.Record> chunks =
+                streamAnswer(
+                        new StreamingCompletionsService(List.of("a", "b", "c", "d"), 0), config);
+
+        assertEquals(4, chunks.size());
+        Map<String, Object> first = (Map<String, Object>) chunks.get(0).value();
+        assertEquals("what?", first.get("question"));
+        assertEquals("a", first.get("chunk"));
+    }
 }
+
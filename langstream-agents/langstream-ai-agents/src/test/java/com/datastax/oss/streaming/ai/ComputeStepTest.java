@@ -29,6 +29,8 @@ import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import ai.langstream.ai.agents.commons.MutableRecord;
+import ai.langstream.ai.agents.commons.jstl.JstlEvaluator;
 import com.datastax.oss.streaming.ai.model.ComputeField;
 import com.datastax.oss.streaming.ai.model.ComputeFieldType;
 import com.fasterxml.jackson.databind.JsonNode;
@@ -48,10 +50,12 @@ import java.util.Arrays;
 import java.util.Base64;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TimeZone;
 import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.avro.AvroRuntimeException;
 import org.apache.avro.LogicalType;
 import org.apache.avro.LogicalTypes;
@@ -72,10 +76,12 @@ import org.apache.pulsar.common.schema.KeyValueEncodingType;
 import org.apache.pulsar.common.schema.SchemaInfo;
 import org.apache.pulsar.common.schema.SchemaType;
 import org.apache.pulsar.functions.api.Record;
+import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.MethodSource;
 
+@Slf4j
 public class ComputeStepTest {
 
     private static final org.apache.avro.Schema STRING_SCHEMA =
@@ -1147,6 +1153,61 @@ public class ComputeStepTest {
         assertEquals(read.get("firstName"), new Utf8("Jane"));
     }
 
+    @Test
+    @Disabled("Benchmark, run it manually")
+    void testComputeThroughput() throws Exception {
+        Record<GenericObject> record = Utils.createNestedAvroKeyValueRecord(2);
+        MutableRecord mutableRecord =
+                Utils.newTransformContext(
+                        new Utils.TestContext(record, new HashMap<>()),
+                        record.getValue().getNativeObject());
+        long interpreted = computeThroughput(mutableRecord, false);
+        long compiled = computeThroughput(mutableRecord, true);
+        assertEquals("LEVEL2_1", mutableRecord.getProperties().get("upper"));
+        assertEquals("yes", mutableRecord.getProperties().get("matches"));
+        log.info("interpreted: {} records/sec, compiled: {} records/sec", interpreted, compiled);
+    }
+
+    private static long computeThroughput(MutableRecord mutableRecord, boolean compiled) {
+        boolean previous = JstlEvaluator.isCompiledExpressions();
+        JstlEvaluator.setCompiledExpressions(compiled);
+        ComputeStep step;
+        try {
+            step =
+                    ComputeStep.builder()
+                            .fields(
+                                    List.of(
+                                            ComputeField.builder()
+                                                    .scopedName("properties.matches")
+                                                    .expression(
+                                                            "key.level1Record.level2Integer > 8"
+                                                                    + " && messageKey == 'key1'"
+                                                                    + " ? 'yes' : 'no'")
+                                                    .type(ComputeFieldType.STRING)
+                                                    .build(),
+                                            ComputeField.builder()
+                                                    .scopedName("properties.upper")
+                                                    .expression(
+                                                            "fn:uppercase("
+                                                                    + "key.level1Record.level2String)")
+                                                    .type(ComputeFieldType.STRING)
+                                                    .build()))
+                            .build();
+        } finally {
+            JstlEvaluator.setCompiledExpressions(previous);
+        }
+        int records = 100_000;
+        for (int i = 0; i < records; i++) {
+            step.process(mutableRecord);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < records; i++) {
+            step.process(mutableRecord);
+        }
+        long elapsed = System.nanoTime() - start;
+        return records * 1_000_000_000L / Math.max(1, elapsed);
+    }
+
     @Test
     void testAvroComputeHeaderProperties() throws Exception {
         RecordSchemaBuilder recordSchemaBuilder = SchemaBuilder.record("record");
@@ -16,20 +16,30 @@
 package com.datastax.oss.streaming.ai;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 
 import ai.langstream.ai.agents.commons.MutableRecord;
 import ai.langstream.api.runner.code.SimpleRecord;
+import com.datastax.oss.streaming.ai.datasource.BlockingQueryExecutor;
 import com.datastax.oss.streaming.ai.datasource.QueryStepDataSource;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.LocalTime;
 import java.time.ZoneOffset;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
@@ -553,6 +563,144 @@ public class QueryStepTest {
         assertEquals(List.of(Map.of("foo", "bar"), Map.of("foo", "bar2")), command_results);
     }
 
+    @Test
+    void testLoopOverWithConcurrency() throws Exception {
+        List<Map<String, Object>> documents = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            documents.add(Map.of("id", i));
+        }
+        String value =
+                OBJECT_MAPPER.writeValueAsString(Map.of("documents_to_retrieve", documents));
+
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        ScheduledExecutorService executor = Executors.newScheduledThreadPool(4);
+        QueryStepDataSource dataSource =
+                new QueryStepDataSource() {
+                    @Override
+                    public List<Map<String, Object>> fetchData(String query, List<Object> params) {
+                        throw new UnsupportedOperationException();
+                    }
+
+                    @Override
+                    public CompletableFuture<List<Map<String, Object>>> fetchDataAsync(
+                            String query, List<Object> params) {
+                        int id = (Integer) params.get(0);
+                        maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                        CompletableFuture<List<Map<String, Object>>> result =
+                                new CompletableFuture<>();
+                        // the first items complete last
+                        executor.schedule(
+                                () -> {
+                                    inFlight.decrementAndGet();
+                                    result.complete(List.of(Map.of("text", "retrieved-" + id)));
+                                },
+                                (10 - id) * 10L,
+                                TimeUnit.MILLISECONDS);
+                        return result;
+                    }
+                };
+
+        QueryStep queryStep =
+                QueryStep.builder()
+                        .dataSource(dataSource)
+                        .loopOver("value.documents_to_retrieve")
+                        .outputFieldName("value.retrieved_documents")
+                        .fields(List.of("record.id"))
+                        .query("select 1 where id = ?")
+                        .concurrency(3)
+                        .build();
+        queryStep.start();
+
+        MutableRecord context =
+                MutableRecord.recordToMutableRecord(SimpleRecord.of(null, value), true);
+
+        queryStep.processAsync(context).get();
+        executor.shutdown();
+        ai.langstream.api.runner.code.Record record =
+                MutableRecord.mutableRecordToRecord(context).orElseThrow();
+        Map<String, Object> result = (Map<String, Object>) record.value();
+
+        List<Map<String, Object>> expected = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            expected.add(Map.of("text", "retrieved-" + i));
+        }
+        assertEquals(expected, result.get("retrieved_documents"));
+        assertEquals(3, maxInFlight.get());
+    }
+
+    @Test
+    void testLoopOverWithConcurrencyAndBlockingDataSource() throws Exception {
+        List<Map<String, Object>> documents = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            documents.add(Map.of("id", i));
+        }
+        String value =
+                OBJECT_MAPPER.writeValueAsString(Map.of("documents_to_retrieve", documents));
+
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        Set<Thread> callers = ConcurrentHashMap.newKeySet();
+        BlockingQueryExecutor queryExecutor = new BlockingQueryExecutor("test-query");
+        QueryStepDataSource dataSource =
+                new QueryStepDataSource() {
+                    @Override
+                    public CompletableFuture<List<Map<String, Object>>> fetchDataAsync(
+                            String query, List<Object> params) {
+                        return queryExecutor.supplyAsync(() -> fetchData(query, params));
+                    }
+
+                    @Override
+                    public void close() {
+                        queryExecutor.close();
+                    }
+
+                    @Override
+                    public List<Map<String, Object>> fetchData(String query, List<Object> params) {
+                        int id = (Integer) params.get(0);
+                        callers.add(Thread.currentThread());
+                        maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                        try {
+                            // the first items complete last
+                            Thread.sleep((10 - id) * 10L);
+                        } catch (InterruptedException e) {
+                            throw new RuntimeException(e);
+                        } finally {
+                            inFlight.decrementAndGet();
+                        }
+                        return List.of(Map.of("text", "retrieved-" + id));
+                    }
+                };
+
+        QueryStep queryStep =
+                QueryStep.builder()
+                        .dataSource(dataSource)
+                        .loopOver("value.documents_to_retrieve")
+                        .outputFieldName("value.retrieved_documents")
+                        .fields(List.of("record.id"))
+                        .query("select 1 where id = ?")
+                        .concurrency(3)
+                        .build();
+        queryStep.start();
+
+        MutableRecord context =
+                MutableRecord.recordToMutableRecord(SimpleRecord.of(null, value), true);
+
+        queryStep.processAsync(context).get();
+        ai.langstream.api.runner.code.Record record =
+                MutableRecord.mutableRecordToRecord(context).orElseThrow();
+        Map<String, Object> result = (Map<String, Object>) record.value();
+
+        List<Map<String, Object>> expected = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            expected.add(Map.of("text", "retrieved-" + i));
+        }
+        assertEquals(expected, result.get("retrieved_documents"));
+        assertEquals(3, maxInFlight.get());
+        assertFalse(callers.contains(Thread.currentThread()));
+        dataSource.close();
+    }
+
     @Test
     void testSetFieldWithDash() throws Exception {
 
@@ -0,0 +1,141 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.streaming.ai;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import ai.langstream.ai.agents.commons.MutableRecord;
+import ai.langstream.ai.agents.commons.text.TiktokenLengthFunction;
+import ai.langstream.api.runner.code.MetricsReporter;
+import ai.langstream.api.runner.code.SimpleRecord;
+import com.datastax.oss.streaming.ai.model.config.TokenBudgetConfig;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class TokenBudgetStepTest {
+
+    private static final TiktokenLengthFunction TOKENIZER =
+            new TiktokenLengthFunction("cl100k_base");
+
+    private static Map<String, Object> process(TokenBudgetStep step, String value)
+            throws Exception {
+        MutableRecord context =
+                MutableRecord.recordToMutableRecord(SimpleRecord.of(null, value), true);
+        step.process(context);
+        ai.langstream.api.runner.code.Record record =
+                MutableRecord.mutableRecordToRecord(context).orElseThrow();
+        return (Map<String, Object>) record.value();
+    }
+
+    private static TokenBudgetConfig config(int maxTokens) {
+        TokenBudgetConfig config = new TokenBudgetConfig();
+        config.setDocumentsField("value.documents");
+        config.setOutputField("value.context");
+        config.setTokensField("value.context_tokens");
+        config.setMaxTokens(maxTokens);
+        return config;
+    }
+
+    @Test
+    void testGreedy() throws Exception {
+        String value =
+                """
+                {
+                    "documents": [
+                        {"text": "The quick brown fox jumps over the lazy dog"},
+                        {"text": "A very long document that does not fit in the remaining budget at all"},
+                        {"text": "Short one"}
+                    ]
+                }
+                """;
+        int first = TOKENIZER.length("The quick brown fox jumps over the lazy dog");
+        int third = TOKENIZER.length("Short one");
+
+        TokenBudgetStep step =
+                new TokenBudgetStep(config(first + third + 1), MetricsReporter.DISABLED);
+        Map<String, Object> result = process(step, value);
+
+        assertEquals(
+                List.of(
+                        Map.of("text", "The quick brown fox jumps over the lazy dog"),
+                        Map.of("text", "Short one")),
+                result.get("context"));
+        assertEquals(first + third, result.get("context_tokens"));
+    }
+
+    @Test
+    void testTruncateDocuments() throws Exception {
+        String value =
+                """
+                {
+                    "documents": [
+                        "The quick brown fox jumps over the lazy dog",
+                        "Short one"
+                    ]
+                }
+                """;
+        TokenBudgetConfig config = config(100);
+        config.setMaxTokensPerDocument(3);
+        TokenBudgetStep step = new TokenBudgetStep(config, MetricsReporter.DISABLED);
+        Map<String, Object> result = process(step, value);
+
+        assertEquals(List.of("The quick brown", "Short one"), result.get("context"));
+        assertEquals(3 + TOKENIZER.length("Short one"), result.get("context_tokens"));
+    }
+
+    @Test
+    void testMmr() throws Exception {
+        String value =
+                """
+                {
+                    "question_embeddings": [1, 0, 0],
+                    "documents": [
+                        {"text": "first", "embeddings": [1, 0.1, 0]},
+                        {"text": "duplicate", "embeddings": [1, 0.1, 0]},
+                        {"text": "different", "embeddings": [0.7, 0, 0.7]}
+                    ]
+                }
+                """;
+        TokenBudgetConfig config = config(2);
+        config.setTokensField(null);
+        config.setStrategy("mmr");
+        config.setQueryEmbeddingsField("value.question_embeddings");
+        config.setMmrLambda(0.3);
+        TokenBudgetStep step = new TokenBudgetStep(config, MetricsReporter.DISABLED);
+        Map<String, Object> result = process(step, value);
+
+        // the duplicate is more relevant than "different", but it is penalized by the similarity
+        // with the first document
+        List<Map<String, Object>> context = (List<Map<String, Object>>) result.get("context");
+        assertEquals(2, context.size());
+        assertEquals("first", context.get(0).get("text"));
+        assertEquals("different", context.get(1).get("text"));
+    }
+
+    @Test
+    void testInvalidConfiguration() {
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> new TokenBudgetStep(config(0), MetricsReporter.DISABLED));
+        TokenBudgetConfig config = config(10);
+        config.setStrategy("mmr");
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> new TokenBudgetStep(config, MetricsReporter.DISABLED));
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.streaming.ai.datasource;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import ai.langstream.api.runner.code.MetricsReporter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+class CoalescingQueryStepDataSourceTest {
+
+    private static class MockDataSource implements QueryStepDataSource {
+        final List<CompletableFuture<List<Map<String, Object>>>> requests = new ArrayList<>();
+
+        @Override
+        public synchronized CompletableFuture<List<Map<String, Object>>> fetchDataAsync(
+                String query, List<Object> params) {
+            CompletableFuture<List<Map<String, Object>>> result = new CompletableFuture<>();
+            requests.add(result);
+            return result;
+        }
+    }
+
+    private static class TestMetricsReporter implements MetricsReporter {
+        final Map<String, Counter> counters = new HashMap<>();
+
+        @Override
+        public Counter counter(String name, String help) {
+            return counters.computeIfAbsent(name, n -> new TestCounter());
+        }
+    }
+
+    private static class TestCounter implements MetricsReporter.Counter {
+        final AtomicLong value = new AtomicLong();
+
+        @Override
+        public void count(long delta) {
+            value.addAndGet(delta);
+        }
+
+        @Override
+        public long value() {
+            return value.get();
+        }
+    }
+
+    @Test
+    void testCoalesceConcurrentQueries() throws Exception {
+        MockDataSource mock = new MockDataSource();
+        TestMetricsReporter metrics = new TestMetricsReporter();
+        QueryStepDataSource dataSource =
+                CoalescingQueryStepDataSource.wrap(mock, true, 0, 0, metrics);
+
+        CompletableFuture<List<Map<String, Object>>> first =
+                dataSource.fetchDataAsync("select ?", List.of(new float[] {1, 2, 3}));
+        CompletableFuture<List<Map<String, Object>>> second =
+                dataSource.fetchDataAsync("select ?", List.of(new float[] {1, 2, 3}));
+        CompletableFuture<List<Map<String, Object>>> other =
+                dataSource.fetchDataAsync("select ?", List.of(new float[] {3, 2, 1}));
+        assertEquals(2, mock.requests.size());
+
+        mock.requests.get(0).complete(List.of(Map.of("id", "a")));
+        mock.requests.get(1).complete(List.of(Map.of("id", "b")));
+        assertEquals(List.of(Map.of("id", "a")), first.get());
+        assertEquals(List.of(Map.of("id", "a")), second.get());
+        assertEquals(List.of(Map.of("id", "b")), other.get());
+        // every caller gets its own copy
+        assertNotSame(first.get().get(0), second.get().get(0));
+
+        // the query is not in flight anymore
+        dataSource.fetchDataAsync("select ?", List.of(new float[] {1, 2, 3}));
+        assertEquals(3, mock.requests.size());
+
+        assertEquals(3, metrics.counters.get("query_datasource_requests").value());
+        assertEquals(1, metrics.counters.get("query_datasource_coalesced").value());
+        assertEquals(0, metrics.counters.get("query_datasource_cache_hits").value());
+    }
+
+    @Test
+    void testNestedValuesAreCopied() throws Exception {
+        MockDataSource mock = new MockDataSource();
+        QueryStepDataSource dataSource =
+                CoalescingQueryStepDataSource.wrap(mock, true, 0, 0, MetricsReporter.DISABLED);
+        CompletableFuture<List<Map<String, Object>>> first =
+                dataSource.fetchDataAsync("select ?", List.of("x"));
+        CompletableFuture<List<Map<String, Object>>> second =
+                dataSource.fetchDataAsync("select ?", List.of("x"));
+
+        Map<String, Object> row = new HashMap<>();
+        row.put("metadata", new HashMap<>(Map.of("tag", "a")));
+        row.put("chunks", new ArrayList<>(List.of("one")));
+        row.put("embeddings", new float[] {1, 2});
+        mock.requests.get(0).complete(List.of(row));
+
+        // a following step modifies the results of the first record
+        Map<String, Object> firstRow = first.get().get(0);
+        ((Map<String, Object>) firstRow.get("metadata")).put("tag", "b");
+        ((List<Object>) firstRow.get("chunks")).add("two");
+        ((float[]) firstRow.get("embeddings"))[0] = 3;
+
+        Map<String, Object> secondRow = second.get().get(0);
+        assertEquals(Map.of("tag", "a"), secondRow.get("metadata"));
+        assertEquals(List.of("one"), secondRow.get("chunks"));
+        assertArrayEquals(new float[] {1, 2}, (float[]) secondRow.get("embeddings"));
+    }
+
+    @Test
+    void testErrorsAreShared() {
+        MockDataSource mock = new MockDataSource();
+        QueryStepDataSource dataSource =
+                CoalescingQueryStepDataSource.wrap(mock, true, 0, 0, MetricsReporter.DISABLED);
+        CompletableFuture<List<Map<String, Object>>> first =
+                dataSource.fetchDataAsync("select ?", List.of("x"));
+        CompletableFuture<List<Map<String, Object>>> second =
+                dataSource.fetchDataAsync("select ?", List.of("x"));
+        mock.requests.get(0).completeExceptionally(new IllegalStateException("boom"));
+        assertEquals(
+                IllegalStateException.class,
+                assertThrows(ExecutionException.class, first::get).getCause().getClass());
+        assertEquals(
+                IllegalStateException.class,
+                assertThrows(ExecutionException.class, second::get).getCause().getClass());
+
+        // errors are not cached
+        dataSource.fetchDataAsync("select ?", List.of("x"));
+        assertEquals(2, mock.requests.size());
+    }
+
+    @Test
+    void testCache() throws Exception {
+        MockDataSource mock = new MockDataSource();
+        TestMetricsReporter metrics = new TestMetricsReporter();
+        AtomicLong now = new AtomicLong();
+        QueryStepDataSource dataSource =
+                new CoalescingQueryStepDataSource(mock, false, 1000, 2, metrics, now::get);
+
+        CompletableFuture<List<Map<String, Object>>> first =
+                dataSource.fetchDataAsync("select ?", List.of(1));
+        mock.requests.get(0).complete(List.of(Map.of("id", 1)));
+        assertEquals(List.of(Map.of("id", 1)), first.get());
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(500));
+        assertEquals(
+                List.of(Map.of("id", 1)), dataSource.fetchDataAsync("select ?", List.of(1)).get());
+        assertEquals(1, mock.requests.size());
+        assertEquals(1, metrics.counters.get("query_datasource_cache_hits").value());
+
+        // expired
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(600));
+        dataSource.fetchDataAsync("select ?", List.of(1));
+        assertEquals(2, mock.requests.size());
+        mock.requests.get(1).complete(List.of(Map.of("id", 1)));
+
+        // eviction of the least recently used entry
+        dataSource.fetchDataAsync("select ?", List.of(2));
+        mock.requests.get(2).complete(List.of());
+        dataSource.fetchDataAsync("select ?", List.of(3));
+        mock.requests.get(3).complete(List.of());
+        dataSource.fetchDataAsync("select ?", List.of(1));
+        assertEquals(5, mock.requests.size());
+        dataSource.fetchDataAsync("select ?", List.of(3));
+        assertEquals(5, mock.requests.size());
+    }
+
+    @Test
+    void testDisabled() {
+        MockDataSource mock = new MockDataSource();
+        assertSame(
+                mock,
+                CoalescingQueryStepDataSource.wrap(mock, false, 0, 1000, MetricsReporter.DISABLED));
+    }
+}
@@ -16,22 +16,37 @@
 package com.datastax.oss.streaming.ai.jstl;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import ai.langstream.ai.agents.commons.MutableRecord;
 import ai.langstream.ai.agents.commons.jstl.JstlEvaluator;
 import ai.langstream.ai.agents.commons.jstl.JstlFunctions;
 import com.datastax.oss.streaming.ai.Utils;
+import jakarta.el.ELException;
 import jakarta.el.MethodNotFoundException;
 import java.nio.charset.StandardCharsets;
 import java.time.Clock;
 import java.time.Instant;
 import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.pulsar.client.api.Schema;
+import org.apache.pulsar.client.api.schema.GenericObject;
+import org.apache.pulsar.functions.api.Record;
+import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.MethodSource;
 
+@Slf4j
 public class JstlEvaluatorTest {
 
     @ParameterizedTest
@@ -54,6 +69,49 @@ public class JstlEvaluatorTest {
                         .evaluate(context));
     }
 
+    @ParameterizedTest
+    @MethodSource("compiledExpressionProvider")
+    void testCompiledExpressions(String expression, MutableRecord context) {
+        assertEquals(
+                evaluate(expression, context, false),
+                evaluate(expression, context, true),
+                expression);
+    }
+
+    @ParameterizedTest
+    @MethodSource("supportedExpressionProvider")
+    void testSupportedExpressionsAreCompiled(String expression) {
+        assertTrue(
+                new JstlEvaluator<>(String.format("${%s}", expression), Object.class, true)
+                        .isCompiled(),
+                expression);
+        assertFalse(
+                new JstlEvaluator<>(String.format("${%s}", expression), Object.class, false)
+                        .isCompiled(),
+                expression);
+    }
+
+    @ParameterizedTest
+    @MethodSource("unsupportedExpressionProvider")
+    void testUnsupportedExpressionsAreInterpreted(String expression) {
+        assertFalse(
+                new JstlEvaluator<>(String.format("${%s}", expression), Object.class, true)
+                        .isCompiled(),
+                expression);
+    }
+
+    /**
+     * @return the result of the evaluation, or the class of the exception
+     */
+    private static Object evaluate(String expression, MutableRecord context, boolean compiled) {
+        try {
+            return new JstlEvaluator<>(String.format("${%s}", expression), Object.class, compiled)
+                    .evaluate(context);
+        } catch (RuntimeException e) {
+            return e.getClass();
+        }
+    }
+
     @Test
     void testPrimitiveValue() {
         MutableRecord primitiveStringContext =
@@ -96,6 +154,68 @@ public class JstlEvaluatorTest {
         assertEquals(nowMillis + millisToAdd, actualMillis);
     }
 
+    @Test
+    void testConcurrentEvaluations() throws Exception {
+        JstlEvaluator<String> evaluator =
+                new JstlEvaluator<>("${fn:concat3(value, '-', messageKey)}", String.class);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                int thread = t;
+                futures.add(
+                        executor.submit(
+                                () -> {
+                                    for (int i = 0; i < 1000; i++) {
+                                        String value = "value-" + thread + "-" + i;
+                                        MutableRecord context =
+                                                Utils.createContextWithPrimitiveRecord(
+                                                        Schema.STRING, value, "key-" + i);
+                                        assertEquals(
+                                                value + "-key-" + i, evaluator.evaluate(context));
+                                    }
+                                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void testRawContext() {
+        JstlEvaluator<Object> evaluator =
+                new JstlEvaluator<>("${fn:uppercase(completion.text)}", Object.class);
+        assertEquals(
+                "HELLO",
+                evaluator.evaluateRawContext(Map.of("completion", Map.of("text", "hello"))));
+        // the PropertyNotFoundException is wrapped by the function call
+        assertThrows(
+                ELException.class, () -> evaluator.evaluateRawContext(Map.of("other", "hello")));
+    }
+
+    @Test
+    @Disabled("Benchmark, run it manually")
+    void testEvaluationThroughput() {
+        MutableRecord context =
+                Utils.createContextWithPrimitiveRecord(Schema.STRING, "test-message", "key");
+        JstlEvaluator<Boolean> evaluator =
+                new JstlEvaluator<>(
+                        "${fn:contains(value, 'test') && messageKey == 'key'}", boolean.class);
+        int evaluations = 200_000;
+        for (int i = 0; i < evaluations; i++) {
+            assertTrue(evaluator.evaluate(context));
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < evaluations; i++) {
+            evaluator.evaluate(context);
+        }
+        long elapsed = System.nanoTime() - start;
+        log.info("{} evaluations/sec", evaluations * 1_000_000_000L / Math.max(1, elapsed));
+    }
+
     /**
      * @return {"expression", "transform context"}
      */
@@ -112,6 +232,106 @@ public class JstlEvaluatorTest {
         };
     }
 
+    /**
+     * @return {"expression", "context"}
+     */
+    public static Object[][] supportedExpressionProvider() {
+        return new Object[][] {
+            {"key.level1String == 'level1_1'"},
+            {"key.level1Record['level2String']"},
+            {"key.level1Record[fn:concat('level2', 'String')]"},
+            {"key.level1Record.level2Double ge 8.8"},
+            {"key.level1Record.level2Array[0]"},
+            {"value.level1Record.level2Integer > 8 && messageKey == 'key1'"},
+            {"value.level1Record.level2Integer > 10 || topicName == 'topic-1'"},
+            {"value.level1Record == null ? key : value.level1Record.level2String"},
+            {"not fn:contains(key.level1String, 'level')"},
+            {"fn:uppercase(key.level1Record.level2String)"},
+            {"properties.p1 != 'v1' and properties.p2 eq 'v2'"},
+            {"destinationTopic"},
+            {"eventTime"},
+            {"-1 > -2.5"},
+            {"'it\\'s' == \"it's\""},
+            {"false || null"},
+        };
+    }
+
+    public static Object[][] unsupportedExpressionProvider() {
+        return new Object[][] {
+            {"value + 1 > 33"},
+            {"value.toString()"},
+            {"empty key.level1String"},
+            {"randomHeader == 'h1'"},
+            {"fn:concat(value)"},
+        };
+    }
+
+    public static Object[][] compiledExpressionProvider() {
+        Record<GenericObject> record = Utils.createNestedAvroKeyValueRecord(2);
+        MutableRecord nestedContext =
+                Utils.newTransformContext(
+                        new Utils.TestContext(record, new HashMap<>()),
+                        record.getValue().getNativeObject());
+        MutableRecord primitiveIntContext =
+                Utils.createContextWithPrimitiveRecord(Schema.INT32, 33, "header-key");
+        List<Object[]> expressions = new ArrayList<>();
+        for (Object[] function : functionExpressionProvider()) {
+            expressions.add(new Object[] {function[0], function[1]});
+        }
+        for (String expression :
+                List.of(
+                        "key.level1String == 'level1_1'",
+                        "key.level1Record.level2Integer == 9",
+                        "key.level1Record['level2String']",
+                        "key.level1Record[fn:concat('level2', 'String')]",
+                        "key.level1Record.level2Double < 8.9",
+                        "key.level1Record.level2Double ge 8.8",
+                        "key.level1Record.level2Array[0]",
+                        "key.level1Record.level2Array[5]",
+                        "key.level1Record.level2Array['x']",
+                        "key.level1Record.random == null",
+                        "key.randomKey.random",
+                        "value.level1Record.level2Integer > 8 && messageKey == 'key1'",
+                        "value.level1Record.level2Integer > 10 || topicName == 'topic-1'",
+                        "value.level1Record.level2Integer >= 9 ? 'big' : 'small'",
+                        "value.level1Record == null ? key : value.level1Record.level2String",
+                        "!(key.level1String == 'level1_1')",
+                        "not fn:contains(key.level1String, 'level')",
+                        "fn:uppercase(key.level1Record.level2String)",
+                        "fn:concat(key.level1String, value.level1Record.level2String)",
+                        "fn:coalesce(properties.missing, properties.p1)",
+                        "properties.p1 != 'v1' and properties.p2 eq 'v2'",
+                        "destinationTopic",
+                        "eventTime",
+                        "empty key.level1String",
+                        "randomHeader == 'h1'")) {
+            expressions.add(new Object[] {expression, nestedContext});
+        }
+        for (String expression :
+                List.of(
+                        "value",
+                        "value == 33",
+                        "value == '33'",
+                        "value lt 33.5",
+                        "value <= 33 && key == 'header-key'",
+                        "value > -1",
+                        "value > '4'",
+                        "value + 1 > 33",
+                        "null < 1",
+                        "null <= null",
+                        "-1 > -2.5",
+                        "'a' < \"b\"",
+                        "'it\\'s' == \"it's\"",
+                        "true && 'false'",
+                        "false || null",
+                        "value ? 1 : 2",
+                        "value.field",
+                        "value.toString()")) {
+            expressions.add(new Object[] {expression, primitiveIntContext});
+        }
+        return expressions.toArray(new Object[0][]);
+    }
+
     /**
      * @return {"expression", "context", "expected value"}
      */
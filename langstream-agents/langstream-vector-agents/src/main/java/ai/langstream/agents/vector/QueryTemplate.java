@@ -0,0 +1,292 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.agents.vector;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A JSON query with "?" placeholders, parsed once and then bound to the parameters of every
+ * query.
+ *
+ * <p>This is the compiled equivalent of {@link InterpolationUtils#buildObjectFromJson}: instead of
+ * replacing the placeholders in the text and parsing the JSON again for every query, the template
+ * is parsed once and the parameters are put directly in the resulting tree.
+ *
+ * <p>A placeholder used as a JSON value is replaced by the parameter. A placeholder inside a JSON
+ * string (e.g. "{!knn f=embeddings topK=5}?") is replaced by the JSON representation of the
+ * parameter, strings are inserted as they are.
+ */
+@Slf4j
+public final class QueryTemplate {
+
+    private static final ObjectMapper MAPPER =
+            new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, true);
+
+    private static final int MAX_CACHED_TEMPLATES = 1000;
+    private static final Map<String, QueryTemplate> CACHE = new ConcurrentHashMap<>();
+
+    private static final char MARKER = '\u0000';
+    private static final char VALUE_SLOT = 'V';
+    private static final char STRING_SLOT = 'S';
+
+    private record CompiledObject(List<Object> keys, List<Object> values) {}
+
+    private record CompiledArray(List<Object> values) {}
+
+    /** A placeholder used as JSON value. */
+    private record ValueSlot(int index) {}
+
+    /** A JSON string that contains placeholders, parts are String or Integer (the slot). */
+    private record StringSlots(List<Object> parts) {}
+
+    private final String query;
+    private final Object root;
+
+    private QueryTemplate(String query, Object root) {
+        this.query = query;
+        this.root = root;
+    }
+
+    /**
+     * Get the compiled template of a query. The queries are usually configured in the pipeline,
+     * so the same few templates are compiled once and then reused.
+     */
+    public static QueryTemplate of(String query) {
+        if (query == null) {
+            throw new IllegalArgumentException("The query is required");
+        }
+        QueryTemplate template = CACHE.get(query);
+        if (template == null) {
+            template = compile(query);
+            if (CACHE.size() >= MAX_CACHED_TEMPLATES) {
+                // the queries are not coming from the configuration, don't grow without bounds
+                CACHE.clear();
+            }
+            CACHE.put(query, template);
+        }
+        return template;
+    }
+
+    public static QueryTemplate compile(String query) {
+        StringBuilder json = new StringBuilder(query.length() + 16);
+        boolean inString = false;
+        boolean escape = false;
+        int slot = 0;
+        for (int i = 0; i < query.length(); i++) {
+            char c = query.charAt(i);
+            if (inString) {
+                if (escape) {
+                    escape = false;
+                } else if (c == '\\') {
+                    escape = true;
+                } else if (c == '"') {
+                    inString = false;
+                } else if (c == '?') {
+                    appendMarker(json, STRING_SLOT, slot++);
+                    continue;
+                }
+            } else if (c == '"') {
+                inString = true;
+            } else if (c == '?') {
+                json.append('"');
+                appendMarker(json, VALUE_SLOT, slot++);
+                json.append('"');
+                continue;
+            }
+            json.append(c);
+        }
+        Object parsed;
+        try {
+            parsed = MAPPER.readValue(json.toString(), Object.class);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Invalid query " + query, e);
+        }
+        return new QueryTemplate(query, compileNode(parsed));
+    }
+
+    private static void appendMarker(StringBuilder json, char type, int slot) {
+        json.append("\\u0000").append(type).append(slot).append("\\u0000");
+    }
+
+    private static Object compileNode(Object node) {
+        if (node instanceof Map<?, ?> map) {
+            List<Object> keys = new ArrayList<>(map.size());
+            List<Object> values = new ArrayList<>(map.size());
+            map.forEach(
+                    (key, value) -> {
+                        keys.add(compileString((String) key));
+                        values.add(compileNode(value));
+                    });
+            return new CompiledObject(keys, values);
+        } else if (node instanceof List<?> list) {
+            List<Object> values = new ArrayList<>(list.size());
+            list.forEach(value -> values.add(compileNode(value)));
+            return new CompiledArray(values);
+        } else if (node instanceof String string) {
+            return compileString(string);
+        }
+        return node;
+    }
+
+    private static Object compileString(String string) {
+        int start = string.indexOf(MARKER);
+        if (start < 0) {
+            return string;
+        }
+        if (start == 0 && string.charAt(1) == VALUE_SLOT) {
+            return new ValueSlot(Integer.parseInt(string.substring(2, string.length() - 1)));
+        }
+        List<Object> parts = new ArrayList<>();
+        int position = 0;
+        while (start >= 0) {
+            int end = string.indexOf(MARKER, start + 1);
+            if (start > position) {
+                parts.add(string.substring(position, start));
+            }
+            parts.add(Integer.parseInt(string.substring(start + 2, end)));
+            position = end + 1;
+            start = string.indexOf(MARKER, position);
+        }
+        if (position < string.length()) {
+            parts.add(string.substring(position));
+        }
+        return new StringSlots(parts);
+    }
+
+    /**
+     * Bind the parameters and map the result to the given model.
+     *
+     * @throws IllegalArgumentException if the parameters cannot be mapped to the model
+     */
+    public <R> R bind(List<Object> params, Class<R> jsonModel) {
+        return bind(params, jsonModel, MAPPER);
+    }
+
+    /**
+     * Bind the parameters and map the result to the given model, using the given mapper. The
+     * tree is converted without serializing it to text.
+     *
+     * @throws IllegalArgumentException if the parameters cannot be mapped to the model
+     */
+    public <R> R bind(List<Object> params, Class<R> jsonModel, ObjectMapper mapper) {
+        logParams(params);
+        Object tree = bindNode(root, params, false);
+        R result = mapper.convertValue(tree, jsonModel);
+        if (log.isDebugEnabled()) {
+            log.debug("Bound query: {}", result);
+        }
+        return result;
+    }
+
+    /**
+     * Bind the parameters and return the query as a Map. The parameters are converted to the
+     * same types they would get when parsing the interpolated JSON (List, Map, String, Number,
+     * Boolean).
+     */
+    public Map<String, Object> bindAsMap(List<Object> params) {
+        logParams(params);
+        Object tree = bindNode(root, params, true);
+        if (!(tree instanceof Map)) {
+            throw new IllegalArgumentException("The query is not a JSON object: " + query);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Bound query: {}", tree);
+        }
+        return (Map<String, Object>) tree;
+    }
+
+    private void logParams(List<Object> params) {
+        if (log.isDebugEnabled()) {
+            log.debug("Query {}", query);
+            params.forEach(
+                    param ->
+                            log.debug(
+                                    "Param {} {}", param, param != null ? param.getClass() : null));
+        }
+    }
+
+    private Object bindNode(Object node, List<Object> params, boolean plainValues) {
+        if (node instanceof CompiledObject object) {
+            Map<String, Object> result = new LinkedHashMap<>();
+            for (int i = 0; i < object.keys().size(); i++) {
+                result.put(
+                        (String) bindNode(object.keys().get(i), params, plainValues),
+                        bindNode(object.values().get(i), params, plainValues));
+            }
+            return result;
+        } else if (node instanceof CompiledArray array) {
+            List<Object> result = new ArrayList<>(array.values().size());
+            for (Object value : array.values()) {
+                result.add(bindNode(value, params, plainValues));
+            }
+            return result;
+        } else if (node instanceof ValueSlot slot) {
+            if (slot.index() >= params.size()) {
+                throw new IllegalArgumentException(
+                        "Missing value for parameter " + (slot.index() + 1) + " of " + query);
+            }
+            Object value = params.get(slot.index());
+            return plainValues ? toPlainValue(value) : value;
+        } else if (node instanceof StringSlots slots) {
+            StringBuilder result = new StringBuilder();
+            for (Object part : slots.parts()) {
+                if (part instanceof Integer index) {
+                    if (index < params.size()) {
+                        appendAsText(result, params.get(index));
+                    } else {
+                        result.append('?');
+                    }
+                } else {
+                    result.append((String) part);
+                }
+            }
+            return result.toString();
+        }
+        return node;
+    }
+
+    private static Object toPlainValue(Object value) {
+        if (value == null
+                || value instanceof String
+                || value instanceof Number
+                || value instanceof Boolean) {
+            return value;
+        }
+        return MAPPER.convertValue(value, Object.class);
+    }
+
+    @SneakyThrows
+    private static void appendAsText(StringBuilder result, Object value) {
+        if (value instanceof CharSequence text) {
+            result.append(text);
+        } else {
+            result.append(MAPPER.writeValueAsString(value));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return query;
+    }
+}
@@ -18,65 +18,147 @@ package ai.langstream.agents.vector;
 import static ai.langstream.ai.agents.commons.MutableRecord.mutableRecordToRecord;
 import static ai.langstream.ai.agents.commons.MutableRecord.recordToMutableRecord;
 
+import ai.langstream.agents.vector.embedded.EmbeddedVectorIndex;
 import ai.langstream.ai.agents.commons.MutableRecord;
 import ai.langstream.ai.agents.datasource.DataSourceProviderRegistry;
+import ai.langstream.api.runner.code.AbstractAgentCode;
+import ai.langstream.api.runner.code.AgentProcessor;
+import ai.langstream.api.runner.code.MetricsReporter;
 import ai.langstream.api.runner.code.Record;
-import ai.langstream.api.runner.code.SingleRecordAgentProcessor;
+import ai.langstream.api.runner.code.RecordSink;
+import ai.langstream.api.util.ConfigurationUtils;
 import com.datastax.oss.streaming.ai.QueryStep;
-import com.datastax.oss.streaming.ai.StepPredicatePair;
 import com.datastax.oss.streaming.ai.datasource.QueryStepDataSource;
 import com.datastax.oss.streaming.ai.model.config.QueryConfig;
 import com.datastax.oss.streaming.ai.util.TransformFunctionUtil;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import java.util.Collection;
+import java.nio.file.Path;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
-public class QueryVectorDBAgent extends SingleRecordAgentProcessor {
+public class QueryVectorDBAgent extends AbstractAgentCode implements AgentProcessor {
 
     private static final ObjectMapper MAPPER =
             new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
 
     private QueryStepDataSource dataSource;
+    private Map<String, Object> datasourceConfiguration;
+    private QueryConfig queryConfig;
     private QueryStep queryExecutor;
+    private Semaphore pendingRecords;
 
-    private Collection<StepPredicatePair> steps;
+    private final AtomicLong errors = new AtomicLong();
 
     @Override
     public void init(Map<String, Object> configuration) throws Exception {
 
-        Map<String, Object> datasourceConfiguration =
-                (Map<String, Object>) configuration.get("datasource");
+        datasourceConfiguration = (Map<String, Object>) configuration.get("datasource");
         dataSource = DataSourceProviderRegistry.getQueryStepDataSource(datasourceConfiguration);
-        dataSource.initialize(datasourceConfiguration);
+
+        pendingRecords =
+                new Semaphore(
+                        Math.max(
+                                1,
+                                ConfigurationUtils.getInt(
+                                        "max-pending-records", 100, configuration)));
 
         configuration.put("type", "query");
-        QueryConfig queryConfig = MAPPER.convertValue(configuration, QueryConfig.class);
-        queryExecutor = (QueryStep) TransformFunctionUtil.newQuery(queryConfig, dataSource);
-        steps = List.of(new StepPredicatePair(queryExecutor, it -> true));
+        queryConfig = MAPPER.convertValue(configuration, QueryConfig.class);
     }
 
     @Override
-    public List<Record> processRecord(Record record) throws Exception {
+    public void process(List<Record> records, RecordSink recordSink) {
+        if (records == null || records.isEmpty()) {
+            throw new IllegalStateException("Records cannot be null or empty");
+        }
+        for (Record record : records) {
+            processed(1, 0);
+            // block when too many records are waiting for the datasource, so that the runner
+            // stops reading
+            try {
+                pendingRecords.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                errors.incrementAndGet();
+                recordSink.emit(new SourceRecordAndResult(record, null, e));
+                continue;
+            }
+            CompletableFuture<List<Record>> process;
+            try {
+                process = processRecord(record);
+            } catch (Throwable error) {
+                process = CompletableFuture.failedFuture(error);
+            }
+            process.whenComplete(
+                    (resultRecords, e) -> {
+                        pendingRecords.release();
+                        if (e != null) {
+                            log.error("Error processing record: {}", record, e);
+                            errors.incrementAndGet();
+                            recordSink.emit(new SourceRecordAndResult(record, null, e));
+                        } else {
+                            processed(0, resultRecords.size());
+                            recordSink.emit(new SourceRecordAndResult(record, resultRecords, null));
+                        }
+                    });
+        }
+    }
+
+    public CompletableFuture<List<Record>> processRecord(Record record) {
         if (log.isDebugEnabled()) {
             log.debug("Processing record {}", record);
         }
         MutableRecord context = recordToMutableRecord(record, true);
-        TransformFunctionUtil.processTransformSteps(context, steps);
-        context.convertMapToStringOrBytes();
-        Optional<Record> recordResult = mutableRecordToRecord(context);
-        if (log.isDebugEnabled()) {
-            log.debug("recordResult {}", recordResult);
-        }
-        return recordResult.map(List::of).orElseGet(List::of);
+        return queryExecutor
+                .processAsync(context)
+                .thenApply(
+                        ___ -> {
+                            try {
+                                context.convertMapToStringOrBytes();
+                                Optional<Record> recordResult = mutableRecordToRecord(context);
+                                if (log.isDebugEnabled()) {
+                                    log.debug("recordResult {}", recordResult);
+                                }
+                                return recordResult.map(List::of).orElseGet(List::of);
+                            } catch (Exception e) {
+                                throw new CompletionException(e);
+                            }
+                        });
+    }
+
+    @Override
+    protected Map<String, Object> buildAdditionalInfo() {
+        return Map.of("errors", errors.get());
     }
 
     @Override
-    public void start() {}
+    public void start() throws Exception {
+        // the datasource is initialised here because the AgentContext is not available in init
+        MetricsReporter metricsReporter =
+                agentContext.getMetricsReporter().withAgentName(agentId());
+        Map<String, Object> initializeConfiguration = datasourceConfiguration;
+        Optional<Path> persistentStateDirectory =
+                agentContext.getPersistentStateDirectoryForAgent(agentId());
+        if (persistentStateDirectory.isPresent()) {
+            initializeConfiguration = new HashMap<>(datasourceConfiguration);
+            initializeConfiguration.put(
+                    EmbeddedVectorIndex.PERSISTENT_STATE_DIRECTORY,
+                    persistentStateDirectory.get().toString());
+        }
+        dataSource.initialize(initializeConfiguration, metricsReporter);
+        queryExecutor =
+                (QueryStep)
+                        TransformFunctionUtil.newQuery(queryConfig, dataSource, metricsReporter);
+    }
 
     @Override
     public void close() throws Exception {
@@ -15,33 +15,119 @@
  */
 package ai.langstream.agents.vector;
 
+import ai.langstream.agents.vector.embedded.EmbeddedVectorIndex;
 import ai.langstream.api.database.VectorDatabaseWriter;
 import ai.langstream.api.database.VectorDatabaseWriterProviderRegistry;
 import ai.langstream.api.runner.code.AbstractAgentCode;
 import ai.langstream.api.runner.code.AgentSink;
 import ai.langstream.api.runner.code.Record;
+import ai.langstream.api.util.ConfigurationUtils;
+import ai.langstream.api.util.OrderedAsyncBatchExecutor;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
 public class VectorDBSinkAgent extends AbstractAgentCode implements AgentSink {
 
     private VectorDatabaseWriter writer;
+    private Map<String, Object> configuration;
+
+    private OrderedAsyncBatchExecutor<PendingRecord> batchExecutor;
+    private ScheduledExecutorService executorService;
+    private boolean orderByPrimaryKey;
+
+    private record PendingRecord(Record record, int orderingKeyHash, CompletableFuture<?> handle) {}
 
     @Override
     public void init(Map<String, Object> configuration) throws Exception {
+        this.configuration = configuration;
         Map<String, Object> datasourceConfiguration =
                 (Map<String, Object>) configuration.get("datasource");
         writer = VectorDatabaseWriterProviderRegistry.createWriter(datasourceConfiguration);
-        writer.initialise(configuration);
     }
 
     @Override
-    public void start() {}
+    public void start() throws Exception {
+        // the writer is initialised here because the AgentContext is not available in init
+        Map<String, Object> writerConfiguration = configuration;
+        Optional<Path> persistentStateDirectory =
+                agentContext.getPersistentStateDirectoryForAgent(agentId());
+        if (persistentStateDirectory.isPresent()) {
+            writerConfiguration = new HashMap<>(configuration);
+            writerConfiguration.put(
+                    EmbeddedVectorIndex.PERSISTENT_STATE_DIRECTORY,
+                    persistentStateDirectory.get().toString());
+        }
+        writer.initialise(
+                writerConfiguration, agentContext.getMetricsReporter().withAgentName(agentId()));
+
+        if (writer.supportsBatchUpsert()) {
+            int batchSize = ConfigurationUtils.getInt("batch-size", 1, configuration);
+            int flushInterval = ConfigurationUtils.getInt("flush-interval", 1000, configuration);
+            int concurrency = ConfigurationUtils.getInt("concurrency", 1, configuration);
+            if (concurrency > 1 && !writer.supportsOrderingKey()) {
+                log.warn(
+                        "The writer does not know the primary key of the records, "
+                                + "ignoring concurrency {} in order to preserve the ordering",
+                        concurrency);
+                concurrency = 1;
+            }
+            orderByPrimaryKey = concurrency > 1;
+            if (batchSize > 1 || concurrency > 1) {
+                log.info(
+                        "Writing records in batches of {}, flush interval {} ms, concurrency {}",
+                        batchSize,
+                        flushInterval,
+                        concurrency);
+                executorService =
+                        flushInterval > 0 ? Executors.newSingleThreadScheduledExecutor() : null;
+                // the records with the same primary key always go to the same bucket, and the
+                // batches of a bucket are written one after the other, this preserves the ordering
+                batchExecutor =
+                        new OrderedAsyncBatchExecutor<>(
+                                batchSize,
+                                this::writeBatch,
+                                flushInterval,
+                                Math.max(1, concurrency),
+                                PendingRecord::orderingKeyHash,
+                                executorService);
+                batchExecutor.start();
+            }
+        }
+    }
+
+    private int orderingKeyHash(Record record) {
+        if (!orderByPrimaryKey) {
+            return 0;
+        }
+        Object key = writer.getOrderingKey(record);
+        if (key instanceof List<?> values) {
+            return Arrays.deepHashCode(values.toArray());
+        }
+        if (key instanceof byte[] bytes) {
+            return Arrays.hashCode(bytes);
+        }
+        return Objects.hashCode(key);
+    }
 
     @Override
     public void close() throws Exception {
+        if (batchExecutor != null) {
+            batchExecutor.stop();
+        }
+        if (executorService != null) {
+            executorService.shutdown();
+        }
         if (writer != null) {
             writer.close();
         }
@@ -49,8 +135,49 @@ public class VectorDBSinkAgent extends AbstractAgentCode implements AgentSink {
 
     @Override
     public CompletableFuture<?> write(Record record) {
-        // naive implementation, no batching
-        Map<String, Object> context = Map.of();
-        return writer.upsert(record, context).thenRun(() -> processed(1, 0));
+        if (batchExecutor == null) {
+            Map<String, Object> context = Map.of();
+            return writer.upsert(record, context).thenRun(() -> processed(1, 0));
+        }
+        int orderingKeyHash;
+        try {
+            orderingKeyHash = orderingKeyHash(record);
+        } catch (Throwable error) {
+            return CompletableFuture.failedFuture(error);
+        }
+        CompletableFuture<?> handle = new CompletableFuture<>();
+        batchExecutor.add(new PendingRecord(record, orderingKeyHash, handle));
+        return handle.thenRun(() -> processed(1, 0));
+    }
+
+    private void writeBatch(List<PendingRecord> batch, CompletableFuture<?> batchHandle) {
+        List<Record> records = new ArrayList<>(batch.size());
+        for (PendingRecord pendingRecord : batch) {
+            records.add(pendingRecord.record());
+        }
+        List<CompletableFuture<?>> results;
+        try {
+            results = writer.upsertBatch(records, Map.of());
+        } catch (Throwable error) {
+            log.error("Error writing a batch of {} records", batch.size(), error);
+            batch.forEach(pendingRecord -> pendingRecord.handle().completeExceptionally(error));
+            batchHandle.completeExceptionally(error);
+            return;
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            CompletableFuture<?> handle = batch.get(i).handle();
+            results.get(i)
+                    .whenComplete(
+                            (result, error) -> {
+                                if (error != null) {
+                                    handle.completeExceptionally(error);
+                                } else {
+                                    handle.complete(null);
+                                }
+                            });
+        }
+        // the next batch is written only when the current one is done, this preserves the order
+        CompletableFuture.allOf(results.toArray(new CompletableFuture[0]))
+                .whenComplete((result, error) -> batchHandle.complete(null));
     }
 }
@@ -29,12 +29,14 @@ import com.datastax.oss.common.sink.util.SinkUtil;
 import com.datastax.oss.streaming.ai.datasource.CassandraDataSource;
 import com.dtsx.astra.sdk.db.DatabaseClient;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Base64;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
@@ -44,6 +46,10 @@ public class CassandraWriter implements VectorDatabaseWriterProvider {
 
     private static final String DUMMY_TOPIC = "langstreaminputtopic";
 
+    // property of the DataStax Sink that controls the size of the UNLOGGED batches, the records
+    // of a batch always belong to the same partition
+    private static final String MAX_RECORDS_IN_BATCH = "maxNumberOfRecordsInBatch";
+
     @Override
     public boolean supports(Map<String, Object> dataSourceConfig) {
         return "cassandra".equals(dataSourceConfig.get("service"))
@@ -60,6 +66,10 @@ public class CassandraWriter implements VectorDatabaseWriterProvider {
         private final Map<String, Object> datasourceConfig;
         private final AbstractSinkTask processor = new SinkTaskProcessorImpl();
 
+        // AbstractSinkTask.put blocks until all the records are written and it is not meant to be
+        // called concurrently, so the batches are written one at a time by a dedicated thread
+        private ExecutorService executor;
+
         public CassandraVectorDatabaseWriter(Map<String, Object> datasourceConfig) {
             log.debug(
                     "CassandraSinkTask starting with DataSource configuration: {}",
@@ -166,6 +176,10 @@ public class CassandraWriter implements VectorDatabaseWriterProvider {
                         }
                     });
             configuration.put(SinkUtil.NAME_OPT, "langstream");
+            Object maxRecordsPerBatch = agentConfiguration.get("max-records-per-batch");
+            if (maxRecordsPerBatch != null) {
+                configuration.put(MAX_RECORDS_IN_BATCH, maxRecordsPerBatch.toString());
+            }
             String table =
                     ConfigurationUtils.getString(
                             "table",
@@ -180,23 +194,54 @@ public class CassandraWriter implements VectorDatabaseWriterProvider {
             configuration.put("topic." + DUMMY_TOPIC + "." + table + ".mapping", mapping);
 
             processor.start(configuration);
+            executor = Executors.newSingleThreadExecutor();
         }
 
-        private final Map<Record, CompletableFuture<?>> currentRecordStatus =
-                new ConcurrentHashMap<>();
-
         @Override
         public CompletableFuture<?> upsert(Record record, Map<String, Object> context) {
-            // we must handle one record at a time
-            // so we block until the record is processed
-            CompletableFuture<?> handle = new CompletableFuture();
-            currentRecordStatus.put(record, handle);
-            processor.put(List.of(new LangStreamSinkRecordAdapter(record)));
-            return handle;
+            return upsertBatch(List.of(record), context).get(0);
+        }
+
+        @Override
+        public boolean supportsBatchUpsert() {
+            return true;
+        }
+
+        @Override
+        public List<CompletableFuture<?>> upsertBatch(
+                List<Record> records, Map<String, Object> context) {
+            List<LangStreamSinkRecordAdapter> adapters = new ArrayList<>(records.size());
+            List<CompletableFuture<?>> handles = new ArrayList<>(records.size());
+            for (Record record : records) {
+                LangStreamSinkRecordAdapter adapter = new LangStreamSinkRecordAdapter(record);
+                adapters.add(adapter);
+                handles.add(adapter.getHandle());
+            }
+            try {
+                executor.execute(() -> put(adapters));
+            } catch (RuntimeException error) {
+                handles.forEach(handle -> handle.completeExceptionally(error));
+            }
+            return handles;
+        }
+
+        private void put(List<LangStreamSinkRecordAdapter> adapters) {
+            try {
+                // the DataStax Sink groups the statements for the same partition in UNLOGGED
+                // batches and executes the requests in parallel
+                processor.put(adapters);
+            } catch (Throwable error) {
+                log.error("Error writing {} records", adapters.size(), error);
+                // the records already acknowledged by the sink are not affected
+                adapters.forEach(adapter -> adapter.getHandle().completeExceptionally(error));
+            }
         }
 
         @Override
         public void close() {
+            if (executor != null) {
+                executor.shutdown();
+            }
             processor.stop();
         }
 
@@ -213,9 +258,7 @@ public class CassandraWriter implements VectorDatabaseWriterProvider {
 
             @Override
             protected void handleSuccess(AbstractSinkRecord abstractRecord) {
-                Record record = ((LangStreamSinkRecordAdapter) abstractRecord).getRecord();
-                CompletableFuture<?> remove = currentRecordStatus.remove(record);
-                remove.complete(null);
+                ((LangStreamSinkRecordAdapter) abstractRecord).getHandle().complete(null);
             }
 
             @Override
@@ -235,7 +278,8 @@ public class CassandraWriter implements VectorDatabaseWriterProvider {
                 // This can happen in multiple invocations of this callback concurrently, so
                 // we perform these checks/updates in a synchronized block. Presumably failures
                 // don't occur that often, so we don't have to be very fancy here.
-                Record record = ((LangStreamSinkRecordAdapter) abstractRecord).getRecord();
+                LangStreamSinkRecordAdapter adapter = (LangStreamSinkRecordAdapter) abstractRecord;
+                Record record = adapter.getRecord();
                 CassandraSinkConfig.IgnoreErrorsPolicy ignoreErrors =
                         processor.getInstanceState().getConfig().getIgnoreErrors();
                 boolean driverFailure = cql != null;
@@ -249,14 +293,12 @@ public class CassandraWriter implements VectorDatabaseWriterProvider {
                     log.warn("Error decoding/mapping Kafka record {}: {}", record, e.getMessage());
                 }
 
-                CompletableFuture<?> remove = currentRecordStatus.remove(record);
-
                 if (ignoreErrors == CassandraSinkConfig.IgnoreErrorsPolicy.NONE
                         || (ignoreErrors == CassandraSinkConfig.IgnoreErrorsPolicy.DRIVER
                                 && !driverFailure)) {
-                    remove.completeExceptionally(e);
+                    adapter.getHandle().completeExceptionally(e);
                 } else {
-                    remove.complete(null);
+                    adapter.getHandle().complete(null);
                 }
 
                 failCounter.run();
@@ -267,6 +309,10 @@ public class CassandraWriter implements VectorDatabaseWriterProvider {
 
             @Getter private final Record record;
 
+            // the completion handle travels with the record, records that are equal (or even
+            // the same instance written twice) never share the handle
+            @Getter private final CompletableFuture<?> handle = new CompletableFuture<>();
+
             public LangStreamSinkRecordAdapter(Record record) {
                 this.record = record;
             }
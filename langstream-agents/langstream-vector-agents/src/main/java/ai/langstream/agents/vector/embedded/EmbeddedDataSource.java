@@ -0,0 +1,162 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.agents.vector.embedded;
+
+import ai.langstream.agents.vector.QueryTemplate;
+import ai.langstream.ai.agents.datasource.DataSourceProvider;
+import com.datastax.oss.streaming.ai.datasource.QueryStepDataSource;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+public class EmbeddedDataSource implements DataSourceProvider {
+
+    private static final ObjectMapper MAPPER =
+            new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    @Override
+    public boolean supports(Map<String, Object> dataSourceConfig) {
+        return "embedded".equals(dataSourceConfig.get("service"));
+    }
+
+    @Override
+    public EmbeddedQueryStepDataSource createDataSourceImplementation(
+            Map<String, Object> dataSourceConfig) {
+        return new EmbeddedQueryStepDataSource(dataSourceConfig);
+    }
+
+    public static class EmbeddedQueryStepDataSource implements QueryStepDataSource {
+
+        private final Map<String, Object> dataSourceConfig;
+        private EmbeddedVectorIndex index;
+
+        public EmbeddedQueryStepDataSource(Map<String, Object> dataSourceConfig) {
+            this.dataSourceConfig = dataSourceConfig;
+        }
+
+        @Override
+        public void initialize(Map<String, Object> config) {
+            open(config, false);
+        }
+
+        /**
+         * Open the index.
+         *
+         * @param config the configuration passed by the agent, with the persistent disk of the
+         *     agent
+         * @param writer whether the index is written
+         */
+        void open(Map<String, Object> config, boolean writer) {
+            Object persistentStateDirectory =
+                    config == null
+                            ? null
+                            : config.get(EmbeddedVectorIndex.PERSISTENT_STATE_DIRECTORY);
+            try {
+                index =
+                        EmbeddedVectorIndex.open(
+                                EmbeddedVectorIndex.Config.fromMap(
+                                        dataSourceConfig,
+                                        persistentStateDirectory == null
+                                                ? null
+                                                : Paths.get(persistentStateDirectory.toString())),
+                                writer);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        public EmbeddedVectorIndex getIndex() {
+            return index;
+        }
+
+        @Override
+        public List<Map<String, Object>> fetchData(String query, List<Object> params) {
+            Query parsedQuery = QueryTemplate.of(query).bind(params, Query.class, MAPPER);
+            if (parsedQuery.vector == null) {
+                throw new IllegalArgumentException("The query must contain a vector");
+            }
+            Predicate<Map<String, Object>> filter = HnswIndex.metadataFilter(parsedQuery.filter);
+            List<HnswIndex.SearchResult> results =
+                    index.search(
+                            parsedQuery.vector,
+                            parsedQuery.topK,
+                            parsedQuery.efSearch,
+                            filter,
+                            parsedQuery.includeVector);
+            List<Map<String, Object>> rows = new ArrayList<>(results.size());
+            for (HnswIndex.SearchResult result : results) {
+                Map<String, Object> row = new LinkedHashMap<>(result.metadata());
+                row.put("id", result.id());
+                row.put("similarity", result.similarity());
+                if (result.vector() != null) {
+                    List<Float> vector = new ArrayList<>(result.vector().length);
+                    for (float value : result.vector()) {
+                        vector.add(value);
+                    }
+                    row.put("vector", vector);
+                }
+                rows.add(row);
+            }
+            return rows;
+        }
+
+        @Override
+        public void close() {
+            if (index != null) {
+                try {
+                    index.close();
+                } catch (IOException e) {
+                    log.warn("Error closing the embedded vector index", e);
+                }
+                index = null;
+            }
+        }
+    }
+
+    /**
+     * JSON model for the queries.
+     *
+     * <p>"vector": ?, "top-k": 5, "filter": {"category": "news", "language": ["en", "it"]}
+     */
+    @Data
+    public static final class Query {
+        @JsonProperty("vector")
+        private float[] vector;
+
+        @JsonProperty("filter")
+        private Map<String, Object> filter;
+
+        @JsonProperty("top-k")
+        private int topK = 10;
+
+        @JsonProperty("ef-search")
+        private Integer efSearch;
+
+        @JsonProperty("include-vector")
+        private boolean includeVector = false;
+    }
+}
@@ -0,0 +1,605 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.agents.vector.embedded;
+
+import ai.langstream.api.util.ConfigurationUtils;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A vector index that lives in the memory of the agent and is persisted on the local disk.
+ *
+ * <p>Every write is appended to a log of segments ("segment-000001.log", ...), a segment is rolled
+ * when it exceeds max-segment-size. When the index is opened the segments are memory mapped and
+ * replayed into the {@link HnswIndex}. A record is written as its length, its CRC32 and the
+ * payload, so a record truncated by a crash is detected and ignored.
+ *
+ * <p>The instances are shared by directory (or by index-name for the indexes without a
+ * directory), in order for a vector-db-sink and a query-vector-db agent running in the same
+ * process to use the same index. Other processes that open the same directory see the new writes
+ * every refresh-interval milliseconds. There must be only one writer per directory: the writer
+ * holds a lock on the "writer.lock" file, and a second writer fails to open the index.
+ */
+@Slf4j
+public final class EmbeddedVectorIndex implements AutoCloseable {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d+)\\.log");
+    private static final byte OP_UPSERT = 1;
+    private static final byte OP_DELETE = 2;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int MIN_VECTORS_FOR_COMPACTION = 1000;
+    private static final String WRITER_LOCK = "writer.lock";
+
+    /**
+     * Key of the configuration, set by the agents to their persistent disk, where the index is
+     * stored when the datasource has no directory.
+     */
+    public static final String PERSISTENT_STATE_DIRECTORY = "persistent-state-directory";
+
+    private static final Map<String, EmbeddedVectorIndex> INDEXES = new HashMap<>();
+
+    /** An upsert, or a delete if the vector is null. */
+    public record Operation(String id, float[] vector, Map<String, Object> metadata) {}
+
+    public record Config(
+            String indexName,
+            Path directory,
+            HnswIndex.Similarity similarity,
+            int m,
+            int efConstruction,
+            int efSearch,
+            long refreshInterval,
+            long maxSegmentSize,
+            boolean fsync) {
+
+        /**
+         * Read the datasource configuration. Without a "directory" the index is stored in the
+         * persistent disk of the agent, if any, and otherwise it is not persisted. The sink and
+         * the query agents have different disks, they must be configured with the same directory
+         * in order to share the index across processes.
+         */
+        public static Config fromMap(
+                Map<String, Object> configuration, Path persistentStateDirectory) {
+            String indexName = ConfigurationUtils.getString("index-name", "default", configuration);
+            if (indexName.isBlank() || indexName.contains("/") || indexName.contains("\\")) {
+                throw new IllegalArgumentException("Invalid index-name " + indexName);
+            }
+            String directory = ConfigurationUtils.getString("directory", "", configuration);
+            Path path;
+            if (!directory.isEmpty()) {
+                path = Paths.get(directory);
+            } else if (persistentStateDirectory != null) {
+                path = persistentStateDirectory.resolve(indexName);
+            } else {
+                path = null;
+            }
+            return new Config(
+                    indexName,
+                    path,
+                    HnswIndex.Similarity.fromString(
+                            ConfigurationUtils.getString("similarity", "cosine", configuration)),
+                    ConfigurationUtils.getInt("m", 16, configuration),
+                    ConfigurationUtils.getInt("ef-construction", 100, configuration),
+                    ConfigurationUtils.getInt("ef-search", 64, configuration),
+                    ConfigurationUtils.getLong("refresh-interval", 1000L, configuration),
+                    ConfigurationUtils.getLong(
+                            "max-segment-size", 64L * 1024 * 1024, configuration),
+                    ConfigurationUtils.getBoolean("fsync", false, configuration));
+        }
+
+        private String registryKey() {
+            return directory != null
+                    ? directory.toAbsolutePath().normalize().toString()
+                    : "memory:" + indexName;
+        }
+    }
+
+    private final Config config;
+    private final String registryKey;
+    private final Object writeLock = new Object();
+    private volatile HnswIndex index;
+    private int references;
+
+    // valid length of every segment that has been replayed, guarded by writeLock
+    private final TreeMap<Long, Long> replayedSegments = new TreeMap<>();
+    private volatile long lastRefresh = System.nanoTime();
+
+    private FileChannel currentSegment;
+    // guarded by INDEXES
+    private FileLock writerLock;
+    private long currentSegmentNumber;
+    private long currentSegmentSize;
+
+    private EmbeddedVectorIndex(Config config, String registryKey) {
+        this.config = config;
+        this.registryKey = registryKey;
+        this.index = newIndex();
+    }
+
+    /**
+     * Open the index, or get the instance already opened in this process.
+     *
+     * @param writer whether the index is written, only one process can write to a directory
+     * @throws IllegalStateException if another process is writing to the directory
+     */
+    public static EmbeddedVectorIndex open(Config config, boolean writer) throws IOException {
+        String key = config.registryKey();
+        synchronized (INDEXES) {
+            EmbeddedVectorIndex index = INDEXES.get(key);
+            if (index == null) {
+                index = new EmbeddedVectorIndex(config, key);
+                if (config.directory() != null) {
+                    if (writer) {
+                        index.lockDirectory();
+                    }
+                    try {
+                        index.load();
+                    } catch (IOException | RuntimeException e) {
+                        index.unlockDirectory();
+                        throw e;
+                    }
+                } else {
+                    log.warn(
+                            "The embedded vector index {} is not persisted, configure a directory"
+                                    + " or a persistent disk",
+                            config.indexName());
+                }
+                INDEXES.put(key, index);
+            } else if (writer && config.directory() != null && index.writerLock == null) {
+                index.lockDirectory();
+            }
+            if (!index.config.equals(config)) {
+                log.warn(
+                        "The embedded vector index {} is already open with configuration {},"
+                                + " ignoring {}",
+                        key,
+                        index.config,
+                        config);
+            }
+            index.references++;
+            return index;
+        }
+    }
+
+    private void lockDirectory() throws IOException {
+        Files.createDirectories(config.directory());
+        FileChannel channel =
+                FileChannel.open(
+                        config.directory().resolve(WRITER_LOCK),
+                        StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE);
+        FileLock lock;
+        try {
+            lock = channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        if (lock == null) {
+            channel.close();
+            throw new IllegalStateException(
+                    "The embedded vector index "
+                            + config.directory()
+                            + " is already written by another process, there must be only one"
+                            + " writer per directory");
+        }
+        writerLock = lock;
+    }
+
+    private void unlockDirectory() throws IOException {
+        if (writerLock != null) {
+            writerLock.release();
+            writerLock.channel().close();
+            writerLock = null;
+        }
+    }
+
+    public Config getConfig() {
+        return config;
+    }
+
+    public int size() {
+        return index.liveCount();
+    }
+
+    private HnswIndex newIndex() {
+        return new HnswIndex(config.similarity(), config.m(), config.efConstruction());
+    }
+
+    /**
+     * Apply the operations, in order, and persist the ones that have been applied. An operation
+     * that the index rejects (for instance a vector with the wrong dimensions) is not written to
+     * the log, so it cannot break the replay.
+     *
+     * @return the error of each operation, null if the operation has been applied
+     * @throws IOException if the log cannot be written, the operations may be visible to the
+     *     searches but they are not persisted
+     */
+    public List<RuntimeException> write(List<Operation> operations) throws IOException {
+        List<RuntimeException> errors = new ArrayList<>(operations.size());
+        if (operations.isEmpty()) {
+            return errors;
+        }
+        synchronized (writeLock) {
+            HnswIndex current = index;
+            List<Operation> applied = new ArrayList<>(operations.size());
+            for (Operation operation : operations) {
+                try {
+                    if (operation.vector() == null) {
+                        current.delete(operation.id());
+                    } else {
+                        current.upsert(operation.id(), operation.vector(), operation.metadata());
+                    }
+                    applied.add(operation);
+                    errors.add(null);
+                } catch (RuntimeException error) {
+                    errors.add(error);
+                }
+            }
+            if (config.directory() != null && !applied.isEmpty()) {
+                appendToLog(applied);
+                if (index.deletedCount() > MIN_VECTORS_FOR_COMPACTION
+                        && index.deletedCount() > index.liveCount()) {
+                    // only the writer compacts the log, the readers may be replaying the segments
+                    compact();
+                }
+            }
+        }
+        return errors;
+    }
+
+    public List<HnswIndex.SearchResult> search(
+            float[] vector,
+            int topK,
+            Integer efSearch,
+            Predicate<Map<String, Object>> filter,
+            boolean includeVectors) {
+        refreshIfNeeded();
+        return index.search(
+                vector,
+                topK,
+                efSearch != null ? efSearch : config.efSearch(),
+                filter,
+                includeVectors);
+    }
+
+    private void appendToLog(List<Operation> operations) throws IOException {
+        ByteBuffer buffer = encode(operations);
+        if (currentSegment == null || currentSegmentSize >= config.maxSegmentSize()) {
+            rollSegment();
+        }
+        while (buffer.hasRemaining()) {
+            currentSegment.write(buffer);
+        }
+        if (config.fsync()) {
+            currentSegment.force(false);
+        }
+        currentSegmentSize = currentSegment.size();
+        replayedSegments.put(currentSegmentNumber, currentSegmentSize);
+    }
+
+    private void rollSegment() throws IOException {
+        if (currentSegment != null) {
+            currentSegment.close();
+        }
+        // always start a new segment, the tail of the last one may be truncated
+        TreeMap<Long, Path> segments = listSegments();
+        currentSegmentNumber =
+                1
+                        + Math.max(
+                                replayedSegments.isEmpty() ? 0 : replayedSegments.lastKey(),
+                                segments.isEmpty() ? 0 : segments.lastKey());
+        currentSegment =
+                FileChannel.open(
+                        segmentPath(currentSegmentNumber),
+                        StandardOpenOption.CREATE_NEW,
+                        StandardOpenOption.WRITE,
+                        StandardOpenOption.APPEND);
+        currentSegmentSize = 0;
+        replayedSegments.put(currentSegmentNumber, 0L);
+    }
+
+    private Path segmentPath(long number) {
+        return config.directory().resolve(String.format("segment-%06d.log", number));
+    }
+
+    private TreeMap<Long, Path> listSegments() throws IOException {
+        TreeMap<Long, Path> segments = new TreeMap<>();
+        if (!Files.isDirectory(config.directory())) {
+            return segments;
+        }
+        try (Stream<Path> files = Files.list(config.directory())) {
+            files.forEach(
+                    file -> {
+                        Matcher matcher = SEGMENT_NAME.matcher(file.getFileName().toString());
+                        if (matcher.matches()) {
+                            segments.put(Long.parseLong(matcher.group(1)), file);
+                        }
+                    });
+        }
+        return segments;
+    }
+
+    private void load() throws IOException {
+        Files.createDirectories(config.directory());
+        long start = System.nanoTime();
+        synchronized (writeLock) {
+            for (Map.Entry<Long, Path> segment : listSegments().entrySet()) {
+                replayedSegments.put(segment.getKey(), replay(segment.getValue(), 0, index));
+            }
+        }
+        log.info(
+                "Loaded embedded vector index {}: {} vectors from {} segments in {} ms",
+                config.directory(),
+                index.liveCount(),
+                replayedSegments.size(),
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Pick up the segments written by other processes. If a segment disappeared (because the
+     * writer compacted the index) the index is loaded again.
+     */
+    private void refreshIfNeeded() {
+        if (config.directory() == null
+                || config.refreshInterval() <= 0
+                || System.nanoTime() - lastRefresh < config.refreshInterval() * 1_000_000) {
+            return;
+        }
+        synchronized (writeLock) {
+            if (System.nanoTime() - lastRefresh < config.refreshInterval() * 1_000_000) {
+                return;
+            }
+            lastRefresh = System.nanoTime();
+            try {
+                TreeMap<Long, Path> segments = listSegments();
+                if (!segments.keySet().containsAll(replayedSegments.keySet())) {
+                    HnswIndex reloaded = newIndex();
+                    replayedSegments.clear();
+                    for (Map.Entry<Long, Path> segment : segments.entrySet()) {
+                        replayedSegments.put(
+                                segment.getKey(), replay(segment.getValue(), 0, reloaded));
+                    }
+                    index = reloaded;
+                    return;
+                }
+                for (Map.Entry<Long, Path> segment : segments.entrySet()) {
+                    long replayed = replayedSegments.getOrDefault(segment.getKey(), 0L);
+                    if (Files.size(segment.getValue()) > replayed) {
+                        replayedSegments.put(
+                                segment.getKey(), replay(segment.getValue(), replayed, index));
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Rewrite the live vectors into a new segment and drop the previous segments. The new segment
+     * is written to a temporary file and then renamed: if the process stops in the middle the old
+     * segments are still there, and replaying them before the new one gives the same index.
+     */
+    private void compact() throws IOException {
+        synchronized (writeLock) {
+            long start = System.nanoTime();
+            if (currentSegment != null) {
+                // the current segment is going to be deleted, the next write starts a new one
+                currentSegment.close();
+                currentSegment = null;
+            }
+            HnswIndex compacted = newIndex();
+            List<Operation> live = new ArrayList<>(index.liveCount());
+            index.forEachLive(
+                    (id, vector, metadata) -> {
+                        live.add(new Operation(id, vector, metadata));
+                        compacted.upsert(id, vector, metadata);
+                    });
+            Path temporary = config.directory().resolve("compaction.tmp");
+            try (FileChannel channel =
+                    FileChannel.open(
+                            temporary,
+                            StandardOpenOption.CREATE,
+                            StandardOpenOption.TRUNCATE_EXISTING,
+                            StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = encode(live);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            TreeMap<Long, Path> previous = listSegments();
+            long number = previous.isEmpty() ? 1 : previous.lastKey() + 1;
+            Files.move(temporary, segmentPath(number), StandardCopyOption.ATOMIC_MOVE);
+            for (Path segment : previous.values()) {
+                Files.delete(segment);
+            }
+            replayedSegments.clear();
+            replayedSegments.put(number, Files.size(segmentPath(number)));
+            index = compacted;
+            log.info(
+                    "Compacted embedded vector index {}: {} vectors in {} ms",
+                    config.directory(),
+                    live.size(),
+                    (System.nanoTime() - start) / 1_000_000);
+        }
+    }
+
+    /**
+     * Replay the records of a segment starting from the given offset, up to the first record that
+     * is truncated, corrupted or cannot be decoded.
+     *
+     * @return the offset after the last valid record
+     */
+    private static long replay(Path segment, long offset, HnswIndex target) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size <= offset) {
+                return offset;
+            }
+            MappedByteBuffer buffer =
+                    channel.map(FileChannel.MapMode.READ_ONLY, offset, size - offset);
+            CRC32 crc = new CRC32();
+            int position = 0;
+            while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+                int length = buffer.getInt();
+                int checksum = buffer.getInt();
+                if (length <= 0 || length > buffer.remaining()) {
+                    break;
+                }
+                ByteBuffer payload = buffer.slice(buffer.position(), length);
+                crc.reset();
+                crc.update(payload.duplicate());
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                try {
+                    decode(payload, target);
+                } catch (IOException | RuntimeException error) {
+                    // a record is applied only once decoded, the replay stops before it
+                    log.warn(
+                            "Invalid record at offset {} of segment {}: {}",
+                            offset + position,
+                            segment,
+                            error.toString());
+                    break;
+                }
+                buffer.position(buffer.position() + length);
+                position = buffer.position();
+            }
+            if (position < size - offset) {
+                log.warn(
+                        "Ignoring {} bytes at the end of segment {}, the record is truncated or"
+                                + " corrupted",
+                        size - offset - position,
+                        segment);
+            }
+            return offset + position;
+        }
+    }
+
+    private static ByteBuffer encode(List<Operation> operations) throws IOException {
+        List<byte[]> payloads = new ArrayList<>(operations.size());
+        int total = 0;
+        for (Operation operation : operations) {
+            byte[] id = operation.id().getBytes(StandardCharsets.UTF_8);
+            byte[] payload;
+            if (operation.vector() == null) {
+                payload =
+                        ByteBuffer.allocate(1 + 4 + id.length)
+                                .put(OP_DELETE)
+                                .putInt(id.length)
+                                .put(id)
+                                .array();
+            } else {
+                byte[] metadata =
+                        MAPPER.writeValueAsBytes(
+                                operation.metadata() == null ? Map.of() : operation.metadata());
+                float[] vector = operation.vector();
+                ByteBuffer buffer =
+                        ByteBuffer.allocate(
+                                1 + 4 + id.length + 4 + metadata.length + 4 + vector.length * 4);
+                buffer.put(OP_UPSERT).putInt(id.length).put(id);
+                buffer.putInt(metadata.length).put(metadata);
+                buffer.putInt(vector.length);
+                buffer.asFloatBuffer().put(vector);
+                payload = buffer.array();
+            }
+            payloads.add(payload);
+            total += RECORD_HEADER_SIZE + payload.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(total);
+        CRC32 crc = new CRC32();
+        for (byte[] payload : payloads) {
+            crc.reset();
+            crc.update(payload);
+            buffer.putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+        }
+        return buffer.flip();
+    }
+
+    private static void decode(ByteBuffer payload, HnswIndex target) throws IOException {
+        byte op = payload.get();
+        byte[] id = new byte[payload.getInt()];
+        payload.get(id);
+        String idString = new String(id, StandardCharsets.UTF_8);
+        if (op == OP_DELETE) {
+            target.delete(idString);
+            return;
+        }
+        if (op != OP_UPSERT) {
+            throw new IOException("Unknown operation " + op + " in the vector index log");
+        }
+        byte[] metadataBytes = new byte[payload.getInt()];
+        payload.get(metadataBytes);
+        Map<String, Object> metadata =
+                MAPPER.readValue(metadataBytes, new TypeReference<Map<String, Object>>() {});
+        float[] vector = new float[payload.getInt()];
+        payload.asFloatBuffer().get(vector);
+        target.upsert(idString, vector, metadata);
+    }
+
+    /** Release the index, it is closed when it is not used anymore. */
+    @Override
+    public void close() throws IOException {
+        synchronized (INDEXES) {
+            if (--references > 0) {
+                return;
+            }
+            INDEXES.remove(registryKey);
+            // release the lock before a new instance can be opened on the directory
+            synchronized (writeLock) {
+                try {
+                    if (currentSegment != null) {
+                        currentSegment.force(false);
+                        currentSegment.close();
+                        currentSegment = null;
+                    }
+                } finally {
+                    unlockDirectory();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.agents.vector.embedded;
+
+import static ai.langstream.ai.agents.commons.MutableRecord.recordToMutableRecord;
+
+import ai.langstream.ai.agents.commons.MutableRecord;
+import ai.langstream.ai.agents.commons.jstl.JstlEvaluator;
+import ai.langstream.api.database.VectorDatabaseWriter;
+import ai.langstream.api.database.VectorDatabaseWriterProvider;
+import ai.langstream.api.runner.code.Record;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+public class EmbeddedWriter implements VectorDatabaseWriterProvider {
+
+    @Override
+    public boolean supports(Map<String, Object> dataSourceConfig) {
+        return "embedded".equals(dataSourceConfig.get("service"));
+    }
+
+    @Override
+    public EmbeddedVectorDatabaseWriter createImplementation(
+            Map<String, Object> datasourceConfig) {
+        return new EmbeddedVectorDatabaseWriter(datasourceConfig);
+    }
+
+    public static class EmbeddedVectorDatabaseWriter
+            implements VectorDatabaseWriter, AutoCloseable {
+
+        private final EmbeddedDataSource.EmbeddedQueryStepDataSource dataSource;
+        private final Map<String, JstlEvaluator> fields = new LinkedHashMap<>();
+        private JstlEvaluator idFunction;
+        private JstlEvaluator vectorFunction;
+        private EmbeddedVectorIndex index;
+
+        public EmbeddedVectorDatabaseWriter(Map<String, Object> datasourceConfig) {
+            EmbeddedDataSource dataSourceProvider = new EmbeddedDataSource();
+            dataSource = dataSourceProvider.createDataSourceImplementation(datasourceConfig);
+        }
+
+        @Override
+        public void initialise(Map<String, Object> agentConfiguration) throws Exception {
+            idFunction = buildEvaluator(agentConfiguration, "id", Object.class);
+            if (idFunction == null) {
+                throw new IllegalArgumentException("The id expression is required");
+            }
+            vectorFunction = buildEvaluator(agentConfiguration, "vector", Object.class);
+            if (vectorFunction == null) {
+                throw new IllegalArgumentException("The vector expression is required");
+            }
+            List<Map<String, Object>> fields =
+                    (List<Map<String, Object>>)
+                            agentConfiguration.getOrDefault("fields", List.of());
+            fields.forEach(
+                    field ->
+                            this.fields.put(
+                                    field.get("name").toString(),
+                                    buildEvaluator(field, "expression", Object.class)));
+            dataSource.open(agentConfiguration, true);
+            index = dataSource.getIndex();
+        }
+
+        @Override
+        public CompletableFuture<?> upsert(Record record, Map<String, Object> context) {
+            return upsertBatch(List.of(record), context).get(0);
+        }
+
+        @Override
+        public boolean supportsBatchUpsert() {
+            return true;
+        }
+
+        @Override
+        public List<CompletableFuture<?>> upsertBatch(
+                List<Record> records, Map<String, Object> context) {
+            List<CompletableFuture<?>> handles = new ArrayList<>(records.size());
+            List<EmbeddedVectorIndex.Operation> operations = new ArrayList<>(records.size());
+            List<CompletableFuture<?>> operationHandles = new ArrayList<>(records.size());
+            for (Record record : records) {
+                CompletableFuture<?> handle = new CompletableFuture<>();
+                handles.add(handle);
+                try {
+                    operations.add(toOperation(record));
+                    operationHandles.add(handle);
+                } catch (Exception e) {
+                    handle.completeExceptionally(e);
+                }
+            }
+            // the whole batch is appended to the log with one single write
+            try {
+                List<RuntimeException> errors = index.write(operations);
+                for (int i = 0; i < operationHandles.size(); i++) {
+                    if (errors.get(i) != null) {
+                        operationHandles.get(i).completeExceptionally(errors.get(i));
+                    } else {
+                        operationHandles.get(i).complete(null);
+                    }
+                }
+            } catch (Exception e) {
+                operationHandles.forEach(h -> h.completeExceptionally(e));
+            }
+            return handles;
+        }
+
+        private EmbeddedVectorIndex.Operation toOperation(Record record) {
+            MutableRecord mutableRecord = recordToMutableRecord(record, true);
+            Object id = idFunction.evaluate(mutableRecord);
+            if (id == null) {
+                throw new IllegalArgumentException("The id is null for record " + record);
+            }
+            if (record.value() == null) {
+                return new EmbeddedVectorIndex.Operation(id.toString(), null, null);
+            }
+            float[] vector = toFloatArray(vectorFunction.evaluate(mutableRecord));
+            if (vector == null) {
+                throw new IllegalArgumentException("The vector is null for record " + record);
+            }
+            Map<String, Object> metadata = new LinkedHashMap<>();
+            fields.forEach(
+                    (name, evaluator) -> {
+                        Object value = evaluator.evaluate(mutableRecord);
+                        if (value != null) {
+                            metadata.put(name, value);
+                        }
+                    });
+            return new EmbeddedVectorIndex.Operation(id.toString(), vector, metadata);
+        }
+
+        @Override
+        public void close() throws Exception {
+            dataSource.close();
+        }
+    }
+
+    private static float[] toFloatArray(Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof float[] array) {
+            return array;
+        }
+        if (value instanceof List<?> list) {
+            float[] result = new float[list.size()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = ((Number) list.get(i)).floatValue();
+            }
+            return result;
+        }
+        throw new IllegalArgumentException(
+                "Unsupported vector type " + value.getClass().getName());
+    }
+
+    private static JstlEvaluator buildEvaluator(
+            Map<String, Object> agentConfiguration, String param, Class type) {
+        String expression = agentConfiguration.getOrDefault(param, "").toString();
+        if (expression == null || expression.isEmpty()) {
+            return null;
+        }
+        return new JstlEvaluator("${" + expression + "}", type);
+    }
+}
@@ -0,0 +1,670 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.agents.vector.embedded;
+
+import ai.langstream.ai.agents.commons.VectorKernels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+/**
+ * In memory Hierarchical Navigable Small World graph (Malkov and Yashunin, 2016).
+ *
+ * <p>Searches run concurrently, writes are serialized. A deleted (or replaced) vector is only
+ * marked as deleted: it is still used to navigate the graph but it is never returned. The owner
+ * rebuilds the graph when there are too many deleted vectors, see {@link #deletedCount()}.
+ */
+public class HnswIndex {
+
+    private static final int MAX_LEVEL = 16;
+
+    public enum Similarity {
+        COSINE,
+        DOT_PRODUCT,
+        EUCLIDEAN;
+
+        public static Similarity fromString(String value) {
+            return switch (value.toLowerCase().replace('_', '-')) {
+                case "cosine" -> COSINE;
+                case "dot-product", "dot" -> DOT_PRODUCT;
+                case "euclidean" -> EUCLIDEAN;
+                default -> throw new IllegalArgumentException(
+                        "Unsupported similarity "
+                                + value
+                                + ", only cosine, dot-product and euclidean are supported");
+            };
+        }
+    }
+
+    public record SearchResult(
+            String id, float similarity, Map<String, Object> metadata, float[] vector) {}
+
+    private final Similarity similarity;
+    private final int maxConnections;
+    private final int maxConnectionsLevel0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final Random random;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Map<String, Integer> nodesById = new HashMap<>();
+    private final BitSet deleted = new BitSet();
+    private final ThreadLocal<VisitedSet> visitedSets = ThreadLocal.withInitial(VisitedSet::new);
+
+    private int dimensions = -1;
+    private int size;
+    private float[][] vectors = new float[64][];
+    private String[] ids = new String[64];
+    private Map<String, Object>[] metadata = new Map[64];
+    // links[node][level] = {count, neighbour1, neighbour2...}
+    private int[][][] links = new int[64][][];
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    public HnswIndex(Similarity similarity, int m, int efConstruction) {
+        if (m < 2) {
+            throw new IllegalArgumentException("m must be at least 2");
+        }
+        if (efConstruction < 1) {
+            throw new IllegalArgumentException("ef-construction must be at least 1");
+        }
+        this.similarity = similarity;
+        this.maxConnections = m;
+        this.maxConnectionsLevel0 = 2 * m;
+        this.efConstruction = efConstruction;
+        this.levelMultiplier = 1 / Math.log(m);
+        this.random = new Random(42);
+    }
+
+    public Similarity getSimilarity() {
+        return similarity;
+    }
+
+    /** Number of vectors that can be returned by a search. */
+    public int liveCount() {
+        lock.readLock().lock();
+        try {
+            return nodesById.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Number of vectors deleted or replaced that are still in the graph. */
+    public int deletedCount() {
+        lock.readLock().lock();
+        try {
+            return size - nodesById.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Insert a vector, replacing the vector with the same id.
+     *
+     * @throws IllegalArgumentException if the dimensions do not match the vectors already indexed
+     */
+    public void upsert(String id, float[] vector, Map<String, Object> vectorMetadata) {
+        Objects.requireNonNull(id, "id");
+        Objects.requireNonNull(vector, "vector");
+        lock.writeLock().lock();
+        try {
+            if (dimensions < 0) {
+                dimensions = vector.length;
+            } else if (dimensions != vector.length) {
+                throw new IllegalArgumentException(
+                        "Vector "
+                                + id
+                                + " has "
+                                + vector.length
+                                + " dimensions, the index has "
+                                + dimensions
+                                + " dimensions");
+            }
+            Integer existing = nodesById.remove(id);
+            if (existing != null) {
+                deleted.set(existing);
+            }
+            insert(id, prepare(vector), vectorMetadata == null ? Map.of() : vectorMetadata);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean delete(String id) {
+        lock.writeLock().lock();
+        try {
+            Integer existing = nodesById.remove(id);
+            if (existing == null) {
+                return false;
+            }
+            deleted.set(existing);
+            metadata[existing] = Map.of();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Visit the vectors that can be returned by a search. */
+    public void forEachLive(LiveVectorConsumer consumer) {
+        lock.readLock().lock();
+        try {
+            for (int node = 0; node < size; node++) {
+                if (!deleted.get(node)) {
+                    consumer.accept(ids[node], vectors[node], metadata[node]);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @FunctionalInterface
+    public interface LiveVectorConsumer {
+        void accept(String id, float[] vector, Map<String, Object> metadata);
+    }
+
+    /**
+     * Search the vectors more similar to the given one.
+     *
+     * @param query the query vector
+     * @param topK the maximum number of results
+     * @param efSearch size of the dynamic candidate list, bigger values give better recall
+     * @param filter filter on the metadata, null to return any vector
+     * @param includeVectors whether to return the vectors
+     * @return the results, best match first
+     */
+    public List<SearchResult> search(
+            float[] query,
+            int topK,
+            int efSearch,
+            Predicate<Map<String, Object>> filter,
+            boolean includeVectors) {
+        if (topK <= 0) {
+            return List.of();
+        }
+        lock.readLock().lock();
+        try {
+            if (entryPoint < 0) {
+                return List.of();
+            }
+            if (query.length != dimensions) {
+                throw new IllegalArgumentException(
+                        "The query vector has "
+                                + query.length
+                                + " dimensions, the index has "
+                                + dimensions
+                                + " dimensions");
+            }
+            float[] q = prepare(query);
+            int ep = entryPoint;
+            for (int level = maxLevel; level > 0; level--) {
+                ep = greedyClosest(q, ep, level);
+            }
+            int ef = Math.max(efSearch, topK);
+            while (true) {
+                NodeHeap candidates = searchLayer(q, ep, ef, 0);
+                List<SearchResult> results = collect(candidates, topK, filter, includeVectors);
+                if (results.size() >= topK || candidates.size() < ef) {
+                    // either we have enough results or the whole connected graph was visited
+                    return results;
+                }
+                if (ef >= size) {
+                    return bruteForce(q, topK, filter, includeVectors);
+                }
+                // a selective filter (or many deleted vectors), look further
+                ef = Math.min(size, ef * 4);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private List<SearchResult> collect(
+            NodeHeap heap,
+            int topK,
+            Predicate<Map<String, Object>> filter,
+            boolean includeVectors) {
+        int[] nodes = new int[heap.size()];
+        float[] scores = new float[heap.size()];
+        // the heap returns the worst first
+        for (int i = nodes.length - 1; i >= 0; i--) {
+            scores[i] = heap.topScore();
+            nodes[i] = heap.pop();
+        }
+        List<SearchResult> results = new ArrayList<>(Math.min(topK, nodes.length));
+        for (int i = 0; i < nodes.length && results.size() < topK; i++) {
+            int node = nodes[i];
+            if (deleted.get(node) || (filter != null && !filter.test(metadata[node]))) {
+                continue;
+            }
+            results.add(toResult(node, scores[i], includeVectors));
+        }
+        return results;
+    }
+
+    private List<SearchResult> bruteForce(
+            float[] q, int topK, Predicate<Map<String, Object>> filter, boolean includeVectors) {
+        NodeHeap best = new NodeHeap(topK + 1, false);
+        for (int node = 0; node < size; node++) {
+            if (deleted.get(node) || (filter != null && !filter.test(metadata[node]))) {
+                continue;
+            }
+            float score = score(q, vectors[node]);
+            if (best.size() < topK) {
+                best.push(node, score);
+            } else if (score > best.topScore()) {
+                best.pop();
+                best.push(node, score);
+            }
+        }
+        return collect(best, topK, null, includeVectors);
+    }
+
+    private SearchResult toResult(int node, float score, boolean includeVectors) {
+        float similarityScore =
+                switch (similarity) {
+                    case EUCLIDEAN -> 1 / (1 - score);
+                    default -> score;
+                };
+        return new SearchResult(
+                ids[node],
+                similarityScore,
+                metadata[node],
+                includeVectors ? vectors[node].clone() : null);
+    }
+
+    private float[] prepare(float[] vector) {
+        if (similarity != Similarity.COSINE) {
+            return vector.clone();
+        }
+        // with normalized vectors the cosine similarity is the dot product
+        float norm = VectorKernels.norm(vector);
+        float[] normalized = new float[vector.length];
+        if (norm > 0) {
+            for (int i = 0; i < vector.length; i++) {
+                normalized[i] = vector[i] / norm;
+            }
+        }
+        return normalized;
+    }
+
+    /** Higher is more similar. */
+    private float score(float[] a, float[] b) {
+        return switch (similarity) {
+            case EUCLIDEAN -> -VectorKernels.squareDistance(a, b);
+            default -> VectorKernels.dotProduct(a, b);
+        };
+    }
+
+    private void insert(String id, float[] vector, Map<String, Object> vectorMetadata) {
+        int node = size;
+        ensureCapacity(node + 1);
+        int level = randomLevel();
+        int[][] nodeLinks = new int[level + 1][];
+        for (int l = 0; l <= level; l++) {
+            nodeLinks[l] = new int[maxConnections(l) + 1];
+        }
+        vectors[node] = vector;
+        ids[node] = id;
+        metadata[node] = vectorMetadata;
+        links[node] = nodeLinks;
+        size++;
+        nodesById.put(id, node);
+
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            return;
+        }
+        int ep = entryPoint;
+        for (int l = maxLevel; l > level; l--) {
+            ep = greedyClosest(vector, ep, l);
+        }
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            NodeHeap candidates = searchLayer(vector, ep, efConstruction, l);
+            int[] sorted = new int[candidates.size()];
+            float[] scores = new float[candidates.size()];
+            for (int i = sorted.length - 1; i >= 0; i--) {
+                scores[i] = candidates.topScore();
+                sorted[i] = candidates.pop();
+            }
+            int[] selected = selectNeighbours(sorted, scores, maxConnections(l));
+            for (int neighbour : selected) {
+                addLink(node, l, neighbour);
+                addLink(neighbour, l, node);
+            }
+            ep = sorted[0];
+        }
+        if (level > maxLevel) {
+            entryPoint = node;
+            maxLevel = level;
+        }
+    }
+
+    private int maxConnections(int level) {
+        return level == 0 ? maxConnectionsLevel0 : maxConnections;
+    }
+
+    private int randomLevel() {
+        double r = -Math.log(1 - random.nextDouble()) * levelMultiplier;
+        return (int) Math.min(r, MAX_LEVEL);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= vectors.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, vectors.length + (vectors.length >> 1));
+        vectors = Arrays.copyOf(vectors, newCapacity);
+        ids = Arrays.copyOf(ids, newCapacity);
+        metadata = Arrays.copyOf(metadata, newCapacity);
+        links = Arrays.copyOf(links, newCapacity);
+    }
+
+    private int greedyClosest(float[] q, int entry, int level) {
+        int current = entry;
+        float currentScore = score(q, vectors[current]);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            int[] neighbours = links[current][level];
+            for (int i = 1; i <= neighbours[0]; i++) {
+                int candidate = neighbours[i];
+                float candidateScore = score(q, vectors[candidate]);
+                if (candidateScore > currentScore) {
+                    current = candidate;
+                    currentScore = candidateScore;
+                    changed = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Beam search on one level of the graph.
+     *
+     * @return the best ef nodes, in a heap that returns the worst node first
+     */
+    private NodeHeap searchLayer(float[] q, int entry, int ef, int level) {
+        VisitedSet visited = visitedSets.get();
+        visited.reset(size);
+        NodeHeap candidates = new NodeHeap(ef + 1, true);
+        NodeHeap results = new NodeHeap(ef + 1, false);
+        float entryScore = score(q, vectors[entry]);
+        candidates.push(entry, entryScore);
+        results.push(entry, entryScore);
+        visited.visit(entry);
+        while (candidates.size() > 0) {
+            float candidateScore = candidates.topScore();
+            int candidate = candidates.pop();
+            if (results.size() >= ef && candidateScore < results.topScore()) {
+                break;
+            }
+            int[][] candidateLinks = links[candidate];
+            if (level >= candidateLinks.length) {
+                continue;
+            }
+            int[] neighbours = candidateLinks[level];
+            for (int i = 1; i <= neighbours[0]; i++) {
+                int neighbour = neighbours[i];
+                if (!visited.visit(neighbour)) {
+                    continue;
+                }
+                float neighbourScore = score(q, vectors[neighbour]);
+                if (results.size() < ef || neighbourScore > results.topScore()) {
+                    candidates.push(neighbour, neighbourScore);
+                    results.push(neighbour, neighbourScore);
+                    if (results.size() > ef) {
+                        results.pop();
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * The neighbour selection heuristic of the paper: a candidate is kept only if it is closer
+     * to the base node than to the neighbours already selected, this keeps the graph navigable
+     * across clusters. The remaining slots are filled with the closest discarded candidates.
+     *
+     * @param sorted candidates, best first
+     * @param scores similarity of the candidates with the base node
+     */
+    private int[] selectNeighbours(int[] sorted, float[] scores, int max) {
+        if (sorted.length <= max) {
+            return sorted;
+        }
+        int[] selected = new int[max];
+        int count = 0;
+        boolean[] used = new boolean[sorted.length];
+        for (int i = 0; i < sorted.length && count < max; i++) {
+            float[] candidate = vectors[sorted[i]];
+            boolean good = true;
+            for (int j = 0; j < count; j++) {
+                if (score(candidate, vectors[selected[j]]) > scores[i]) {
+                    good = false;
+                    break;
+                }
+            }
+            if (good) {
+                selected[count++] = sorted[i];
+                used[i] = true;
+            }
+        }
+        for (int i = 0; i < sorted.length && count < max; i++) {
+            if (!used[i]) {
+                selected[count++] = sorted[i];
+            }
+        }
+        return selected;
+    }
+
+    private void addLink(int node, int level, int neighbour) {
+        int[] nodeLinks = links[node][level];
+        int count = nodeLinks[0];
+        for (int i = 1; i <= count; i++) {
+            if (nodeLinks[i] == neighbour) {
+                return;
+            }
+        }
+        if (count < nodeLinks.length - 1) {
+            nodeLinks[count + 1] = neighbour;
+            nodeLinks[0] = count + 1;
+            return;
+        }
+        // full, keep the best neighbours according to the heuristic
+        float[] base = vectors[node];
+        int[] all = new int[count + 1];
+        float[] scores = new float[count + 1];
+        for (int i = 0; i < count; i++) {
+            all[i] = nodeLinks[i + 1];
+            scores[i] = score(base, vectors[all[i]]);
+        }
+        all[count] = neighbour;
+        scores[count] = score(base, vectors[neighbour]);
+        sortByScore(all, scores);
+        int[] selected = selectNeighbours(all, scores, count);
+        System.arraycopy(selected, 0, nodeLinks, 1, selected.length);
+        nodeLinks[0] = selected.length;
+    }
+
+    private static void sortByScore(int[] nodes, float[] scores) {
+        // insertion sort, the arrays are small (at most 2 * m + 1 elements)
+        for (int i = 1; i < nodes.length; i++) {
+            int node = nodes[i];
+            float score = scores[i];
+            int j = i - 1;
+            while (j >= 0 && scores[j] < score) {
+                nodes[j + 1] = nodes[j];
+                scores[j + 1] = scores[j];
+                j--;
+            }
+            nodes[j + 1] = node;
+            scores[j + 1] = score;
+        }
+    }
+
+    /**
+     * Build a metadata filter: every entry of the filter must match the metadata field with the
+     * same name. A collection matches any of its elements. Numbers are compared by value.
+     */
+    public static Predicate<Map<String, Object>> metadataFilter(Map<String, Object> filter) {
+        if (filter == null || filter.isEmpty()) {
+            return null;
+        }
+        Map<String, Object> copy = new HashMap<>(filter);
+        return metadata -> {
+            for (Map.Entry<String, Object> entry : copy.entrySet()) {
+                Object value = metadata.get(entry.getKey());
+                if (entry.getValue() instanceof Collection<?> accepted) {
+                    boolean any = false;
+                    for (Object acceptedValue : accepted) {
+                        if (valueEquals(acceptedValue, value)) {
+                            any = true;
+                            break;
+                        }
+                    }
+                    if (!any) {
+                        return false;
+                    }
+                } else if (!valueEquals(entry.getValue(), value)) {
+                    return false;
+                }
+            }
+            return true;
+        };
+    }
+
+    private static boolean valueEquals(Object expected, Object actual) {
+        if (expected instanceof Number n1 && actual instanceof Number n2) {
+            return n1.doubleValue() == n2.doubleValue();
+        }
+        return Objects.equals(expected, actual);
+    }
+
+    /** Binary heap of nodes, ordered by score. */
+    private static final class NodeHeap {
+        private final boolean maxHeap;
+        private int[] nodes;
+        private float[] scores;
+        private int size;
+
+        NodeHeap(int initialCapacity, boolean maxHeap) {
+            this.maxHeap = maxHeap;
+            this.nodes = new int[Math.max(initialCapacity, 8)];
+            this.scores = new float[nodes.length];
+        }
+
+        int size() {
+            return size;
+        }
+
+        float topScore() {
+            return scores[0];
+        }
+
+        void push(int node, float score) {
+            if (size == nodes.length) {
+                nodes = Arrays.copyOf(nodes, size * 2);
+                scores = Arrays.copyOf(scores, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!before(score, scores[parent])) {
+                    break;
+                }
+                nodes[i] = nodes[parent];
+                scores[i] = scores[parent];
+                i = parent;
+            }
+            nodes[i] = node;
+            scores[i] = score;
+        }
+
+        int pop() {
+            int top = nodes[0];
+            size--;
+            if (size > 0) {
+                int node = nodes[size];
+                float score = scores[size];
+                int i = 0;
+                while (true) {
+                    int child = 2 * i + 1;
+                    if (child >= size) {
+                        break;
+                    }
+                    if (child + 1 < size && before(scores[child + 1], scores[child])) {
+                        child++;
+                    }
+                    if (!before(scores[child], score)) {
+                        break;
+                    }
+                    nodes[i] = nodes[child];
+                    scores[i] = scores[child];
+                    i = child;
+                }
+                nodes[i] = node;
+                scores[i] = score;
+            }
+            return top;
+        }
+
+        private boolean before(float a, float b) {
+            return maxHeap ? a > b : a < b;
+        }
+    }
+
+    /** Visited marks, reused across the searches of the same thread. */
+    private static final class VisitedSet {
+        private int[] marks = new int[0];
+        private int generation;
+
+        void reset(int capacity) {
+            if (marks.length < capacity) {
+                marks = new int[Math.max(capacity, marks.length * 2)];
+                generation = 0;
+            }
+            generation++;
+            if (generation == Integer.MAX_VALUE) {
+                Arrays.fill(marks, 0);
+                generation = 1;
+            }
+        }
+
+        /** Mark the node as visited, returns false if it was already visited. */
+        boolean visit(int node) {
+            if (marks[node] == generation) {
+                return false;
+            }
+            marks[node] = generation;
+            return true;
+        }
+    }
+}
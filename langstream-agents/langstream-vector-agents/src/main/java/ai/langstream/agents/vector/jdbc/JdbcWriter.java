@@ -19,18 +19,26 @@ import static ai.langstream.ai.agents.commons.MutableRecord.recordToMutableRecor
 
 import ai.langstream.ai.agents.commons.MutableRecord;
 import ai.langstream.ai.agents.commons.jstl.JstlEvaluator;
-import ai.langstream.ai.agents.datasource.impl.JdbcDataSourceProvider;
+import ai.langstream.ai.agents.datasource.impl.JdbcConnectionPool;
 import ai.langstream.api.database.VectorDatabaseWriter;
 import ai.langstream.api.database.VectorDatabaseWriterProvider;
+import ai.langstream.api.runner.code.MetricsReporter;
 import ai.langstream.api.runner.code.Record;
 import ai.langstream.api.util.ConfigurationUtils;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
@@ -46,18 +54,70 @@ public class JdbcWriter implements VectorDatabaseWriterProvider {
         return new JdbcVectorDatabaseWriter(datasourceConfig);
     }
 
+    /** How the rows are upserted. */
+    enum Dialect {
+        /** INSERT ... ON CONFLICT DO UPDATE */
+        POSTGRESQL,
+        /** INSERT ... ON DUPLICATE KEY UPDATE */
+        MYSQL,
+        /** SQL standard MERGE */
+        MERGE,
+        /** MERGE ... KEY, the parameters of a standard MERGE statement have no type in H2 */
+        H2,
+        /** UPDATE and then INSERT if no row was updated, works with any database */
+        GENERIC;
+
+        static Dialect fromConfig(String dialect, String databaseProductName) {
+            if (dialect == null || dialect.isEmpty()) {
+                return GENERIC;
+            }
+            if (dialect.equals("auto")) {
+                return detect(databaseProductName);
+            }
+            try {
+                return valueOf(dialect.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(
+                        "Invalid dialect: "
+                                + dialect
+                                + ", supported values are auto, postgresql, mysql, merge, h2"
+                                + " and generic");
+            }
+        }
+
+        /**
+         * Native upserts need a unique constraint on the primary key columns, MERGE is never
+         * detected.
+         */
+        static Dialect detect(String databaseProductName) {
+            String name =
+                    databaseProductName == null ? "" : databaseProductName.toLowerCase(Locale.ROOT);
+            if (name.contains("postgresql")) {
+                return POSTGRESQL;
+            } else if (name.contains("mysql") || name.contains("mariadb")) {
+                return MYSQL;
+            } else if (name.equals("h2")) {
+                return H2;
+            }
+            return GENERIC;
+        }
+    }
+
     public static class JdbcVectorDatabaseWriter implements VectorDatabaseWriter, AutoCloseable {
 
-        private Connection connection;
+        private JdbcConnectionPool pool;
+        private ExecutorService executor;
 
         private String tableName;
         private final LinkedHashMap<String, JstlEvaluator> primaryKey = new LinkedHashMap<>();
         private final LinkedHashMap<String, JstlEvaluator> columns = new LinkedHashMap<>();
 
-        private PreparedStatement insert;
-        private PreparedStatement update;
-        private PreparedStatement delete;
-        private Map<String, Object> datasourceConfig;
+        private Dialect dialect;
+        private String upsertQuery;
+        private String insertQuery;
+        private String updateQuery;
+        private String deleteQuery;
+        private final Map<String, Object> datasourceConfig;
 
         public JdbcVectorDatabaseWriter(Map<String, Object> datasourceConfig) {
             this.datasourceConfig = datasourceConfig;
@@ -65,16 +125,36 @@ public class JdbcWriter implements VectorDatabaseWriterProvider {
 
         @Override
         public void close() throws Exception {
-            if (connection != null) {
-                connection.close();
+            if (executor != null) {
+                executor.shutdown();
+                if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+                    log.warn("Some writes to {} are still pending", tableName);
+                }
+            }
+            if (pool != null) {
+                pool.close();
             }
         }
 
         @Override
         public void initialise(Map<String, Object> agentConfiguration) throws Exception {
+            initialise(agentConfiguration, MetricsReporter.DISABLED);
+        }
 
-            this.connection = JdbcDataSourceProvider.buildConnection(datasourceConfig);
+        @Override
+        public void initialise(
+                Map<String, Object> agentConfiguration, MetricsReporter metricsReporter)
+                throws Exception {
             this.tableName = ConfigurationUtils.getString("table-name", null, agentConfiguration);
+            int concurrency = ConfigurationUtils.getInt("concurrency", 1, agentConfiguration);
+            this.pool =
+                    new JdbcConnectionPool(
+                            datasourceConfig,
+                            JdbcConnectionPool.Config.fromMap(datasourceConfig)
+                                    .withMaxSize(Math.max(1, concurrency))
+                                    .withAutoCommit(false),
+                            metricsReporter);
+            this.executor = Executors.newFixedThreadPool(pool.getMaxSize());
 
             List<Map<String, Object>> fields =
                     (List<Map<String, Object>>)
@@ -94,28 +174,38 @@ public class JdbcWriter implements VectorDatabaseWriterProvider {
                         }
                     });
 
-            int numParameters = columns.size() + primaryKey.size();
-            StringBuilder values = new StringBuilder();
-            for (int i = 0; i < numParameters; i++) {
-                if (i > 0) {
-                    values.append(",");
-                }
-                values.append("?");
+            // fail fast if the database is not reachable
+            String databaseProductName;
+            JdbcConnectionPool.PooledConnection connection = pool.borrow();
+            try {
+                databaseProductName =
+                        connection.getConnection().getMetaData().getDatabaseProductName();
+            } finally {
+                pool.release(connection, false);
             }
-            String insertQuery =
+            this.dialect =
+                    Dialect.fromConfig(
+                            ConfigurationUtils.getString(
+                                    "dialect", "generic", agentConfiguration),
+                            databaseProductName);
+            log.info("Database {}, using dialect {}", databaseProductName, dialect);
+
+            List<String> allColumns = new ArrayList<>(primaryKey.keySet());
+            allColumns.addAll(columns.keySet());
+            String placeholders =
+                    allColumns.stream().map(c -> "?").collect(Collectors.joining(","));
+
+            insertQuery =
                     "INSERT INTO "
                             + tableName
                             + " ("
-                            + String.join(", ", primaryKey.keySet())
-                            + ","
-                            + String.join(", ", columns.keySet())
+                            + String.join(", ", allColumns)
                             + ") VALUES ("
-                            + values
+                            + placeholders
                             + ")";
             log.info("insertQuery {}", insertQuery);
-            insert = connection.prepareStatement(insertQuery);
 
-            String updateQuery =
+            updateQuery =
                     "UPDATE "
                             + tableName
                             + " SET "
@@ -123,59 +213,293 @@ public class JdbcWriter implements VectorDatabaseWriterProvider {
                             + " = ? WHERE "
                             + String.join("=? AND ", primaryKey.keySet())
                             + "=?";
-            update = connection.prepareStatement(updateQuery);
             log.info("updateQuery {}", updateQuery);
 
-            String deleteQuery =
+            deleteQuery =
                     "DELETE FROM "
                             + tableName
                             + " WHERE "
                             + String.join("=? AND ", primaryKey.keySet())
                             + "=?";
-            delete = connection.prepareStatement(deleteQuery);
             log.info("deleteQuery {}", deleteQuery);
+
+            upsertQuery = buildUpsertQuery(allColumns, placeholders);
+            log.info("upsertQuery {}", upsertQuery);
+        }
+
+        private String buildUpsertQuery(List<String> allColumns, String placeholders) {
+            switch (dialect) {
+                case POSTGRESQL:
+                    return insertQuery
+                            + " ON CONFLICT ("
+                            + String.join(", ", primaryKey.keySet())
+                            + ") "
+                            + (columns.isEmpty()
+                                    ? "DO NOTHING"
+                                    : "DO UPDATE SET "
+                                            + columns.keySet().stream()
+                                                    .map(c -> c + " = EXCLUDED." + c)
+                                                    .collect(Collectors.joining(", ")));
+                case MYSQL:
+                    {
+                        // with no columns other than the primary key a no-op update is needed
+                        List<String> updated =
+                                columns.isEmpty()
+                                        ? List.copyOf(primaryKey.keySet())
+                                        : List.copyOf(columns.keySet());
+                        return insertQuery
+                                + " ON DUPLICATE KEY UPDATE "
+                                + updated.stream()
+                                        .map(c -> c + " = VALUES(" + c + ")")
+                                        .collect(Collectors.joining(", "));
+                    }
+                case MERGE:
+                    return "MERGE INTO "
+                            + tableName
+                            + " t USING (VALUES ("
+                            + placeholders
+                            + ")) AS s("
+                            + String.join(", ", allColumns)
+                            + ") ON "
+                            + primaryKey.keySet().stream()
+                                    .map(c -> "t." + c + " = s." + c)
+                                    .collect(Collectors.joining(" AND "))
+                            + (columns.isEmpty()
+                                    ? ""
+                                    : " WHEN MATCHED THEN UPDATE SET "
+                                            + columns.keySet().stream()
+                                                    .map(c -> c + " = s." + c)
+                                                    .collect(Collectors.joining(", ")))
+                            + " WHEN NOT MATCHED THEN INSERT ("
+                            + String.join(", ", allColumns)
+                            + ") VALUES ("
+                            + allColumns.stream()
+                                    .map(c -> "s." + c)
+                                    .collect(Collectors.joining(", "))
+                            + ")";
+                case H2:
+                    return "MERGE INTO "
+                            + tableName
+                            + " ("
+                            + String.join(", ", allColumns)
+                            + ") KEY ("
+                            + String.join(", ", primaryKey.keySet())
+                            + ") VALUES ("
+                            + placeholders
+                            + ")";
+                default:
+                    return null;
+            }
+        }
+
+        @Override
+        public CompletableFuture<?> upsert(Record record, Map<String, Object> context) {
+            return upsertBatch(List.of(record), context).get(0);
         }
 
         @Override
-        public synchronized CompletableFuture<?> upsert(
-                Record record, Map<String, Object> context) {
-            CompletableFuture<?> handle = new CompletableFuture<>();
+        public boolean supportsBatchUpsert() {
+            return true;
+        }
+
+        @Override
+        public boolean supportsOrderingKey() {
+            return !primaryKey.isEmpty();
+        }
+
+        @Override
+        public Object getOrderingKey(Record record) {
+            return prepareValueList(recordToMutableRecord(record, true), primaryKey);
+        }
+
+        @Override
+        public List<CompletableFuture<?>> upsertBatch(
+                List<Record> records, Map<String, Object> context) {
+            List<CompletableFuture<?>> handles = new ArrayList<>(records.size());
+            List<Row> rows = new ArrayList<>(records.size());
+            for (Record record : records) {
+                CompletableFuture<?> handle = new CompletableFuture<>();
+                handles.add(handle);
+                try {
+                    MutableRecord mutableRecord = recordToMutableRecord(record, true);
+                    rows.add(
+                            new Row(
+                                    record.value() == null,
+                                    prepareValueList(mutableRecord, primaryKey),
+                                    prepareValueList(mutableRecord, columns),
+                                    handle));
+                } catch (Exception e) {
+                    handle.completeExceptionally(e);
+                }
+            }
+            if (!rows.isEmpty()) {
+                try {
+                    executor.execute(() -> writeRows(rows));
+                } catch (Exception e) {
+                    rows.forEach(row -> row.handle().completeExceptionally(e));
+                }
+            }
+            return handles;
+        }
+
+        private record Row(
+                boolean delete,
+                List<Object> primaryKeyValues,
+                List<Object> otherValues,
+                CompletableFuture<?> handle) {}
+
+        /** Write the rows in one single transaction, on a connection taken from the pool. */
+        private void writeRows(List<Row> rows) {
+            JdbcConnectionPool.PooledConnection pooledConnection;
             try {
-                MutableRecord mutableRecord = recordToMutableRecord(record, true);
+                pooledConnection = pool.borrow();
+            } catch (Exception e) {
+                rows.forEach(row -> row.handle().completeExceptionally(e));
+                return;
+            }
+            Connection connection = pooledConnection.getConnection();
+            boolean broken = false;
+            try {
+                // consecutive writes (or deletes) are executed as one JDBC batch, a delete in the
+                // middle of the batch splits it, in order to preserve the ordering
+                int start = 0;
+                while (start < rows.size()) {
+                    boolean delete = rows.get(start).delete();
+                    int end = start;
+                    while (end < rows.size() && rows.get(end).delete() == delete) {
+                        end++;
+                    }
+                    List<Row> segment = rows.subList(start, end);
+                    if (delete) {
+                        executeDeletes(pooledConnection, segment);
+                    } else if (upsertQuery != null) {
+                        executeUpserts(pooledConnection, segment);
+                    } else {
+                        executeUpdatesOrInserts(pooledConnection, segment);
+                    }
+                    start = end;
+                }
+                connection.commit();
+                rows.forEach(row -> row.handle().complete(null));
+            } catch (Throwable e) {
+                log.error("Error writing {} rows to {}", rows.size(), tableName, e);
+                broken = JdbcConnectionPool.isConnectionError(e);
+                try {
+                    connection.rollback();
+                } catch (SQLException rollbackError) {
+                    // the connection is probably not usable anymore
+                    log.error("Error rolling back the transaction", rollbackError);
+                    broken = true;
+                }
+                rows.forEach(row -> row.handle().completeExceptionally(e));
+            } finally {
+                pool.release(pooledConnection, broken);
+            }
+        }
 
-                List<Object> primaryKeyValues = prepareValueList(mutableRecord, primaryKey);
-                List<Object> otherValues = prepareValueList(mutableRecord, columns);
-                if (record.value() != null) {
+        private void executeUpserts(JdbcConnectionPool.PooledConnection connection, List<Row> rows)
+                throws SQLException {
+            PreparedStatement upsert = connection.prepareStatement(upsertQuery);
+            try {
+                for (Row row : rows) {
                     int i = 1;
-                    for (Object value : otherValues) {
-                        update.setObject(i++, value);
+                    for (Object value : row.primaryKeyValues()) {
+                        upsert.setObject(i++, value);
                     }
-                    for (Object value : primaryKeyValues) {
-                        update.setObject(i++, value);
+                    for (Object value : row.otherValues()) {
+                        upsert.setObject(i++, value);
                     }
-                    int count = update.executeUpdate();
-                    if (count == 0) {
-                        i = 1;
-                        for (Object value : primaryKeyValues) {
-                            insert.setObject(i++, value);
+                    upsert.addBatch();
+                }
+                upsert.executeBatch();
+            } finally {
+                upsert.clearBatch();
+                connection.releaseStatement(upsert);
+            }
+        }
+
+        private void executeUpdatesOrInserts(
+                JdbcConnectionPool.PooledConnection connection, List<Row> writes)
+                throws SQLException {
+            // the same row may be written more than once in a batch, keep the last version
+            Map<List<Object>, Row> byPrimaryKey = new LinkedHashMap<>();
+            for (Row row : writes) {
+                byPrimaryKey.put(row.primaryKeyValues(), row);
+            }
+            List<Row> rows = new ArrayList<>(byPrimaryKey.values());
+
+            PreparedStatement update = connection.prepareStatement(updateQuery);
+            try {
+                PreparedStatement insert = connection.prepareStatement(insertQuery);
+                try {
+                    for (Row row : rows) {
+                        setUpdateParameters(update, row);
+                        update.addBatch();
+                    }
+                    int[] updateCounts = update.executeBatch();
+
+                    boolean inserts = false;
+                    for (int r = 0; r < rows.size(); r++) {
+                        Row row = rows.get(r);
+                        int count = updateCounts[r];
+                        if (count == Statement.SUCCESS_NO_INFO) {
+                            // the driver doesn't tell if the row exists, run the update again
+                            setUpdateParameters(update, row);
+                            count = update.executeUpdate();
                         }
-                        for (Object value : otherValues) {
-                            insert.setObject(i++, value);
+                        if (count == 0) {
+                            int i = 1;
+                            for (Object value : row.primaryKeyValues()) {
+                                insert.setObject(i++, value);
+                            }
+                            for (Object value : row.otherValues()) {
+                                insert.setObject(i++, value);
+                            }
+                            insert.addBatch();
+                            inserts = true;
                         }
-                        insert.executeUpdate();
                     }
-                } else {
+                    if (inserts) {
+                        insert.executeBatch();
+                    }
+                } finally {
+                    insert.clearBatch();
+                    connection.releaseStatement(insert);
+                }
+            } finally {
+                update.clearBatch();
+                connection.releaseStatement(update);
+            }
+        }
+
+        private static void setUpdateParameters(PreparedStatement update, Row row)
+                throws SQLException {
+            int i = 1;
+            for (Object value : row.otherValues()) {
+                update.setObject(i++, value);
+            }
+            for (Object value : row.primaryKeyValues()) {
+                update.setObject(i++, value);
+            }
+        }
+
+        private void executeDeletes(
+                JdbcConnectionPool.PooledConnection connection, List<Row> deletes)
+                throws SQLException {
+            PreparedStatement delete = connection.prepareStatement(deleteQuery);
+            try {
+                for (Row row : deletes) {
                     int i = 1;
-                    for (Object value : primaryKeyValues) {
+                    for (Object value : row.primaryKeyValues()) {
                         delete.setObject(i++, value);
                     }
-                    delete.executeUpdate();
+                    delete.addBatch();
                 }
-                handle.complete(null);
-            } catch (Exception e) {
-                handle.completeExceptionally(e);
+                delete.executeBatch();
+            } finally {
+                delete.clearBatch();
+                connection.releaseStatement(delete);
             }
-            return handle;
         }
 
         private List<Object> prepareValueList(
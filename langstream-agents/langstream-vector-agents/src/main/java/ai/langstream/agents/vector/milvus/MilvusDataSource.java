@@ -15,9 +15,9 @@
  */
 package ai.langstream.agents.vector.milvus;
 
-import static ai.langstream.agents.vector.InterpolationUtils.buildObjectFromJson;
-
+import ai.langstream.agents.vector.QueryTemplate;
 import ai.langstream.ai.agents.datasource.DataSourceProvider;
+import com.datastax.oss.streaming.ai.datasource.BlockingQueryExecutor;
 import com.datastax.oss.streaming.ai.datasource.QueryStepDataSource;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.DeserializationFeature;
@@ -30,6 +30,7 @@ import io.milvus.param.highlevel.dml.response.SearchResponse;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import lombok.Data;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
@@ -84,6 +85,7 @@ public class MilvusDataSource implements DataSourceProvider {
 
         private final MilvusConfig clientConfig;
         @Getter private MilvusServiceClient milvusClient;
+        private BlockingQueryExecutor queryExecutor;
 
         public MilvusQueryStepDataSource(MilvusConfig clientConfig) {
             this.clientConfig = clientConfig;
@@ -109,16 +111,24 @@ public class MilvusDataSource implements DataSourceProvider {
                                         .withAuthorization(clientConfig.user, clientConfig.password)
                                         .build());
             }
+            queryExecutor = new BlockingQueryExecutor("milvus-query");
+        }
+
+        @Override
+        public CompletableFuture<List<Map<String, Object>>> fetchDataAsync(
+                String query, List<Object> params) {
+            // the client is blocking, run the query on the pool of this datasource
+            return queryExecutor.supplyAsync(() -> fetchData(query, params));
         }
 
         @Override
         public List<Map<String, Object>> fetchData(String query, List<Object> params) {
             try {
                 SearchSimpleParam searchParam =
-                        buildObjectFromJson(
-                                        query,
-                                        SearchSimpleParam.Builder.class,
+                        QueryTemplate.of(query)
+                                .bind(
                                         params,
+                                        SearchSimpleParam.Builder.class,
                                         MilvusModel.getMapper())
                                 .build();
                 if (log.isDebugEnabled()) {
@@ -132,11 +142,9 @@ public class MilvusDataSource implements DataSourceProvider {
 
                 SearchResponse data = respSearch.getData();
 
-                data.getRowRecords()
-                        .forEach(
-                                r -> {
-                                    log.info("Record {}", r);
-                                });
+                if (log.isDebugEnabled()) {
+                    data.getRowRecords().forEach(r -> log.debug("Record {}", r));
+                }
 
                 return data.getRowRecords().stream()
                         .map(
@@ -158,6 +166,9 @@ public class MilvusDataSource implements DataSourceProvider {
 
         @Override
         public void close() {
+            if (queryExecutor != null) {
+                queryExecutor.close();
+            }
             if (milvusClient != null) {
                 milvusClient.close();
             }
@@ -34,7 +34,9 @@ import io.milvus.param.collection.DescribeCollectionParam;
 import io.milvus.param.dml.DeleteParam;
 import io.milvus.param.dml.InsertParam;
 import io.milvus.param.dml.UpsertParam;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -114,72 +116,149 @@ public class MilvusWriter implements VectorDatabaseWriterProvider {
 
         @Override
         public CompletableFuture<?> upsert(Record record, Map<String, Object> context) {
-            CompletableFuture<?> handle = new CompletableFuture<>();
-            try {
-                MutableRecord mutableRecord = recordToMutableRecord(record, true);
-
-                JSONObject row = new JSONObject();
-                fields.forEach(
-                        (name, evaluator) -> {
-                            Object value = evaluator.evaluate(mutableRecord);
-                            if (value != null) {
-                                if (log.isDebugEnabled()) {
-                                    log.debug(
-                                            "setting value {} ({}) for field {}",
-                                            value,
-                                            value.getClass(),
-                                            name);
-                                }
-                                row.put(name, value);
-                            } else {
-                                // in Milvus you must not send null values
-                                if (log.isDebugEnabled()) {
-                                    log.debug("ignore null value for field {}", name);
-                                }
-                            }
-                        });
+            return upsertBatch(List.of(record), context).get(0);
+        }
+
+        @Override
+        public boolean supportsBatchUpsert() {
+            return true;
+        }
 
+        @Override
+        public List<CompletableFuture<?>> upsertBatch(
+                List<Record> records, Map<String, Object> context) {
+            List<CompletableFuture<?>> handles = new ArrayList<>(records.size());
+            // consecutive records with the same operation are sent in one single request,
+            // a delete in the middle of the batch splits it, in order to preserve the ordering
+            List<MilvusRow> writes = new ArrayList<>();
+            List<MilvusRow> deletes = new ArrayList<>();
+            for (Record record : records) {
+                CompletableFuture<?> handle = new CompletableFuture<>();
+                handles.add(handle);
+                JSONObject row;
+                try {
+                    row = buildRow(record);
+                } catch (Exception e) {
+                    handle.completeExceptionally(e);
+                    continue;
+                }
                 if (record.value() != null) {
-                    if (writeMode.equals("upsert")) {
-                        R<MutationResult> upsertResponse = performUpsert(row);
-                        log.info("Result {}", upsertResponse);
-                        if (upsertResponse.getException() != null) {
-                            handle.completeExceptionally(upsertResponse.getException());
-                        } else {
-                            handle.complete(null);
-                        }
-                    } else if (writeMode.equals("delete-insert")) {
-                        R<MutationResult> deleteResponse = performDelete(record, row);
-                        if (deleteResponse.getException() != null) {
-                            handle.completeExceptionally(deleteResponse.getException());
+                    executeDeletes(deletes);
+                    writes.add(new MilvusRow(row, handle));
+                } else {
+                    executeWrites(writes);
+                    deletes.add(new MilvusRow(row, handle));
+                }
+            }
+            executeWrites(writes);
+            executeDeletes(deletes);
+            return handles;
+        }
+
+        private record MilvusRow(JSONObject row, CompletableFuture<?> handle) {}
+
+        private JSONObject buildRow(Record record) {
+            MutableRecord mutableRecord = recordToMutableRecord(record, true);
+            JSONObject row = new JSONObject();
+            fields.forEach(
+                    (name, evaluator) -> {
+                        Object value = evaluator.evaluate(mutableRecord);
+                        if (value != null) {
+                            if (log.isDebugEnabled()) {
+                                log.debug(
+                                        "setting value {} ({}) for field {}",
+                                        value,
+                                        value.getClass(),
+                                        name);
+                            }
+                            row.put(name, value);
                         } else {
-                            R<MutationResult> insertResponse = performInsert(row);
-                            log.info("Result {}", insertResponse);
-                            if (insertResponse.getException() != null) {
-                                handle.completeExceptionally(insertResponse.getException());
-                            } else {
-                                handle.complete(null);
+                            // in Milvus you must not send null values
+                            if (log.isDebugEnabled()) {
+                                log.debug("ignore null value for field {}", name);
                             }
                         }
-                    } else {
-                        handle.completeExceptionally(new UnsupportedOperationException());
-                    }
-                } else {
-                    R<MutationResult> deleteResponse = performDelete(record, row);
-                    log.info("Result {}", deleteResponse);
+                    });
+            return row;
+        }
+
+        private void executeWrites(List<MilvusRow> writes) {
+            if (writes.isEmpty()) {
+                return;
+            }
+            try {
+                List<JSONObject> rows = deduplicate(writes);
+                if (writeMode.equals("upsert")) {
+                    R<MutationResult> upsertResponse = performUpsert(rows);
+                    log.info("Result {}", upsertResponse);
+                    complete(writes, upsertResponse.getException());
+                } else if (writeMode.equals("delete-insert")) {
+                    R<MutationResult> deleteResponse = performDelete(rows);
                     if (deleteResponse.getException() != null) {
-                        handle.completeExceptionally(deleteResponse.getException());
+                        complete(writes, deleteResponse.getException());
                     } else {
-                        handle.complete(null);
+                        R<MutationResult> insertResponse = performInsert(rows);
+                        log.info("Result {}", insertResponse);
+                        complete(writes, insertResponse.getException());
                     }
+                } else {
+                    complete(writes, new UnsupportedOperationException());
                 }
             } catch (Exception e) {
-                handle.completeExceptionally(e);
+                complete(writes, e);
+            } finally {
+                writes.clear();
+            }
+        }
+
+        private void executeDeletes(List<MilvusRow> deletes) {
+            if (deletes.isEmpty()) {
+                return;
+            }
+            try {
+                R<MutationResult> deleteResponse =
+                        performDelete(deletes.stream().map(MilvusRow::row).toList());
+                log.info("Result {}", deleteResponse);
+                complete(deletes, deleteResponse.getException());
+            } catch (Exception e) {
+                complete(deletes, e);
+            } finally {
+                deletes.clear();
             }
-            return handle;
         }
 
-        private R<MutationResult> performUpsert(JSONObject row) {
+        /**
+         * The same entity may be written more than once in a batch, only the last version is
+         * sent, as the rows of one single request are not applied in order.
+         */
+        private List<JSONObject> deduplicate(List<MilvusRow> writes) {
+            Map<Object, JSONObject> byPrimaryKey = new LinkedHashMap<>();
+            List<JSONObject> withoutPrimaryKey = new ArrayList<>();
+            for (MilvusRow write : writes) {
+                Object primaryKeyValue = write.row().get(primaryKeyField);
+                if (primaryKeyValue == null) {
+                    withoutPrimaryKey.add(write.row());
+                } else {
+                    byPrimaryKey.remove(primaryKeyValue);
+                    byPrimaryKey.put(primaryKeyValue, write.row());
+                }
+            }
+            List<JSONObject> result = new ArrayList<>(byPrimaryKey.values());
+            result.addAll(withoutPrimaryKey);
+            return result;
+        }
+
+        private static void complete(List<MilvusRow> rows, Exception error) {
+            for (MilvusRow row : rows) {
+                if (error != null) {
+                    row.handle().completeExceptionally(error);
+                } else {
+                    row.handle().complete(null);
+                }
+            }
+        }
+
+        private R<MutationResult> performUpsert(List<JSONObject> rows) {
             UpsertParam.Builder builder = UpsertParam.newBuilder();
             builder.withCollectionName(collectionName);
 
@@ -189,13 +268,13 @@ public class MilvusWriter implements VectorDatabaseWriterProvider {
                 builder.withDatabaseName(databaseName);
             }
 
-            builder.withRows(List.of(row));
+            builder.withRows(rows);
             UpsertParam upsert = builder.build();
 
             return milvusClient.upsert(upsert);
         }
 
-        private R<MutationResult> performInsert(JSONObject row) {
+        private R<MutationResult> performInsert(List<JSONObject> rows) {
             InsertParam.Builder builder = InsertParam.newBuilder();
             builder.withCollectionName(collectionName);
 
@@ -205,22 +284,26 @@ public class MilvusWriter implements VectorDatabaseWriterProvider {
                 builder.withDatabaseName(databaseName);
             }
 
-            builder.withRows(List.of(row));
+            builder.withRows(rows);
             InsertParam insert = builder.build();
 
             return milvusClient.insert(insert);
         }
 
-        private R<MutationResult> performDelete(Record record, JSONObject row) {
-            Object value = row.get(primaryKeyField);
-            if (value == null) {
-                throw new IllegalStateException("No primary key value found for record " + record);
+        private R<MutationResult> performDelete(List<JSONObject> rows) {
+            List<String> values = new ArrayList<>(rows.size());
+            for (JSONObject row : rows) {
+                Object value = row.get(primaryKeyField);
+                if (value == null) {
+                    throw new IllegalStateException("No primary key value found for row " + row);
+                }
+                values.add(
+                        value instanceof String
+                                ? ("'" + ((String) value).replace("'", "\\'") + "'")
+                                : value.toString());
             }
-            String escaped =
-                    value instanceof String
-                            ? ("'" + ((String) value).replace("'", "\\'") + "'")
-                            : value.toString();
-            String deleteExpression = String.format("%s in [%s]", primaryKeyField, escaped);
+            String deleteExpression =
+                    String.format("%s in [%s]", primaryKeyField, String.join(",", values));
             log.info("Delete expression: {}", deleteExpression);
             // TODO: how do we escape the value?
             DeleteParam delete =
@@ -15,8 +15,7 @@
  */
 package ai.langstream.agents.vector.opensearch;
 
-import static ai.langstream.agents.vector.InterpolationUtils.buildObjectFromJson;
-
+import ai.langstream.agents.vector.QueryTemplate;
 import ai.langstream.ai.agents.datasource.DataSourceProvider;
 import com.datastax.oss.streaming.ai.datasource.QueryStepDataSource;
 import com.fasterxml.jackson.annotation.JsonInclude;
@@ -28,6 +27,8 @@ import java.io.IOException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.stream.Collectors;
 import lombok.Data;
 import lombok.Getter;
@@ -42,6 +43,7 @@ import org.jetbrains.annotations.NotNull;
 import org.opensearch.client.json.JsonData;
 import org.opensearch.client.json.JsonpDeserializer;
 import org.opensearch.client.json.jackson.JacksonJsonpMapper;
+import org.opensearch.client.opensearch.OpenSearchAsyncClient;
 import org.opensearch.client.opensearch.OpenSearchClient;
 import org.opensearch.client.opensearch._types.OpenSearchException;
 import org.opensearch.client.opensearch.core.SearchRequest;
@@ -96,6 +98,7 @@ public class OpenSearchDataSource implements DataSourceProvider {
 
         @Getter private final OpenSearchConfig clientConfig;
         @Getter private OpenSearchClient client;
+        @Getter private OpenSearchAsyncClient asyncClient;
 
         public OpenSearchQueryStepDataSource(OpenSearchConfig clientConfig) {
             this.clientConfig = clientConfig;
@@ -149,6 +152,7 @@ public class OpenSearchDataSource implements DataSourceProvider {
             }
 
             this.client = new OpenSearchClient(transport);
+            this.asyncClient = new OpenSearchAsyncClient(transport);
             log.info("Connecting to OpenSearch at {}", host);
         }
 
@@ -160,45 +164,77 @@ public class OpenSearchDataSource implements DataSourceProvider {
                         convertSearchRequest(query, params, clientConfig.getIndexName());
 
                 final SearchResponse<Map> result = client.search(searchRequest, Map.class);
-                return result.hits().hits().stream()
-                        .map(
-                                h -> {
-                                    Map<String, Object> object = new HashMap<>();
-                                    object.put("id", h.id());
-                                    object.put("document", h.source());
-                                    object.put("score", h.score());
-                                    object.put("index", h.index());
-                                    return object;
-                                })
-                        .collect(Collectors.toList());
+                return convertSearchResponse(result);
             } catch (IOException e) {
                 throw new RuntimeException(e);
             } catch (OpenSearchException e) {
-                final String causes =
-                        e.error().rootCause().stream()
-                                .map(
-                                        cause ->
-                                                "type: "
-                                                        + cause.type()
-                                                        + " reason: "
-                                                        + cause.reason())
-                                .collect(Collectors.joining("\n"));
-                String errMessage =
-                        "Error executing OpenSearch query: "
-                                + e.getMessage()
-                                + "\nRoot causes:\n"
-                                + causes
-                                + "\nQuery: "
-                                + query;
-                log.error(errMessage, e);
-                throw new RuntimeException(errMessage, e);
+                throw convertOpenSearchException(e, query);
+            }
+        }
+
+        @Override
+        public CompletableFuture<List<Map<String, Object>>> fetchDataAsync(
+                String query, List<Object> params) {
+            try {
+                final SearchRequest searchRequest =
+                        convertSearchRequest(query, params, clientConfig.getIndexName());
+                return asyncClient
+                        .search(searchRequest, Map.class)
+                        .thenApply(OpenSearchQueryStepDataSource::convertSearchResponse)
+                        .exceptionallyCompose(
+                                error -> {
+                                    Throwable cause =
+                                            error instanceof CompletionException
+                                                            && error.getCause() != null
+                                                    ? error.getCause()
+                                                    : error;
+                                    if (cause instanceof OpenSearchException e) {
+                                        return CompletableFuture.failedFuture(
+                                                convertOpenSearchException(e, query));
+                                    }
+                                    return CompletableFuture.failedFuture(cause);
+                                });
+            } catch (Throwable e) {
+                return CompletableFuture.failedFuture(e);
             }
         }
 
+        private static List<Map<String, Object>> convertSearchResponse(
+                SearchResponse<Map> result) {
+            return result.hits().hits().stream()
+                    .map(
+                            h -> {
+                                Map<String, Object> object = new HashMap<>();
+                                object.put("id", h.id());
+                                object.put("document", h.source());
+                                object.put("score", h.score());
+                                object.put("index", h.index());
+                                return object;
+                            })
+                    .collect(Collectors.toList());
+        }
+
+        private static RuntimeException convertOpenSearchException(
+                OpenSearchException e, String query) {
+            final String causes =
+                    e.error().rootCause().stream()
+                            .map(cause -> "type: " + cause.type() + " reason: " + cause.reason())
+                            .collect(Collectors.joining("\n"));
+            String errMessage =
+                    "Error executing OpenSearch query: "
+                            + e.getMessage()
+                            + "\nRoot causes:\n"
+                            + causes
+                            + "\nQuery: "
+                            + query;
+            log.error(errMessage, e);
+            return new RuntimeException(errMessage, e);
+        }
+
         @NotNull
         static SearchRequest convertSearchRequest(
                 String query, List<Object> params, String indexName) throws IllegalAccessException {
-            final Map asMap = buildObjectFromJson(query, Map.class, params, OBJECT_MAPPER);
+            final Map asMap = QueryTemplate.of(query).bindAsMap(params);
             final SearchRequest searchRequest =
                     OpenSearchDataSource.parseOpenSearchRequestBodyJson(
                             asMap, SearchRequest._DESERIALIZER);
@@ -21,7 +21,9 @@ import ai.langstream.ai.agents.commons.MutableRecord;
 import ai.langstream.ai.agents.commons.jstl.JstlEvaluator;
 import ai.langstream.api.database.VectorDatabaseWriter;
 import ai.langstream.api.database.VectorDatabaseWriterProvider;
+import ai.langstream.api.runner.code.MetricsReporter;
 import ai.langstream.api.runner.code.Record;
+import ai.langstream.api.util.AdaptiveBatchSizer;
 import ai.langstream.api.util.ConfigurationUtils;
 import ai.langstream.api.util.OrderedAsyncBatchExecutor;
 import com.fasterxml.jackson.annotation.JsonInclude;
@@ -89,6 +91,12 @@ public class OpenSearchWriter implements VectorDatabaseWriterProvider {
 
         @Override
         public void close() throws Exception {
+            if (batchExecutor != null) {
+                batchExecutor.stop();
+            }
+            if (executorService != null) {
+                executorService.shutdown();
+            }
             dataSource.close();
         }
 
@@ -110,6 +118,13 @@ public class OpenSearchWriter implements VectorDatabaseWriterProvider {
 
         @Override
         public void initialise(Map<String, Object> agentConfiguration) throws Exception {
+            initialise(agentConfiguration, MetricsReporter.DISABLED);
+        }
+
+        @Override
+        public void initialise(
+                Map<String, Object> agentConfiguration, MetricsReporter metricsReporter)
+                throws Exception {
             dataSource.initialize(null);
             indexName = dataSource.getClientConfig().getIndexName();
             List<Map<String, Object>> fields =
@@ -131,8 +146,25 @@ public class OpenSearchWriter implements VectorDatabaseWriterProvider {
             final int flushInterval =
                     ConfigurationUtils.getInt("flush-interval", 1000, agentConfiguration);
             final int batchSize = ConfigurationUtils.getInt("batch-size", 10, agentConfiguration);
+            final AdaptiveBatchSizer.Config adaptiveBatching =
+                    AdaptiveBatchSizer.Config.fromMap(
+                            ConfigurationUtils.getMap(
+                                    "adaptive-batching", null, agentConfiguration),
+                            batchSize,
+                            flushInterval);
+            final AdaptiveBatchSizer batchSizer =
+                    adaptiveBatching != null
+                            ? new AdaptiveBatchSizer(
+                                    adaptiveBatching,
+                                    batchSize,
+                                    metricsReporter.gauge(
+                                            "opensearch_writer_batch_size",
+                                            "Current batch size for the OpenSearch bulk requests"))
+                            : null;
             this.executorService =
-                    flushInterval > 0 ? Executors.newSingleThreadScheduledExecutor() : null;
+                    flushInterval > 0 || batchSizer != null
+                            ? Executors.newSingleThreadScheduledExecutor()
+                            : null;
 
             this.batchExecutor =
                     new OrderedAsyncBatchExecutor<>(
@@ -282,7 +314,8 @@ public class OpenSearchWriter implements VectorDatabaseWriterProvider {
                             flushInterval,
                             1,
                             (__) -> 0,
-                            executorService);
+                            executorService,
+                            batchSizer);
             batchExecutor.start();
         }
 
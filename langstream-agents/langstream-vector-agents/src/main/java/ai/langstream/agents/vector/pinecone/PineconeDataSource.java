@@ -15,9 +15,9 @@
  */
 package ai.langstream.agents.vector.pinecone;
 
-import static ai.langstream.agents.vector.InterpolationUtils.buildObjectFromJson;
-
+import ai.langstream.agents.vector.QueryTemplate;
 import ai.langstream.ai.agents.datasource.DataSourceProvider;
+import com.datastax.oss.streaming.ai.datasource.BlockingQueryExecutor;
 import com.datastax.oss.streaming.ai.datasource.QueryStepDataSource;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.core.type.TypeReference;
@@ -44,6 +44,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
@@ -94,6 +95,7 @@ public class PineconeDataSource implements DataSourceProvider {
 
         private final PineconeConfig clientConfig;
         private PineconeConnection connection;
+        private BlockingQueryExecutor queryExecutor;
 
         public PineconeQueryStepDataSource(PineconeConfig clientConfig) {
             this.clientConfig = clientConfig;
@@ -113,12 +115,20 @@ public class PineconeDataSource implements DataSourceProvider {
             if (clientConfig.getEndpoint() == null) {
                 connection = pineconeClient.connect(connectionConfig);
             }
+            queryExecutor = new BlockingQueryExecutor("pinecone-query");
+        }
+
+        @Override
+        public CompletableFuture<List<Map<String, Object>>> fetchDataAsync(
+                String query, List<Object> params) {
+            // the client is blocking, run the query on the pool of this datasource
+            return queryExecutor.supplyAsync(() -> fetchData(query, params));
         }
 
         @Override
         public List<Map<String, Object>> fetchData(String query, List<Object> params) {
             try {
-                Query parsedQuery = buildObjectFromJson(query, Query.class, params);
+                Query parsedQuery = QueryTemplate.of(query).bind(params, Query.class);
 
                 QueryRequest batchQueryRequest = mapQueryToQueryRequest(parsedQuery);
 
@@ -144,7 +154,9 @@ public class PineconeDataSource implements DataSourceProvider {
                             .POST(HttpRequest.BodyPublishers.ofString(batchQueryRequest.toString()))
                             .build();
             String body = client.send(request, HttpResponse.BodyHandlers.ofString()).body();
-            log.info("Mock result {}", body);
+            if (log.isDebugEnabled()) {
+                log.debug("Mock result {}", body);
+            }
             results = MAPPER.readValue(body, new TypeReference<>() {});
             return results;
         }
@@ -158,7 +170,6 @@ public class PineconeDataSource implements DataSourceProvider {
             if (log.isDebugEnabled()) {
                 log.debug("Query response: {}", queryResponse);
             }
-            log.info("Query response: {}", queryResponse);
 
             results = new ArrayList<>();
             queryResponse
@@ -276,6 +287,9 @@ public class PineconeDataSource implements DataSourceProvider {
 
         @Override
         public void close() {
+            if (queryExecutor != null) {
+                queryExecutor.close();
+            }
             if (connection != null) {
                 connection.close();
             }
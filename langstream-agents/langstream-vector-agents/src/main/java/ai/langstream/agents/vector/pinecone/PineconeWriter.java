@@ -24,6 +24,10 @@ import ai.langstream.api.database.VectorDatabaseWriterProvider;
 import ai.langstream.api.runner.code.Record;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.protobuf.Struct;
 import io.pinecone.PineconeClient;
 import io.pinecone.PineconeClientConfig;
@@ -32,9 +36,11 @@ import io.pinecone.PineconeConnectionConfig;
 import io.pinecone.proto.UpsertRequest;
 import io.pinecone.proto.UpsertResponse;
 import io.pinecone.proto.Vector;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 import lombok.extern.slf4j.Slf4j;
@@ -57,6 +63,9 @@ public class PineconeWriter implements VectorDatabaseWriterProvider {
 
     private static class PineconeVectorDatabaseWriter implements VectorDatabaseWriter {
 
+        // limit recommended by Pinecone for the upsert requests
+        private static final int MAX_VECTORS_PER_UPSERT = 100;
+
         private PineconeConnection connection;
         private JstlEvaluator idFunction;
         private JstlEvaluator namespaceFunction;
@@ -101,78 +110,139 @@ public class PineconeWriter implements VectorDatabaseWriterProvider {
 
         @Override
         public CompletableFuture<?> upsert(Record record, Map<String, Object> context) {
-            CompletableFuture<?> handle = new CompletableFuture<>();
-            try {
-                MutableRecord mutableRecord = recordToMutableRecord(record, true);
-                String id = idFunction != null ? (String) idFunction.evaluate(mutableRecord) : null;
-                String namespace =
-                        namespaceFunction != null
-                                ? (String) namespaceFunction.evaluate(mutableRecord)
-                                : null;
-                List<Object> vector =
-                        vectorFunction != null
-                                ? (List<Object>) vectorFunction.evaluate(mutableRecord)
-                                : null;
-                Map<String, Object> metadata =
-                        metadataFunctions.entrySet().stream()
-                                .collect(
-                                        Collectors.toMap(
-                                                Map.Entry::getKey,
-                                                e -> e.getValue().evaluate(mutableRecord)));
-                Struct metadataStruct =
-                        Struct.newBuilder()
-                                .putAllFields(
-                                        metadata.entrySet().stream()
-                                                .collect(
-                                                        Collectors.toMap(
-                                                                Map.Entry::getKey,
-                                                                e ->
-                                                                        PineconeDataSource
-                                                                                .convertToValue(
-                                                                                        e
-                                                                                                .getValue()))))
-                                .build();
-
-                List<Float> vectorFloat = null;
-                if (vector != null) {
-                    vectorFloat =
-                            vector.stream()
-                                    .map(
-                                            n -> {
-                                                if (n instanceof String s) {
-                                                    return Float.parseFloat(s);
-                                                } else if (n instanceof Number u) {
-                                                    return u.floatValue();
-                                                } else {
-                                                    throw new IllegalArgumentException(
-                                                            "only vectors of floats are supported");
-                                                }
-                                            })
-                                    .collect(Collectors.toList());
-                }
-
-                Vector v1 =
-                        Vector.newBuilder()
-                                .setId(id)
-                                .addAllValues(vectorFloat)
-                                .setMetadata(metadataStruct)
-                                .build();
+            return upsertBatch(List.of(record), context).get(0);
+        }
 
-                UpsertRequest.Builder builder = UpsertRequest.newBuilder().addVectors(v1);
+        @Override
+        public boolean supportsBatchUpsert() {
+            return true;
+        }
 
-                if (namespace != null) {
-                    builder.setNamespace(namespace);
+        @Override
+        public List<CompletableFuture<?>> upsertBatch(
+                List<Record> records, Map<String, Object> context) {
+            List<CompletableFuture<?>> handles = new ArrayList<>(records.size());
+            // an upsert request targets one namespace, consecutive vectors with the same
+            // namespace are sent together
+            List<CompletableFuture<?>> pendingHandles = new ArrayList<>();
+            UpsertRequest.Builder pendingRequest = null;
+            String pendingNamespace = null;
+            for (Record record : records) {
+                CompletableFuture<?> handle = new CompletableFuture<>();
+                handles.add(handle);
+                MutableRecord mutableRecord;
+                String namespace;
+                Vector vector;
+                try {
+                    mutableRecord = recordToMutableRecord(record, true);
+                    namespace =
+                            namespaceFunction != null
+                                    ? (String) namespaceFunction.evaluate(mutableRecord)
+                                    : null;
+                    vector = buildVector(mutableRecord);
+                } catch (Exception e) {
+                    handle.completeExceptionally(e);
+                    continue;
+                }
+                if (pendingRequest != null
+                        && (!Objects.equals(namespace, pendingNamespace)
+                                || pendingRequest.getVectorsCount() >= MAX_VECTORS_PER_UPSERT)) {
+                    sendUpsert(pendingRequest, pendingHandles);
+                    pendingRequest = null;
+                    pendingHandles = new ArrayList<>();
+                }
+                if (pendingRequest == null) {
+                    pendingRequest = UpsertRequest.newBuilder();
+                    if (namespace != null) {
+                        pendingRequest.setNamespace(namespace);
+                    }
+                    pendingNamespace = namespace;
                 }
-                UpsertRequest upsertRequest = builder.build();
+                pendingRequest.addVectors(vector);
+                pendingHandles.add(handle);
+            }
+            if (pendingRequest != null) {
+                sendUpsert(pendingRequest, pendingHandles);
+            }
+            return handles;
+        }
 
-                UpsertResponse upsertResponse = connection.getBlockingStub().upsert(upsertRequest);
+        private void sendUpsert(
+                UpsertRequest.Builder builder, List<CompletableFuture<?>> pendingHandles) {
+            UpsertRequest upsertRequest = builder.build();
+            try {
+                ListenableFuture<UpsertResponse> upsertResponse =
+                        connection.getFutureStub().upsert(upsertRequest);
+                Futures.addCallback(
+                        upsertResponse,
+                        new FutureCallback<>() {
+                            @Override
+                            public void onSuccess(UpsertResponse result) {
+                                if (log.isDebugEnabled()) {
+                                    log.debug("Result {}", result);
+                                }
+                                pendingHandles.forEach(h -> h.complete(null));
+                            }
 
-                log.info("Result {}", upsertResponse);
-                handle.complete(null);
+                            @Override
+                            public void onFailure(Throwable error) {
+                                pendingHandles.forEach(h -> h.completeExceptionally(error));
+                            }
+                        },
+                        MoreExecutors.directExecutor());
             } catch (Exception e) {
-                handle.completeExceptionally(e);
+                pendingHandles.forEach(h -> h.completeExceptionally(e));
             }
-            return handle;
+        }
+
+        private Vector buildVector(MutableRecord mutableRecord) {
+            String id = idFunction != null ? (String) idFunction.evaluate(mutableRecord) : null;
+            List<Object> vector =
+                    vectorFunction != null
+                            ? (List<Object>) vectorFunction.evaluate(mutableRecord)
+                            : null;
+            Map<String, Object> metadata =
+                    metadataFunctions.entrySet().stream()
+                            .collect(
+                                    Collectors.toMap(
+                                            Map.Entry::getKey,
+                                            e -> e.getValue().evaluate(mutableRecord)));
+            Struct metadataStruct =
+                    Struct.newBuilder()
+                            .putAllFields(
+                                    metadata.entrySet().stream()
+                                            .collect(
+                                                    Collectors.toMap(
+                                                            Map.Entry::getKey,
+                                                            e ->
+                                                                    PineconeDataSource
+                                                                            .convertToValue(
+                                                                                    e.getValue()))))
+                            .build();
+
+            List<Float> vectorFloat = null;
+            if (vector != null) {
+                vectorFloat =
+                        vector.stream()
+                                .map(
+                                        n -> {
+                                            if (n instanceof String s) {
+                                                return Float.parseFloat(s);
+                                            } else if (n instanceof Number u) {
+                                                return u.floatValue();
+                                            } else {
+                                                throw new IllegalArgumentException(
+                                                        "only vectors of floats are supported");
+                                            }
+                                        })
+                                .collect(Collectors.toList());
+            }
+
+            return Vector.newBuilder()
+                    .setId(id)
+                    .addAllValues(vectorFloat)
+                    .setMetadata(metadataStruct)
+                    .build();
         }
     }
 
@@ -15,8 +15,9 @@
  */
 package ai.langstream.agents.vector.solr;
 
-import ai.langstream.agents.vector.InterpolationUtils;
+import ai.langstream.agents.vector.QueryTemplate;
 import ai.langstream.ai.agents.datasource.DataSourceProvider;
+import com.datastax.oss.streaming.ai.datasource.BlockingQueryExecutor;
 import com.datastax.oss.streaming.ai.datasource.QueryStepDataSource;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.DeserializationFeature;
@@ -26,6 +27,7 @@ import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import lombok.Data;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
@@ -83,6 +85,7 @@ public class SolrDataSource implements DataSourceProvider {
         @Getter private Http2SolrClient client;
         @Getter private String collectionUrl;
         @Getter private String baseUrl;
+        private BlockingQueryExecutor queryExecutor;
 
         public SolrQueryStepDataSource(SolrConfig clientConfig) {
             this.clientConfig = clientConfig;
@@ -98,13 +101,20 @@ public class SolrDataSource implements DataSourceProvider {
             }
             client = builder.build();
             log.info("Connecting to Solr at {}", collectionUrl);
+            queryExecutor = new BlockingQueryExecutor("solr-query");
+        }
+
+        @Override
+        public CompletableFuture<List<Map<String, Object>>> fetchDataAsync(
+                String query, List<Object> params) {
+            // the client is blocking, run the query on the pool of this datasource
+            return queryExecutor.supplyAsync(() -> fetchData(query, params));
         }
 
         @Override
         public List<Map<String, Object>> fetchData(String query, List<Object> params) {
             try {
-                Map<String, Object> queryMap =
-                        InterpolationUtils.buildObjectFromJson(query, Map.class, params);
+                Map<String, Object> queryMap = QueryTemplate.of(query).bindAsMap(params);
                 if (log.isDebugEnabled()) {
                     log.debug("Executing query {}", queryMap);
                 }
@@ -146,6 +156,9 @@ public class SolrDataSource implements DataSourceProvider {
 
         @Override
         public void close() {
+            if (queryExecutor != null) {
+                queryExecutor.close();
+            }
             if (client != null) {
                 client.close();
             }
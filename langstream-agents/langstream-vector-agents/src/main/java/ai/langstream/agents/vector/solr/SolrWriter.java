@@ -24,6 +24,7 @@ import ai.langstream.api.database.VectorDatabaseWriterProvider;
 import ai.langstream.api.runner.code.Record;
 import ai.langstream.api.util.ConfigurationUtils;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -93,57 +94,116 @@ public class SolrWriter implements VectorDatabaseWriterProvider {
 
         @Override
         public CompletableFuture<?> upsert(Record record, Map<String, Object> context) {
-            CompletableFuture<?> handle = new CompletableFuture<>();
-            try {
-                MutableRecord mutableRecord = recordToMutableRecord(record, true);
-
-                SolrInputDocument document = new SolrInputDocument();
-                fields.forEach(
-                        (name, evaluator) -> {
-                            Object value = evaluator.evaluate(mutableRecord);
-                            if (log.isDebugEnabled()) {
-                                log.debug(
-                                        "setting value {} ({}) for field {}",
-                                        value,
-                                        value.getClass(),
-                                        name);
-                            }
-                            document.addField(name, value);
-                        });
-
-                if (record.value() != null) {
-                    UpdateResponse response = client.add(document, commitWithin);
-                    if (log.isDebugEnabled()) {
-                        log.debug("Result {}", response);
-                    }
-                    if (response.getException() != null) {
-                        handle.completeExceptionally(response.getException());
-                    } else {
-                        commitIfNeeded();
-                        handle.complete(null);
-                    }
-                } else {
-                    SolrInputField id = document.get("id");
-                    if (id == null) {
-                        throw new IllegalStateException(
-                                "In order to perform DELETE (value=nul) you must provide id field");
-                    }
-                    UpdateResponse response =
-                            client.deleteById((String) id.getValue(), commitWithin);
-                    if (log.isDebugEnabled()) {
-                        log.debug("Result {}", response);
-                    }
-                    if (response.getException() != null) {
-                        handle.completeExceptionally(response.getException());
+            return upsertBatch(List.of(record), context).get(0);
+        }
+
+        @Override
+        public boolean supportsBatchUpsert() {
+            return true;
+        }
+
+        @Override
+        public List<CompletableFuture<?>> upsertBatch(
+                List<Record> records, Map<String, Object> context) {
+            List<CompletableFuture<?>> handles = new ArrayList<>(records.size());
+            // consecutive adds (or deletes) are sent in one single request, a delete in the
+            // middle of the batch splits it, in order to preserve the ordering
+            List<SolrInputDocument> adds = new ArrayList<>();
+            List<CompletableFuture<?>> addHandles = new ArrayList<>();
+            List<String> deletes = new ArrayList<>();
+            List<CompletableFuture<?>> deleteHandles = new ArrayList<>();
+            for (Record record : records) {
+                CompletableFuture<?> handle = new CompletableFuture<>();
+                handles.add(handle);
+                try {
+                    SolrInputDocument document = buildDocument(record);
+                    if (record.value() != null) {
+                        executeDeletes(deletes, deleteHandles);
+                        adds.add(document);
+                        addHandles.add(handle);
                     } else {
-                        commitIfNeeded();
-                        handle.complete(null);
+                        SolrInputField id = document.get("id");
+                        if (id == null) {
+                            throw new IllegalStateException(
+                                    "In order to perform DELETE (value=nul) you must provide id field");
+                        }
+                        executeAdds(adds, addHandles);
+                        deletes.add((String) id.getValue());
+                        deleteHandles.add(handle);
                     }
+                } catch (Exception e) {
+                    handle.completeExceptionally(e);
                 }
+            }
+            executeAdds(adds, addHandles);
+            executeDeletes(deletes, deleteHandles);
+            return handles;
+        }
+
+        private SolrInputDocument buildDocument(Record record) {
+            MutableRecord mutableRecord = recordToMutableRecord(record, true);
+
+            SolrInputDocument document = new SolrInputDocument();
+            fields.forEach(
+                    (name, evaluator) -> {
+                        Object value = evaluator.evaluate(mutableRecord);
+                        if (log.isDebugEnabled()) {
+                            log.debug(
+                                    "setting value {} ({}) for field {}",
+                                    value,
+                                    value.getClass(),
+                                    name);
+                        }
+                        document.addField(name, value);
+                    });
+            return document;
+        }
+
+        private void executeAdds(
+                List<SolrInputDocument> documents, List<CompletableFuture<?>> documentHandles) {
+            if (documents.isEmpty()) {
+                return;
+            }
+            try {
+                UpdateResponse response = client.add(documents, commitWithin);
+                if (log.isDebugEnabled()) {
+                    log.debug("Result {}", response);
+                }
+                complete(response, documentHandles);
             } catch (Exception e) {
-                handle.completeExceptionally(e);
+                documentHandles.forEach(h -> h.completeExceptionally(e));
+            } finally {
+                documents.clear();
+                documentHandles.clear();
+            }
+        }
+
+        private void executeDeletes(List<String> ids, List<CompletableFuture<?>> idHandles) {
+            if (ids.isEmpty()) {
+                return;
+            }
+            try {
+                UpdateResponse response = client.deleteById(ids, commitWithin);
+                if (log.isDebugEnabled()) {
+                    log.debug("Result {}", response);
+                }
+                complete(response, idHandles);
+            } catch (Exception e) {
+                idHandles.forEach(h -> h.completeExceptionally(e));
+            } finally {
+                ids.clear();
+                idHandles.clear();
+            }
+        }
+
+        private void complete(UpdateResponse response, List<CompletableFuture<?>> handles)
+                throws SolrServerException, IOException {
+            if (response.getException() != null) {
+                handles.forEach(h -> h.completeExceptionally(response.getException()));
+            } else {
+                commitIfNeeded();
+                handles.forEach(h -> h.complete(null));
             }
-            return handle;
         }
 
         private void commitIfNeeded() throws SolrServerException, IOException {
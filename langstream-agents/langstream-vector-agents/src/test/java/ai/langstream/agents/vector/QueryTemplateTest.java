@@ -0,0 +1,216 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.agents.vector;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import ai.langstream.agents.vector.milvus.MilvusModel;
+import ai.langstream.agents.vector.pinecone.PineconeDataSource;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.milvus.param.highlevel.dml.SearchSimpleParam;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+
+@Slf4j
+class QueryTemplateTest {
+
+    private static final String PINECONE_QUERY =
+            """
+            {
+                  "vector": ?,
+                  "topK": 5,
+                  "filter":
+                    {"$or": [{"genre": ?}, {"year":2019}]}
+            }
+            """;
+
+    private static final String MILVUS_QUERY =
+            """
+            {
+                  "collection-name": "docs",
+                  "vectors": ?,
+                  "top-k": 10,
+                  "output-fields": ["text"]
+            }
+            """;
+
+    private static final String OPENSEARCH_QUERY =
+            """
+            {
+              "size": 1,
+              "query": {
+                "knn": {
+                  "embeddings": {
+                    "vector": ?,
+                    "k": 1
+                  }
+                }
+              }
+            }
+            """;
+
+    private static final String SOLR_QUERY =
+            """
+            {
+              "q": "{!knn f=embeddings topK=5}?",
+              "fq": ?
+            }
+            """;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Test
+    void testSameResultsAsInterpolation() {
+        List<Object> vector = List.of(0.1, 0.2, 0.3);
+
+        assertEquals(
+                InterpolationUtils.buildObjectFromJson(
+                        PINECONE_QUERY, PineconeDataSource.Query.class, List.of(vector, "comedy")),
+                QueryTemplate.of(PINECONE_QUERY)
+                        .bind(List.of(vector, "comedy"), PineconeDataSource.Query.class));
+
+        SearchSimpleParam milvus =
+                QueryTemplate.of(MILVUS_QUERY)
+                        .bind(
+                                List.of(vector),
+                                SearchSimpleParam.Builder.class,
+                                MilvusModel.getMapper())
+                        .build();
+        SearchSimpleParam milvusInterpolated =
+                InterpolationUtils.buildObjectFromJson(
+                                MILVUS_QUERY,
+                                SearchSimpleParam.Builder.class,
+                                List.of(vector),
+                                MilvusModel.getMapper())
+                        .build();
+        assertEquals(milvusInterpolated.getCollectionName(), milvus.getCollectionName());
+        assertEquals(milvusInterpolated.getVectors(), milvus.getVectors());
+        assertEquals(milvusInterpolated.getOutputFields(), milvus.getOutputFields());
+
+        assertEquals(
+                InterpolationUtils.buildObjectFromJson(
+                        OPENSEARCH_QUERY, Map.class, List.of(vector), MAPPER),
+                QueryTemplate.of(OPENSEARCH_QUERY).bindAsMap(List.of(vector)));
+
+        Map<String, Object> solr =
+                QueryTemplate.of(SOLR_QUERY).bindAsMap(List.of(vector, "type:doc"));
+        assertEquals("{!knn f=embeddings topK=5}[0.1,0.2,0.3]", solr.get("q"));
+        assertEquals("type:doc", solr.get("fq"));
+    }
+
+    @Test
+    void testPlaceholders() {
+        QueryTemplate template =
+                QueryTemplate.compile(
+                        """
+                        {"a": ?, "b": "is it \\"?\\"", "c": [?, "?"], "d": ?}""");
+        Map<String, Object> result =
+                template.bindAsMap(List.of("why?", "yes", 1, 2, new double[] {1, 2}));
+        assertEquals("why?", result.get("a"));
+        assertEquals("is it \"yes\"", result.get("b"));
+        assertEquals(List.of(1, "2"), result.get("c"));
+        assertEquals(List.of(1.0, 2.0), result.get("d"));
+
+        // the values are bound every time
+        assertEquals(
+                "is it \"no\"",
+                template.bindAsMap(List.of("a", "no", 1, 2, List.of())).get("b"));
+
+        assertThrows(IllegalArgumentException.class, () -> template.bindAsMap(List.of("a")));
+        assertThrows(IllegalArgumentException.class, () -> QueryTemplate.of("{\"a\": "));
+        assertSame(QueryTemplate.of(OPENSEARCH_QUERY), QueryTemplate.of(OPENSEARCH_QUERY));
+    }
+
+    @Test
+    @Disabled("Benchmark, run it manually")
+    void benchmark() {
+        List<Object> params = new ArrayList<>();
+        float[] embeddings = new float[1536];
+        Arrays.fill(embeddings, 0.123456f);
+        params.add(embeddings);
+        params.add("comedy");
+        List<Object> vectorOnly = List.of(embeddings);
+
+        compare(
+                "pinecone",
+                p ->
+                        InterpolationUtils.buildObjectFromJson(
+                                PINECONE_QUERY, PineconeDataSource.Query.class, p),
+                p -> QueryTemplate.of(PINECONE_QUERY).bind(p, PineconeDataSource.Query.class),
+                params);
+        compare(
+                "milvus",
+                p ->
+                        InterpolationUtils.buildObjectFromJson(
+                                        MILVUS_QUERY,
+                                        SearchSimpleParam.Builder.class,
+                                        p,
+                                        MilvusModel.getMapper())
+                                .build(),
+                p ->
+                        QueryTemplate.of(MILVUS_QUERY)
+                                .bind(p, SearchSimpleParam.Builder.class, MilvusModel.getMapper())
+                                .build(),
+                vectorOnly);
+        compare(
+                "opensearch",
+                p -> InterpolationUtils.buildObjectFromJson(OPENSEARCH_QUERY, Map.class, p, MAPPER),
+                p -> QueryTemplate.of(OPENSEARCH_QUERY).bindAsMap(p),
+                vectorOnly);
+        compare(
+                "solr",
+                p -> InterpolationUtils.buildObjectFromJson(SOLR_QUERY, Map.class, p),
+                p -> QueryTemplate.of(SOLR_QUERY).bindAsMap(p),
+                params);
+    }
+
+    private static void compare(
+            String backend,
+            Consumer<List<Object>> interpolation,
+            Consumer<List<Object>> template,
+            List<Object> params) {
+        int iterations = 500;
+        // warm up
+        for (int i = 0; i < iterations; i++) {
+            interpolation.accept(params);
+            template.accept(params);
+        }
+        long before = measure(interpolation, params, iterations);
+        long after = measure(template, params, iterations);
+        log.info(
+                "{}: {} us per query with interpolation, {} us per query with the template",
+                backend,
+                before / iterations / 1000,
+                after / iterations / 1000);
+    }
+
+    private static long measure(
+            Consumer<List<Object>> function, List<Object> params, int iterations) {
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            function.accept(params);
+        }
+        return System.nanoTime() - start;
+    }
+}
@@ -28,10 +28,13 @@ import ai.langstream.api.runner.code.SimpleRecord;
 import com.datastax.oss.driver.api.core.CqlSession;
 import com.datastax.oss.driver.api.core.cql.ResultSet;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CopyOnWriteArrayList;
+import lombok.extern.slf4j.Slf4j;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 import org.testcontainers.containers.CassandraContainer;
@@ -39,6 +42,7 @@ import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
 import org.testcontainers.utility.DockerImageName;
 
+@Slf4j
 @Testcontainers
 public class CassandraWriterTest {
     @Container
@@ -97,6 +101,74 @@ public class CassandraWriterTest {
         assertEquals(1, execute.all().size());
     }
 
+    @Test
+    void testWriteBatch() throws Exception {
+        CqlSession session =
+                CqlSession.builder()
+                        .addContactPoint(this.cassandra.getContactPoint())
+                        .withLocalDatacenter(this.cassandra.getLocalDatacenter())
+                        .build();
+
+        session.execute(
+                "CREATE KEYSPACE IF NOT EXISTS vsearch WITH REPLICATION = { 'class' : 'SimpleStrategy', 'replication_factor' : '1' };");
+        session.execute(
+                "CREATE TABLE vsearch.chunks (doc TEXT, id int, text TEXT, PRIMARY KEY (doc, id));");
+
+        Map<String, Object> datasourceConfig =
+                Map.of(
+                        "service",
+                        "cassandra",
+                        "loadBalancing-localDc",
+                        cassandra.getLocalDatacenter(),
+                        "contact-points",
+                        cassandra.getContactPoint().getHostString(),
+                        "port",
+                        cassandra.getContactPoint().getPort());
+
+        VectorDBSinkAgent agent =
+                (VectorDBSinkAgent)
+                        new AgentCodeRegistry().getAgentCode("vector-db-sink").agentCode();
+        Map<String, Object> configuration = new HashMap<>();
+        configuration.put("datasource", datasourceConfig);
+        configuration.put("table", "vsearch.chunks");
+        configuration.put("mapping", "doc=value.doc,id=value.id,text=value.text");
+        configuration.put("batch-size", 50);
+        configuration.put("flush-interval", 100);
+        configuration.put("max-records-per-batch", 10);
+
+        AgentContext agentContext = mock(AgentContext.class);
+        when(agentContext.getMetricsReporter()).thenReturn(MetricsReporter.DISABLED);
+        agent.init(configuration);
+        agent.setContext(agentContext);
+        agent.start();
+
+        int numDocuments = 10;
+        int chunksPerDocument = 100;
+        ObjectMapper mapper = new ObjectMapper();
+        List<CompletableFuture<?>> results = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < chunksPerDocument; i++) {
+            for (int d = 0; d < numDocuments; d++) {
+                Map<String, Object> value = Map.of("doc", "doc" + d, "id", i, "text", "chunk " + i);
+                String json = mapper.writeValueAsString(value);
+                results.add(agent.write(SimpleRecord.of("doc" + d, json)));
+                if (i == 0) {
+                    // equal records must be tracked independently
+                    results.add(agent.write(SimpleRecord.of("doc" + d, json)));
+                }
+            }
+        }
+        CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).get();
+        log.info(
+                "Wrote {} records in {} ms",
+                results.size(),
+                (System.nanoTime() - start) / 1_000_000);
+        agent.close();
+
+        ResultSet execute = session.execute("SELECT count(*) FROM vsearch.chunks");
+        assertEquals(numDocuments * chunksPerDocument, execute.one().getLong(0));
+    }
+
     @Test
     @Disabled
     void testWriteAstra() throws Exception {
@@ -0,0 +1,492 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.agents.vector.datasource.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import ai.langstream.agents.vector.QueryVectorDBAgent;
+import ai.langstream.agents.vector.VectorDBSinkAgent;
+import ai.langstream.agents.vector.embedded.EmbeddedDataSource;
+import ai.langstream.agents.vector.embedded.EmbeddedWriter;
+import ai.langstream.api.runner.code.AgentContext;
+import ai.langstream.api.runner.code.AgentProcessor;
+import ai.langstream.api.runner.code.Record;
+import ai.langstream.api.runner.code.SimpleRecord;
+import ai.langstream.api.runner.topics.TopicAdmin;
+import ai.langstream.api.runner.topics.TopicConnectionProvider;
+import ai.langstream.api.runner.topics.TopicConsumer;
+import ai.langstream.api.runner.topics.TopicProducer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+@Slf4j
+class EmbeddedWriterTest {
+
+    private static final String QUERY =
+            """
+            {"vector": ?, "top-k": 3, "filter": {"category": ?}, "include-vector": true}
+            """;
+
+    private static final Map<String, Object> WRITER_CONFIG =
+            Map.of(
+                    "id",
+                    "key.id",
+                    "vector",
+                    "value.vector",
+                    "fields",
+                    List.of(
+                            Map.of("name", "text", "expression", "value.text"),
+                            Map.of("name", "category", "expression", "value.category")));
+
+    private static SimpleRecord document(int id, float x, float y, String category) {
+        return SimpleRecord.of(
+                "{\"id\": \"doc%d\"}".formatted(id),
+                """
+                {"vector": [%s, %s], "text": "text %d", "category": "%s"}
+                """
+                        .formatted(x, y, id, category));
+    }
+
+    @Test
+    void testWriteAndQuery(@TempDir Path indexDirectory) throws Exception {
+        Map<String, Object> config =
+                Map.of(
+                        "service",
+                        "embedded",
+                        "index-name",
+                        "documents",
+                        "directory",
+                        indexDirectory.toString());
+
+        try (EmbeddedWriter.EmbeddedVectorDatabaseWriter writer =
+                        new EmbeddedWriter().createImplementation(config);
+                EmbeddedDataSource.EmbeddedQueryStepDataSource datasource =
+                        new EmbeddedDataSource().createDataSourceImplementation(config)) {
+            writer.initialise(WRITER_CONFIG);
+            datasource.initialize(Map.of());
+
+            List<Record> records = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                double angle = Math.PI * i / 100;
+                records.add(
+                        document(
+                                i,
+                                (float) Math.cos(angle),
+                                (float) Math.sin(angle),
+                                i % 2 == 0 ? "even" : "odd"));
+            }
+            List<CompletableFuture<?>> handles = writer.upsertBatch(records, Map.of());
+            CompletableFuture.allOf(handles.toArray(new CompletableFuture[0])).get();
+
+            // the sink and the datasource share the same index
+            List<Map<String, Object>> results =
+                    datasource.fetchData(QUERY, List.of(List.of(1f, 0f), "odd"));
+            log.info("Results: {}", results);
+            assertEquals(
+                    List.of("doc1", "doc3", "doc5"),
+                    results.stream().map(r -> r.get("id")).toList());
+            assertEquals("text 1", results.get(0).get("text"));
+            assertEquals(2, ((List<?>) results.get(0).get("vector")).size());
+
+            // delete and update
+            writer.upsert(SimpleRecord.of("{\"id\": \"doc1\"}", null), Map.of()).get();
+            writer.upsert(document(5, -1, 0, "odd"), Map.of()).get();
+            results = datasource.fetchData(QUERY, List.of(List.of(1f, 0f), "odd"));
+            assertEquals(
+                    List.of("doc3", "doc7", "doc9"),
+                    results.stream().map(r -> r.get("id")).toList());
+        }
+
+        // reload from the disk, ignoring a truncated record at the end of the log
+        List<Path> segments;
+        try (Stream<Path> files = Files.list(indexDirectory)) {
+            segments = files.sorted().toList();
+        }
+        assertTrue(!segments.isEmpty(), "segments " + segments);
+        Files.write(
+                segments.get(segments.size() - 1),
+                new byte[] {0, 0, 1, 0, 1, 2, 3, 4, 5, 6, 7, 8},
+                StandardOpenOption.APPEND);
+
+        try (EmbeddedWriter.EmbeddedVectorDatabaseWriter writer =
+                        new EmbeddedWriter().createImplementation(config);
+                EmbeddedDataSource.EmbeddedQueryStepDataSource datasource =
+                        new EmbeddedDataSource().createDataSourceImplementation(config)) {
+            writer.initialise(WRITER_CONFIG);
+            datasource.initialize(Map.of());
+            assertEquals(99, datasource.getIndex().size());
+            List<Map<String, Object>> results =
+                    datasource.fetchData(QUERY, List.of(List.of(1f, 0f), "odd"));
+            assertEquals(
+                    List.of("doc3", "doc7", "doc9"),
+                    results.stream().map(r -> r.get("id")).toList());
+
+            // new writes go to a new segment
+            writer.upsert(document(1, 1, 0, "odd"), Map.of()).get();
+            results = datasource.fetchData(QUERY, List.of(List.of(1f, 0f), "odd"));
+            assertEquals("doc1", results.get(0).get("id"));
+        }
+
+        try (EmbeddedDataSource.EmbeddedQueryStepDataSource datasource =
+                new EmbeddedDataSource().createDataSourceImplementation(config)) {
+            datasource.initialize(Map.of());
+            assertEquals(100, datasource.getIndex().size());
+            List<Map<String, Object>> results =
+                    datasource.fetchData(QUERY, List.of(List.of(1f, 0f), "odd"));
+            assertEquals(
+                    List.of("doc1", "doc3", "doc7"),
+                    results.stream().map(r -> r.get("id")).toList());
+        }
+    }
+
+    @Test
+    void testQueryLatency() throws Exception {
+        Map<String, Object> config = Map.of("service", "embedded", "index-name", "latency");
+        try (EmbeddedWriter.EmbeddedVectorDatabaseWriter writer =
+                        new EmbeddedWriter().createImplementation(config);
+                EmbeddedDataSource.EmbeddedQueryStepDataSource datasource =
+                        new EmbeddedDataSource().createDataSourceImplementation(config)) {
+            writer.initialise(WRITER_CONFIG);
+            datasource.initialize(Map.of());
+            Random random = new Random(1);
+            int dimensions = 384;
+            List<Record> records = new ArrayList<>();
+            for (int i = 0; i < 5000; i++) {
+                List<Float> vector = new ArrayList<>(dimensions);
+                for (int d = 0; d < dimensions; d++) {
+                    vector.add(random.nextFloat() - 0.5f);
+                }
+                records.add(
+                        SimpleRecord.of(
+                                "{\"id\": \"doc%d\"}".formatted(i),
+                                "{\"vector\": %s, \"text\": \"t\", \"category\": \"c\"}"
+                                        .formatted(vector)));
+            }
+            long start = System.nanoTime();
+            List<CompletableFuture<?>> handles = writer.upsertBatch(records, Map.of());
+            CompletableFuture.allOf(handles.toArray(new CompletableFuture[0])).get();
+            log.info(
+                    "Indexed {} vectors in {} ms",
+                    records.size(),
+                    (System.nanoTime() - start) / 1_000_000);
+
+            String query = "{\"vector\": ?, \"top-k\": 10}";
+            int queries = 1000;
+            start = System.nanoTime();
+            for (int i = 0; i < queries; i++) {
+                List<Float> vector = new ArrayList<>(dimensions);
+                for (int d = 0; d < dimensions; d++) {
+                    vector.add(random.nextFloat() - 0.5f);
+                }
+                assertEquals(10, datasource.fetchData(query, List.of(vector)).size());
+            }
+            log.info(
+                    "Average query time {} us",
+                    (System.nanoTime() - start) / queries / 1000);
+        }
+    }
+
+    @Test
+    void testSinkAndQueryAgentsShareTheIndex(@TempDir Path tempDir) throws Exception {
+        Path indexDirectory = tempDir.resolve("index");
+        Map<String, Object> datasource =
+                Map.of(
+                        "service",
+                        "embedded",
+                        "index-name",
+                        "shared",
+                        "directory",
+                        indexDirectory.toString());
+
+        VectorDBSinkAgent sink = new VectorDBSinkAgent();
+        Map<String, Object> sinkConfig = new HashMap<>(WRITER_CONFIG);
+        sinkConfig.put("datasource", datasource);
+        sink.init(sinkConfig);
+        sink.setMetadata("sink", "vector-db-sink", System.currentTimeMillis());
+        sink.setContext(new TestAgentContext(tempDir));
+        sink.start();
+
+        QueryVectorDBAgent query = new QueryVectorDBAgent();
+        Map<String, Object> queryConfig = new HashMap<>();
+        queryConfig.put("datasource", datasource);
+        queryConfig.put("query", "{\"vector\": ?, \"top-k\": 1}");
+        queryConfig.put("fields", List.of("value.vector"));
+        queryConfig.put("output-field", "value.results");
+        query.init(queryConfig);
+        query.setMetadata("query", "query-vector-db", System.currentTimeMillis());
+        query.setContext(new TestAgentContext(tempDir));
+        query.start();
+
+        try {
+            sink.write(document(1, 1, 0, "odd")).get();
+            sink.write(document(2, 0, 1, "even")).get();
+
+            CompletableFuture<AgentProcessor.SourceRecordAndResult> processed =
+                    new CompletableFuture<>();
+            query.process(
+                    List.of(SimpleRecord.of(null, "{\"vector\": [0.0, 1.0]}")),
+                    processed::complete);
+            assertNull(processed.get().error());
+            Record result = processed.get().resultRecords().get(0);
+            assertTrue(result.value().toString().contains("doc2"), result.value().toString());
+        } finally {
+            sink.close();
+            query.close();
+        }
+
+        // the agents used the configured directory, not their own disks
+        assertTrue(Files.isDirectory(indexDirectory));
+        assertFalse(Files.exists(tempDir.resolve("sink")));
+        assertFalse(Files.exists(tempDir.resolve("query")));
+    }
+
+    @Test
+    void testIndexInThePersistentDisk(@TempDir Path tempDir) throws Exception {
+        VectorDBSinkAgent sink = new VectorDBSinkAgent();
+        Map<String, Object> sinkConfig = new HashMap<>(WRITER_CONFIG);
+        sinkConfig.put("datasource", Map.of("service", "embedded", "index-name", "disk"));
+        sink.init(sinkConfig);
+        sink.setMetadata("sink", "vector-db-sink", System.currentTimeMillis());
+        sink.setContext(new TestAgentContext(tempDir));
+        sink.start();
+        try {
+            sink.write(document(1, 1, 0, "odd")).get();
+        } finally {
+            sink.close();
+        }
+
+        assertTrue(Files.exists(tempDir.resolve("sink").resolve("disk/segment-000001.log")));
+    }
+
+    @Test
+    void testOnlyOneWriterPerDirectory(@TempDir Path indexDirectory) throws Exception {
+        Map<String, Object> config =
+                Map.of(
+                        "service",
+                        "embedded",
+                        "index-name",
+                        "locked",
+                        "directory",
+                        indexDirectory.toString());
+        // another process writing to the directory
+        try (FileChannel channel =
+                        FileChannel.open(
+                                indexDirectory.resolve("writer.lock"),
+                                StandardOpenOption.CREATE,
+                                StandardOpenOption.WRITE);
+                FileLock ignored = channel.lock()) {
+            try (EmbeddedWriter.EmbeddedVectorDatabaseWriter writer =
+                    new EmbeddedWriter().createImplementation(config)) {
+                assertThrows(IllegalStateException.class, () -> writer.initialise(WRITER_CONFIG));
+            }
+
+            // the readers do not take the lock
+            try (EmbeddedDataSource.EmbeddedQueryStepDataSource datasource =
+                    new EmbeddedDataSource().createDataSourceImplementation(config)) {
+                datasource.initialize(Map.of());
+                assertEquals(0, datasource.getIndex().size());
+            }
+        }
+
+        try (EmbeddedWriter.EmbeddedVectorDatabaseWriter writer =
+                new EmbeddedWriter().createImplementation(config)) {
+            writer.initialise(WRITER_CONFIG);
+            writer.upsert(document(1, 1, 0, "odd"), Map.of()).get();
+        }
+    }
+
+    @Test
+    void testInvalidVectorsAreNotPersisted(@TempDir Path indexDirectory) throws Exception {
+        Map<String, Object> config =
+                Map.of(
+                        "service",
+                        "embedded",
+                        "index-name",
+                        "invalid",
+                        "directory",
+                        indexDirectory.toString());
+        try (EmbeddedWriter.EmbeddedVectorDatabaseWriter writer =
+                new EmbeddedWriter().createImplementation(config)) {
+            writer.initialise(WRITER_CONFIG);
+            List<CompletableFuture<?>> handles =
+                    writer.upsertBatch(
+                            List.of(
+                                    document(1, 1, 0, "odd"),
+                                    SimpleRecord.of(
+                                            "{\"id\": \"doc2\"}",
+                                            "{\"vector\": [1.0, 2.0, 3.0]}"),
+                                    document(3, 0, 1, "odd")),
+                            Map.of());
+            handles.get(0).get();
+            assertThrows(ExecutionException.class, () -> handles.get(1).get());
+            handles.get(2).get();
+        }
+
+        // the log can be replayed
+        try (EmbeddedDataSource.EmbeddedQueryStepDataSource datasource =
+                new EmbeddedDataSource().createDataSourceImplementation(config)) {
+            datasource.initialize(Map.of());
+            assertEquals(2, datasource.getIndex().size());
+        }
+    }
+
+    @Test
+    void testReplayStopsAtAnInvalidRecord(@TempDir Path indexDirectory) throws Exception {
+        Map<String, Object> config =
+                Map.of(
+                        "service",
+                        "embedded",
+                        "index-name",
+                        "replay",
+                        "directory",
+                        indexDirectory.toString());
+        try (EmbeddedWriter.EmbeddedVectorDatabaseWriter writer =
+                new EmbeddedWriter().createImplementation(config)) {
+            writer.initialise(WRITER_CONFIG);
+            writer.upsert(document(1, 1, 0, "odd"), Map.of()).get();
+            writer.upsert(document(2, 0, 1, "even"), Map.of()).get();
+        }
+
+        // a record with a valid checksum and an unknown operation between the two documents
+        Path segment = indexDirectory.resolve("segment-000001.log");
+        ByteBuffer log = ByteBuffer.wrap(Files.readAllBytes(segment));
+        int firstRecordSize = 8 + log.getInt(0);
+        byte[] payload = {42, 0, 0, 0, 0};
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer corrupted = ByteBuffer.allocate(log.capacity() + 8 + payload.length);
+        corrupted.put(log.array(), 0, firstRecordSize);
+        corrupted.putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+        corrupted.put(log.array(), firstRecordSize, log.capacity() - firstRecordSize);
+        Files.write(segment, corrupted.array());
+
+        try (EmbeddedDataSource.EmbeddedQueryStepDataSource datasource =
+                new EmbeddedDataSource().createDataSourceImplementation(config)) {
+            datasource.initialize(Map.of());
+            assertEquals(1, datasource.getIndex().size());
+        }
+    }
+
+    @Test
+    void testCompaction(@TempDir Path indexDirectory) throws Exception {
+        Map<String, Object> config =
+                Map.of(
+                        "service",
+                        "embedded",
+                        "index-name",
+                        "compaction",
+                        "directory",
+                        indexDirectory.toString());
+        try (EmbeddedWriter.EmbeddedVectorDatabaseWriter writer =
+                new EmbeddedWriter().createImplementation(config)) {
+            writer.initialise(WRITER_CONFIG);
+            // the log is compacted every time the deleted vectors exceed the live ones
+            for (int round = 0; round < 3; round++) {
+                List<Record> upserts = new ArrayList<>();
+                List<Record> deletes = new ArrayList<>();
+                for (int i = 0; i < 1100; i++) {
+                    int id = round * 10_000 + i;
+                    upserts.add(document(id, i, 1, "odd"));
+                    deletes.add(SimpleRecord.of("{\"id\": \"doc%d\"}".formatted(id), null));
+                }
+                upserts.add(document(100_000 + round, 1, round, "even"));
+                for (CompletableFuture<?> handle : writer.upsertBatch(upserts, Map.of())) {
+                    handle.get();
+                }
+                for (CompletableFuture<?> handle : writer.upsertBatch(deletes, Map.of())) {
+                    handle.get();
+                }
+                try (Stream<Path> files = Files.list(indexDirectory)) {
+                    assertEquals(
+                            1,
+                            files.filter(f -> f.getFileName().toString().startsWith("segment-"))
+                                    .count(),
+                            "round " + round);
+                }
+            }
+        }
+
+        try (EmbeddedDataSource.EmbeddedQueryStepDataSource datasource =
+                new EmbeddedDataSource().createDataSourceImplementation(config)) {
+            datasource.initialize(Map.of());
+            assertEquals(3, datasource.getIndex().size());
+        }
+    }
+
+    private static class TestAgentContext implements AgentContext {
+        private final Path persistentDisks;
+
+        TestAgentContext(Path persistentDisks) {
+            this.persistentDisks = persistentDisks;
+        }
+
+        @Override
+        public Optional<Path> getPersistentStateDirectoryForAgent(String agentId) {
+            return Optional.of(persistentDisks.resolve(agentId));
+        }
+
+        @Override
+        public TopicConsumer getTopicConsumer() {
+            return null;
+        }
+
+        @Override
+        public TopicProducer getTopicProducer() {
+            return null;
+        }
+
+        @Override
+        public String getGlobalAgentId() {
+            return "test";
+        }
+
+        @Override
+        public TopicAdmin getTopicAdmin() {
+            return null;
+        }
+
+        @Override
+        public TopicConnectionProvider getTopicConnectionProvider() {
+            return null;
+        }
+
+        @Override
+        public Path getCodeDirectory() {
+            return null;
+        }
+    }
+}
@@ -25,10 +25,15 @@ import ai.langstream.ai.agents.datasource.impl.JdbcDataSourceProvider;
 import ai.langstream.api.model.AssetDefinition;
 import ai.langstream.api.runner.assets.AssetManager;
 import ai.langstream.api.runner.assets.AssetManagerProvider;
+import ai.langstream.api.runner.code.Record;
 import ai.langstream.api.runner.code.SimpleRecord;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.jupiter.api.Test;
 
@@ -174,4 +179,204 @@ public class JdbcWriterTest {
             }
         }
     }
+
+    @Test
+    void testWriteBatch() throws Exception {
+        JdbcDataSourceProvider dataSourceProvider = new JdbcDataSourceProvider();
+        Map<String, Object> config =
+                Map.of(
+                        "url",
+                        "jdbc:herddb:local",
+                        "driverClass",
+                        herddb.jdbc.Driver.class.getName());
+        String tableName = "documents";
+
+        try (JdbcDataSourceProvider.JdbcDataSourceImpl datasource =
+                        dataSourceProvider.createDataSourceImplementation(config);
+                JdbcWriter.JdbcVectorDatabaseWriter writer =
+                        new JdbcWriter().createImplementation(config)) {
+            datasource.initialize(null);
+
+            AssetManagerProvider assetsManagerProvider = new JdbcAssetsManagerProvider();
+            try (AssetManager tableManager = assetsManagerProvider.createInstance("jdbc-table"); ) {
+                AssetDefinition assetDefinition = new AssetDefinition();
+                assetDefinition.setAssetType("jdbc-table");
+                assetDefinition.setConfig(
+                        Map.of(
+                                "table-name",
+                                tableName,
+                                "datasource",
+                                Map.of("configuration", config),
+                                "create-statements",
+                                List.of(CREATE_TABLE),
+                                "delete-statements",
+                                List.of(DROP_TABLE)));
+                tableManager.initialize(assetDefinition);
+                tableManager.deleteAssetIfExists();
+                tableManager.deployAsset();
+
+                List<Map<String, Object>> fields =
+                        List.of(
+                                Map.of(
+                                        "name",
+                                        "name",
+                                        "expression",
+                                        "key.name",
+                                        "primary-key",
+                                        true),
+                                Map.of(
+                                        "name",
+                                        "chunk_id",
+                                        "expression",
+                                        "key.chunk_id",
+                                        "primary-key",
+                                        true),
+                                Map.of("name", "text", "expression", "value.text"));
+                writer.initialise(Map.of("table-name", tableName, "fields", fields));
+                assertTrue(writer.supportsBatchUpsert());
+
+                List<Record> records =
+                        List.of(
+                                SimpleRecord.of(
+                                        "{\"name\": \"doc1\", \"chunk_id\": 1}",
+                                        "{\"text\": \"one\"}"),
+                                SimpleRecord.of(
+                                        "{\"name\": \"doc2\", \"chunk_id\": 1}",
+                                        "{\"text\": \"two\"}"),
+                                SimpleRecord.of(
+                                        "{\"name\": \"doc2\", \"chunk_id\": 1}",
+                                        "{\"text\": \"two changed\"}"),
+                                SimpleRecord.of("{\"name\": \"doc1\", \"chunk_id\": 1}", null),
+                                SimpleRecord.of(
+                                        "{\"name\": \"doc3\", \"chunk_id\": 1}",
+                                        "{\"text\": \"three\"}"));
+                List<CompletableFuture<?>> results = writer.upsertBatch(records, Map.of());
+                assertEquals(records.size(), results.size());
+                for (CompletableFuture<?> result : results) {
+                    result.get();
+                }
+
+                List<Map<String, Object>> rows =
+                        datasource.fetchData(
+                                "SELECT name,text from documents order by name", List.of());
+                log.info("Results: {}", rows);
+                assertEquals(2, rows.size());
+                assertEquals("doc2", rows.get(0).get("name"));
+                assertEquals("two changed", rows.get(0).get("text"));
+                assertEquals("doc3", rows.get(1).get("name"));
+
+                tableManager.deleteAssetIfExists();
+            }
+        }
+    }
+
+    @Test
+    void testWriteWithNativeUpsert() throws Exception {
+        Map<String, Object> config =
+                Map.of(
+                        "url",
+                        "jdbc:h2:mem:writer;DB_CLOSE_DELAY=-1",
+                        "user",
+                        "sa",
+                        "password",
+                        "sa",
+                        "driverClass",
+                        "org.h2.Driver");
+        try (Connection connection =
+                        DriverManager.getConnection(
+                                "jdbc:h2:mem:writer;DB_CLOSE_DELAY=-1", "sa", "sa");
+                Statement statement = connection.createStatement()) {
+            statement.execute(
+                    "CREATE TABLE documents (name VARCHAR(255), chunk_id INT, text VARCHAR(255), "
+                            + "PRIMARY KEY (name, chunk_id))");
+        }
+
+        List<Map<String, Object>> fields =
+                List.of(
+                        Map.of("name", "name", "expression", "key.name", "primary-key", true),
+                        Map.of(
+                                "name",
+                                "chunk_id",
+                                "expression",
+                                "key.chunk_id",
+                                "primary-key",
+                                true),
+                        Map.of("name", "text", "expression", "value.text"));
+
+        JdbcDataSourceProvider dataSourceProvider = new JdbcDataSourceProvider();
+        try (JdbcDataSourceProvider.JdbcDataSourceImpl datasource =
+                        dataSourceProvider.createDataSourceImplementation(config);
+                JdbcWriter.JdbcVectorDatabaseWriter writer =
+                        new JdbcWriter().createImplementation(config)) {
+            datasource.initialize(null);
+            writer.initialise(
+                    Map.of(
+                            "table-name",
+                            "documents",
+                            "fields",
+                            fields,
+                            "concurrency",
+                            4,
+                            "dialect",
+                            "auto"));
+
+            // concurrent batches on different keys
+            List<CompletableFuture<?>> results = new ArrayList<>();
+            for (int batch = 0; batch < 10; batch++) {
+                List<Record> records = new ArrayList<>();
+                for (int i = 0; i < 10; i++) {
+                    records.add(
+                            SimpleRecord.of(
+                                    "{\"name\": \"doc%d\", \"chunk_id\": %d}".formatted(batch, i),
+                                    "{\"text\": \"text %d\"}".formatted(i)));
+                }
+                results.addAll(writer.upsertBatch(records, Map.of()));
+            }
+            for (CompletableFuture<?> result : results) {
+                result.get();
+            }
+            assertEquals(
+                    100L,
+                    datasource
+                            .fetchData("SELECT COUNT(*) AS c FROM documents", List.of())
+                            .get(0)
+                            .get("C"));
+
+            // update, insert and delete in the same batch
+            List<Record> records =
+                    List.of(
+                            SimpleRecord.of(
+                                    "{\"name\": \"doc0\", \"chunk_id\": 0}",
+                                    "{\"text\": \"changed\"}"),
+                            SimpleRecord.of("{\"name\": \"doc0\", \"chunk_id\": 1}", null),
+                            SimpleRecord.of(
+                                    "{\"name\": \"new\", \"chunk_id\": 0}",
+                                    "{\"text\": \"new\"}"));
+            for (CompletableFuture<?> result : writer.upsertBatch(records, Map.of())) {
+                result.get();
+            }
+            List<Map<String, Object>> rows =
+                    datasource.fetchData(
+                            "SELECT name, chunk_id, text FROM documents "
+                                    + "WHERE name IN ('doc0', 'new') ORDER BY name, chunk_id",
+                            List.of());
+            log.info("Results: {}", rows);
+            assertEquals(10, rows.size());
+            assertEquals("changed", rows.get(0).get("TEXT"));
+            assertEquals(2, rows.get(1).get("CHUNK_ID"));
+            assertEquals("new", rows.get(9).get("NAME"));
+
+            // the ordering key is the primary key, not the key of the record
+            assertTrue(writer.supportsOrderingKey());
+            assertEquals(
+                    writer.getOrderingKey(
+                            SimpleRecord.of(
+                                    "{\"name\": \"doc0\", \"chunk_id\": 1, \"other\": 1}",
+                                    "{\"text\": \"a\"}")),
+                    writer.getOrderingKey(
+                            SimpleRecord.of(
+                                    "{\"name\": \"doc0\", \"chunk_id\": 1, \"other\": 2}",
+                                    null)));
+        }
+    }
 }
@@ -16,10 +16,14 @@
 package ai.langstream.agents.vector.datasource.impl;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 import ai.langstream.agents.vector.VectorDBSinkAgent;
 import ai.langstream.agents.vector.pinecone.PineconeDataSource;
 import ai.langstream.api.runner.code.AgentCodeRegistry;
+import ai.langstream.api.runner.code.AgentContext;
+import ai.langstream.api.runner.code.MetricsReporter;
 import ai.langstream.api.runner.code.Record;
 import ai.langstream.api.runner.code.SimpleRecord;
 import com.datastax.oss.streaming.ai.datasource.QueryStepDataSource;
@@ -64,7 +68,10 @@ class PineconeWriterTest {
         configuration.put("vector.namespace", "");
         configuration.put("vector.metadata.genre", "value.genre");
 
+        AgentContext agentContext = mock(AgentContext.class);
+        when(agentContext.getMetricsReporter()).thenReturn(MetricsReporter.DISABLED);
         agent.init(configuration);
+        agent.setContext(agentContext);
         agent.start();
         List<Record> committed = new CopyOnWriteArrayList<>();
         String genre = "random" + UUID.randomUUID();
@@ -0,0 +1,180 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.agents.vector.embedded;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+@Slf4j
+class HnswIndexTest {
+
+    private static float[] randomVector(Random random, int dimensions) {
+        float[] vector = new float[dimensions];
+        for (int i = 0; i < dimensions; i++) {
+            vector[i] = random.nextFloat() * 2 - 1;
+        }
+        return vector;
+    }
+
+    private static double similarity(HnswIndex.Similarity similarity, float[] a, float[] b) {
+        double dot = 0;
+        double normA = 0;
+        double normB = 0;
+        double distance = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+            distance += (a[i] - b[i]) * (a[i] - b[i]);
+        }
+        return switch (similarity) {
+            case COSINE -> dot / (Math.sqrt(normA) * Math.sqrt(normB));
+            case DOT_PRODUCT -> dot;
+            case EUCLIDEAN -> -distance;
+        };
+    }
+
+    private static Set<String> bruteForce(
+            HnswIndex.Similarity similarity, List<float[]> vectors, float[] query, int k) {
+        List<Integer> nodes = new ArrayList<>();
+        for (int i = 0; i < vectors.size(); i++) {
+            nodes.add(i);
+        }
+        nodes.sort(
+                (a, b) ->
+                        Double.compare(
+                                similarity(similarity, query, vectors.get(b)),
+                                similarity(similarity, query, vectors.get(a))));
+        Set<String> result = new HashSet<>();
+        for (int i = 0; i < k; i++) {
+            result.add("v" + nodes.get(i));
+        }
+        return result;
+    }
+
+    @ParameterizedTest
+    @EnumSource(HnswIndex.Similarity.class)
+    void testRecall(HnswIndex.Similarity similarity) {
+        Random random = new Random(1);
+        int dimensions = 32;
+        HnswIndex index = new HnswIndex(similarity, 16, 100);
+        List<float[]> vectors = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            float[] vector = randomVector(random, dimensions);
+            vectors.add(vector);
+            index.upsert("v" + i, vector, Map.of("n", i));
+        }
+        assertEquals(5000, index.liveCount());
+
+        int queries = 200;
+        int k = 10;
+        int found = 0;
+        long elapsed = 0;
+        for (int q = 0; q < queries; q++) {
+            float[] query = randomVector(random, dimensions);
+            long start = System.nanoTime();
+            List<HnswIndex.SearchResult> results = index.search(query, k, 64, null, false);
+            elapsed += System.nanoTime() - start;
+            assertEquals(k, results.size());
+            for (int i = 1; i < results.size(); i++) {
+                assertTrue(results.get(i - 1).similarity() >= results.get(i).similarity());
+            }
+            Set<String> expected = bruteForce(similarity, vectors, query, k);
+            for (HnswIndex.SearchResult result : results) {
+                if (expected.contains(result.id())) {
+                    found++;
+                }
+            }
+        }
+        double recall = found / (double) (queries * k);
+        log.info(
+                "{}: recall {}, average query time {} us",
+                similarity,
+                recall,
+                elapsed / queries / 1000);
+        assertTrue(recall > 0.9, "recall " + recall);
+    }
+
+    @Test
+    void testUpsertAndDelete() {
+        HnswIndex index = new HnswIndex(HnswIndex.Similarity.COSINE, 4, 20);
+        index.upsert("a", new float[] {1, 0}, Map.of("text", "a"));
+        index.upsert("b", new float[] {0, 1}, Map.of("text", "b"));
+        index.upsert("c", new float[] {-1, 0}, Map.of("text", "c"));
+
+        List<HnswIndex.SearchResult> results =
+                index.search(new float[] {1, 0.1f}, 1, 10, null, true);
+        assertEquals("a", results.get(0).id());
+        assertEquals("a", results.get(0).metadata().get("text"));
+
+        // replace "a", it is not the best match anymore
+        index.upsert("a", new float[] {0, -1}, Map.of("text", "a2"));
+        assertEquals(3, index.liveCount());
+        assertEquals(1, index.deletedCount());
+        results = index.search(new float[] {1, 0.1f}, 3, 10, null, false);
+        assertEquals(List.of("b", "a", "c"), results.stream().map(r -> r.id()).toList());
+        assertEquals("a2", results.get(1).metadata().get("text"));
+
+        assertTrue(index.delete("b"));
+        assertFalse(index.delete("b"));
+        results = index.search(new float[] {1, 0.1f}, 3, 10, null, false);
+        assertEquals(List.of("a", "c"), results.stream().map(r -> r.id()).toList());
+    }
+
+    @Test
+    void testFilter() {
+        Random random = new Random(2);
+        HnswIndex index = new HnswIndex(HnswIndex.Similarity.COSINE, 16, 100);
+        for (int i = 0; i < 2000; i++) {
+            // 1% of the vectors are in the "rare" category
+            String category = i % 100 == 0 ? "rare" : "common";
+            index.upsert("v" + i, randomVector(random, 16), Map.of("category", category, "n", i));
+        }
+        List<HnswIndex.SearchResult> results =
+                index.search(
+                        randomVector(random, 16),
+                        50,
+                        16,
+                        HnswIndex.metadataFilter(Map.of("category", "rare")),
+                        false);
+        // all the vectors that match the filter are found, even with a small ef
+        assertEquals(20, results.size());
+        results.forEach(r -> assertEquals("rare", r.metadata().get("category")));
+
+        results =
+                index.search(
+                        randomVector(random, 16),
+                        10,
+                        16,
+                        HnswIndex.metadataFilter(Map.of("n", List.of(1L, 2.0, 3))),
+                        false);
+        assertEquals(
+                Set.of("v1", "v2", "v3"),
+                new HashSet<>(results.stream().map(r -> r.id()).toList()));
+    }
+}
@@ -15,7 +15,10 @@
  */
 package ai.langstream.api.database;
 
+import ai.langstream.api.runner.code.MetricsReporter;
 import ai.langstream.api.runner.code.Record;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 
@@ -27,6 +30,19 @@ public interface VectorDatabaseWriter {
 
     default void initialise(Map<String, Object> agentConfiguration) throws Exception {}
 
+    /**
+     * Initialise the writer, with a MetricsReporter that the writer can use to expose its own
+     * metrics.
+     *
+     * @param agentConfiguration the agent configuration
+     * @param metricsReporter the metrics reporter
+     */
+    default void initialise(
+            Map<String, Object> agentConfiguration, MetricsReporter metricsReporter)
+            throws Exception {
+        initialise(agentConfiguration);
+    }
+
     /**
      * Update a record, insert if it does not exist. If value is NULL then the record is deleted.
      *
@@ -35,5 +51,56 @@ public interface VectorDatabaseWriter {
      */
     CompletableFuture<?> upsert(Record record, Map<String, Object> context);
 
+    /**
+     * Upsert a batch of records, preserving their order. The default implementation calls {@link
+     * #upsert(Record, Map)} for each record, writers that are able to send many records in one
+     * request override it together with {@link #supportsBatchUpsert()}.
+     *
+     * @param records the records
+     * @param context additional context
+     * @return one future for each record, in the same order as the records
+     */
+    default List<CompletableFuture<?>> upsertBatch(
+            List<Record> records, Map<String, Object> context) {
+        List<CompletableFuture<?>> result = new ArrayList<>(records.size());
+        for (Record record : records) {
+            result.add(upsert(record, context));
+        }
+        return result;
+    }
+
+    /**
+     * Whether {@link #upsertBatch(List, Map)} writes the records in bulk. If true the sink
+     * accumulates the records and passes them to the writer in batches.
+     *
+     * @return true if the writer supports bulk writes
+     */
+    default boolean supportsBatchUpsert() {
+        return false;
+    }
+
+    /**
+     * Whether {@link #getOrderingKey(Record)} is implemented. If false the sink never writes two
+     * records concurrently.
+     *
+     * @return true if the writer knows the primary key of the records
+     */
+    default boolean supportsOrderingKey() {
+        return false;
+    }
+
+    /**
+     * The key of the entity written (or deleted) by the record, typically the values of the
+     * primary key. The sink may write concurrently the records with different ordering keys and
+     * always writes the records with the same ordering key in order. The sink calls it only if
+     * {@link #supportsOrderingKey()} returns true.
+     *
+     * @param record the record
+     * @return the ordering key, null by default
+     */
+    default Object getOrderingKey(Record record) {
+        return null;
+    }
+
     default void close() throws Exception {}
 }
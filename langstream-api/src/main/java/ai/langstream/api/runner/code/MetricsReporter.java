@@ -33,6 +33,10 @@ public interface MetricsReporter {
         return this;
     }
 
+    default Gauge gauge(String name, String help) {
+        return new SimpleGauge();
+    }
+
     interface Counter {
 
         Counter NOOP = new SimpleCounter();
@@ -41,4 +45,13 @@ public interface MetricsReporter {
 
         long value();
     }
+
+    interface Gauge {
+
+        Gauge NOOP = new SimpleGauge();
+
+        void set(long value);
+
+        long value();
+    }
 }
@@ -28,21 +28,43 @@ public abstract class SingleRecordAgentProcessor extends AbstractAgentCode
 
     public abstract List<Record> processRecord(Record record) throws Exception;
 
+    /**
+     * Process the records one by one on the calling thread. An agent that processes the records
+     * asynchronously overrides it, and reports the outcome of each record with {@link #emit}.
+     */
     @Override
-    public final void process(List<Record> records, RecordSink recordSink) {
+    public void process(List<Record> records, RecordSink recordSink) {
         if (records == null || records.isEmpty()) {
             throw new IllegalStateException("Records cannot be null or empty");
         }
         for (Record record : records) {
+            List<Record> process;
             try {
-                List<Record> process = processRecord(record);
-                processed(1, process.size());
-                recordSink.emit(new SourceRecordAndResult(record, process, null));
+                process = processRecord(record);
             } catch (Throwable error) {
-                log.error("Error processing record: {}", record, error);
-                errors.incrementAndGet();
-                recordSink.emit(new SourceRecordAndResult(record, null, error));
+                emit(record, null, error, recordSink);
+                continue;
             }
+            emit(record, process, null, recordSink);
+        }
+    }
+
+    /** Report the result of a record, or the error, and update the metrics. */
+    protected void emit(
+            Record record, List<Record> result, Throwable error, RecordSink recordSink) {
+        if (error == null) {
+            try {
+                processed(1, result.size());
+            } catch (Throwable e) {
+                error = e;
+            }
+        }
+        if (error == null) {
+            recordSink.emit(new SourceRecordAndResult(record, result, null));
+        } else {
+            log.error("Error processing record: {}", record, error);
+            errors.incrementAndGet();
+            recordSink.emit(new SourceRecordAndResult(record, null, error));
         }
     }
 
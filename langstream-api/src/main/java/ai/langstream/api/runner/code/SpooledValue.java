@@ -0,0 +1,210 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.api.runner.code;
+
+import com.fasterxml.jackson.annotation.JsonValue;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.ref.Cleaner;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A record value that may be too large to be kept on the heap. The content is written once and it
+ * can be read as a stream any number of times: up to a threshold it is kept in memory, above it is
+ * spooled to a temporary file on the local disk.
+ *
+ * <p>Sources emit it for large objects, and agents that process a stream ({@link #openStream()})
+ * never load the whole content in memory. The memory stays flat only while the value moves between
+ * the agents of the same composite agent: the topic producers write the content as bytes, as for a
+ * byte[] value, and the Kafka and Pulsar clients need the whole message in memory. {@link
+ * #toString()} does not return the content, use {@link #toText()}.
+ *
+ * <p>Only the source that emitted the value calls {@link #close()}, when the record is committed
+ * or fails permanently: the processors must not close the value of their input record, because
+ * the runner processes the source record again after a retryable error. The temporary files of
+ * the values created by the processors are deleted when the value is garbage collected.
+ */
+public final class SpooledValue implements Closeable {
+
+    public static final int DEFAULT_MEMORY_THRESHOLD = 8 * 1024 * 1024;
+
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private final byte[] content;
+    private final Path file;
+    private final long size;
+    private final Cleaner.Cleanable cleanable;
+
+    private SpooledValue(byte[] content, Path file, long size) {
+        this.content = content;
+        this.file = file;
+        this.size = size;
+        this.cleanable = file != null ? CLEANER.register(this, new DeleteFile(file)) : null;
+    }
+
+    /** Read the stream until the end, spooling it to disk if it is larger than the threshold. */
+    public static SpooledValue spool(InputStream input, int memoryThreshold) throws IOException {
+        Builder builder = builder(memoryThreshold);
+        try {
+            input.transferTo(builder);
+            return builder.build();
+        } catch (IOException | RuntimeException e) {
+            builder.discard();
+            throw e;
+        }
+    }
+
+    public static SpooledValue spool(InputStream input) throws IOException {
+        return spool(input, DEFAULT_MEMORY_THRESHOLD);
+    }
+
+    /** A stream to write the content of a new value, for instance through a Writer. */
+    public static Builder builder(int memoryThreshold) {
+        return new Builder(memoryThreshold);
+    }
+
+    public long size() {
+        return size;
+    }
+
+    /** Whether the content is kept in memory, because it is smaller than the threshold. */
+    public boolean isInMemory() {
+        return file == null;
+    }
+
+    public InputStream openStream() throws IOException {
+        if (content != null) {
+            return new ByteArrayInputStream(content);
+        }
+        return Files.newInputStream(file);
+    }
+
+    /** Load the whole content in memory, only for consumers that cannot process a stream. */
+    @JsonValue
+    public byte[] toByteArray() {
+        if (content != null) {
+            return content;
+        }
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("Value too large for a byte array: " + size);
+        }
+        try {
+            return Files.readAllBytes(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** The content as UTF-8 text, loaded in memory. */
+    public String toText() {
+        return new String(toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /** Describes the value without reading it, the records are often logged. */
+    @Override
+    public String toString() {
+        return "SpooledValue(size=" + size + (file != null ? ", file=" + file : "") + ")";
+    }
+
+    @Override
+    public void close() {
+        if (cleanable != null) {
+            cleanable.clean();
+        }
+    }
+
+    private record DeleteFile(Path file) implements Runnable {
+        @Override
+        public void run() {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException ignored) {
+                // the file is in the temporary directory
+            }
+        }
+    }
+
+    public static final class Builder extends OutputStream {
+        private final int memoryThreshold;
+        private ByteArrayOutputStream memory = new ByteArrayOutputStream();
+        private Path file;
+        private OutputStream output;
+        private long size;
+
+        private Builder(int memoryThreshold) {
+            this.memoryThreshold = memoryThreshold;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (output == null && memory.size() + len > memoryThreshold) {
+                file = Files.createTempFile("langstream-value-", ".tmp");
+                output = Files.newOutputStream(file);
+                memory.writeTo(output);
+                memory = null;
+            }
+            if (output != null) {
+                output.write(b, off, len);
+            } else {
+                memory.write(b, off, len);
+            }
+            size += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (output != null) {
+                output.flush();
+            }
+        }
+
+        /** Complete the value, the builder can be closed before. */
+        public SpooledValue build() throws IOException {
+            close();
+            if (file == null) {
+                return new SpooledValue(memory.toByteArray(), null, size);
+            }
+            return new SpooledValue(null, file, size);
+        }
+
+        /** Delete the content written so far, when the value is not going to be built. */
+        public void discard() throws IOException {
+            close();
+            if (file != null) {
+                Files.deleteIfExists(file);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (output != null) {
+                output.close();
+            }
+        }
+    }
+}
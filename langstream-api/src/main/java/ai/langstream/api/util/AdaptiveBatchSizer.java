@@ -0,0 +1,196 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.api.util;
+
+import ai.langstream.api.runner.code.MetricsReporter;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Computes the batch size and the linger time of an {@link OrderedAsyncBatchExecutor} from the
+ * observed latency of the batches.
+ *
+ * <p>With the LATENCY target the batch size grows as long as full batches complete within the
+ * target latency, and it is halved as soon as a batch is slower than the target. With the
+ * THROUGHPUT target the batch size moves in the direction that improves the observed records per
+ * second. With both targets, batches that are flushed before being full (low traffic) make the
+ * batch size shrink. The linger time follows the batch size linearly between the configured
+ * bounds, so that at low traffic the records do not wait for a batch that will never fill up.
+ */
+@Slf4j
+public class AdaptiveBatchSizer {
+
+    public enum Target {
+        LATENCY,
+        THROUGHPUT
+    }
+
+    public record Config(
+            int minBatchSize,
+            int maxBatchSize,
+            long minIdleTime,
+            long maxIdleTime,
+            Target target,
+            long targetLatency) {
+
+        public Config {
+            if (minBatchSize <= 0) {
+                throw new IllegalArgumentException("min-batch-size must be greater than 0");
+            }
+            if (maxBatchSize < minBatchSize) {
+                throw new IllegalArgumentException(
+                        "max-batch-size must be greater or equal than min-batch-size");
+            }
+            if (minIdleTime <= 0) {
+                throw new IllegalArgumentException("min-flush-interval must be greater than 0");
+            }
+            if (maxIdleTime < minIdleTime) {
+                throw new IllegalArgumentException(
+                        "max-flush-interval must be greater or equal than min-flush-interval");
+            }
+            if (target == null) {
+                throw new IllegalArgumentException("target is required");
+            }
+            if (target == Target.LATENCY && targetLatency <= 0) {
+                throw new IllegalArgumentException("target-latency must be greater than 0");
+            }
+        }
+
+        /**
+         * Parse the "adaptive-batching" configuration of an agent.
+         *
+         * @param configuration the content of the "adaptive-batching" map, it may be null
+         * @param batchSize the configured batch size, used to compute the defaults
+         * @param flushInterval the configured flush interval, used to compute the defaults
+         * @return the configuration or null if adaptive batching is not enabled
+         */
+        public static Config fromMap(
+                Map<String, Object> configuration, int batchSize, long flushInterval) {
+            if (configuration == null
+                    || !ConfigurationUtils.getBoolean("enabled", false, configuration)) {
+                return null;
+            }
+            int minBatchSize = ConfigurationUtils.getInt("min-batch-size", 1, configuration);
+            int maxBatchSize =
+                    ConfigurationUtils.getInt(
+                            "max-batch-size", Math.max(1, batchSize) * 10, configuration);
+            long minIdleTime = ConfigurationUtils.getLong("min-flush-interval", 10L, configuration);
+            long maxIdleTime =
+                    ConfigurationUtils.getLong(
+                            "max-flush-interval",
+                            flushInterval > 0 ? flushInterval : 1000L,
+                            configuration);
+            String target = ConfigurationUtils.getString("target", "latency", configuration);
+            long targetLatency = ConfigurationUtils.getLong("target-latency", 1000L, configuration);
+            return new Config(
+                    minBatchSize,
+                    maxBatchSize,
+                    minIdleTime,
+                    maxIdleTime,
+                    Target.valueOf(target.toUpperCase(Locale.ROOT)),
+                    targetLatency);
+        }
+    }
+
+    private final Config config;
+    private final MetricsReporter.Gauge batchSizeGauge;
+
+    private int batchSize;
+    private int direction = 1;
+    private double lastThroughput = -1;
+
+    public AdaptiveBatchSizer(
+            Config config, int initialBatchSize, MetricsReporter.Gauge batchSizeGauge) {
+        this.config = config;
+        this.batchSizeGauge = batchSizeGauge;
+        this.batchSize =
+                Math.max(config.minBatchSize(), Math.min(config.maxBatchSize(), initialBatchSize));
+        batchSizeGauge.set(batchSize);
+    }
+
+    public Config getConfig() {
+        return config;
+    }
+
+    public synchronized int batchSize() {
+        return batchSize;
+    }
+
+    /**
+     * The linger time is proportional to the current batch size.
+     *
+     * @return the maximum time a record waits in a batch that is not full, in milliseconds
+     */
+    public synchronized long idleTime() {
+        int range = config.maxBatchSize() - config.minBatchSize();
+        if (range == 0) {
+            return config.maxIdleTime();
+        }
+        return config.minIdleTime()
+                + (config.maxIdleTime() - config.minIdleTime())
+                        * (batchSize - config.minBatchSize())
+                        / range;
+    }
+
+    /**
+     * Feed the outcome of a batch.
+     *
+     * @param size the number of records in the batch
+     * @param latencyNanos the time spent processing the batch
+     */
+    public synchronized void batchCompleted(int size, long latencyNanos) {
+        int step = Math.max(1, batchSize / 10);
+        boolean full = size >= batchSize;
+        int newBatchSize;
+        if (!full) {
+            // we are not receiving enough records to fill the batch, shrinking the batch
+            // also reduces the linger time
+            newBatchSize = Math.max(size, batchSize - step);
+            lastThroughput = -1;
+        } else if (config.target() == Target.LATENCY) {
+            long latencyMillis = TimeUnit.NANOSECONDS.toMillis(latencyNanos);
+            if (latencyMillis > config.targetLatency()) {
+                newBatchSize = batchSize / 2;
+            } else {
+                newBatchSize = batchSize + step;
+            }
+        } else {
+            double throughput = size * 1_000_000_000d / Math.max(1, latencyNanos);
+            // tolerate some noise before changing direction
+            if (lastThroughput >= 0 && throughput < lastThroughput * 0.9) {
+                direction = -direction;
+            }
+            lastThroughput = throughput;
+            newBatchSize = batchSize + direction * step;
+        }
+        newBatchSize =
+                Math.max(config.minBatchSize(), Math.min(config.maxBatchSize(), newBatchSize));
+        if (newBatchSize != batchSize) {
+            if (log.isDebugEnabled()) {
+                log.debug(
+                        "Batch of {} records completed in {} ms, batch size {} -> {}",
+                        size,
+                        TimeUnit.NANOSECONDS.toMillis(latencyNanos),
+                        batchSize,
+                        newBatchSize);
+            }
+            batchSize = newBatchSize;
+            batchSizeGauge.set(batchSize);
+        }
+    }
+}
@@ -33,6 +33,9 @@ import lombok.extern.slf4j.Slf4j;
 /**
  * Aggregate records in batches, depending on a batch size and a maximum idle time.
  *
+ * <p>If an {@link AdaptiveBatchSizer} is provided the batch size and the maximum idle time are not
+ * fixed, they are adjusted depending on the latency of the batches.
+ *
  * @param <T>
  */
 @Slf4j
@@ -49,6 +52,8 @@ public class OrderedAsyncBatchExecutor<T> {
 
     private final Function<T, Integer> hashFunction;
 
+    private final AdaptiveBatchSizer batchSizer;
+
     public OrderedAsyncBatchExecutor(
             int batchSize,
             BiConsumer<List<T>, CompletableFuture<?>> processor,
@@ -56,6 +61,41 @@ public class OrderedAsyncBatchExecutor<T> {
             int numBuckets,
             Function<T, Integer> hashFunction,
             ScheduledExecutorService scheduledExecutorService) {
+        this(
+                batchSize,
+                processor,
+                maxIdleTime,
+                numBuckets,
+                hashFunction,
+                scheduledExecutorService,
+                null);
+    }
+
+    /**
+     * Create an executor with adaptive batching.
+     *
+     * @param batchSize the initial batch size, ignored if batchSizer is not null
+     * @param processor the function that processes the batches
+     * @param maxIdleTime maximum idle time, ignored if batchSizer is not null
+     * @param numBuckets number of buckets
+     * @param hashFunction function to assign the records to a bucket
+     * @param scheduledExecutorService executor for the flushes
+     * @param batchSizer the policy to compute the batch size, null means fixed batch size
+     */
+    public OrderedAsyncBatchExecutor(
+            int batchSize,
+            BiConsumer<List<T>, CompletableFuture<?>> processor,
+            long maxIdleTime,
+            int numBuckets,
+            Function<T, Integer> hashFunction,
+            ScheduledExecutorService scheduledExecutorService,
+            AdaptiveBatchSizer batchSizer) {
+        if (batchSizer != null) {
+            // the timer ticks at the minimum idle time, each bucket is flushed when
+            // its oldest record waited longer than the current idle time
+            maxIdleTime = batchSizer.getConfig().minIdleTime();
+        }
+        this.batchSizer = batchSizer;
         this.numBuckets = numBuckets;
         this.hashFunction = hashFunction;
         Object[] buckets = new Object[numBuckets];
@@ -74,7 +114,10 @@ public class OrderedAsyncBatchExecutor<T> {
         if (flushInterval > 0) {
             scheduledFuture =
                     scheduledExecutorService.scheduleWithFixedDelay(
-                            this::flush, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+                            this::flushIdleBuckets,
+                            flushInterval,
+                            flushInterval,
+                            TimeUnit.MILLISECONDS);
         }
     }
 
@@ -91,6 +134,22 @@ public class OrderedAsyncBatchExecutor<T> {
         }
     }
 
+    private void flushIdleBuckets() {
+        if (batchSizer == null) {
+            flush();
+            return;
+        }
+        long idleTimeNanos = TimeUnit.MILLISECONDS.toNanos(batchSizer.idleTime());
+        long now = System.nanoTime();
+        for (Bucket bucket : buckets) {
+            bucket.flushIfIdle(now, idleTimeNanos);
+        }
+    }
+
+    private int currentBatchSize() {
+        return batchSizer != null ? batchSizer.batchSize() : batchSize;
+    }
+
     private Bucket bucket(int hash) {
         if (numBuckets == 1) {
             return buckets[0];
@@ -110,9 +169,14 @@ public class OrderedAsyncBatchExecutor<T> {
 
         private final AtomicReference<UUID> processing = new AtomicReference<>();
 
+        private long currentBatchStartedAt;
+
         synchronized void add(T t) {
+            if (currentBatch.isEmpty()) {
+                currentBatchStartedAt = System.nanoTime();
+            }
             currentBatch.add(t);
-            if (currentBatch.size() >= batchSize || flushInterval <= 0) {
+            if (currentBatch.size() >= currentBatchSize() || flushInterval <= 0) {
                 scheduleCurrentBatchExecution();
             }
         }
@@ -144,9 +208,14 @@ public class OrderedAsyncBatchExecutor<T> {
 
         private void executeBatch(List<T> batchToProcess) {
             UUID batchId = UUID.randomUUID();
+            long startedAt = System.nanoTime();
             CompletableFuture<?> currentBatchHandle = new CompletableFuture<>();
             currentBatchHandle.whenComplete(
                     (result, error) -> {
+                        if (batchSizer != null) {
+                            batchSizer.batchCompleted(
+                                    batchToProcess.size(), System.nanoTime() - startedAt);
+                        }
                         boolean check = processing.compareAndSet(batchId, null);
                         if (!check) {
                             log.error(
@@ -173,5 +242,11 @@ public class OrderedAsyncBatchExecutor<T> {
         private synchronized void flush() {
             scheduleCurrentBatchExecution();
         }
+
+        private synchronized void flushIfIdle(long now, long idleTimeNanos) {
+            if (!currentBatch.isEmpty() && now - currentBatchStartedAt >= idleTimeNanos) {
+                scheduleCurrentBatchExecution();
+            }
+        }
     }
 }
@@ -0,0 +1,178 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.api;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import ai.langstream.api.runner.code.MetricsReporter;
+import ai.langstream.api.util.AdaptiveBatchSizer;
+import ai.langstream.api.util.OrderedAsyncBatchExecutor;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.awaitility.Awaitility;
+import org.junit.jupiter.api.Test;
+
+class AdaptiveBatchSizerTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(500);
+
+    @Test
+    void testLatencyTarget() {
+        MetricsReporter.Gauge gauge = MetricsReporter.DISABLED.gauge("batch_size", "");
+        AdaptiveBatchSizer sizer =
+                new AdaptiveBatchSizer(
+                        new AdaptiveBatchSizer.Config(
+                                1, 100, 10, 1000, AdaptiveBatchSizer.Target.LATENCY, 100),
+                        10,
+                        gauge);
+        assertEquals(10, sizer.batchSize());
+        assertEquals(10, gauge.value());
+
+        // full batches under the target latency: grow
+        for (int i = 0; i < 100; i++) {
+            sizer.batchCompleted(sizer.batchSize(), FAST);
+        }
+        assertEquals(100, sizer.batchSize());
+        assertEquals(100, gauge.value());
+        assertEquals(1000, sizer.idleTime());
+
+        // slow batches: shrink
+        sizer.batchCompleted(sizer.batchSize(), SLOW);
+        assertEquals(50, sizer.batchSize());
+        for (int i = 0; i < 10; i++) {
+            sizer.batchCompleted(sizer.batchSize(), SLOW);
+        }
+        assertEquals(1, sizer.batchSize());
+        assertEquals(1, gauge.value());
+        assertEquals(10, sizer.idleTime());
+    }
+
+    @Test
+    void testLowTrafficShrinksBatchSize() {
+        AdaptiveBatchSizer sizer =
+                new AdaptiveBatchSizer(
+                        new AdaptiveBatchSizer.Config(
+                                1, 100, 10, 1000, AdaptiveBatchSizer.Target.LATENCY, 100),
+                        50,
+                        MetricsReporter.Gauge.NOOP);
+        long idleTimeBefore = sizer.idleTime();
+        // batches flushed by the timer with only 5 records
+        for (int i = 0; i < 100; i++) {
+            sizer.batchCompleted(5, FAST);
+        }
+        assertTrue(sizer.batchSize() <= 6, "batch size is " + sizer.batchSize());
+        assertTrue(sizer.idleTime() < idleTimeBefore);
+    }
+
+    @Test
+    void testThroughputTarget() {
+        AdaptiveBatchSizer sizer =
+                new AdaptiveBatchSizer(
+                        new AdaptiveBatchSizer.Config(
+                                1, 100, 10, 1000, AdaptiveBatchSizer.Target.THROUGHPUT, 0),
+                        10,
+                        MetricsReporter.Gauge.NOOP);
+        // fixed cost per call, bigger batches give better throughput
+        for (int i = 0; i < 100; i++) {
+            sizer.batchCompleted(sizer.batchSize(), SLOW);
+        }
+        assertEquals(100, sizer.batchSize());
+    }
+
+    @Test
+    void testConfigFromMap() {
+        assertNull(AdaptiveBatchSizer.Config.fromMap(null, 10, 0));
+        assertNull(AdaptiveBatchSizer.Config.fromMap(Map.of("enabled", false), 10, 0));
+
+        AdaptiveBatchSizer.Config config =
+                AdaptiveBatchSizer.Config.fromMap(Map.of("enabled", true), 10, 0);
+        assertEquals(1, config.minBatchSize());
+        assertEquals(100, config.maxBatchSize());
+        assertEquals(10, config.minIdleTime());
+        assertEquals(1000, config.maxIdleTime());
+        assertEquals(AdaptiveBatchSizer.Target.LATENCY, config.target());
+        assertEquals(1000, config.targetLatency());
+
+        config =
+                AdaptiveBatchSizer.Config.fromMap(
+                        Map.of(
+                                "enabled",
+                                "true",
+                                "max-batch-size",
+                                20,
+                                "target",
+                                "throughput"),
+                        10,
+                        500);
+        assertEquals(20, config.maxBatchSize());
+        assertEquals(500, config.maxIdleTime());
+        assertEquals(AdaptiveBatchSizer.Target.THROUGHPUT, config.target());
+
+        assertThrows(
+                IllegalArgumentException.class,
+                () ->
+                        AdaptiveBatchSizer.Config.fromMap(
+                                Map.of("enabled", true, "min-batch-size", 0), 10, 0));
+    }
+
+    @Test
+    void testExecutorWithAdaptiveBatching() {
+        ScheduledExecutorService executorService = Executors.newSingleThreadScheduledExecutor();
+        AdaptiveBatchSizer sizer =
+                new AdaptiveBatchSizer(
+                        new AdaptiveBatchSizer.Config(
+                                1, 20, 5, 50, AdaptiveBatchSizer.Target.LATENCY, 1000),
+                        1,
+                        MetricsReporter.Gauge.NOOP);
+        List<String> records = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            records.add("text " + i);
+        }
+        List<String> result = new CopyOnWriteArrayList<>();
+        List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+        OrderedAsyncBatchExecutor<String> executor =
+                new OrderedAsyncBatchExecutor<>(
+                        1,
+                        (batch, future) -> {
+                            batchSizes.add(batch.size());
+                            result.addAll(batch);
+                            future.complete(null);
+                        },
+                        0,
+                        1,
+                        String::hashCode,
+                        executorService,
+                        sizer);
+        executor.start();
+        records.forEach(executor::add);
+        // with one bucket the order is preserved
+        Awaitility.await().untilAsserted(() -> assertEquals(records, result));
+        executor.stop();
+        executorService.shutdown();
+
+        // the batch size grew while the batches were fast
+        assertTrue(batchSizes.stream().anyMatch(s -> s > 1), "batch sizes: " + batchSizes);
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.api;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import ai.langstream.api.runner.code.SpooledValue;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+
+class SpooledValueTest {
+
+    @Test
+    void testSmallValueStaysInMemory() throws Exception {
+        byte[] content = "hello".getBytes(StandardCharsets.UTF_8);
+        try (SpooledValue value = SpooledValue.spool(new ByteArrayInputStream(content), 10)) {
+            assertTrue(value.isInMemory());
+            assertEquals(5, value.size());
+            assertArrayEquals(content, value.toByteArray());
+            assertEquals("hello", value.toText());
+        }
+    }
+
+    @Test
+    void testLargeValueIsSpooledToDisk() throws Exception {
+        byte[] content = new byte[100_000];
+        Arrays.fill(content, (byte) 'a');
+        SpooledValue value = SpooledValue.spool(new ByteArrayInputStream(content), 1024);
+        assertFalse(value.isInMemory());
+        assertEquals(content.length, value.size());
+        assertFalse(value.toString().contains("aaa"));
+
+        // the stream can be opened more than once
+        for (int i = 0; i < 2; i++) {
+            try (InputStream in = value.openStream()) {
+                assertArrayEquals(content, in.readAllBytes());
+            }
+        }
+        assertArrayEquals(content, value.toByteArray());
+
+        value.close();
+        assertThrows(NoSuchFileException.class, value::openStream);
+        // closing twice is harmless
+        value.close();
+    }
+
+    @Test
+    void testBuilder() throws Exception {
+        SpooledValue.Builder builder = SpooledValue.builder(8);
+        try (Writer writer = new OutputStreamWriter(builder, StandardCharsets.UTF_8)) {
+            writer.write("some text longer than the threshold");
+        }
+        try (SpooledValue value = builder.build()) {
+            assertFalse(value.isInMemory());
+            assertEquals("some text longer than the threshold", value.toText());
+        }
+    }
+
+    @Test
+    void testDiscard() throws Exception {
+        SpooledValue.Builder builder = SpooledValue.builder(8);
+        builder.write(new byte[64]);
+        builder.discard();
+        assertThrows(Exception.class, () -> builder.write(1));
+    }
+}
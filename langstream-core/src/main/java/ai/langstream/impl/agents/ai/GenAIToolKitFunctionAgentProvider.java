@@ -35,6 +35,7 @@ import ai.langstream.impl.agents.ai.steps.DropFieldsConfiguration;
 import ai.langstream.impl.agents.ai.steps.FlattenConfiguration;
 import ai.langstream.impl.agents.ai.steps.MergeKeyValueConfiguration;
 import ai.langstream.impl.agents.ai.steps.QueryConfiguration;
+import ai.langstream.impl.agents.ai.steps.TokenBudgetConfiguration;
 import ai.langstream.impl.agents.ai.steps.UnwrapKeyValueConfiguration;
 import ai.langstream.impl.common.AbstractAgentProvider;
 import ai.langstream.impl.uti.ClassConfigValidator;
@@ -78,6 +79,7 @@ public class GenAIToolKitFunctionAgentProvider extends AbstractAgentProvider {
         steps.put("query", QueryConfiguration.STEP);
         steps.put("ai-chat-completions", AIChatCompletionsConfiguration.STEP);
         steps.put("ai-text-completions", AITextCompletionsConfiguration.STEP);
+        steps.put("token-budget", TokenBudgetConfiguration.STEP);
         STEP_TYPES = Collections.unmodifiableMap(steps);
     }
 
@@ -131,6 +131,33 @@ public class AIChatCompletionsConfiguration extends BaseGenAIStepConfiguration {
     @JsonProperty(value = "min-chunks-per-message")
     private int minChunksPerMessage = 20;
 
+    @ConfigProperty(
+            description =
+                    """
+                            Content of the records written to the stream-to-topic topic. With "full" every chunk is a copy of the input record with the stream-response-completion-field set, with "delta" the record carries only the key, the headers and the new part of the answer as value.
+                            """,
+            defaultValue = "full")
+    @JsonProperty(value = "stream-chunk-mode")
+    private String streamChunkMode = "full";
+
+    @ConfigProperty(
+            description =
+                    """
+                            Maximum time in milliseconds to wait for more chunks before writing them to the stream-to-topic topic. The chunks received in this time are merged into one record. The first chunk of an answer is always written immediately. 0 disables lingering.
+                            """,
+            defaultValue = "0")
+    @JsonProperty(value = "stream-linger-ms")
+    private long streamLingerMs;
+
+    @ConfigProperty(
+            description =
+                    """
+                            Maximum number of chunks merged into one record written to the stream-to-topic topic. 0 means no limit.
+                            """,
+            defaultValue = "0")
+    @JsonProperty(value = "stream-batch-size")
+    private int streamBatchSize;
+
     @ConfigProperty(
             description =
                     """
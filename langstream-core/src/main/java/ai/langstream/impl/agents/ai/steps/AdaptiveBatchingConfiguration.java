@@ -0,0 +1,83 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.impl.agents.ai.steps;
+
+import ai.langstream.api.doc.ConfigProperty;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+@Data
+public class AdaptiveBatchingConfiguration {
+
+    @ConfigProperty(
+            description =
+                    """
+                    Enable adaptive batching. The batch size and the flush interval are adjusted depending on the observed latency.
+                    """,
+            defaultValue = "false")
+    private boolean enabled;
+
+    @ConfigProperty(
+            description =
+                    """
+                    Minimum batch size.
+                    """,
+            defaultValue = "1")
+    @JsonProperty("min-batch-size")
+    private int minBatchSize = 1;
+
+    @ConfigProperty(
+            description =
+                    """
+                    Maximum batch size. The default is 10 times the batch-size.
+                    """)
+    @JsonProperty("max-batch-size")
+    private Integer maxBatchSize;
+
+    @ConfigProperty(
+            description =
+                    """
+                    Flush interval in milliseconds used with the minimum batch size.
+                    """,
+            defaultValue = "10")
+    @JsonProperty("min-flush-interval")
+    private long minFlushInterval = 10;
+
+    @ConfigProperty(
+            description =
+                    """
+                    Flush interval in milliseconds used with the maximum batch size. The default is the flush-interval, or 1000 if flushing is disabled.
+                    """)
+    @JsonProperty("max-flush-interval")
+    private Long maxFlushInterval;
+
+    @ConfigProperty(
+            description =
+                    """
+                    What to optimize for: "latency" keeps the batch latency under target-latency, "throughput" maximizes the processed records per second.
+                    """,
+            defaultValue = "latency")
+    private String target = "latency";
+
+    @ConfigProperty(
+            description =
+                    """
+                    Target latency for a batch, in milliseconds. Used only with target: latency.
+                    """,
+            defaultValue = "1000")
+    @JsonProperty("target-latency")
+    private long targetLatency = 1000;
+}
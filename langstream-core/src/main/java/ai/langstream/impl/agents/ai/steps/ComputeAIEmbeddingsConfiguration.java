@@ -122,6 +122,14 @@ public class ComputeAIEmbeddingsConfiguration extends BaseGenAIStepConfiguration
     @JsonProperty("flush-interval")
     private int flushInterval;
 
+    @ConfigProperty(
+            description =
+                    """
+                            Adaptive batching. When enabled the batch size and the flush interval are adjusted depending on the latency of the embeddings requests.
+                            """)
+    @JsonProperty("adaptive-batching")
+    private AdaptiveBatchingConfiguration adaptiveBatching;
+
     @ConfigProperty(
             description =
                     """
@@ -139,6 +139,41 @@ public class QueryConfiguration extends BaseGenAIStepConfiguration {
     @JsonProperty("generated-keys")
     private List<String> generatedKeys;
 
+    @ConfigProperty(
+            description =
+                    """
+                   Maximum number of queries executed in parallel when using loop-over. The results are always stored in the same order of the items. With more than 1 the statements in execute mode are no longer executed in order.
+                   """,
+            defaultValue = "1")
+    private int concurrency = 1;
+
+    @ConfigProperty(
+            description =
+                    """
+                   If true, identical queries (same query and same parameters) that are executed concurrently share one single request to the datasource. Enable it only for idempotent queries.
+                   """,
+            defaultValue = "false")
+    @JsonProperty("coalesce-queries")
+    private boolean coalesceQueries;
+
+    @ConfigProperty(
+            description =
+                    """
+                   Time in milliseconds the results of a query are cached and reused for identical queries (same query and same parameters). 0 disables the cache.
+                   """,
+            defaultValue = "0")
+    @JsonProperty("cache-ttl")
+    private long cacheTtl;
+
+    @ConfigProperty(
+            description =
+                    """
+                   Maximum number of query results kept in the cache.
+                   """,
+            defaultValue = "1000")
+    @JsonProperty("cache-max-size")
+    private int cacheMaxSize = 1000;
+
     enum Mode {
         query,
         execute
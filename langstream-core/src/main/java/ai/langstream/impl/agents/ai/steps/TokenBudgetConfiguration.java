@@ -0,0 +1,137 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.impl.agents.ai.steps;
+
+import ai.langstream.api.doc.AgentConfig;
+import ai.langstream.api.doc.ConfigProperty;
+import ai.langstream.api.doc.ExtendedValidationType;
+import ai.langstream.impl.agents.ai.GenAIToolKitFunctionAgentProvider;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+@AgentConfig(
+        name = "Fit documents to a token budget",
+        description =
+                """
+        Selects the documents that fit into a maximum number of tokens, typically the results of a query used to build a prompt.
+        """)
+@Data
+public class TokenBudgetConfiguration extends BaseGenAIStepConfiguration {
+    public static final GenAIToolKitFunctionAgentProvider.StepConfigurationInitializer STEP =
+            new GenAIToolKitFunctionAgentProvider.StepConfigurationInitializer() {
+                @Override
+                public Class getAgentConfigurationModelClass() {
+                    return TokenBudgetConfiguration.class;
+                }
+            };
+
+    @ConfigProperty(
+            description =
+                    """
+                   The list of documents, for instance value.related_documents. Each document can be a string or a map.
+                   """,
+            required = true,
+            extendedValidationType = ExtendedValidationType.EL_EXPRESSION)
+    @JsonProperty("documents-field")
+    private String documentsField;
+
+    @ConfigProperty(
+            description =
+                    """
+                   The field of the document that contains the text, when the documents are maps.
+                   """,
+            defaultValue = "text")
+    @JsonProperty("text-field")
+    private String textField = "text";
+
+    @ConfigProperty(
+            description =
+                    """
+                   The name of the field to use to store the selected documents.
+                   """,
+            required = true)
+    @JsonProperty("output-field")
+    private String outputField;
+
+    @ConfigProperty(
+            description =
+                    """
+                   The name of the field to use to store the number of tokens of the selected documents.
+                   """)
+    @JsonProperty("tokens-field")
+    private String tokensField;
+
+    @ConfigProperty(
+            description =
+                    """
+                   Maximum number of tokens of the selected documents.
+                   """,
+            required = true)
+    @JsonProperty("max-tokens")
+    private int maxTokens;
+
+    @ConfigProperty(
+            description =
+                    """
+                   Maximum number of tokens of each document, longer documents are truncated. 0 disables the truncation.
+                   """,
+            defaultValue = "0")
+    @JsonProperty("max-tokens-per-document")
+    private int maxTokensPerDocument;
+
+    @ConfigProperty(
+            description =
+                    """
+                   Tiktoken encoding used to count the tokens.
+                   """,
+            defaultValue = "cl100k_base")
+    private String encoding = "cl100k_base";
+
+    @ConfigProperty(
+            description =
+                    """
+                   Order in which the documents are added to the budget: "greedy" keeps the original order, "mmr" uses the Maximal Marginal Relevance of the document embeddings with respect to the query embeddings.
+                   """,
+            defaultValue = "greedy")
+    private String strategy = "greedy";
+
+    @ConfigProperty(
+            description =
+                    """
+                   The embeddings of the query, for instance value.question_embeddings. Required with the mmr strategy.
+                   """,
+            extendedValidationType = ExtendedValidationType.EL_EXPRESSION)
+    @JsonProperty("query-embeddings-field")
+    private String queryEmbeddingsField;
+
+    @ConfigProperty(
+            description =
+                    """
+                   The field of the document that contains the embeddings, used with the mmr strategy.
+                   """,
+            defaultValue = "embeddings")
+    @JsonProperty("embeddings-field")
+    private String embeddingsField = "embeddings";
+
+    @ConfigProperty(
+            description =
+                    """
+                   Balance between relevance (1) and diversity (0) with the mmr strategy.
+                   """,
+            defaultValue = "0.5")
+    @JsonProperty("mmr-lambda")
+    private double mmrLambda = 0.5;
+}
@@ -17,6 +17,7 @@ package ai.langstream.impl.resources;
 
 import ai.langstream.impl.resources.datasource.AstraDatasourceConfig;
 import ai.langstream.impl.resources.datasource.CassandraDatasourceConfig;
+import ai.langstream.impl.resources.datasource.EmbeddedDatasourceConfig;
 import ai.langstream.impl.resources.datasource.MilvusDatasourceConfig;
 import ai.langstream.impl.resources.datasource.OpenSearchDatasourceConfig;
 import ai.langstream.impl.resources.datasource.PineconeDatasourceConfig;
@@ -34,6 +35,7 @@ public class VectorDatabaseResourceProvider extends BaseDataSourceResourceProvid
                         "pinecone", PineconeDatasourceConfig.CONFIG,
                         "milvus", MilvusDatasourceConfig.CONFIG,
                         "solr", SolrDatasourceConfig.CONFIG,
-                        "opensearch", OpenSearchDatasourceConfig.CONFIG));
+                        "opensearch", OpenSearchDatasourceConfig.CONFIG,
+                        "embedded", EmbeddedDatasourceConfig.CONFIG));
     }
 }
@@ -0,0 +1,138 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.impl.resources.datasource;
+
+import ai.langstream.api.doc.ConfigProperty;
+import ai.langstream.api.doc.ResourceConfig;
+import ai.langstream.api.model.Resource;
+import ai.langstream.api.util.ConfigurationUtils;
+import ai.langstream.impl.resources.BaseDataSourceResourceProvider;
+import ai.langstream.impl.uti.ClassConfigValidator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.Set;
+import lombok.Data;
+
+@Data
+@ResourceConfig(
+        name = "Embedded",
+        description = "Vector index embedded in the agent, stored in the configured directory.")
+public class EmbeddedDatasourceConfig extends BaseDatasourceConfig {
+
+    public static final BaseDataSourceResourceProvider.DatasourceConfig CONFIG =
+            new BaseDataSourceResourceProvider.DatasourceConfig() {
+
+                @Override
+                public Class getResourceConfigModelClass() {
+                    return EmbeddedDatasourceConfig.class;
+                }
+
+                @Override
+                public void validate(Resource resource) {
+                    ClassConfigValidator.validateResourceModelFromClass(
+                            resource,
+                            EmbeddedDatasourceConfig.class,
+                            resource.configuration(),
+                            false);
+                    ConfigurationUtils.validateEnumField(
+                            resource.configuration(),
+                            "similarity",
+                            Set.of("cosine", "dot-product", "euclidean"),
+                            () -> new ClassConfigValidator.ResourceEntityRef(resource).ref());
+                    ConfigurationUtils.validateInteger(
+                            resource.configuration(),
+                            "m",
+                            2,
+                            512,
+                            () -> new ClassConfigValidator.ResourceEntityRef(resource).ref());
+                }
+            };
+
+    @ConfigProperty(
+            description =
+                    """
+                            Name of the index. The agents of the same application that use the same index name share the index, if they run in the same process.
+                                    """,
+            defaultValue = "default")
+    @JsonProperty("index-name")
+    private String indexName;
+
+    @ConfigProperty(
+            description =
+                    """
+                            Directory where the index is stored. The vector-db-sink and the query-vector-db agents must use the same directory, for instance a volume mounted on both; only one agent can write to a directory. Without a directory the index is stored in the persistent disk of each agent, or kept only in memory if the agent has no disk, and it is shared only by the agents running in the same process.
+                                    """)
+    private String directory;
+
+    @ConfigProperty(
+            description =
+                    """
+                            Similarity function: cosine, dot-product or euclidean.
+                                    """,
+            defaultValue = "cosine")
+    private String similarity;
+
+    @ConfigProperty(
+            description =
+                    """
+                            Maximum number of connections of every vector in the HNSW graph (twice on the bottom layer). Higher values give better recall and use more memory.
+                                    """,
+            defaultValue = "16")
+    private int m;
+
+    @ConfigProperty(
+            description =
+                    """
+                            Size of the candidate list used when inserting a vector. Higher values give a better graph and slower writes.
+                                    """,
+            defaultValue = "100")
+    @JsonProperty("ef-construction")
+    private int efConstruction;
+
+    @ConfigProperty(
+            description =
+                    """
+                            Size of the candidate list used when searching, it can be overridden by the query with "ef-search". Higher values give better recall and slower queries.
+                                    """,
+            defaultValue = "64")
+    @JsonProperty("ef-search")
+    private int efSearch;
+
+    @ConfigProperty(
+            description =
+                    """
+                            Interval in milliseconds to look for data written to the directory by other processes.
+                                    """,
+            defaultValue = "1000")
+    @JsonProperty("refresh-interval")
+    private long refreshInterval;
+
+    @ConfigProperty(
+            description =
+                    """
+                            Maximum size in bytes of a segment of the log.
+                                    """,
+            defaultValue = "67108864")
+    @JsonProperty("max-segment-size")
+    private long maxSegmentSize;
+
+    @ConfigProperty(
+            description =
+                    """
+                            Flush every write to the disk before acknowledging the records.
+                                    """,
+            defaultValue = "false")
+    private boolean fsync;
+}
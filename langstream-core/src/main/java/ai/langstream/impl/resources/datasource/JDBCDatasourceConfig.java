@@ -20,6 +20,7 @@ import ai.langstream.api.doc.ResourceConfig;
 import ai.langstream.api.model.Resource;
 import ai.langstream.impl.resources.BaseDataSourceResourceProvider;
 import ai.langstream.impl.uti.ClassConfigValidator;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Data;
 
 @Data
@@ -58,4 +59,40 @@ public class JDBCDatasourceConfig extends BaseDatasourceConfig {
                             """,
             required = true)
     private String url;
+
+    @ConfigProperty(
+            description =
+                    """
+                            Maximum number of pooled connections.
+                            """,
+            defaultValue = "1")
+    @JsonProperty("pool-size")
+    private int poolSize;
+
+    @ConfigProperty(
+            description =
+                    """
+                            Maximum time, in milliseconds, to wait for a connection to be available in the pool.
+                            """,
+            defaultValue = "30000")
+    @JsonProperty("pool-connection-timeout")
+    private long poolConnectionTimeout;
+
+    @ConfigProperty(
+            description =
+                    """
+                            Connections idle for longer than this interval, in milliseconds, are validated before being used.
+                            """,
+            defaultValue = "30000")
+    @JsonProperty("pool-validation-interval")
+    private long poolValidationInterval;
+
+    @ConfigProperty(
+            description =
+                    """
+                            Maximum number of prepared statements cached for each connection. Set 0 to disable the cache.
+                            """,
+            defaultValue = "100")
+    @JsonProperty("statement-cache-size")
+    private int statementCacheSize;
 }
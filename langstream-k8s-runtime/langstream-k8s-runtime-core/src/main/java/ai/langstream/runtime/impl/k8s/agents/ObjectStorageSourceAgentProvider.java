@@ -126,6 +126,42 @@ public class ObjectStorageSourceAgentProvider extends AbstractComposableAgentPro
                                 """)
         @JsonProperty("file-extensions")
         private String fileExtensions = DEFAULT_FILE_EXTENSIONS;
+
+        @ConfigProperty(
+                defaultValue = "1",
+                description =
+                        """
+                                Maximum number of objects returned by each read.
+                                """)
+        @JsonProperty("max-records-per-read")
+        private int maxRecordsPerRead;
+
+        @ConfigProperty(
+                defaultValue = "1",
+                description =
+                        """
+                                Number of objects downloaded in parallel.
+                                """)
+        @JsonProperty("parallel-downloads")
+        private int parallelDownloads;
+
+        @ConfigProperty(
+                defaultValue = "1000",
+                description =
+                        """
+                                Number of objects listed by each request to the S3 server.
+                                """)
+        @JsonProperty("list-page-size")
+        private int listPageSize;
+
+        @ConfigProperty(
+                defaultValue = "true",
+                description =
+                        """
+                                Whether to delete the objects after processing them. If false, the objects are kept and the source reads again only the new or modified objects, tracked by their ETag. The index of the processed objects is stored on the persistent disk of the agent, if configured.
+                                """)
+        @JsonProperty("delete-objects")
+        private boolean deleteObjects = true;
     }
 
     @AgentConfig(
@@ -205,5 +241,47 @@ public class ObjectStorageSourceAgentProvider extends AbstractComposableAgentPro
                                 """)
         @JsonProperty("file-extensions")
         private String fileExtensions;
+
+        @ConfigProperty(
+                defaultValue = "1",
+                description =
+                        """
+                                Maximum number of blobs returned by each read.
+                                """)
+        @JsonProperty("max-records-per-read")
+        private int maxRecordsPerRead;
+
+        @ConfigProperty(
+                defaultValue = "1",
+                description =
+                        """
+                                Number of blobs downloaded in parallel.
+                                """)
+        @JsonProperty("parallel-downloads")
+        private int parallelDownloads;
+
+        @ConfigProperty(
+                defaultValue = "1000",
+                description =
+                        """
+                                Number of blobs listed by each request to Azure. The marker of the next page to list is stored on the persistent disk of the agent, if configured.
+                                """)
+        @JsonProperty("list-page-size")
+        private int listPageSize;
+
+        @ConfigProperty(
+                description =
+                        """
+                                Comma separated list of blob name prefixes to read. By default the whole container is read.
+                                """)
+        private String prefixes;
+
+        @ConfigProperty(
+                defaultValue = "1",
+                description =
+                        """
+                                Number of replicas sharing the prefixes. Each replica reads the prefixes whose position in the list, modulo this number, matches its ordinal.
+                                """)
+        private int partitions;
     }
 }
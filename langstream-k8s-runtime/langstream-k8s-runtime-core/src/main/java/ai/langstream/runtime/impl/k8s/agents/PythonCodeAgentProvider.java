@@ -27,6 +27,7 @@ import ai.langstream.api.runtime.ExecutionPlan;
 import ai.langstream.api.runtime.PluginsRegistry;
 import ai.langstream.impl.agents.AbstractComposableAgentProvider;
 import ai.langstream.runtime.impl.k8s.KubernetesClusterRuntime;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -158,7 +159,25 @@ public class PythonCodeAgentProvider extends AbstractComposableAgentProvider {
                     Run a your own Python processor.
                     All the configuration properties are available the class init method.
                     """)
-    public static class PythonProcessorConfig extends PythonConfig {}
+    public static class PythonProcessorConfig extends PythonConfig {
+        @ConfigProperty(
+                description =
+                        """
+                                Maximum number of records sent to the Python process and not processed yet. When the limit is reached, the agent stops reading records. 0 means no limit.
+                                        """,
+                defaultValue = "1000")
+        @JsonProperty("max-in-flight-records")
+        private int maxInFlightRecords;
+
+        @ConfigProperty(
+                description =
+                        """
+                                Number of Python processes started by each agent replica. The records are dispatched to the processes by key, the records with the same key are processed in order by the same process. With more than 1 process, each process gets its own "worker-N" subdirectory of the persistent disk.
+                                        """,
+                defaultValue = "1")
+        @JsonProperty("worker-processes")
+        private int workerProcesses;
+    }
 
     public static class PythonConfig {
         @ConfigProperty(
@@ -168,5 +187,14 @@ public class PythonCodeAgentProvider extends AbstractComposableAgentProvider {
                                         """,
                 required = true)
         private String className;
+
+        @ConfigProperty(
+                description =
+                        """
+                                Connect to the Python process through a Unix domain socket instead of a TCP port on the loopback interface. Only available on Linux.
+                                        """,
+                defaultValue = "false")
+        @JsonProperty("use-unix-domain-socket")
+        private boolean useUnixDomainSocket;
     }
 }
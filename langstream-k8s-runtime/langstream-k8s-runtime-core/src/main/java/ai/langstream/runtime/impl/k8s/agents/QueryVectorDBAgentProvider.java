@@ -32,11 +32,13 @@ import ai.langstream.impl.agents.ai.steps.QueryConfiguration;
 import ai.langstream.impl.uti.ClassConfigValidator;
 import ai.langstream.runtime.impl.k8s.KubernetesClusterRuntime;
 import ai.langstream.runtime.impl.k8s.agents.vectors.CassandraVectorDatabaseWriterConfig;
+import ai.langstream.runtime.impl.k8s.agents.vectors.EmbeddedVectorDatabaseWriterConfig;
 import ai.langstream.runtime.impl.k8s.agents.vectors.JDBCVectorDatabaseWriterConfig;
 import ai.langstream.runtime.impl.k8s.agents.vectors.MilvusVectorDatabaseWriterConfig;
 import ai.langstream.runtime.impl.k8s.agents.vectors.OpenSearchVectorDatabaseWriterConfig;
 import ai.langstream.runtime.impl.k8s.agents.vectors.PineconeVectorDatabaseWriterConfig;
 import ai.langstream.runtime.impl.k8s.agents.vectors.SolrVectorDatabaseWriterConfig;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -80,7 +82,8 @@ public class QueryVectorDBAgentProvider extends AbstractComposableAgentProvider
                             "pinecone", PineconeVectorDatabaseWriterConfig.INSTANCE,
                             "opensearch", OpenSearchVectorDatabaseWriterConfig.INSTANCE,
                             "solr", SolrVectorDatabaseWriterConfig.INSTANCE,
-                            "milvus", MilvusVectorDatabaseWriterConfig.INSTANCE);
+                            "milvus", MilvusVectorDatabaseWriterConfig.INSTANCE,
+                            "embedded", EmbeddedVectorDatabaseWriterConfig.INSTANCE);
 
     public QueryVectorDBAgentProvider() {
         super(
@@ -221,7 +224,16 @@ public class QueryVectorDBAgentProvider extends AbstractComposableAgentProvider
                             Query a vector database using Vector Search capabilities.
                             """)
     @Data
-    public static class QueryVectorDBConfig extends QueryConfiguration {}
+    public static class QueryVectorDBConfig extends QueryConfiguration {
+        @ConfigProperty(
+                description =
+                        """
+                        Maximum number of records waiting for the result of their query. When it is reached the agent stops reading records.
+                        """,
+                defaultValue = "100")
+        @JsonProperty("max-pending-records")
+        private int maxPendingRecords = 100;
+    }
 
     @Override
     public Map<String, AgentConfigurationModel> generateSupportedTypesDocumentation() {
@@ -72,7 +72,34 @@ public class TextProcessingAgentsProvider extends AbstractComposableAgentProvide
             Extracts text content from different document formats like PDF, JSON, XML, ODF, HTML and many others.
             """)
     @Data
-    public static class TextExtractorConfig {}
+    public static class TextExtractorConfig {
+        @ConfigProperty(
+                description =
+                        """
+                        Maximum number of documents extracted concurrently. With more than 1 the documents are no longer emitted in the order they are read.
+                                """,
+                defaultValue = "1")
+        @JsonProperty("max-concurrent-extractions")
+        private int maxConcurrentExtractions;
+
+        @ConfigProperty(
+                description =
+                        """
+                        Maximum time to extract the text of a document, after that the record fails. 0 means no timeout.
+                                """,
+                defaultValue = "300")
+        @JsonProperty("extraction-timeout-seconds")
+        private int extractionTimeoutSeconds;
+
+        @ConfigProperty(
+                description =
+                        """
+                        Maximum number of characters extracted from a document, the rest of the text is dropped. -1 means no limit.
+                                """,
+                defaultValue = "-1")
+        @JsonProperty("max-extracted-length")
+        private int maxExtractedLength;
+    }
 
     @AgentConfig(
             name = "Language detector",
@@ -96,6 +123,24 @@ public class TextProcessingAgentsProvider extends AbstractComposableAgentProvide
                         Define a list of allowed language codes. If the message language is not in this list, the message is dropped.
                                 """)
         private List<String> allowedLanguages;
+
+        @ConfigProperty(
+                description =
+                        """
+                        Number of characters at the beginning of the text used to detect the language, to bound the time spent on long documents. 0 means the whole text.
+                                """,
+                defaultValue = "0")
+        @JsonProperty("sample-size")
+        private int sampleSize;
+
+        @ConfigProperty(
+                description =
+                        """
+                        Maximum number of records processed concurrently, the agent stops reading records when they are all busy. With more than 1 the records are no longer emitted in the order they are read.
+                                """,
+                defaultValue = "1")
+        @JsonProperty("max-concurrent-detections")
+        private int maxConcurrentDetections;
     }
 
     @AgentConfig(
@@ -274,5 +274,14 @@ public class WebCrawlerSourceAgentProvider extends AbstractComposableAgentProvid
                 defaultValue = "true")
         @JsonProperty("handle-cookies")
         private boolean handleCookies;
+
+        @ConfigProperty(
+                description =
+                        """
+                        Maximum number of pages fetched at the same time. Each domain is fetched by only one request at a time, so this is the number of domains crawled in parallel.
+                        """,
+                defaultValue = "1")
+        @JsonProperty("max-concurrent-fetches")
+        private int maxConcurrentFetches;
     }
 }
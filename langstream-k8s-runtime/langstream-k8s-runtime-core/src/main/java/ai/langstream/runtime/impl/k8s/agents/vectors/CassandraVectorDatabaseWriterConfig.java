@@ -80,4 +80,25 @@ public abstract class CassandraVectorDatabaseWriterConfig
                     "Comma separated list of mapping between the table column and the record field. e.g. my_colum_id=key, my_column_name=value.name.",
             required = true)
     String mapping;
+
+    @ConfigProperty(
+            description =
+                    "Batch size for bulk operations. Hitting the batch size will trigger a flush. The default, 1, writes the records one by one.",
+            defaultValue = "1")
+    @JsonProperty("batch-size")
+    int batchSize;
+
+    @ConfigProperty(
+            description =
+                    "Flush interval in milliseconds, used only when batch-size is greater than 1.",
+            defaultValue = "1000")
+    @JsonProperty("flush-interval")
+    int flushInterval;
+
+    @ConfigProperty(
+            description =
+                    "Maximum number of records written in a single UNLOGGED batch. The records of a batch always belong to the same partition. Set 1 to disable the UNLOGGED batches.",
+            defaultValue = "32")
+    @JsonProperty("max-records-per-batch")
+    int maxRecordsPerBatch;
 }
@@ -0,0 +1,89 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ai.langstream.runtime.impl.k8s.agents.vectors;
+
+import ai.langstream.api.doc.AgentConfig;
+import ai.langstream.api.doc.ConfigProperty;
+import ai.langstream.runtime.impl.k8s.agents.QueryVectorDBAgentProvider;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.List;
+import lombok.Data;
+
+@Data
+@AgentConfig(
+        name = "Embedded",
+        description =
+                """
+    Writes data to a vector index embedded in the agent.
+    The index is stored in the directory configured at datasource level.
+""")
+public class EmbeddedVectorDatabaseWriterConfig
+        extends QueryVectorDBAgentProvider.VectorDatabaseWriterConfig {
+
+    public static final EmbeddedVectorDatabaseWriterConfig INSTANCE =
+            new EmbeddedVectorDatabaseWriterConfig();
+
+    @Override
+    public Class getAgentConfigModelClass() {
+        return EmbeddedVectorDatabaseWriterConfig.class;
+    }
+
+    @Override
+    public boolean isAgentConfigModelAllowUnknownProperties() {
+        return false;
+    }
+
+    @Data
+    public static class EmbeddedField {
+
+        @ConfigProperty(description = "Field name", required = true)
+        String name;
+
+        @ConfigProperty(
+                description = "JSTL Expression for computing the field value.",
+                required = true)
+        String expression;
+    }
+
+    @ConfigProperty(
+            description = "JSTL Expression for computing the id of the vector.",
+            required = true)
+    String id;
+
+    @ConfigProperty(
+            description = "JSTL Expression for computing the vector.",
+            required = true)
+    String vector;
+
+    @ConfigProperty(
+            description =
+                    "Metadata stored with the vector, returned by the queries and used by the filters.")
+    List<EmbeddedField> fields;
+
+    @ConfigProperty(
+            description =
+                    "Flush interval in milliseconds, used only when batch-size is greater than 1.",
+            defaultValue = "1000")
+    @JsonProperty("flush-interval")
+    int flushInterval;
+
+    @ConfigProperty(
+            description =
+                    "Batch size for bulk operations. Hitting the batch size will trigger a flush. The default, 1, writes the records one by one.",
+            defaultValue = "1")
+    @JsonProperty("batch-size")
+    int batchSize;
+}
@@ -68,4 +68,34 @@ public class JDBCVectorDatabaseWriterConfig
 
     @ConfigProperty(description = "Fields of the table to write to.", required = true)
     List<TableField> fields;
+
+    @ConfigProperty(
+            description =
+                    "Flush interval in milliseconds, used only when batch-size is greater than 1.",
+            defaultValue = "1000")
+    @JsonProperty("flush-interval")
+    int flushInterval;
+
+    @ConfigProperty(
+            description =
+                    "Batch size for bulk operations. Hitting the batch size will trigger a flush. The default, 1, writes the records one by one.",
+            defaultValue = "1")
+    @JsonProperty("batch-size")
+    int batchSize;
+
+    @ConfigProperty(
+            description =
+                    """
+                    How the rows are upserted: "postgresql" uses INSERT ... ON CONFLICT, "mysql" uses INSERT ... ON DUPLICATE KEY UPDATE, "merge" uses the SQL standard MERGE statement, "h2" uses the H2 MERGE ... KEY statement and "generic" runs an UPDATE followed by an INSERT if the row does not exist. "auto" detects the dialect from the database and requires a unique constraint on the primary key columns, "merge" is never detected. The default, "generic", works with any table.
+                    """,
+            defaultValue = "generic")
+    String dialect;
+
+    @ConfigProperty(
+            description =
+                    """
+                    Number of batches written in parallel, each one on its own connection. Records with the same primary key are always written in order.
+                    """,
+            defaultValue = "1")
+    int concurrency;
 }
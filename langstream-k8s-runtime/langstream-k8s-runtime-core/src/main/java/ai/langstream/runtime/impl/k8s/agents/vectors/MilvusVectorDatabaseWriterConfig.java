@@ -64,4 +64,18 @@ public class MilvusVectorDatabaseWriterConfig
     @ConfigProperty(description = "Collection name")
     @JsonProperty("database-name")
     String databaseName;
+
+    @ConfigProperty(
+            description =
+                    "Flush interval in milliseconds, used only when batch-size is greater than 1.",
+            defaultValue = "1000")
+    @JsonProperty("flush-interval")
+    int flushInterval;
+
+    @ConfigProperty(
+            description =
+                    "Batch size for bulk operations. Hitting the batch size will trigger a flush. The default, 1, writes the records one by one.",
+            defaultValue = "1")
+    @JsonProperty("batch-size")
+    int batchSize;
 }
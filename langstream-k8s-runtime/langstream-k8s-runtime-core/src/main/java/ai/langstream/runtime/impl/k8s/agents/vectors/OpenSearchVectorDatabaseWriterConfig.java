@@ -17,6 +17,7 @@ package ai.langstream.runtime.impl.k8s.agents.vectors;
 
 import ai.langstream.api.doc.AgentConfig;
 import ai.langstream.api.doc.ConfigProperty;
+import ai.langstream.impl.agents.ai.steps.AdaptiveBatchingConfiguration;
 import ai.langstream.runtime.impl.k8s.agents.QueryVectorDBAgentProvider;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import java.util.List;
@@ -130,4 +131,10 @@ public class OpenSearchVectorDatabaseWriterConfig
             defaultValue = "10")
     @JsonProperty("batch-size")
     int batchSize;
+
+    @ConfigProperty(
+            description =
+                    "Adaptive batching. When enabled the batch size and the flush interval are adjusted depending on the latency of the bulk operations.")
+    @JsonProperty("adaptive-batching")
+    AdaptiveBatchingConfiguration adaptiveBatching;
 }
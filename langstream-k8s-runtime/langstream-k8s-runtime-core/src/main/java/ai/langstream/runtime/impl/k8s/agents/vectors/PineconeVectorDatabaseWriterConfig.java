@@ -63,4 +63,18 @@ public class PineconeVectorDatabaseWriterConfig
                     "Metadata to append. The key is the metadata name and the value the JSTL Expression to compute the actual value.")
     @JsonProperty("vector.metadata")
     Map<String, String> metadata;
+
+    @ConfigProperty(
+            description =
+                    "Flush interval in milliseconds, used only when batch-size is greater than 1.",
+            defaultValue = "1000")
+    @JsonProperty("flush-interval")
+    int flushInterval;
+
+    @ConfigProperty(
+            description =
+                    "Batch size for bulk operations. Hitting the batch size will trigger a flush. The default, 1, writes the records one by one.",
+            defaultValue = "1")
+    @JsonProperty("batch-size")
+    int batchSize;
 }
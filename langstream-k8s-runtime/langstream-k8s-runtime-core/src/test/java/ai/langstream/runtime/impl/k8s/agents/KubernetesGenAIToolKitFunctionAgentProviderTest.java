@@ -230,6 +230,24 @@ class KubernetesGenAIToolKitFunctionAgentProviderTest {
                                   "type" : "boolean",
                                   "defaultValue" : "true"
                                 },
+                                "stream-batch-size" : {
+                                  "description" : "Maximum number of chunks merged into one record written to the stream-to-topic topic. 0 means no limit.",
+                                  "required" : false,
+                                  "type" : "integer",
+                                  "defaultValue" : "0"
+                                },
+                                "stream-chunk-mode" : {
+                                  "description" : "Content of the records written to the stream-to-topic topic. With \\"full\\" every chunk is a copy of the input record with the stream-response-completion-field set, with \\"delta\\" the record carries only the key, the headers and the new part of the answer as value.",
+                                  "required" : false,
+                                  "type" : "string",
+                                  "defaultValue" : "full"
+                                },
+                                "stream-linger-ms" : {
+                                  "description" : "Maximum time in milliseconds to wait for more chunks before writing them to the stream-to-topic topic. The chunks received in this time are merged into one record. The first chunk of an answer is always written immediately. 0 disables lingering.",
+                                  "required" : false,
+                                  "type" : "integer",
+                                  "defaultValue" : "0"
+                                },
                                 "stream-response-completion-field" : {
                                   "description" : "Field to use to store the completion results in the stream-to-topic topic. Use \\"value\\" to write the result without a structured schema. Use \\"value.<field>\\" to write the result in a specific field.",
                                   "required" : false,
@@ -473,6 +491,53 @@ class KubernetesGenAIToolKitFunctionAgentProviderTest {
                               "name" : "Compute embeddings of the record",
                               "description" : "Compute embeddings of the record. The embeddings are stored in the record under a specific field.",
                               "properties" : {
+                                "adaptive-batching" : {
+                                  "description" : "Adaptive batching. When enabled the batch size and the flush interval are adjusted depending on the latency of the embeddings requests.",
+                                  "required" : false,
+                                  "type" : "object",
+                                  "properties" : {
+                                    "enabled" : {
+                                      "description" : "Enable adaptive batching. The batch size and the flush interval are adjusted depending on the observed latency.",
+                                      "required" : false,
+                                      "type" : "boolean",
+                                      "defaultValue" : "false"
+                                    },
+                                    "max-batch-size" : {
+                                      "description" : "Maximum batch size. The default is 10 times the batch-size.",
+                                      "required" : false,
+                                      "type" : "integer"
+                                    },
+                                    "max-flush-interval" : {
+                                      "description" : "Flush interval in milliseconds used with the maximum batch size. The default is the flush-interval, or 1000 if flushing is disabled.",
+                                      "required" : false,
+                                      "type" : "integer"
+                                    },
+                                    "min-batch-size" : {
+                                      "description" : "Minimum batch size.",
+                                      "required" : false,
+                                      "type" : "integer",
+                                      "defaultValue" : "1"
+                                    },
+                                    "min-flush-interval" : {
+                                      "description" : "Flush interval in milliseconds used with the minimum batch size.",
+                                      "required" : false,
+                                      "type" : "integer",
+                                      "defaultValue" : "10"
+                                    },
+                                    "target" : {
+                                      "description" : "What to optimize for: \\"latency\\" keeps the batch latency under target-latency, \\"throughput\\" maximizes the processed records per second.",
+                                      "required" : false,
+                                      "type" : "string",
+                                      "defaultValue" : "latency"
+                                    },
+                                    "target-latency" : {
+                                      "description" : "Target latency for a batch, in milliseconds. Used only with target: latency.",
+                                      "required" : false,
+                                      "type" : "integer",
+                                      "defaultValue" : "1000"
+                                    }
+                                  }
+                                },
                                 "ai-service" : {
                                   "description" : "In case of multiple AI services configured, specify the id of the AI service to use.",
                                   "required" : false,
@@ -643,12 +708,36 @@ class KubernetesGenAIToolKitFunctionAgentProviderTest {
                               "name" : "Query",
                               "description" : "Perform a vector search or simple query against a datasource.",
                               "properties" : {
+                                "cache-max-size" : {
+                                  "description" : "Maximum number of query results kept in the cache.",
+                                  "required" : false,
+                                  "type" : "integer",
+                                  "defaultValue" : "1000"
+                                },
+                                "cache-ttl" : {
+                                  "description" : "Time in milliseconds the results of a query are cached and reused for identical queries (same query and same parameters). 0 disables the cache.",
+                                  "required" : false,
+                                  "type" : "integer",
+                                  "defaultValue" : "0"
+                                },
+                                "coalesce-queries" : {
+                                  "description" : "If true, identical queries (same query and same parameters) that are executed concurrently share one single request to the datasource. Enable it only for idempotent queries.",
+                                  "required" : false,
+                                  "type" : "boolean",
+                                  "defaultValue" : "false"
+                                },
                                 "composable" : {
                                   "description" : "Whether this step can be composed with other steps.",
                                   "required" : false,
                                   "type" : "boolean",
                                   "defaultValue" : "true"
                                 },
+                                "concurrency" : {
+                                  "description" : "Maximum number of queries executed in parallel when using loop-over. The results are always stored in the same order of the items. With more than 1 the statements in execute mode are no longer executed in order.",
+                                  "required" : false,
+                                  "type" : "integer",
+                                  "defaultValue" : "1"
+                                },
                                 "datasource" : {
                                   "description" : "Reference to a datasource id configured in the application.",
                                   "required" : true,
@@ -711,6 +800,86 @@ class KubernetesGenAIToolKitFunctionAgentProviderTest {
                                 }
                               }
                             },
+                            "token-budget" : {
+                              "name" : "Fit documents to a token budget",
+                              "description" : "Selects the documents that fit into a maximum number of tokens, typically the results of a query used to build a prompt.",
+                              "properties" : {
+                                "composable" : {
+                                  "description" : "Whether this step can be composed with other steps.",
+                                  "required" : false,
+                                  "type" : "boolean",
+                                  "defaultValue" : "true"
+                                },
+                                "documents-field" : {
+                                  "description" : "The list of documents, for instance value.related_documents. Each document can be a string or a map.",
+                                  "required" : true,
+                                  "type" : "string",
+                                  "extendedValidationType" : "EL_EXPRESSION"
+                                },
+                                "embeddings-field" : {
+                                  "description" : "The field of the document that contains the embeddings, used with the mmr strategy.",
+                                  "required" : false,
+                                  "type" : "string",
+                                  "defaultValue" : "embeddings"
+                                },
+                                "encoding" : {
+                                  "description" : "Tiktoken encoding used to count the tokens.",
+                                  "required" : false,
+                                  "type" : "string",
+                                  "defaultValue" : "cl100k_base"
+                                },
+                                "max-tokens" : {
+                                  "description" : "Maximum number of tokens of the selected documents.",
+                                  "required" : true,
+                                  "type" : "integer"
+                                },
+                                "max-tokens-per-document" : {
+                                  "description" : "Maximum number of tokens of each document, longer documents are truncated. 0 disables the truncation.",
+                                  "required" : false,
+                                  "type" : "integer",
+                                  "defaultValue" : "0"
+                                },
+                                "mmr-lambda" : {
+                                  "description" : "Balance between relevance (1) and diversity (0) with the mmr strategy.",
+                                  "required" : false,
+                                  "type" : "number",
+                                  "defaultValue" : "0.5"
+                                },
+                                "output-field" : {
+                                  "description" : "The name of the field to use to store the selected documents.",
+                                  "required" : true,
+                                  "type" : "string"
+                                },
+                                "query-embeddings-field" : {
+                                  "description" : "The embeddings of the query, for instance value.question_embeddings. Required with the mmr strategy.",
+                                  "required" : false,
+                                  "type" : "string",
+                                  "extendedValidationType" : "EL_EXPRESSION"
+                                },
+                                "strategy" : {
+                                  "description" : "Order in which the documents are added to the budget: \\"greedy\\" keeps the original order, \\"mmr\\" uses the Maximal Marginal Relevance of the document embeddings with respect to the query embeddings.",
+                                  "required" : false,
+                                  "type" : "string",
+                                  "defaultValue" : "greedy"
+                                },
+                                "text-field" : {
+                                  "description" : "The field of the document that contains the text, when the documents are maps.",
+                                  "required" : false,
+                                  "type" : "string",
+                                  "defaultValue" : "text"
+                                },
+                                "tokens-field" : {
+                                  "description" : "The name of the field to use to store the number of tokens of the selected documents.",
+                                  "required" : false,
+                                  "type" : "string"
+                                },
+                                "when" : {
+                                  "description" : "Execute the step only when the condition is met.\\nYou can use the expression language to reference the message.\\nExample: when: \\"value.first == 'f1' && value.last.toUpperCase() == 'L1'\\"",
+                                  "required" : false,
+                                  "type" : "string"
+                                }
+                              }
+                            },
                             "unwrap-key-value" : {
                               "name" : "Unwrap key-value format",
                               "description" : "If the record value is in KeyValue format, extracts the KeyValue's key or value and make it the record value.",
@@ -146,12 +146,36 @@ class QueryVectorDBAgentProviderTest {
                             "name" : "Query a vector database",
                             "description" : "Query a vector database using Vector Search capabilities.",
                             "properties" : {
+                              "cache-max-size" : {
+                                "description" : "Maximum number of query results kept in the cache.",
+                                "required" : false,
+                                "type" : "integer",
+                                "defaultValue" : "1000"
+                              },
+                              "cache-ttl" : {
+                                "description" : "Time in milliseconds the results of a query are cached and reused for identical queries (same query and same parameters). 0 disables the cache.",
+                                "required" : false,
+                                "type" : "integer",
+                                "defaultValue" : "0"
+                              },
+                              "coalesce-queries" : {
+                                "description" : "If true, identical queries (same query and same parameters) that are executed concurrently share one single request to the datasource. Enable it only for idempotent queries.",
+                                "required" : false,
+                                "type" : "boolean",
+                                "defaultValue" : "false"
+                              },
                               "composable" : {
                                 "description" : "Whether this step can be composed with other steps.",
                                 "required" : false,
                                 "type" : "boolean",
                                 "defaultValue" : "true"
                               },
+                              "concurrency" : {
+                                "description" : "Maximum number of queries executed in parallel when using loop-over. The results are always stored in the same order of the items. With more than 1 the statements in execute mode are no longer executed in order.",
+                                "required" : false,
+                                "type" : "integer",
+                                "defaultValue" : "1"
+                              },
                               "datasource" : {
                                 "description" : "Reference to a datasource id configured in the application.",
                                 "required" : true,
@@ -185,6 +209,12 @@ class QueryVectorDBAgentProviderTest {
                                 "type" : "string",
                                 "extendedValidationType" : "EL_EXPRESSION"
                               },
+                              "max-pending-records" : {
+                                "description" : "Maximum number of records waiting for the result of their query. When it is reached the agent stops reading records.",
+                                "required" : false,
+                                "type" : "integer",
+                                "defaultValue" : "100"
+                              },
                               "mode" : {
                                 "description" : "Execution mode: query or execute. In query mode, the query is executed and the results are returned. In execute mode, the query is executed and the result is the number of rows affected (depending on the database).",
                                 "required" : false,
@@ -219,11 +249,23 @@ class QueryVectorDBAgentProviderTest {
                             "name" : "Astra",
                             "description" : "Writes data to DataStax Astra service.\\nAll the options from DataStax Kafka Sink are supported: https://docs.datastax.com/en/kafka/doc/kafka/kafkaConfigTasksTOC.html",
                             "properties" : {
+                              "batch-size" : {
+                                "description" : "Batch size for bulk operations. Hitting the batch size will trigger a flush. The default, 1, writes the records one by one.",
+                                "required" : false,
+                                "type" : "integer",
+                                "defaultValue" : "1"
+                              },
                               "datasource" : {
                                 "description" : "Resource id. The target resource must be type: 'datasource' or 'vector-database' and service: 'astra'.",
                                 "required" : true,
                                 "type" : "string"
                               },
+                              "flush-interval" : {
+                                "description" : "Flush interval in milliseconds, used only when batch-size is greater than 1.",
+                                "required" : false,
+                                "type" : "integer",
+                                "defaultValue" : "1000"
+                              },
                               "keyspace" : {
                                 "description" : "The keyspace of the table to write to.",
                                 "required" : false,
@@ -234,6 +276,12 @@ class QueryVectorDBAgentProviderTest {
                                 "required" : true,
                                 "type" : "string"
                               },
+                              "max-records-per-batch" : {
+                                "description" : "Maximum number of records written in a single UNLOGGED batch. The records of a batch always belong to the same partition. Set 1 to disable the UNLOGGED batches.",
+                                "required" : false,
+                                "type" : "integer",
+                                "defaultValue" : "32"
+                              },
                               "table-name" : {
                                 "description" : "The name of the table to write to. The table must already exist.",
                                 "required" : true,
@@ -246,11 +294,23 @@ class QueryVectorDBAgentProviderTest {
                             "name" : "Cassandra",
                             "description" : "Writes data to Apache Cassandra.\\nAll the options from DataStax Kafka Sink are supported: https://docs.datastax.com/en/kafka/doc/kafka/kafkaConfigTasksTOC.html",
                             "properties" : {
+                              "batch-size" : {
+                                "description" : "Batch size for bulk operations. Hitting the batch size will trigger a flush. The default, 1, writes the records one by one.",
+                                "required" : false,
+                                "type" : "integer",
+                                "defaultValue" : "1"
+                              },
                               "datasource" : {
                                 "description" : "Resource id. The target resource must be type: 'datasource' or 'vector-database' and service: 'cassandra'.",
                                 "required" : true,
                                 "type" : "string"
                               },
+                              "flush-interval" : {
+                                "description" : "Flush interval in milliseconds, used only when batch-size is greater than 1.",
+                                "required" : false,
+                                "type" : "integer",
+                                "defaultValue" : "1000"
+                              },
                               "keyspace" : {
                                 "description" : "The keyspace of the table to write to.",
                                 "required" : false,
@@ -261,6 +321,12 @@ class QueryVectorDBAgentProviderTest {
                                 "required" : true,
                                 "type" : "string"
                               },
+                              "max-records-per-batch" : {
+                                "description" : "Maximum number of records written in a single UNLOGGED batch. The records of a batch always belong to the same partition. Set 1 to disable the UNLOGGED batches.",
+                                "required" : false,
+                                "type" : "integer",
+                                "defaultValue" : "32"
+                              },
                               "table-name" : {
                                 "description" : "The name of the table to write to. The table must already exist.",
                                 "required" : true,
@@ -268,16 +334,90 @@ class QueryVectorDBAgentProviderTest {
                               }
                             }
                           },
+                          "vector-db-sink_embedded" : {
+                            "type" : "vector-db-sink",
+                            "name" : "Embedded",
+                            "description" : "Writes data to a vector index embedded in the agent.\\n    The index is stored in the directory configured at datasource level.",
+                            "properties" : {
+                              "batch-size" : {
+                                "description" : "Batch size for bulk operations. Hitting the batch size will trigger a flush. The default, 1, writes the records one by one.",
+                                "required" : false,
+                                "type" : "integer",
+                                "defaultValue" : "1"
+                              },
+                              "datasource" : {
+                                "description" : "Resource id. The target resource must be type: 'datasource' or 'vector-database' and service: 'embedded'.",
+                                "required" : true,
+                                "type" : "string"
+                              },
+                              "fields" : {
+                                "description" : "Metadata stored with the vector, returned by the queries and used by the filters.",
+                                "required" : false,
+                                "type" : "array",
+                                "items" : {
+                                  "description" : "Metadata stored with the vector, returned by the queries and used by the filters.",
+                                  "required" : false,
+                                  "type" : "object",
+                                  "properties" : {
+                                    "expression" : {
+                                      "description" : "JSTL Expression for computing the field value.",
+                                      "required" : true,
+                                      "type" : "string"
+                                    },
+                                    "name" : {
+                                      "description" : "Field name",
+                                      "required" : true,
+                                      "type" : "string"
+                                    }
+                                  }
+                                }
+                              },
+                              "flush-interval" : {
+                                "description" : "Flush interval in milliseconds, used only when batch-size is greater than 1.",
+                                "required" : false,
+                                "type" : "integer",
+                                "defaultValue" : "1000"
+                              },
+                              "id" : {
+                                "description" : "JSTL Expression for computing the id of the vector.",
+                                "required" : true,
+                                "type" : "string"
+                              },
+                              "vector" : {
+                                "description" : "JSTL Expression for computing the vector.",
+                                "required" : true,
+                                "type" : "string"
+                              }
+                            }
+                          },
                           "vector-db-sink_jdbc" : {
                             "type" : "vector-db-sink",
                             "name" : "JDBC",
                             "description" : "Writes data to any JDBC compatible database.",
                             "properties" : {
+                              "batch-size" : {
+                                "description" : "Batch size for bulk operations. Hitting the batch size will trigger a flush. The default, 1, writes the records one by one.",
+                                "required" : false,
+                                "type" : "integer",
+                                "defaultValue" : "1"
+                              },
+                              "concurrency" : {
+                                "description" : "Number of batches written in parallel, each one on its own connection. Records with the same primary key are always written in order.",
+                                "required" : false,
+                                "type" : "integer",
+                                "defaultValue" : "1"
+                              },
                               "datasource" : {
                                 "description" : "Resource id. The target resource must be type: 'datasource' or 'vector-database' and service: 'jdbc'.",
                                 "required" : true,
                                 "type" : "string"
                               },
+                              "dialect" : {
+                                "description" : "How the rows are upserted: \\"postgresql\\" uses INSERT ... ON CONFLICT, \\"mysql\\" uses INSERT ... ON DUPLICATE KEY UPDATE, \\"merge\\" uses the SQL standard MERGE statement, \\"h2\\" uses the H2 MERGE ... KEY statement and \\"generic\\" runs an UPDATE followed by an INSERT if the row does not exist. \\"auto\\" detects the dialect from the database and requires a unique constraint on the primary key columns, \\"merge\\" is never detected. The default, \\"generic\\", works with any table.",
+                                "required" : false,
+                                "type" : "string",
+                                "defaultValue" : "generic"
+                              },
                               "fields" : {
                                 "description" : "Fields of the table to write to.",
                                 "required" : true,
@@ -306,6 +446,12 @@ class QueryVectorDBAgentProviderTest {
                                   }
                                 }
                               },
+                              "flush-interval" : {
+                                "description" : "Flush interval in milliseconds, used only when batch-size is greater than 1.",
+                                "required" : false,
+                                "type" : "integer",
+                                "defaultValue" : "1000"
+                              },
                               "table-name" : {
                                 "description" : "The name of the table to write to. The table must already exist.",
                                 "required" : true,
@@ -318,6 +464,12 @@ class QueryVectorDBAgentProviderTest {
                             "name" : "Milvus",
                             "description" : "Writes data to Milvus/Zillis service.",
                             "properties" : {
+                              "batch-size" : {
+                                "description" : "Batch size for bulk operations. Hitting the batch size will trigger a flush. The default, 1, writes the records one by one.",
+                                "required" : false,
+                                "type" : "integer",
+                                "defaultValue" : "1"
+                              },
                               "collection-name" : {
                                 "description" : "Collection name",
                                 "required" : false,
@@ -354,6 +506,12 @@ class QueryVectorDBAgentProviderTest {
                                     }
                                   }
                                 }
+                              },
+                              "flush-interval" : {
+                                "description" : "Flush interval in milliseconds, used only when batch-size is greater than 1.",
+                                "required" : false,
+                                "type" : "integer",
+                                "defaultValue" : "1000"
                               }
                             }
                           },
@@ -362,6 +520,53 @@ class QueryVectorDBAgentProviderTest {
                             "name" : "OpenSearch",
                             "description" : "Writes data to OpenSearch or AWS OpenSearch serverless.",
                             "properties" : {
+                              "adaptive-batching" : {
+                                "description" : "Adaptive batching. When enabled the batch size and the flush interval are adjusted depending on the latency of the bulk operations.",
+                                "required" : false,
+                                "type" : "object",
+                                "properties" : {
+                                  "enabled" : {
+                                    "description" : "Enable adaptive batching. The batch size and the flush interval are adjusted depending on the observed latency.",
+                                    "required" : false,
+                                    "type" : "boolean",
+                                    "defaultValue" : "false"
+                                  },
+                                  "max-batch-size" : {
+                                    "description" : "Maximum batch size. The default is 10 times the batch-size.",
+                                    "required" : false,
+                                    "type" : "integer"
+                                  },
+                                  "max-flush-interval" : {
+                                    "description" : "Flush interval in milliseconds used with the maximum batch size. The default is the flush-interval, or 1000 if flushing is disabled.",
+                                    "required" : false,
+                                    "type" : "integer"
+                                  },
+                                  "min-batch-size" : {
+                                    "description" : "Minimum batch size.",
+                                    "required" : false,
+                                    "type" : "integer",
+                                    "defaultValue" : "1"
+                                  },
+                                  "min-flush-interval" : {
+                                    "description" : "Flush interval in milliseconds used with the minimum batch size.",
+                                    "required" : false,
+                                    "type" : "integer",
+                                    "defaultValue" : "10"
+                                  },
+                                  "target" : {
+                                    "description" : "What to optimize for: \\"latency\\" keeps the batch latency under target-latency, \\"throughput\\" maximizes the processed records per second.",
+                                    "required" : false,
+                                    "type" : "string",
+                                    "defaultValue" : "latency"
+                                  },
+                                  "target-latency" : {
+                                    "description" : "Target latency for a batch, in milliseconds. Used only with target: latency.",
+                                    "required" : false,
+                                    "type" : "integer",
+                                    "defaultValue" : "1000"
+                                  }
+                                }
+                              },
                               "batch-size" : {
                                 "description" : "Batch size for bulk operations. Hitting the batch size will trigger a flush.",
                                 "required" : false,
@@ -450,11 +655,23 @@ class QueryVectorDBAgentProviderTest {
                             "name" : "Pinecone",
                             "description" : "Writes data to Pinecone service.\\n    To add metadata fields you can add vector.metadata.my-field: \\"value.my-field\\". The value is a JSTL Expression to compute the actual value.",
                             "properties" : {
+                              "batch-size" : {
+                                "description" : "Batch size for bulk operations. Hitting the batch size will trigger a flush. The default, 1, writes the records one by one.",
+                                "required" : false,
+                                "type" : "integer",
+                                "defaultValue" : "1"
+                              },
                               "datasource" : {
                                 "description" : "Resource id. The target resource must be type: 'datasource' or 'vector-database' and service: 'pinecone'.",
                                 "required" : true,
                                 "type" : "string"
                               },
+                              "flush-interval" : {
+                                "description" : "Flush interval in milliseconds, used only when batch-size is greater than 1.",
+                                "required" : false,
+                                "type" : "integer",
+                                "defaultValue" : "1000"
+                              },
                               "vector.id" : {
                                 "description" : "JSTL Expression to compute the id.",
                                 "required" : false,
@@ -482,6 +699,12 @@ class QueryVectorDBAgentProviderTest {
                             "name" : "Apache Solr",
                             "description" : "Writes data to Apache Solr service.\\n    The collection-name is configured at datasource level.",
                             "properties" : {
+                              "batch-size" : {
+                                "description" : "Batch size for bulk operations. Hitting the batch size will trigger a flush. The default, 1, writes the records one by one.",
+                                "required" : false,
+                                "type" : "integer",
+                                "defaultValue" : "1"
+                              },
                               "commit-within" : {
                                 "description" : "Commit within option",
                                 "required" : false,
@@ -514,6 +737,12 @@ class QueryVectorDBAgentProviderTest {
                                     }
                                   }
                                 }
+                              },
+                              "flush-interval" : {
+                                "description" : "Flush interval in milliseconds, used only when batch-size is greater than 1.",
+                                "required" : false,
+                                "type" : "integer",
+                                "defaultValue" : "1000"
                               }
                             }
                           }
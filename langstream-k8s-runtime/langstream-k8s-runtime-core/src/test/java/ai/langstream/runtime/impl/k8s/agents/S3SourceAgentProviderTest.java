@@ -131,6 +131,35 @@ class S3SourceAgentProviderTest {
                                 "type" : "integer",
                                 "defaultValue" : "5"
                               },
+                              "list-page-size" : {
+                                "description" : "Number of blobs listed by each request to Azure. The marker of the next page to list is stored on the persistent disk of the agent, if configured.",
+                                "required" : false,
+                                "type" : "integer",
+                                "defaultValue" : "1000"
+                              },
+                              "max-records-per-read" : {
+                                "description" : "Maximum number of blobs returned by each read.",
+                                "required" : false,
+                                "type" : "integer",
+                                "defaultValue" : "1"
+                              },
+                              "parallel-downloads" : {
+                                "description" : "Number of blobs downloaded in parallel.",
+                                "required" : false,
+                                "type" : "integer",
+                                "defaultValue" : "1"
+                              },
+                              "partitions" : {
+                                "description" : "Number of replicas sharing the prefixes. Each replica reads the prefixes whose position in the list, modulo this number, matches its ordinal.",
+                                "required" : false,
+                                "type" : "integer",
+                                "defaultValue" : "1"
+                              },
+                              "prefixes" : {
+                                "description" : "Comma separated list of blob name prefixes to read. By default the whole container is read.",
+                                "required" : false,
+                                "type" : "string"
+                              },
                               "sas-token" : {
                                 "description" : "Azure SAS token. If not provided, storage account name and key must be provided.",
                                 "required" : false,
@@ -169,6 +198,12 @@ class S3SourceAgentProviderTest {
                                 "type" : "string",
                                 "defaultValue" : "langstream-source"
                               },
+                              "delete-objects" : {
+                                "description" : "Whether to delete the objects after processing them. If false, the objects are kept and the source reads again only the new or modified objects, tracked by their ETag. The index of the processed objects is stored on the persistent disk of the agent, if configured.",
+                                "required" : false,
+                                "type" : "boolean",
+                                "defaultValue" : "true"
+                              },
                               "endpoint" : {
                                 "description" : "The endpoint of the S3 server.",
                                 "required" : false,
@@ -187,6 +222,24 @@ class S3SourceAgentProviderTest {
                                 "type" : "integer",
                                 "defaultValue" : "5"
                               },
+                              "list-page-size" : {
+                                "description" : "Number of objects listed by each request to the S3 server.",
+                                "required" : false,
+                                "type" : "integer",
+                                "defaultValue" : "1000"
+                              },
+                              "max-records-per-read" : {
+                                "description" : "Maximum number of objects returned by each read.",
+                                "required" : false,
+                                "type" : "integer",
+                                "defaultValue" : "1"
+                              },
+                              "parallel-downloads" : {
+                                "description" : "Number of objects downloaded in parallel.",
+                                "required" : false,
+                                "type" : "integer",
+                                "defaultValue" : "1"
+                              },
                               "region" : {
                                 "description" : "Region for the S3 server.",
                                 "required" : false,
@@ -21,6 +21,7 @@ import static org.apache.kafka.clients.producer.ProducerConfig.VALUE_SERIALIZER_
 
 import ai.langstream.api.runner.code.Header;
 import ai.langstream.api.runner.code.Record;
+import ai.langstream.api.runner.code.SpooledValue;
 import ai.langstream.api.runner.topics.TopicProducer;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.confluent.kafka.serializers.KafkaAvroSerializer;
@@ -246,6 +247,9 @@ class KafkaProducerWrapper implements TopicProducer {
                     if (Collection.class.isAssignableFrom(k)) {
                         return new ObjectToJsonSerializer();
                     }
+                    if (SpooledValue.class.isAssignableFrom(k)) {
+                        return new SpooledValueSerializer();
+                    }
                     throw new IllegalArgumentException("Cannot find a serializer for " + r);
                 });
     }
@@ -255,6 +259,17 @@ class KafkaProducerWrapper implements TopicProducer {
         return "KafkaProducerWrapper{" + "topicName='" + topicName + '\'' + '}';
     }
 
+    /**
+     * The Kafka client needs the whole message in memory, a spooled value is written to a topic
+     * only if it is not too large for the broker anyway.
+     */
+    private static class SpooledValueSerializer implements Serializer<SpooledValue> {
+        @Override
+        public byte[] serialize(String topic, SpooledValue data) {
+            return data == null ? null : data.toByteArray();
+        }
+    }
+
     private static class ObjectToJsonSerializer implements Serializer<Object> {
         private static final ObjectMapper MAPPER = new ObjectMapper();
 
@@ -25,6 +25,7 @@ import ai.langstream.api.model.StreamingCluster;
 import ai.langstream.api.model.TopicDefinition;
 import ai.langstream.api.runner.code.Header;
 import ai.langstream.api.runner.code.Record;
+import ai.langstream.api.runner.code.SpooledValue;
 import ai.langstream.api.runner.topics.TopicAdmin;
 import ai.langstream.api.runner.topics.TopicConnectionsRuntime;
 import ai.langstream.api.runner.topics.TopicConnectionsRuntimeProvider;
@@ -601,6 +602,7 @@ public class PulsarTopicConnectionsRuntimeProvider implements TopicConnectionsRu
                             entry(Float.class, Schema.FLOAT),
                             entry(Double.class, Schema.DOUBLE),
                             entry(byte[].class, Schema.BYTES),
+                            entry(SpooledValue.class, Schema.BYTES),
                             entry(Date.class, Schema.DATE),
                             entry(Timestamp.class, Schema.TIMESTAMP),
                             entry(Time.class, Schema.TIME),
@@ -742,6 +744,10 @@ public class PulsarTopicConnectionsRuntimeProvider implements TopicConnectionsRu
                         if (value instanceof byte[]) {
                             return value;
                         }
+                        if (value instanceof SpooledValue spooledValue) {
+                            // the Pulsar client needs the whole message in memory
+                            return spooledValue.toByteArray();
+                        }
                         return value.toString().getBytes(StandardCharsets.UTF_8);
                     case STRING:
                         return value.toString();
@@ -32,6 +32,9 @@ public class PrometheusMetricsReporter implements MetricsReporter {
     private static final Map<String, io.prometheus.client.Counter> counters =
             new ConcurrentHashMap<>();
 
+    private static final Map<String, io.prometheus.client.Gauge> gauges =
+            new ConcurrentHashMap<>();
+
     public PrometheusMetricsReporter(String agentName, String podName) {
         this.agentName = agentName;
         this.podName = podName;
@@ -91,6 +94,46 @@ public class PrometheusMetricsReporter implements MetricsReporter {
         };
     }
 
+    @Override
+    public Gauge gauge(String name, String help) {
+        io.prometheus.client.Gauge gauge =
+                gauges.computeIfAbsent(
+                        name,
+                        k -> {
+                            if (podName.isEmpty()) {
+                                return io.prometheus.client.Gauge.build()
+                                        .name(sanitizeMetricName(name))
+                                        .labelNames("agent_id")
+                                        .help(help)
+                                        .register();
+                            } else {
+                                return io.prometheus.client.Gauge.build()
+                                        .name(sanitizeMetricName(name))
+                                        .labelNames("agent_id", "pod")
+                                        .help(help)
+                                        .register();
+                            }
+                        });
+
+        io.prometheus.client.Gauge.Child gaugeWithLabel;
+        if (podName.isEmpty()) {
+            gaugeWithLabel = gauge.labels(agentName);
+        } else {
+            gaugeWithLabel = gauge.labels(agentName, podName);
+        }
+        return new Gauge() {
+            @Override
+            public void set(long value) {
+                gaugeWithLabel.set(value);
+            }
+
+            @Override
+            public long value() {
+                return (long) gaugeWithLabel.get();
+            }
+        };
+    }
+
     private static String sanitizeMetricName(String metricName) {
         // Define a regular expression pattern to match forbidden characters
         String pattern = "[^a-zA-Z0-9_]+";